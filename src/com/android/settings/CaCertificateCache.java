@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings;
+
+import android.net.http.SslCertificate;
+import android.security.KeyChain;
+import android.support.annotation.VisibleForTesting;
+import android.util.LruCache;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of parsed CA certificates and the subject names shown for them in
+ * {@link TrustedCredentialsSettings}, keyed by alias and a hash of the encoded certificate so a
+ * replaced certificate is parsed again. Safe to use from any thread.
+ */
+class CaCertificateCache {
+
+    /** Enough for the system CA store of a device plus its user CAs. */
+    private static final int MAX_ENTRIES = 512;
+
+    private static final CaCertificateCache sInstance = new CaCertificateCache(MAX_ENTRIES);
+
+    private final LruCache<Key, Entry> mEntries;
+
+    static CaCertificateCache getInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    CaCertificateCache(int maxEntries) {
+        mEntries = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * @return the parsed form of {@code encoded}, or {@code null} if it cannot be parsed.
+     */
+    Entry get(String alias, byte[] encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        final Key key = new Key(alias, Arrays.hashCode(encoded));
+        final Entry cached = mEntries.get(key);
+        if (cached != null && Arrays.equals(cached.mEncoded, encoded)) {
+            return cached;
+        }
+        final X509Certificate certificate = KeyChain.toCertificate(encoded);
+        if (certificate == null) {
+            return null;
+        }
+        final Entry entry = new Entry(encoded, certificate);
+        mEntries.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * A parsed certificate and its display names.
+     */
+    static class Entry {
+        private final byte[] mEncoded;
+        final X509Certificate mX509Cert;
+        final SslCertificate mSslCert;
+        final String mSubjectPrimary;
+        final String mSubjectSecondary;
+
+        private Entry(byte[] encoded, X509Certificate x509Cert) {
+            mEncoded = encoded;
+            mX509Cert = x509Cert;
+            mSslCert = new SslCertificate(x509Cert);
+
+            String cn = mSslCert.getIssuedTo().getCName();
+            String o = mSslCert.getIssuedTo().getOName();
+            String ou = mSslCert.getIssuedTo().getUName();
+            // if we have a O, use O as primary subject, secondary prefer CN over OU
+            // if we don't have an O, use CN as primary, empty secondary
+            // if we don't have O or CN, use DName as primary, empty secondary
+            if (!o.isEmpty()) {
+                if (!cn.isEmpty()) {
+                    mSubjectPrimary = o;
+                    mSubjectSecondary = cn;
+                } else {
+                    mSubjectPrimary = o;
+                    mSubjectSecondary = ou;
+                }
+            } else {
+                if (!cn.isEmpty()) {
+                    mSubjectPrimary = cn;
+                    mSubjectSecondary = "";
+                } else {
+                    mSubjectPrimary = mSslCert.getIssuedTo().getDName();
+                    mSubjectSecondary = "";
+                }
+            }
+        }
+    }
+
+    private static class Key {
+        private final String mAlias;
+        private final int mEncodedHash;
+
+        private Key(String alias, int encodedHash) {
+            mAlias = alias;
+            mEncodedHash = encodedHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mEncodedHash == other.mEncodedHash && Objects.equals(mAlias, other.mAlias);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mAlias, mEncodedHash);
+        }
+    }
+}
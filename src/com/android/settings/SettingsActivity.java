@@ -46,6 +46,7 @@ import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.transition.TransitionManager;
+import android.util.ArrayMap;
 import android.util.FeatureFlagUtils;
 import android.util.Log;
 import android.view.View;
@@ -54,7 +55,6 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.Toolbar;
 
-import com.android.internal.util.ArrayUtils;
 import com.android.settings.Settings.WifiSettingsActivity;
 import com.android.settings.applications.manageapplications.ManageApplications;
 import com.android.settings.backup.BackupSettingsActivity;
@@ -631,110 +631,97 @@ public class SettingsActivity extends SettingsDrawerActivity
         final UserManager um = UserManager.get(this);
         final boolean isAdmin = um.isAdminUser();
         final FeatureFactory featureFactory = FeatureFactory.getFactory(this);
-        boolean somethingChanged = false;
+        final TileEnablementCache cache = TileEnablementCache.getInstance();
         final String packageName = getPackageName();
-        final StringBuilder changedList = new StringBuilder();
-        somethingChanged = setTileEnabled(changedList,
+        // Desired state of each tile, later entries for the same component win.
+        final ArrayMap<ComponentName, Boolean> tiles = new ArrayMap<>();
+        putTile(tiles,
                 new ComponentName(packageName, WifiSettingsActivity.class.getName()),
-                pm.hasSystemFeature(PackageManager.FEATURE_WIFI), isAdmin) || somethingChanged;
+                cache.hasSystemFeature(pm, PackageManager.FEATURE_WIFI), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.BluetoothSettingsActivity.class.getName()),
-                pm.hasSystemFeature(PackageManager.FEATURE_BLUETOOTH), isAdmin)
-                || somethingChanged;
+                cache.hasSystemFeature(pm, PackageManager.FEATURE_BLUETOOTH), isAdmin);
 
 
         // Enable DataUsageSummaryActivity if the data plan feature flag is turned on otherwise
         // enable DataPlanUsageSummaryActivity.
-        somethingChanged = setTileEnabled(changedList,
+        putTile(tiles,
                 new ComponentName(packageName, Settings.DataUsageSummaryActivity.class.getName()),
                 Utils.isBandwidthControlEnabled() /* enabled */,
-                isAdmin) || somethingChanged;
+                isAdmin);
 
-        somethingChanged = setTileEnabled(changedList,
+        putTile(tiles,
                 new ComponentName(packageName,
                         Settings.ConnectedDeviceDashboardActivity.class.getName()),
                 !UserManager.isDeviceInDemoMode(this) /* enabled */,
-                isAdmin) || somethingChanged;
+                isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.EthernetSettingsActivity.class.getName()),
-                pm.hasSystemFeature(PackageManager.FEATURE_ETHERNET), isAdmin)
-                || somethingChanged;
+                cache.hasSystemFeature(pm, PackageManager.FEATURE_ETHERNET), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.SimSettingsActivity.class.getName()),
-                Utils.showSimCardTile(this), isAdmin)
-                || somethingChanged;
+                Utils.showSimCardTile(this), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.PowerUsageSummaryActivity.class.getName()),
-                mBatteryPresent, isAdmin) || somethingChanged;
+                mBatteryPresent, isAdmin);
 
         final boolean isDataUsageSettingsV2Enabled =
                 FeatureFlagUtils.isEnabled(this, FeatureFlags.DATA_USAGE_SETTINGS_V2);
         // Enable new data usage page if v2 enabled
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.DataUsageSummaryActivity.class.getName()),
-                Utils.isBandwidthControlEnabled() && isDataUsageSettingsV2Enabled, isAdmin)
-                || somethingChanged;
+                Utils.isBandwidthControlEnabled() && isDataUsageSettingsV2Enabled, isAdmin);
         // Enable legacy data usage page if v2 disabled
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.DataUsageSummaryLegacyActivity.class.getName()),
-                Utils.isBandwidthControlEnabled() && !isDataUsageSettingsV2Enabled, isAdmin)
-                || somethingChanged;
+                Utils.isBandwidthControlEnabled() && !isDataUsageSettingsV2Enabled, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.UserSettingsActivity.class.getName()),
                 UserHandle.MU_ENABLED && UserManager.supportsMultipleUsers()
-                        && !Utils.isMonkeyRunning(), isAdmin)
-                || somethingChanged;
+                        && !Utils.isMonkeyRunning(), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.NetworkDashboardActivity.class.getName()),
-                !UserManager.isDeviceInDemoMode(this), isAdmin)
-                || somethingChanged;
+                !UserManager.isDeviceInDemoMode(this), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.DateTimeSettingsActivity.class.getName()),
-                !UserManager.isDeviceInDemoMode(this), isAdmin)
-                || somethingChanged;
+                !UserManager.isDeviceInDemoMode(this), isAdmin);
 
         final boolean showDev = DevelopmentSettingsEnabler.isDevelopmentSettingsEnabled(this)
                 && !Utils.isMonkeyRunning();
         final boolean isAdminOrDemo = um.isAdminUser() || um.isDemoUser();
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.DevelopmentSettingsDashboardActivity.class.getName()),
-                showDev, isAdminOrDemo)
-                || somethingChanged;
+                showDev, isAdminOrDemo);
 
         // Enable/disable backup settings depending on whether the user is admin.
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
-                BackupSettingsActivity.class.getName()), true, isAdmin)
-                || somethingChanged;
+        putTile(tiles, new ComponentName(packageName,
+                BackupSettingsActivity.class.getName()), true, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.CloudConnectorSettingsActivity.class.getName()),
-                true, isAdmin)
-                || somethingChanged;
+                true, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.WifiDisplaySettingsActivity.class.getName()),
-                WifiDisplaySettings.isAvailable(this), isAdmin)
-                || somethingChanged;
+                WifiDisplaySettings.isAvailable(this), isAdmin);
 
         // Enable/disable the Me Card page.
         final boolean aboutPhoneV2Enabled = featureFactory
                 .getAccountFeatureProvider()
                 .isAboutPhoneV2Enabled(this);
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTile(tiles, new ComponentName(packageName,
                         Settings.MyDeviceInfoActivity.class.getName()),
-                aboutPhoneV2Enabled, isAdmin)
-                || somethingChanged;
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+                aboutPhoneV2Enabled, isAdmin);
+        putTile(tiles, new ComponentName(packageName,
                         Settings.DeviceInfoSettingsActivity.class.getName()),
-                !aboutPhoneV2Enabled, isAdmin)
-                || somethingChanged;
+                !aboutPhoneV2Enabled, isAdmin);
 
         if (UserHandle.MU_ENABLED && !isAdmin) {
 
@@ -746,21 +733,33 @@ public class SettingsActivity extends SettingsDrawerActivity
                     for (int i = 0; i < tileCount; i++) {
                         final ComponentName component = category.getTile(i).intent.getComponent();
                         final String name = component.getClassName();
-                        final boolean isEnabledForRestricted = ArrayUtils.contains(
-                                SettingsGateway.SETTINGS_FOR_RESTRICTED, name) || (isAdminOrDemo
+                        final boolean isEnabledForRestricted =
+                                TileEnablementCache.SETTINGS_FOR_RESTRICTED.contains(name)
+                                || (isAdminOrDemo
                                 && Settings.DevelopmentSettingsDashboardActivity.class.getName()
                                 .equals(name));
                         if (packageName.equals(component.getPackageName())
                                 && !isEnabledForRestricted) {
-                            somethingChanged =
-                                    setTileEnabled(changedList, component, false, isAdmin)
-                                            || somethingChanged;
+                            putTile(tiles, component, false, isAdmin);
                         }
                     }
                 }
             }
         }
 
+        // Only touch PackageManager for tiles whose desired state changed since the last pass.
+        final int userId = UserHandle.myUserId();
+        boolean somethingChanged = false;
+        final StringBuilder changedList = new StringBuilder();
+        for (ComponentName component : cache.getChanged(userId, tiles)) {
+            final boolean enabled = tiles.get(component);
+            if (setTileEnabled(component, enabled)) {
+                somethingChanged = true;
+                changedList.append(component.toShortString()).append(",");
+            }
+            cache.setApplied(userId, component, enabled);
+        }
+
         // Final step, refresh categories.
         if (somethingChanged) {
             Log.d(LOG_TAG, "Enabled state changed for some tiles, reloading all categories "
@@ -772,20 +771,17 @@ public class SettingsActivity extends SettingsDrawerActivity
     }
 
     /**
-     * @return whether or not the enabled state actually changed.
+     * Record the desired enabled state of a tile, forcing Settings pages off for restricted
+     * users unless whitelisted.
      */
-    private boolean setTileEnabled(StringBuilder changedList, ComponentName component,
+    private void putTile(ArrayMap<ComponentName, Boolean> tiles, ComponentName component,
             boolean enabled, boolean isAdmin) {
         if (UserHandle.MU_ENABLED && !isAdmin && getPackageName().equals(component.getPackageName())
-                && !ArrayUtils.contains(SettingsGateway.SETTINGS_FOR_RESTRICTED,
+                && !TileEnablementCache.SETTINGS_FOR_RESTRICTED.contains(
                 component.getClassName())) {
             enabled = false;
         }
-        boolean changed = setTileEnabled(component, enabled);
-        if (changed) {
-            changedList.append(component.toShortString()).append(",");
-        }
-        return changed;
+        tiles.put(component, enabled);
     }
 
     private void getMetaData() {
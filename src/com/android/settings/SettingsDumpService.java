@@ -24,14 +24,18 @@ import android.net.ConnectivityManager;
 import android.net.NetworkTemplate;
 import android.net.Uri;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.os.storage.StorageManager;
 import android.os.storage.VolumeInfo;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
+import android.util.JsonWriter;
+import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.settings.applications.ProcStatsData;
+import com.android.settings.core.instrumentation.PerfStats;
 import com.android.settings.fuelgauge.batterytip.AnomalyConfigJobService;
 import com.android.settingslib.net.DataUsageController;
 
@@ -41,9 +45,23 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.io.FileDescriptor;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Dumps Settings state as one JSON object, written one section at a time. Sections can be
+ * selected by passing their keys as dump args; by default every section is dumped. The time
+ * spent on each section is reported under {@link #KEY_TIMING}.
+ */
 public class SettingsDumpService extends Service {
+    private static final String TAG = "SettingsDumpService";
+
     @VisibleForTesting
     static final String KEY_SERVICE = "service";
     @VisibleForTesting
@@ -57,6 +75,18 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting
     static final String KEY_ANOMALY_DETECTION = "anomaly_detection";
     @VisibleForTesting
+    static final String KEY_CACHES = "caches";
+    @VisibleForTesting
+    static final String KEY_LOADERS = "loaders";
+    @VisibleForTesting
+    static final String KEY_INDEXING = "indexing";
+    @VisibleForTesting
+    static final String KEY_CONTROLLERS = "controllers";
+    @VisibleForTesting
+    static final String KEY_TIMING = "timing_ms";
+    @VisibleForTesting
+    static final String KEY_UNKNOWN_SECTIONS = "unknown_sections";
+    @VisibleForTesting
     static final Intent BROWSER_INTENT =
             new Intent("android.intent.action.VIEW", Uri.parse("http://"));
 
@@ -65,93 +95,187 @@ public class SettingsDumpService extends Service {
         return null;
     }
 
+    /**
+     * One top-level entry of the dump.
+     */
+    private interface Section {
+        void write(JsonWriter writer) throws Exception;
+    }
+
+    /**
+     * @return every section in dump order, by key.
+     */
+    private Map<String, Section> getSections() {
+        final Map<String, Section> sections = new LinkedHashMap<>();
+        sections.put(KEY_STORAGE, this::dumpStorage);
+        sections.put(KEY_DATAUSAGE, this::dumpDataUsage);
+        sections.put(KEY_MEMORY, this::dumpMemory);
+        sections.put(KEY_DEFAULT_BROWSER_APP, writer -> writer.value(dumpDefaultBrowser()));
+        sections.put(KEY_ANOMALY_DETECTION, writer -> writeJson(writer, dumpAnomalyDetection()));
+        sections.put(KEY_CACHES, writer -> PerfStats.getInstance().dumpCacheLookups(writer));
+        sections.put(KEY_LOADERS, writer -> PerfStats.getInstance().dumpDurations(
+                PerfStats.GROUP_LOADER, writer));
+        sections.put(KEY_INDEXING, writer -> PerfStats.getInstance().dumpDurations(
+                PerfStats.GROUP_INDEXING, writer));
+        sections.put(KEY_CONTROLLERS, writer -> PerfStats.getInstance().dumpDurations(
+                PerfStats.GROUP_CONTROLLER, writer));
+        return sections;
+    }
+
     @Override
     protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
-        JSONObject dump = new JSONObject();
-
-        try {
-            dump.put(KEY_SERVICE, "Settings State");
-            dump.put(KEY_STORAGE, dumpStorage());
-            dump.put(KEY_DATAUSAGE, dumpDataUsage());
-            dump.put(KEY_MEMORY, dumpMemory());
-            dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
-            dump.put(KEY_ANOMALY_DETECTION, dumpAnomalyDetection());
+        final Map<String, Section> sections = getSections();
+        final List<String> selected = new ArrayList<>();
+        final List<String> unknown = new ArrayList<>();
+        if (args == null || args.length == 0) {
+            selected.addAll(sections.keySet());
+        } else {
+            for (String arg : args) {
+                if (sections.containsKey(arg)) {
+                    selected.add(arg);
+                } else {
+                    unknown.add(arg);
+                }
+            }
+        }
+
+        // Each section is rendered and printed on its own, so only one section is held in
+        // memory and a failing section does not break the rest of the dump.
+        final long[] timing = new long[selected.size()];
+        writer.print("{");
+        writer.print(JSONObject.quote(KEY_SERVICE));
+        writer.print(":");
+        writer.print(JSONObject.quote("Settings State"));
+        for (int i = 0; i < selected.size(); i++) {
+            final String key = selected.get(i);
+            final long startTime = SystemClock.elapsedRealtime();
+            final String value = renderSection(key, sections.get(key));
+            timing[i] = SystemClock.elapsedRealtime() - startTime;
+            writer.print(",");
+            writer.print(JSONObject.quote(key));
+            writer.print(":");
+            writer.print(value);
+            writer.flush();
+        }
+        writer.print(",");
+        writer.print(JSONObject.quote(KEY_TIMING));
+        writer.print(":");
+        writer.print(renderSection(KEY_TIMING, jsonWriter -> {
+            jsonWriter.beginObject();
+            for (int i = 0; i < selected.size(); i++) {
+                jsonWriter.name(selected.get(i)).value(timing[i]);
+            }
+            jsonWriter.endObject();
+        }));
+        if (!unknown.isEmpty()) {
+            writer.print(",");
+            writer.print(JSONObject.quote(KEY_UNKNOWN_SECTIONS));
+            writer.print(":");
+            writer.print(new JSONArray(unknown));
+        }
+        writer.println("}");
+        writer.flush();
+    }
+
+    /**
+     * @return the JSON text of {@code section}, or {@code null} if it failed.
+     */
+    private String renderSection(String key, Section section) {
+        final StringWriter out = new StringWriter();
+        try (JsonWriter jsonWriter = new JsonWriter(out)) {
+            // Lenient, so a section can be a bare value such as the default browser.
+            jsonWriter.setLenient(true);
+            section.write(jsonWriter);
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.w(TAG, "Failed to dump " + key, e);
+            return "null";
         }
+        return out.toString();
+    }
 
-        writer.println(dump);
+    private static void writeJson(JsonWriter writer, JSONObject object) throws IOException {
+        // Flat object of string values, as built by dumpAnomalyDetection().
+        writer.beginObject();
+        final Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            final String name = keys.next();
+            writer.name(name).value(object.optString(name));
+        }
+        writer.endObject();
     }
 
-    private JSONObject dumpMemory() throws JSONException {
-        JSONObject obj = new JSONObject();
+    private void dumpMemory(JsonWriter writer) throws IOException {
         ProcStatsData statsManager = new ProcStatsData(this, false);
         statsManager.refreshStats(true);
         ProcStatsData.MemInfo memInfo = statsManager.getMemInfo();
 
-        obj.put("used", String.valueOf(memInfo.realUsedRam));
-        obj.put("free", String.valueOf(memInfo.realFreeRam));
-        obj.put("total", String.valueOf(memInfo.realTotalRam));
-        obj.put("state", statsManager.getMemState());
-
-        return obj;
+        writer.beginObject();
+        writer.name("used").value(String.valueOf(memInfo.realUsedRam));
+        writer.name("free").value(String.valueOf(memInfo.realFreeRam));
+        writer.name("total").value(String.valueOf(memInfo.realTotalRam));
+        writer.name("state").value(statsManager.getMemState());
+        writer.endObject();
     }
 
-    private JSONObject dumpDataUsage() throws JSONException {
-        JSONObject obj = new JSONObject();
+    private void dumpDataUsage(JsonWriter writer) throws IOException {
         DataUsageController controller = new DataUsageController(this);
         ConnectivityManager connectivityManager = getSystemService(ConnectivityManager.class);
         SubscriptionManager manager = SubscriptionManager.from(this);
         TelephonyManager telephonyManager = TelephonyManager.from(this);
+        writer.beginObject();
         if (connectivityManager.isNetworkSupported(ConnectivityManager.TYPE_MOBILE)) {
-            JSONArray array = new JSONArray();
+            writer.name("cell").beginArray();
             for (SubscriptionInfo info : manager.getAllSubscriptionInfoList()) {
                 NetworkTemplate mobileAll = NetworkTemplate.buildTemplateMobileAll(
                         telephonyManager.getSubscriberId(info.getSubscriptionId()));
-                final JSONObject usage = dumpDataUsage(mobileAll, controller);
-                usage.put("subId", info.getSubscriptionId());
-                array.put(usage);
+                writer.beginObject();
+                dumpDataUsage(writer, mobileAll, controller);
+                writer.name("subId").value(info.getSubscriptionId());
+                writer.endObject();
             }
-            obj.put("cell", array);
+            writer.endArray();
         }
         if (connectivityManager.isNetworkSupported(ConnectivityManager.TYPE_WIFI)) {
-            obj.put("wifi", dumpDataUsage(NetworkTemplate.buildTemplateWifiWildcard(), controller));
+            writer.name("wifi").beginObject();
+            dumpDataUsage(writer, NetworkTemplate.buildTemplateWifiWildcard(), controller);
+            writer.endObject();
         }
         if (connectivityManager.isNetworkSupported(ConnectivityManager.TYPE_ETHERNET)) {
-            obj.put("ethernet", dumpDataUsage(NetworkTemplate.buildTemplateEthernet(), controller));
+            writer.name("ethernet").beginObject();
+            dumpDataUsage(writer, NetworkTemplate.buildTemplateEthernet(), controller);
+            writer.endObject();
         }
-        return obj;
+        writer.endObject();
     }
 
-    private JSONObject dumpDataUsage(NetworkTemplate template, DataUsageController controller)
-            throws JSONException {
-        JSONObject obj = new JSONObject();
+    private void dumpDataUsage(JsonWriter writer, NetworkTemplate template,
+            DataUsageController controller) throws IOException {
         DataUsageController.DataUsageInfo usage = controller.getDataUsageInfo(template);
-        obj.put("carrier", usage.carrier);
-        obj.put("start", usage.startDate);
-        obj.put("usage", usage.usageLevel);
-        obj.put("warning", usage.warningLevel);
-        obj.put("limit", usage.limitLevel);
-        return obj;
+        writer.name("carrier").value(usage.carrier);
+        writer.name("start").value(usage.startDate);
+        writer.name("usage").value(usage.usageLevel);
+        writer.name("warning").value(usage.warningLevel);
+        writer.name("limit").value(usage.limitLevel);
     }
 
-    private JSONObject dumpStorage() throws JSONException {
-        JSONObject obj = new JSONObject();
+    private void dumpStorage(JsonWriter writer) throws IOException {
         StorageManager manager = getSystemService(StorageManager.class);
+        writer.beginObject();
         for (VolumeInfo volume : manager.getVolumes()) {
-            JSONObject volObj = new JSONObject();
+            writer.name(volume.getId()).beginObject();
             if (volume.isMountedReadable()) {
                 File path = volume.getPath();
-                volObj.put("used", String.valueOf(path.getTotalSpace() - path.getFreeSpace()));
-                volObj.put("total", String.valueOf(path.getTotalSpace()));
+                writer.name("used").value(
+                        String.valueOf(path.getTotalSpace() - path.getFreeSpace()));
+                writer.name("total").value(String.valueOf(path.getTotalSpace()));
             }
-            volObj.put("path", volume.getInternalPath());
-            volObj.put("state", volume.getState());
-            volObj.put("stateDesc", volume.getStateDescription());
-            volObj.put("description", volume.getDescription());
-            obj.put(volume.getId(), volObj);
+            writer.name("path").value(volume.getInternalPath());
+            writer.name("state").value(volume.getState());
+            writer.name("stateDesc").value(volume.getStateDescription());
+            writer.name("description").value(volume.getDescription());
+            writer.endObject();
         }
-        return obj;
+        writer.endObject();
     }
 
     @VisibleForTesting
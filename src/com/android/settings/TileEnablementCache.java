@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings;
+
+import android.content.ComponentName;
+import android.content.pm.PackageManager;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.SparseArray;
+
+import com.android.settings.core.gateway.SettingsGateway;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Remembers the enabled state last applied to each Settings tile component, per user, so
+ * {@link SettingsActivity} only goes to {@link PackageManager} for tiles whose desired state
+ * changed since the previous pass in this process.
+ */
+class TileEnablementCache {
+
+    /** Class names of the Settings pages that stay enabled for restricted users. */
+    static final Set<String> SETTINGS_FOR_RESTRICTED =
+            new ArraySet<>(Arrays.asList(SettingsGateway.SETTINGS_FOR_RESTRICTED));
+
+    private static TileEnablementCache sInstance;
+
+    /** Last state applied to each component, by user id. */
+    private final SparseArray<ArrayMap<ComponentName, Boolean>> mApplied = new SparseArray<>();
+    /** System features do not change while the process is alive. */
+    private final ArrayMap<String, Boolean> mFeatures = new ArrayMap<>();
+
+    static synchronized TileEnablementCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new TileEnablementCache();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    TileEnablementCache() {
+    }
+
+    synchronized boolean hasSystemFeature(PackageManager pm, String feature) {
+        Boolean hasFeature = mFeatures.get(feature);
+        if (hasFeature == null) {
+            hasFeature = pm.hasSystemFeature(feature);
+            mFeatures.put(feature, hasFeature);
+        }
+        return hasFeature;
+    }
+
+    /**
+     * @return the components of {@code desired} whose state differs from the one last applied
+     * for {@code userId}, in order.
+     */
+    synchronized List<ComponentName> getChanged(int userId,
+            ArrayMap<ComponentName, Boolean> desired) {
+        final ArrayMap<ComponentName, Boolean> applied = mApplied.get(userId);
+        final List<ComponentName> changed = new ArrayList<>();
+        for (int i = 0, size = desired.size(); i < size; i++) {
+            final ComponentName component = desired.keyAt(i);
+            if (applied == null
+                    || !Objects.equals(applied.get(component), desired.valueAt(i))) {
+                changed.add(component);
+            }
+        }
+        return changed;
+    }
+
+    synchronized void setApplied(int userId, ComponentName component, boolean enabled) {
+        ArrayMap<ComponentName, Boolean> applied = mApplied.get(userId);
+        if (applied == null) {
+            applied = new ArrayMap<>();
+            mApplied.put(userId, applied);
+        }
+        applied.put(component, enabled);
+    }
+}
@@ -42,6 +42,7 @@ import android.os.UserManager;
 import android.security.IKeyChainService;
 import android.security.KeyChain;
 import android.security.KeyChain.KeyChainConnection;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 import android.util.SparseArray;
 import android.util.ArraySet;
@@ -66,6 +67,7 @@ import com.android.internal.app.UnlaunchableAppActivity;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.internal.widget.LockPatternUtils;
 import com.android.settings.core.InstrumentedFragment;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
@@ -73,6 +75,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.IntConsumer;
 
 public class TrustedCredentialsSettings extends InstrumentedFragment
@@ -90,6 +98,10 @@ public class TrustedCredentialsSettings extends InstrumentedFragment
     private static final String SAVED_CONFIRMING_CREDENTIAL_USER = "ConfirmingCredentialUser";
     private static final String USER_ACTION = "com.android.settings.TRUSTED_CREDENTIALS_USER";
     private static final int REQUEST_CONFIRM_CREDENTIALS = 1;
+    /** Threads used to fetch and parse certificates. */
+    private static final int LOADER_THREADS = 4;
+
+    private static ExecutorService sLoaderExecutor;
 
     @Override
     public int getMetricsCategory() {
@@ -735,19 +747,12 @@ public class TrustedCredentialsSettings extends InstrumentedFragment
                                 continue;
                             }
                             IKeyChainService service = keyChainConnection.getService();
-                            List<CertHolder> certHolders = new ArrayList<CertHolder>(max);
-                            final int aliasMax = aliases.size();
-                            for (int j = 0; j < aliasMax; ++j) {
-                                String alias = aliases.get(j);
-                                byte[] encodedCertificate = service.getEncodedCaCertificate(alias,
-                                        true);
-                                X509Certificate cert = KeyChain.toCertificate(encodedCertificate);
-                                certHolders.add(new CertHolder(service, mAdapter,
-                                        mTab, alias, cert, profileId));
-                                publishProgress(++progress, max);
-                            }
+                            List<CertHolder> certHolders = loadCertHolders(service, aliases,
+                                    profileId, progress, max);
+                            progress += aliases.size();
                             Collections.sort(certHolders);
                             certHoldersByProfile.put(profileId, certHolders);
+                            publishProfile(profileId, certHolders);
                         }
                         return certHoldersByProfile;
                     }
@@ -759,6 +764,44 @@ public class TrustedCredentialsSettings extends InstrumentedFragment
                     return new SparseArray<List<CertHolder>>();
                 }
             }
+
+            /**
+             * Fetch and parse the certificates of {@code aliases} in parallel, reusing the ones
+             * parsed on a previous visit.
+             */
+            private List<CertHolder> loadCertHolders(IKeyChainService service,
+                    List<String> aliases, int profileId, int progress, int max)
+                    throws RemoteException, InterruptedException {
+                final AtomicInteger loaded = new AtomicInteger(progress);
+                return mapAliasesInParallel(getLoaderExecutor(), aliases, alias -> {
+                    if (isCancelled()) {
+                        return null;
+                    }
+                    byte[] encodedCertificate = service.getEncodedCaCertificate(alias, true);
+                    CaCertificateCache.Entry cert =
+                            CaCertificateCache.getInstance().get(alias, encodedCertificate);
+                    publishProgress(loaded.incrementAndGet(), max);
+                    return cert != null
+                            ? new CertHolder(service, mAdapter, mTab, alias, cert, profileId)
+                            : null;
+                });
+            }
+
+            /**
+             * Show the certificates of one profile without waiting for the other ones.
+             */
+            private void publishProfile(int profileId, List<CertHolder> certHolders) {
+                final List<CertHolder> published = new ArrayList<>(certHolders);
+                ThreadUtils.postOnMainThread(() -> {
+                    if (isCancelled() || getStatus() == Status.FINISHED) {
+                        return;
+                    }
+                    mCertHoldersByUserId.put(profileId, published);
+                    mAdapter.notifyDataSetChanged();
+                    mProgressBar.setVisibility(View.GONE);
+                    mContentView.setVisibility(View.VISIBLE);
+                });
+            }
             @Override protected void onProgressUpdate(Integer... progressAndMax) {
                 int progress = progressAndMax[0];
                 int max = progressAndMax[1];
@@ -839,40 +882,17 @@ public class TrustedCredentialsSettings extends InstrumentedFragment
                            GroupAdapter adapter,
                            Tab tab,
                            String alias,
-                           X509Certificate x509Cert,
+                           CaCertificateCache.Entry cert,
                            int profileId) {
             mProfileId = profileId;
             mService = service;
             mAdapter = adapter;
             mTab = tab;
             mAlias = alias;
-            mX509Cert = x509Cert;
-
-            mSslCert = new SslCertificate(x509Cert);
-
-            String cn = mSslCert.getIssuedTo().getCName();
-            String o = mSslCert.getIssuedTo().getOName();
-            String ou = mSslCert.getIssuedTo().getUName();
-            // if we have a O, use O as primary subject, secondary prefer CN over OU
-            // if we don't have an O, use CN as primary, empty secondary
-            // if we don't have O or CN, use DName as primary, empty secondary
-            if (!o.isEmpty()) {
-                if (!cn.isEmpty()) {
-                    mSubjectPrimary = o;
-                    mSubjectSecondary = cn;
-                } else {
-                    mSubjectPrimary = o;
-                    mSubjectSecondary = ou;
-                }
-            } else {
-                if (!cn.isEmpty()) {
-                    mSubjectPrimary = cn;
-                    mSubjectSecondary = "";
-                } else {
-                    mSubjectPrimary = mSslCert.getIssuedTo().getDName();
-                    mSubjectSecondary = "";
-                }
-            }
+            mX509Cert = cert.mX509Cert;
+            mSslCert = cert.mSslCert;
+            mSubjectPrimary = cert.mSubjectPrimary;
+            mSubjectSecondary = cert.mSubjectSecondary;
             try {
                 mDeleted = mTab.deleted(mService, mAlias);
             } catch (RemoteException e) {
@@ -917,6 +937,59 @@ public class TrustedCredentialsSettings extends InstrumentedFragment
     }
 
 
+    /** Computes the value shown for one alias, or null to leave the alias out. */
+    @VisibleForTesting
+    interface AliasFunction<T> {
+        T apply(String alias) throws RemoteException;
+    }
+
+    /**
+     * Applies {@code function} to {@code aliases} in up to {@link #LOADER_THREADS} chunks run on
+     * {@code executor}.
+     *
+     * @return the non-null results, in the order of {@code aliases}
+     */
+    @VisibleForTesting
+    static <T> List<T> mapAliasesInParallel(ExecutorService executor, List<String> aliases,
+            AliasFunction<T> function) throws RemoteException, InterruptedException {
+        final int aliasMax = aliases.size();
+        final int chunkSize = Math.max(1, (aliasMax + LOADER_THREADS - 1) / LOADER_THREADS);
+        final List<Callable<List<T>>> tasks = new ArrayList<>();
+        for (int start = 0; start < aliasMax; start += chunkSize) {
+            final List<String> chunk =
+                    aliases.subList(start, Math.min(start + chunkSize, aliasMax));
+            tasks.add(() -> {
+                final List<T> results = new ArrayList<>(chunk.size());
+                for (String alias : chunk) {
+                    final T result = function.apply(alias);
+                    if (result != null) {
+                        results.add(result);
+                    }
+                }
+                return results;
+            });
+        }
+        final List<T> results = new ArrayList<>(aliasMax);
+        for (Future<List<T>> future : executor.invokeAll(tasks)) {
+            try {
+                results.addAll(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RemoteException) {
+                    throw (RemoteException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static synchronized ExecutorService getLoaderExecutor() {
+        if (sLoaderExecutor == null) {
+            sLoaderExecutor = Executors.newFixedThreadPool(LOADER_THREADS);
+        }
+        return sLoaderExecutor;
+    }
+
     private boolean isTrustAllCaCertModeInProgress() {
         return mTrustAllCaUserId != UserHandle.USER_NULL;
     }
@@ -955,9 +1028,13 @@ public class TrustedCredentialsSettings extends InstrumentedFragment
                 final int n = chain.size();
                 certificates = new ArrayList<X509Certificate>(n);
                 for (int i = 0; i < n; ++i) {
-                    byte[] encodedCertificate = service.getEncodedCaCertificate(chain.get(i), true);
-                    X509Certificate certificate = KeyChain.toCertificate(encodedCertificate);
-                    certificates.add(certificate);
+                    String alias = chain.get(i);
+                    byte[] encodedCertificate = service.getEncodedCaCertificate(alias, true);
+                    CaCertificateCache.Entry cert =
+                            CaCertificateCache.getInstance().get(alias, encodedCertificate);
+                    if (cert != null) {
+                        certificates.add(cert.mX509Cert);
+                    }
                 }
             }
         } catch (RemoteException ex) {
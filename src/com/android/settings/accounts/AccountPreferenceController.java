@@ -32,7 +32,6 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.UserInfo;
 import android.content.res.Resources;
-import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.os.UserManager;
@@ -61,11 +60,14 @@ import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 import com.android.settingslib.core.lifecycle.LifecycleObserver;
 import com.android.settingslib.core.lifecycle.events.OnPause;
 import com.android.settingslib.core.lifecycle.events.OnResume;
+import com.android.settingslib.utils.ThreadUtils;
 
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class AccountPreferenceController extends AbstractPreferenceController
         implements PreferenceControllerMixin, AuthenticatorHelper.OnAccountsUpdateListener,
@@ -89,6 +91,11 @@ public class AccountPreferenceController extends AbstractPreferenceController
     private int mAccountProfileOrder = ORDER_ACCOUNT_PROFILES;
     private AccountRestrictionHelper mHelper;
     private MetricsFeatureProvider mMetricsFeatureProvider;
+    private final AccountTypeInfoCache mAccountTypeInfoCache = new AccountTypeInfoCache();
+    @VisibleForTesting
+    Executor mBackgroundExecutor = ThreadUtils::postOnBackgroundThread;
+    @VisibleForTesting
+    Executor mMainExecutor = ThreadUtils::postOnMainThread;
 
     /**
      * Holds data related to the accounts belonging to one profile.
@@ -126,6 +133,10 @@ public class AccountPreferenceController extends AbstractPreferenceController
          * The map from account key to account preference
          */
         public ArrayMap<String, AccountTypePreference> accountPreferences = new ArrayMap<>();
+        /**
+         * Incremented for every account load, results of older loads are dropped.
+         */
+        int loadGeneration;
     }
 
     public AccountPreferenceController(Context context, SettingsPreferenceFragment parent,
@@ -217,6 +228,7 @@ public class AccountPreferenceController extends AbstractPreferenceController
 
     @Override
     public void onAccountsUpdate(UserHandle userHandle) {
+        mAccountTypeInfoCache.invalidate(userHandle.getIdentifier());
         final ProfileData profileData = mProfiles.get(userHandle.getIdentifier());
         if (profileData != null) {
             updateAccountTypes(profileData);
@@ -428,44 +440,44 @@ public class AccountPreferenceController extends AbstractPreferenceController
             // This could happen if activity is finishing
             return;
         }
+        final int generation = ++profileData.loadGeneration;
         if (profileData.userInfo.isEnabled()) {
-            final ArrayMap<String, AccountTypePreference> preferenceToRemove =
-                    new ArrayMap<>(profileData.accountPreferences);
-            final ArrayList<AccountTypePreference> preferences = getAccountTypePreferences(
-                    profileData.authenticatorHelper, profileData.userInfo.getUserHandle(),
-                    preferenceToRemove);
-            final int count = preferences.size();
-            for (int i = 0; i < count; i++) {
-                final AccountTypePreference preference = preferences.get(i);
-                preference.setOrder(i);
-                final String key = preference.getKey();
-                if (!profileData.accountPreferences.containsKey(key)) {
-                    profileData.preferenceGroup.addPreference(preference);
-                    profileData.accountPreferences.put(key, preference);
-                }
-            }
-            if (profileData.addAccountPreference != null) {
-                profileData.preferenceGroup.addPreference(profileData.addAccountPreference);
-            }
-            for (String key : preferenceToRemove.keySet()) {
-                profileData.preferenceGroup.removePreference(
-                    profileData.accountPreferences.get(key));
-                profileData.accountPreferences.remove(key);
-            }
-        } else {
-            profileData.preferenceGroup.removeAll();
-            // Put a label instead of the accounts list
-            if (mProfileNotAvailablePreference == null) {
-                mProfileNotAvailablePreference =
-                    new Preference(mParent.getPreferenceManager().getContext());
-            }
-            mProfileNotAvailablePreference.setEnabled(false);
-            mProfileNotAvailablePreference.setIcon(R.drawable.empty_icon);
-            mProfileNotAvailablePreference.setTitle(null);
-            mProfileNotAvailablePreference.setSummary(
-                    R.string.managed_profile_not_available_label);
-            profileData.preferenceGroup.addPreference(mProfileNotAvailablePreference);
+            // The authenticator helper is updated on the main thread, so read the account types
+            // here. Enumerate and sort the accounts off the main thread, then apply the result
+            // if this profile was not reloaded or removed in the meantime.
+            final UserHandle userHandle = profileData.userInfo.getUserHandle();
+            final ArrayMap<String, AccountTypeInfoCache.Info> accountTypes =
+                    loadAccountTypes(profileData.authenticatorHelper, userHandle);
+            mBackgroundExecutor.execute(() -> {
+                final List<AccountEntry> entries = loadAccountEntries(accountTypes, userHandle);
+                mMainExecutor.execute(() -> {
+                    if (profileData.loadGeneration != generation
+                            || mProfiles.get(profileData.userInfo.id) != profileData) {
+                        return;
+                    }
+                    bindAccountEntries(profileData, entries);
+                    addProfileFooterPreferences(profileData);
+                });
+            });
+            return;
         }
+        profileData.preferenceGroup.removeAll();
+        profileData.accountPreferences.clear();
+        // Put a label instead of the accounts list
+        if (mProfileNotAvailablePreference == null) {
+            mProfileNotAvailablePreference =
+                new Preference(mParent.getPreferenceManager().getContext());
+        }
+        mProfileNotAvailablePreference.setEnabled(false);
+        mProfileNotAvailablePreference.setIcon(R.drawable.empty_icon);
+        mProfileNotAvailablePreference.setTitle(null);
+        mProfileNotAvailablePreference.setSummary(
+                R.string.managed_profile_not_available_label);
+        profileData.preferenceGroup.addPreference(mProfileNotAvailablePreference);
+        addProfileFooterPreferences(profileData);
+    }
+
+    private void addProfileFooterPreferences(ProfileData profileData) {
         if (profileData.removeWorkProfilePreference != null) {
             profileData.preferenceGroup.addPreference(profileData.removeWorkProfilePreference);
         }
@@ -474,72 +486,141 @@ public class AccountPreferenceController extends AbstractPreferenceController
         }
     }
 
-    private ArrayList<AccountTypePreference> getAccountTypePreferences(AuthenticatorHelper helper,
-            UserHandle userHandle, ArrayMap<String, AccountTypePreference> preferenceToRemove) {
-        final String[] accountTypes = helper.getEnabledAccountTypes();
-        final ArrayList<AccountTypePreference> accountTypePreferences =
-                new ArrayList<>(accountTypes.length);
+    /**
+     * Bind the sorted account entries, reusing the preferences of accounts already shown.
+     */
+    private void bindAccountEntries(ProfileData profileData, List<AccountEntry> entries) {
+        if (mParent.getPreferenceManager() == null
+                || profileData.preferenceGroup.getPreferenceManager() == null) {
+            return;
+        }
+        final ArrayMap<String, AccountTypePreference> preferenceToRemove =
+                new ArrayMap<>(profileData.accountPreferences);
+        final Context prefContext = mParent.getPreferenceManager().getContext();
+        final UserHandle userHandle = profileData.userInfo.getUserHandle();
+        int order = 0;
+        for (AccountEntry entry : entries) {
+            final String key = AccountTypePreference.buildKey(entry.account);
+            AccountTypePreference preference = preferenceToRemove.remove(key);
+            if (preference == null) {
+                if (!AccountRestrictionHelper.showAccount(mAuthorities, entry.info.authorities)) {
+                    continue;
+                }
+                preference = newAccountTypePreference(prefContext, entry, userHandle);
+            }
+            preference.setOrder(order++);
+            if (!profileData.accountPreferences.containsKey(key)) {
+                profileData.preferenceGroup.addPreference(preference);
+                profileData.accountPreferences.put(key, preference);
+            }
+        }
+        if (profileData.addAccountPreference != null) {
+            profileData.preferenceGroup.addPreference(profileData.addAccountPreference);
+        }
+        for (String key : preferenceToRemove.keySet()) {
+            profileData.preferenceGroup.removePreference(
+                profileData.accountPreferences.get(key));
+            profileData.accountPreferences.remove(key);
+        }
+    }
+
+    private AccountTypePreference newAccountTypePreference(Context prefContext,
+            AccountEntry entry, UserHandle userHandle) {
+        final Bundle fragmentArguments = new Bundle();
+        fragmentArguments.putParcelable(AccountDetailDashboardFragment.KEY_ACCOUNT,
+            entry.account);
+        fragmentArguments.putParcelable(AccountDetailDashboardFragment.KEY_USER_HANDLE,
+            userHandle);
+        fragmentArguments.putString(AccountDetailDashboardFragment.KEY_ACCOUNT_TYPE,
+            entry.account.type);
+        fragmentArguments.putString(AccountDetailDashboardFragment.KEY_ACCOUNT_LABEL,
+            entry.info.label.toString());
+        fragmentArguments.putInt(AccountDetailDashboardFragment.KEY_ACCOUNT_TITLE_RES,
+            entry.info.labelId);
+        fragmentArguments.putParcelable(EXTRA_USER, userHandle);
+        return new AccountTypePreference(
+            prefContext, mMetricsFeatureProvider.getMetricsCategory(mParent),
+            entry.account, entry.info.packageName, entry.info.labelId, entry.info.label,
+            AccountDetailDashboardFragment.class.getName(), fragmentArguments,
+            entry.info.icon);
+    }
 
+    /**
+     * Collect the enabled account types of {@code userHandle} to show, with their metadata.
+     * Runs on the main thread, where {@code helper} is updated.
+     */
+    @VisibleForTesting
+    ArrayMap<String, AccountTypeInfoCache.Info> loadAccountTypes(AuthenticatorHelper helper,
+            UserHandle userHandle) {
+        final String[] accountTypes = helper.getEnabledAccountTypes();
+        final ArrayMap<String, AccountTypeInfoCache.Info> result =
+                new ArrayMap<>(accountTypes.length);
         for (int i = 0; i < accountTypes.length; i++) {
             final String accountType = accountTypes[i];
             // Skip showing any account that does not have any of the requested authorities
             if (!accountTypeHasAnyRequestedAuthorities(helper, accountType)) {
                 continue;
             }
-            final CharSequence label = helper.getLabelForType(mContext, accountType);
-            if (label == null) {
+            final AccountTypeInfoCache.Info info = mAccountTypeInfoCache.get(mContext, helper,
+                    userHandle.getIdentifier(), accountType);
+            if (info.label == null) {
                 continue;
             }
-            final String titleResPackageName = helper.getPackageForType(accountType);
-            final int titleResId = helper.getLabelIdForType(accountType);
+            result.put(accountType, info);
+        }
+        return result;
+    }
+
+    /**
+     * Collect the accounts of {@code accountTypes}, sorted by type label then account name.
+     * Runs on a background thread.
+     */
+    @VisibleForTesting
+    List<AccountEntry> loadAccountEntries(ArrayMap<String, AccountTypeInfoCache.Info> accountTypes,
+            UserHandle userHandle) {
+        final ArrayList<AccountEntry> entries = new ArrayList<>(accountTypes.size());
+        final Collator collator = Collator.getInstance();
+
+        for (int i = 0; i < accountTypes.size(); i++) {
+            final String accountType = accountTypes.keyAt(i);
+            final AccountTypeInfoCache.Info info = accountTypes.valueAt(i);
+            final CollationKey labelKey = collator.getCollationKey(info.label.toString());
 
             final Account[] accounts = AccountManager.get(mContext)
                     .getAccountsByTypeAsUser(accountType, userHandle);
-            final Drawable icon = helper.getDrawableForType(mContext, accountType);
-            final Context prefContext = mParent.getPreferenceManager().getContext();
-
-            // Add a preference row for each individual account
             for (Account account : accounts) {
-                final AccountTypePreference preference =
-                        preferenceToRemove.remove(AccountTypePreference.buildKey(account));
-                if (preference != null) {
-                    accountTypePreferences.add(preference);
-                    continue;
-                }
-                final ArrayList<String> auths =
-                    helper.getAuthoritiesForAccountType(account.type);
-                if (!AccountRestrictionHelper.showAccount(mAuthorities, auths)) {
-                    continue;
-                }
-                final Bundle fragmentArguments = new Bundle();
-                fragmentArguments.putParcelable(AccountDetailDashboardFragment.KEY_ACCOUNT,
-                    account);
-                fragmentArguments.putParcelable(AccountDetailDashboardFragment.KEY_USER_HANDLE,
-                    userHandle);
-                fragmentArguments.putString(AccountDetailDashboardFragment.KEY_ACCOUNT_TYPE,
-                    accountType);
-                fragmentArguments.putString(AccountDetailDashboardFragment.KEY_ACCOUNT_LABEL,
-                    label.toString());
-                fragmentArguments.putInt(AccountDetailDashboardFragment.KEY_ACCOUNT_TITLE_RES,
-                    titleResId);
-                fragmentArguments.putParcelable(EXTRA_USER, userHandle);
-                accountTypePreferences.add(new AccountTypePreference(
-                    prefContext, mMetricsFeatureProvider.getMetricsCategory(mParent),
-                    account, titleResPackageName, titleResId, label,
-                    AccountDetailDashboardFragment.class.getName(), fragmentArguments, icon));
+                entries.add(new AccountEntry(account, info, labelKey,
+                        collator.getCollationKey(account.name)));
             }
-            helper.preloadDrawableForType(mContext, accountType);
         }
         // Sort by label
-        Collections.sort(accountTypePreferences, new Comparator<AccountTypePreference>() {
-            @Override
-            public int compare(AccountTypePreference t1, AccountTypePreference t2) {
-                int result = t1.getSummary().toString().compareTo(t2.getSummary().toString());
-                return result != 0
-                    ? result : t1.getTitle().toString().compareTo(t2.getTitle().toString());
-            }
-        });
-        return accountTypePreferences;
+        Collections.sort(entries);
+        return entries;
+    }
+
+    /**
+     * One account to show, with the collation keys it is sorted on.
+     */
+    @VisibleForTesting
+    static class AccountEntry implements Comparable<AccountEntry> {
+        final Account account;
+        final AccountTypeInfoCache.Info info;
+        private final CollationKey mLabelKey;
+        private final CollationKey mNameKey;
+
+        AccountEntry(Account account, AccountTypeInfoCache.Info info, CollationKey labelKey,
+                CollationKey nameKey) {
+            this.account = account;
+            this.info = info;
+            mLabelKey = labelKey;
+            mNameKey = nameKey;
+        }
+
+        @Override
+        public int compareTo(AccountEntry other) {
+            final int result = mLabelKey.compareTo(other.mLabelKey);
+            return result != 0 ? result : mNameKey.compareTo(other.mNameKey);
+        }
     }
 
     private boolean accountTypeHasAnyRequestedAuthorities(AuthenticatorHelper helper,
@@ -577,6 +658,7 @@ public class AccountPreferenceController extends AbstractPreferenceController
                     || action.equals(Intent.ACTION_MANAGED_PROFILE_ADDED)) {
                 // Clean old state
                 stopListeningToAccountUpdates();
+                mAccountTypeInfoCache.invalidateAll();
                 // Build new state
                 updateUi();
                 listenToAccountUpdates();
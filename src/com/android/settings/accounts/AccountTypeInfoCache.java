@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.accounts;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.SparseArray;
+
+import com.android.settings.core.instrumentation.PerfStats;
+import com.android.settingslib.accounts.AuthenticatorHelper;
+
+import java.util.ArrayList;
+
+/**
+ * Cache of the authenticator label, icon and sync authorities of each (user, account type).
+ * An entry is reloaded when the authenticator behind the type changes. Safe to use from any
+ * thread.
+ */
+class AccountTypeInfoCache {
+
+    private final SparseArray<ArrayMap<String, Info>> mInfos = new SparseArray<>();
+
+    /**
+     * Metadata of one account type, as provided by its authenticator.
+     */
+    static class Info {
+        final String packageName;
+        final int labelId;
+        /** {@code null} if the authenticator has no label, such types are not shown. */
+        final CharSequence label;
+        final Drawable icon;
+        final ArrayList<String> authorities;
+
+        Info(String packageName, int labelId, CharSequence label, Drawable icon,
+                ArrayList<String> authorities) {
+            this.packageName = packageName;
+            this.labelId = labelId;
+            this.label = label;
+            this.icon = icon;
+            this.authorities = authorities;
+        }
+    }
+
+    Info get(Context context, AuthenticatorHelper helper, int userId, String accountType) {
+        final String packageName = helper.getPackageForType(accountType);
+        final int labelId = helper.getLabelIdForType(accountType);
+        synchronized (this) {
+            final ArrayMap<String, Info> userInfos = mInfos.get(userId);
+            final Info cached = userInfos != null ? userInfos.get(accountType) : null;
+            if (cached != null && cached.labelId == labelId
+                    && TextUtils.equals(cached.packageName, packageName)) {
+                PerfStats.getInstance().recordCacheLookup("account_types", true);
+                return cached;
+            }
+        }
+        PerfStats.getInstance().recordCacheLookup("account_types", false);
+        // Load outside the lock, a concurrent duplicate load is harmless.
+        final Info info = new Info(packageName, labelId,
+                helper.getLabelForType(context, accountType),
+                helper.getDrawableForType(context, accountType),
+                helper.getAuthoritiesForAccountType(accountType));
+        synchronized (this) {
+            ArrayMap<String, Info> userInfos = mInfos.get(userId);
+            if (userInfos == null) {
+                userInfos = new ArrayMap<>();
+                mInfos.put(userId, userInfos);
+            }
+            userInfos.put(accountType, info);
+        }
+        return info;
+    }
+
+    synchronized void invalidate(int userId) {
+        mInfos.remove(userId);
+    }
+
+    synchronized void invalidateAll() {
+        mInfos.clear();
+    }
+}
@@ -16,16 +16,11 @@ package com.android.settings.applications;
 
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.UserInfo;
 import android.os.AsyncTask;
-import android.os.UserHandle;
 import android.os.UserManager;
 
 import com.android.settingslib.wrapper.PackageManagerWrapper;
 
-import java.util.List;
-
 public abstract class AppCounter extends AsyncTask<Void, Void, Integer> {
 
     protected final PackageManagerWrapper mPm;
@@ -34,24 +29,12 @@ public abstract class AppCounter extends AsyncTask<Void, Void, Integer> {
     public AppCounter(Context context, PackageManagerWrapper packageManager) {
         mPm = packageManager;
         mUm = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        InstalledAppsSnapshot.registerForInvalidation(context);
     }
 
     @Override
     protected Integer doInBackground(Void... params) {
-        int count = 0;
-        for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
-            final List<ApplicationInfo> list =
-                    mPm.getInstalledApplicationsAsUser(PackageManager.GET_DISABLED_COMPONENTS
-                            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
-                            | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
-                            user.id);
-            for (ApplicationInfo info : list) {
-                if (includeInCount(info)) {
-                    count++;
-                }
-            }
-        }
-        return count;
+        return InstalledAppsSnapshot.count(mPm, mUm, this::includeInCount);
     }
 
     @Override
@@ -17,15 +17,11 @@
 package com.android.settings.applications;
 
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.UserInfo;
 import android.os.AsyncTask;
-import android.os.UserHandle;
 import android.os.UserManager;
 
 import com.android.settingslib.wrapper.PackageManagerWrapper;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -45,20 +41,7 @@ public abstract class AppLister extends AsyncTask<Void, Void, List<UserAppInfo>>
 
     @Override
     protected List<UserAppInfo> doInBackground(Void... params) {
-        final List<UserAppInfo> result = new ArrayList<>();
-        for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
-            final List<ApplicationInfo> list =
-                    mPm.getInstalledApplicationsAsUser(PackageManager.GET_DISABLED_COMPONENTS
-                            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
-                            | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
-                            user.id);
-            for (ApplicationInfo info : list) {
-                if (includeInCount(info)) {
-                    result.add(new UserAppInfo(user, info));
-                }
-            }
-        }
-        return result;
+        return InstalledAppsSnapshot.list(mPm, mUm, this::includeInCount);
     }
 
     @Override
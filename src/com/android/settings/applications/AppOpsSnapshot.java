@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.applications;
+
+import android.app.AppGlobals;
+import android.app.AppOpsManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+import android.os.RemoteException;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Shared snapshot of which packages request, hold and were granted the app op backed
+ * permissions shown on the special app access screens.
+ *
+ * <p>Each {@link AppStateAppOpsBridge} acquires its (op, permissions) pair while resumed. All
+ * acquired pairs are loaded together, with a single {@link AppOpsManager#getPackagesForOps} call
+ * for every op, and kept until a package or one of the watched app ops changes. Callers that
+ * have not acquired their pair get a fresh, uncached load.
+ */
+public class AppOpsSnapshot {
+
+    private static final String TAG = "AppOpsSnapshot";
+
+    private static AppOpsSnapshot sInstance;
+
+    private final Context mContext;
+    private final IPackageManager mIPackageManager;
+    private final AppOpsManager mAppOpsManager;
+    private final UserManager mUserManager;
+
+    /** Reference count of each acquired key. */
+    private final ArrayMap<Key, Integer> mAcquired = new ArrayMap<>();
+    private final SparseArray<AppOpsManager.OnOpChangedListener> mOpWatchers =
+            new SparseArray<>();
+    private final ArrayMap<Key, Data> mData = new ArrayMap<>();
+    private boolean mValid;
+    /** Bumped whenever loaded data goes stale, so a load racing with the change is dropped. */
+    private int mGeneration;
+    private boolean mReceiverRegistered;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    public static synchronized AppOpsSnapshot getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppOpsSnapshot(context.getApplicationContext(),
+                    AppGlobals.getPackageManager());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    AppOpsSnapshot(Context context, IPackageManager packageManager) {
+        mContext = context;
+        mIPackageManager = packageManager;
+        mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        mUserManager = UserManager.get(context);
+    }
+
+    /**
+     * Keep the snapshot for the op and permissions loaded and up to date until the matching
+     * {@link #release}.
+     */
+    public synchronized void acquire(int op, String[] permissions) {
+        final Key key = new Key(op, permissions);
+        final Integer count = mAcquired.get(key);
+        mAcquired.put(key, count == null ? 1 : count + 1);
+        if (count == null) {
+            // a new key needs to be part of the next load
+            mValid = false;
+            mGeneration++;
+        }
+        if (mOpWatchers.get(op) == null) {
+            final AppOpsManager.OnOpChangedListener watcher = (changedOp, pkg) -> invalidate();
+            mOpWatchers.put(op, watcher);
+            mAppOpsManager.startWatchingMode(op, null, watcher);
+        }
+        if (!mReceiverRegistered) {
+            final IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            filter.addDataScheme("package");
+            mContext.registerReceiverAsUser(mPackageReceiver, UserHandle.ALL, filter, null, null);
+            mReceiverRegistered = true;
+        }
+    }
+
+    public synchronized void release(int op, String[] permissions) {
+        final Key key = new Key(op, permissions);
+        final Integer count = mAcquired.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            mAcquired.put(key, count - 1);
+            return;
+        }
+        mAcquired.remove(key);
+        mData.remove(key);
+
+        boolean opStillUsed = false;
+        for (int i = 0; i < mAcquired.size(); i++) {
+            if (mAcquired.keyAt(i).mOp == op) {
+                opStillUsed = true;
+                break;
+            }
+        }
+        if (!opStillUsed) {
+            final AppOpsManager.OnOpChangedListener watcher = mOpWatchers.get(op);
+            mOpWatchers.remove(op);
+            if (watcher != null) {
+                mAppOpsManager.stopWatchingMode(watcher);
+            }
+        }
+        if (mAcquired.isEmpty()) {
+            if (mReceiverRegistered) {
+                mContext.unregisterReceiver(mPackageReceiver);
+                mReceiverRegistered = false;
+            }
+            mValid = false;
+            mGeneration++;
+        }
+    }
+
+    public synchronized void invalidate() {
+        mValid = false;
+        mGeneration++;
+    }
+
+    /**
+     * @return the snapshot for the op and permissions, loading it if needed. Must be called
+     * off the main thread.
+     */
+    public Data get(int op, String[] permissions) {
+        final Key key = new Key(op, permissions);
+        final List<Key> keys;
+        final int generation;
+        synchronized (this) {
+            if (!mAcquired.containsKey(key)) {
+                keys = null;
+                generation = 0;
+            } else if (mValid && mData.containsKey(key)) {
+                return mData.get(key);
+            } else {
+                keys = new ArrayList<>(mAcquired.keySet());
+                generation = mGeneration;
+            }
+        }
+        if (keys == null) {
+            return load(Collections.singletonList(key)).get(key);
+        }
+        // Loaded without the lock, so acquire, release and invalidate from the main thread
+        // never wait for the binder calls.
+        final ArrayMap<Key, Data> loaded = load(keys);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mData.clear();
+                mData.putAll(loaded);
+                mValid = true;
+            }
+        }
+        return loaded.get(key);
+    }
+
+    /**
+     * Load all keys together: each permission and op is only queried once across keys.
+     */
+    private ArrayMap<Key, Data> load(List<Key> keys) {
+        final List<UserHandle> profiles = mUserManager.getUserProfiles();
+
+        final ArraySet<String> permissions = new ArraySet<>();
+        final ArraySet<Integer> opSet = new ArraySet<>();
+        for (Key key : keys) {
+            permissions.addAll(Arrays.asList(key.mPermissions));
+            opSet.add(key.mOp);
+        }
+
+        // Packages requesting each permission.
+        final ArrayMap<String, String[]> requesters = new ArrayMap<>();
+        for (String permission : permissions) {
+            try {
+                requesters.put(permission, mIPackageManager.getAppOpPermissionPackages(permission));
+            } catch (RemoteException e) {
+                Log.w(TAG, "PackageManager is dead. Can't get packages requesting "
+                        + permission, e);
+            }
+        }
+
+        // App op modes of every op, from a single call.
+        final int[] ops = new int[opSet.size()];
+        for (int i = 0; i < ops.length; i++) {
+            ops[i] = opSet.valueAt(i);
+        }
+        final SparseArray<OpModes> modes = new SparseArray<>();
+        for (int op : ops) {
+            modes.put(op, new OpModes());
+        }
+        final List<AppOpsManager.PackageOps> packageOps = mAppOpsManager.getPackagesForOps(ops);
+        final int packageOpsCount = packageOps != null ? packageOps.size() : 0;
+        for (int i = 0; i < packageOpsCount; i++) {
+            final AppOpsManager.PackageOps packageOp = packageOps.get(i);
+            final List<AppOpsManager.OpEntry> entries = packageOp.getOps();
+            for (int j = 0; j < entries.size(); j++) {
+                final OpModes opModes = modes.get(entries.get(j).getOp());
+                if (opModes != null) {
+                    opModes.put(packageOp.getUid(), packageOp.getPackageName(),
+                            entries.get(j).getMode());
+                }
+            }
+        }
+
+        final ArraySet<String> allRequesters = new ArraySet<>();
+        final ArrayMap<Key, Data> result = new ArrayMap<>();
+        for (Key key : keys) {
+            final Data data = new Data(modes.get(key.mOp));
+            for (String permission : key.mPermissions) {
+                final String[] pkgs = requesters.get(permission);
+                if (pkgs != null) {
+                    data.mRequestingPackages.addAll(Arrays.asList(pkgs));
+                }
+            }
+            allRequesters.addAll(data.mRequestingPackages);
+            result.put(key, data);
+        }
+
+        // Availability of each requesting package, checked once per profile across keys.
+        final SparseArray<ArraySet<String>> available = new SparseArray<>();
+        for (UserHandle profile : profiles) {
+            final int profileId = profile.getIdentifier();
+            final ArraySet<String> availableForProfile = new ArraySet<>();
+            available.put(profileId, availableForProfile);
+            for (String pkg : allRequesters) {
+                try {
+                    if (mIPackageManager.isPackageAvailable(pkg, profileId)) {
+                        availableForProfile.add(pkg);
+                    }
+                } catch (RemoteException e) {
+                    Log.w(TAG, "PackageManager is dead. Can't check " + pkg, e);
+                }
+            }
+        }
+
+        for (int i = 0; i < result.size(); i++) {
+            final Key key = result.keyAt(i);
+            final Data data = result.valueAt(i);
+            if (data.mRequestingPackages.isEmpty()) {
+                // Nobody requests the permissions, nothing else to load.
+                continue;
+            }
+            for (UserHandle profile : profiles) {
+                final int profileId = profile.getIdentifier();
+                final ArraySet<String> availableForKey = new ArraySet<>();
+                for (String pkg : available.get(profileId)) {
+                    if (data.mRequestingPackages.contains(pkg)) {
+                        availableForKey.add(pkg);
+                    }
+                }
+                data.mAvailable.put(profileId, availableForKey);
+                data.mHolders.put(profileId, loadHolders(key.mPermissions, profileId));
+            }
+        }
+        return result;
+    }
+
+    private ArrayMap<String, PackageInfo> loadHolders(String[] permissions, int profileId) {
+        final ArrayMap<String, PackageInfo> holders = new ArrayMap<>();
+        try {
+            @SuppressWarnings("unchecked") final List<PackageInfo> packageInfos =
+                    mIPackageManager.getPackagesHoldingPermissions(permissions, 0, profileId)
+                            .getList();
+            final int count = packageInfos != null ? packageInfos.size() : 0;
+            for (int i = 0; i < count; i++) {
+                final PackageInfo info = packageInfos.get(i);
+                holders.put(info.packageName, info);
+            }
+        } catch (RemoteException e) {
+            Log.w(TAG, "PackageManager is dead. Can't get list of packages granted "
+                    + Arrays.toString(permissions), e);
+        }
+        return holders;
+    }
+
+    /**
+     * App op modes of one op, keyed by uid and package name, so packages sharing a uid keep
+     * their own mode.
+     */
+    public static class OpModes {
+        private final SparseArray<ArrayMap<String, Integer>> mModesByUid = new SparseArray<>();
+        private final ArrayList<String> mPackages = new ArrayList<>();
+        private int[] mUids = new int[16];
+        private int[] mModes = new int[16];
+
+        void put(int uid, String pkg, int mode) {
+            ArrayMap<String, Integer> modesForUid = mModesByUid.get(uid);
+            if (modesForUid == null) {
+                modesForUid = new ArrayMap<>();
+                mModesByUid.put(uid, modesForUid);
+            }
+            modesForUid.put(pkg, mode);
+            final int index = mPackages.size();
+            if (index == mUids.length) {
+                mUids = Arrays.copyOf(mUids, index * 2);
+                mModes = Arrays.copyOf(mModes, index * 2);
+            }
+            mUids[index] = uid;
+            mModes[index] = mode;
+            mPackages.add(pkg);
+        }
+
+        public int getMode(int uid, String pkg) {
+            final ArrayMap<String, Integer> modesForUid = mModesByUid.get(uid);
+            final Integer mode = modesForUid != null ? modesForUid.get(pkg) : null;
+            return mode != null ? mode : AppOpsManager.MODE_DEFAULT;
+        }
+
+        public int size() {
+            return mPackages.size();
+        }
+
+        public int getUidAt(int index) {
+            return mUids[index];
+        }
+
+        public String getPackageAt(int index) {
+            return mPackages.get(index);
+        }
+
+        public int getModeAt(int index) {
+            return mModes[index];
+        }
+    }
+
+    /**
+     * Snapshot of one (op, permissions) pair.
+     */
+    public static class Data {
+        private final ArraySet<String> mRequestingPackages = new ArraySet<>();
+        /** Requesting packages installed in each profile, by user id. */
+        private final SparseArray<ArraySet<String>> mAvailable = new SparseArray<>();
+        /** Packages holding one of the permissions, by user id then package name. */
+        private final SparseArray<ArrayMap<String, PackageInfo>> mHolders = new SparseArray<>();
+        private final OpModes mModes;
+
+        Data(OpModes modes) {
+            mModes = modes != null ? modes : new OpModes();
+        }
+
+        public Set<String> getRequestingPackages() {
+            return mRequestingPackages;
+        }
+
+        public Set<String> getAvailablePackages(int userId) {
+            final ArraySet<String> available = mAvailable.get(userId);
+            return available != null ? available : Collections.emptySet();
+        }
+
+        /**
+         * @return the package info of {@code pkg} if it holds one of the permissions in
+         * {@code userId}, or {@code null}.
+         */
+        public PackageInfo getHolder(int userId, String pkg) {
+            final ArrayMap<String, PackageInfo> holders = mHolders.get(userId);
+            return holders != null ? holders.get(pkg) : null;
+        }
+
+        public OpModes getModes() {
+            return mModes;
+        }
+    }
+
+    private static class Key {
+        final int mOp;
+        final String[] mPermissions;
+
+        Key(int op, String[] permissions) {
+            mOp = op;
+            mPermissions = permissions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mOp == other.mOp && Arrays.equals(mPermissions, other.mPermissions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mOp, Arrays.hashCode(mPermissions));
+        }
+    }
+}
@@ -35,9 +35,7 @@ import com.android.settingslib.applications.ApplicationsState.AppEntry;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /*
  * Connects app ops info to the ApplicationsState. Makes use of AppOpsManager to
@@ -54,16 +52,25 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     private final Context mContext;
     private final int[] mAppOpsOpCodes;
     private final String[] mPermissions;
+    private final AppOpsSnapshot mSnapshot;
+    private boolean mSnapshotAcquired;
 
     public AppStateAppOpsBridge(Context context, ApplicationsState appState, Callback callback,
             int appOpsOpCode, String[] permissions) {
         this(context, appState, callback, appOpsOpCode, permissions,
-                AppGlobals.getPackageManager());
+                AppGlobals.getPackageManager(), AppOpsSnapshot.getInstance(context));
     }
 
     @VisibleForTesting
     AppStateAppOpsBridge(Context context, ApplicationsState appState, Callback callback,
             int appOpsOpCode, String[] permissions, IPackageManager packageManager) {
+        this(context, appState, callback, appOpsOpCode, permissions, packageManager,
+                new AppOpsSnapshot(context, packageManager));
+    }
+
+    private AppStateAppOpsBridge(Context context, ApplicationsState appState, Callback callback,
+            int appOpsOpCode, String[] permissions, IPackageManager packageManager,
+            AppOpsSnapshot snapshot) {
         super(appState, callback);
         mContext = context;
         mIPackageManager = packageManager;
@@ -72,6 +79,27 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
         mAppOpsOpCodes = new int[] {appOpsOpCode};
         mPermissions = permissions;
+        mSnapshot = snapshot;
+    }
+
+    @Override
+    public void resume() {
+        // Hold the shared snapshot while resumed so other screens showing the same op, or
+        // loaded in the meantime, reuse it.
+        if (!mSnapshotAcquired) {
+            mSnapshot.acquire(mAppOpsOpCodes[0], mPermissions);
+            mSnapshotAcquired = true;
+        }
+        super.resume();
+    }
+
+    @Override
+    public void pause() {
+        super.pause();
+        if (mSnapshotAcquired) {
+            mSnapshot.release(mAppOpsOpCodes[0], mPermissions);
+            mSnapshotAcquired = false;
+        }
     }
 
     private boolean isThisUserAProfileOfCurrentUser(final int userId) {
@@ -132,11 +160,12 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
 
     @Override
     protected void loadAllExtraInfo() {
-        SparseArray<ArrayMap<String, PermissionState>> entries = getEntries();
+        final AppOpsSnapshot.Data data = mSnapshot.get(mAppOpsOpCodes[0], mPermissions);
+        SparseArray<ArrayMap<String, PermissionState>> entries = getEntries(data);
 
         // Load state info.
-        loadPermissionsStates(entries);
-        loadAppOpsStates(entries);
+        loadPermissionsStates(entries, data);
+        loadAppOpsStates(entries, data);
 
         // Map states to application info.
         List<AppEntry> apps = mAppSession.getAllApps();
@@ -144,7 +173,8 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         for (int i = 0; i < N; i++) {
             AppEntry app = apps.get(i);
             int userId = UserHandle.getUserId(app.info.uid);
-            ArrayMap<String, PermissionState> userMap = entries.get(userId);
+            ArrayMap<String, PermissionState> userMap = entries != null
+                    ? entries.get(userId) : null;
             app.extraInfo = userMap != null ? userMap.get(app.info.packageName) : null;
         }
     }
@@ -153,81 +183,55 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
      * Gets a sparse array that describes every user on the device and all the associated packages
      * of each user, together with the packages available for that user.
      */
-    private SparseArray<ArrayMap<String, PermissionState>> getEntries() {
-        try {
-            Set<String> packagesSet = new HashSet<>();
-            for (String permission : mPermissions) {
-                String[] pkgs = mIPackageManager.getAppOpPermissionPackages(permission);
-                if (pkgs != null) {
-                    packagesSet.addAll(Arrays.asList(pkgs));
-                }
-            }
-
-            if (packagesSet.isEmpty()) {
-                // No packages are requesting permission as specified by mPermissions.
-                return null;
-            }
+    private SparseArray<ArrayMap<String, PermissionState>> getEntries(AppOpsSnapshot.Data data) {
+        if (data.getRequestingPackages().isEmpty()) {
+            // No packages are requesting permission as specified by mPermissions.
+            return null;
+        }
 
-            // Create a sparse array that maps profileIds to an ArrayMap that maps package names to
-            // an associated PermissionState object
-            SparseArray<ArrayMap<String, PermissionState>> entries = new SparseArray<>();
-            for (final UserHandle profile : mProfiles) {
-                final ArrayMap<String, PermissionState> entriesForProfile = new ArrayMap<>();
-                final int profileId = profile.getIdentifier();
-                entries.put(profileId, entriesForProfile);
-                for (final String packageName : packagesSet) {
-                    final boolean isAvailable = mIPackageManager.isPackageAvailable(packageName,
-                            profileId);
-                    if (!shouldIgnorePackage(packageName) && isAvailable) {
-                        final PermissionState newEntry = new PermissionState(packageName, profile);
-                        entriesForProfile.put(packageName, newEntry);
-                    }
+        // Create a sparse array that maps profileIds to an ArrayMap that maps package names to
+        // an associated PermissionState object
+        SparseArray<ArrayMap<String, PermissionState>> entries = new SparseArray<>();
+        for (final UserHandle profile : mProfiles) {
+            final ArrayMap<String, PermissionState> entriesForProfile = new ArrayMap<>();
+            final int profileId = profile.getIdentifier();
+            entries.put(profileId, entriesForProfile);
+            for (final String packageName : data.getAvailablePackages(profileId)) {
+                if (!shouldIgnorePackage(packageName)) {
+                    final PermissionState newEntry = new PermissionState(packageName, profile);
+                    entriesForProfile.put(packageName, newEntry);
                 }
             }
-
-            return entries;
-        } catch (RemoteException e) {
-            Log.w(TAG, "PackageManager is dead. Can't get list of packages requesting "
-                    + mPermissions[0], e);
-            return null;
         }
+
+        return entries;
     }
 
     /*
      * This method will set the packageInfo and staticPermissionGranted field of the associated
      * PermissionState, which describes a particular package.
      */
-    private void loadPermissionsStates(SparseArray<ArrayMap<String, PermissionState>> entries) {
+    private void loadPermissionsStates(SparseArray<ArrayMap<String, PermissionState>> entries,
+            AppOpsSnapshot.Data data) {
         // Load the packages that have been granted the permission specified in mPermission.
         if (entries == null) {
             return;
         }
 
-        try {
-            for (final UserHandle profile : mProfiles) {
-                final int profileId = profile.getIdentifier();
-                final ArrayMap<String, PermissionState> entriesForProfile = entries.get(profileId);
-                if (entriesForProfile == null) {
-                    continue;
-                }
-                @SuppressWarnings("unchecked") final List<PackageInfo> packageInfos =
-                        mIPackageManager
-                                .getPackagesHoldingPermissions(mPermissions, 0,
-                                        profileId).getList();
-                final int packageInfoCount = packageInfos != null ? packageInfos.size() : 0;
-                for (int i = 0; i < packageInfoCount; i++) {
-                    final PackageInfo packageInfo = packageInfos.get(i);
-                    final PermissionState pe = entriesForProfile.get(packageInfo.packageName);
-                    if (pe != null) {
-                        pe.packageInfo = packageInfo;
-                        pe.staticPermissionGranted = true;
-                    }
+        for (final UserHandle profile : mProfiles) {
+            final int profileId = profile.getIdentifier();
+            final ArrayMap<String, PermissionState> entriesForProfile = entries.get(profileId);
+            if (entriesForProfile == null) {
+                continue;
+            }
+            for (int i = 0; i < entriesForProfile.size(); i++) {
+                final PermissionState pe = entriesForProfile.valueAt(i);
+                final PackageInfo packageInfo = data.getHolder(profileId, pe.packageName);
+                if (packageInfo != null) {
+                    pe.packageInfo = packageInfo;
+                    pe.staticPermissionGranted = true;
                 }
             }
-        } catch (RemoteException e) {
-            Log.w(TAG, "PackageManager is dead. Can't get list of packages granted "
-                    + mPermissions, e);
-            return;
         }
     }
 
@@ -235,14 +239,18 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
      * This method will set the appOpMode field of the associated PermissionState, which describes
      * a particular package.
      */
-    private void loadAppOpsStates(SparseArray<ArrayMap<String, PermissionState>> entries) {
+    private void loadAppOpsStates(SparseArray<ArrayMap<String, PermissionState>> entries,
+            AppOpsSnapshot.Data data) {
+        if (entries == null) {
+            return;
+        }
         // Find out which packages have been granted permission from AppOps.
-        final List<AppOpsManager.PackageOps> packageOps = mAppOpsManager.getPackagesForOps(
-                mAppOpsOpCodes);
-        final int packageOpsCount = packageOps != null ? packageOps.size() : 0;
+        final AppOpsSnapshot.OpModes modes = data.getModes();
+        final int packageOpsCount = modes.size();
         for (int i = 0; i < packageOpsCount; i++) {
-            final AppOpsManager.PackageOps packageOp = packageOps.get(i);
-            final int userId = UserHandle.getUserId(packageOp.getUid());
+            final int uid = modes.getUidAt(i);
+            final String packageName = modes.getPackageAt(i);
+            final int userId = UserHandle.getUserId(uid);
             if (!isThisUserAProfileOfCurrentUser(userId)) {
                 // This AppOp does not belong to any of this user's profiles.
                 continue;
@@ -252,19 +260,14 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
             if (entriesForProfile == null) {
                 continue;
             }
-            final PermissionState pe = entriesForProfile.get(packageOp.getPackageName());
+            final PermissionState pe = entriesForProfile.get(packageName);
             if (pe == null) {
-                Log.w(TAG, "AppOp permission exists for package " + packageOp.getPackageName()
+                Log.w(TAG, "AppOp permission exists for package " + packageName
                         + " of user " + userId + " but package doesn't exist or did not request "
-                        + mPermissions + " access");
-                continue;
-            }
-
-            if (packageOp.getOps().size() < 1) {
-                Log.w(TAG, "No AppOps permission exists for package " + packageOp.getPackageName());
+                        + Arrays.toString(mPermissions) + " access");
                 continue;
             }
-            pe.appOpMode = packageOp.getOps().get(0).getMode();
+            pe.appOpMode = modes.getModeAt(i);
         }
     }
 
@@ -276,7 +279,8 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     }
 
     public int getNumPackagesDeclaredPermission() {
-        SparseArray<ArrayMap<String, PermissionState>> entries = getEntries();
+        SparseArray<ArrayMap<String, PermissionState>> entries = getEntries(
+                mSnapshot.get(mAppOpsOpCodes[0], mPermissions));
         if (entries == null) {
             return 0;
         }
@@ -289,12 +293,13 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     }
 
     public int getNumPackagesAllowedByAppOps() {
-        SparseArray<ArrayMap<String, PermissionState>> entries = getEntries();
+        final AppOpsSnapshot.Data data = mSnapshot.get(mAppOpsOpCodes[0], mPermissions);
+        SparseArray<ArrayMap<String, PermissionState>> entries = getEntries(data);
         if (entries == null) {
             return 0;
         }
-        loadPermissionsStates(entries);
-        loadAppOpsStates(entries);
+        loadPermissionsStates(entries, data);
+        loadAppOpsStates(entries, data);
         final ArrayMap<String, PermissionState> entriesForProfile = entries.get(mUserManager
                 .getUserHandle());
         if (entriesForProfile == null) {
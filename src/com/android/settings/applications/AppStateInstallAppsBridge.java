@@ -22,6 +22,7 @@ import android.content.Context;
 import android.content.pm.IPackageManager;
 import android.content.pm.PackageManager;
 import android.os.RemoteException;
+import android.os.UserHandle;
 import android.util.Log;
 
 import com.android.internal.util.ArrayUtils;
@@ -41,16 +42,47 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
 
     private static final String TAG = AppStateInstallAppsBridge.class.getSimpleName();
 
+    private static final String[] PERMISSIONS = {Manifest.permission.REQUEST_INSTALL_PACKAGES};
+
+    private final Context mContext;
     private final IPackageManager mIpm;
     private final AppOpsManager mAppOpsManager;
+    private AppOpsSnapshot mSnapshot;
+    private boolean mSnapshotAcquired;
 
     public AppStateInstallAppsBridge(Context context, ApplicationsState appState,
             Callback callback) {
         super(appState, callback);
+        mContext = context;
         mIpm = AppGlobals.getPackageManager();
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
     }
 
+    private AppOpsSnapshot getSnapshot() {
+        if (mSnapshot == null) {
+            mSnapshot = AppOpsSnapshot.getInstance(mContext);
+        }
+        return mSnapshot;
+    }
+
+    @Override
+    public void resume() {
+        if (!mSnapshotAcquired) {
+            getSnapshot().acquire(AppOpsManager.OP_REQUEST_INSTALL_PACKAGES, PERMISSIONS);
+            mSnapshotAcquired = true;
+        }
+        super.resume();
+    }
+
+    @Override
+    public void pause() {
+        super.pause();
+        if (mSnapshotAcquired) {
+            getSnapshot().release(AppOpsManager.OP_REQUEST_INSTALL_PACKAGES, PERMISSIONS);
+            mSnapshotAcquired = false;
+        }
+    }
+
     @Override
     protected void updateExtraInfo(AppEntry app, String packageName, int uid) {
         app.extraInfo = createInstallAppsStateFor(packageName, uid);
@@ -58,11 +90,21 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
 
     @Override
     protected void loadAllExtraInfo() {
-        // TODO: consider making this a batch operation with a single binder call
+        // Requesters, holders and modes come from the shared snapshot instead of three binder
+        // calls per app.
+        final AppOpsSnapshot.Data data = getSnapshot().get(
+                AppOpsManager.OP_REQUEST_INSTALL_PACKAGES, PERMISSIONS);
         final List<AppEntry> allApps = mAppSession.getAllApps();
         for (int i = 0; i < allApps.size(); i++) {
-            AppEntry currentEntry = allApps.get(i);
-            updateExtraInfo(currentEntry, currentEntry.info.packageName, currentEntry.info.uid);
+            final AppEntry currentEntry = allApps.get(i);
+            final String packageName = currentEntry.info.packageName;
+            final int uid = currentEntry.info.uid;
+            final InstallAppsState appState = new InstallAppsState();
+            appState.permissionRequested = data.getRequestingPackages().contains(packageName);
+            appState.permissionGranted =
+                    data.getHolder(UserHandle.getUserId(uid), packageName) != null;
+            appState.appOpMode = data.getModes().getMode(uid, packageName);
+            currentEntry.extraInfo = appState;
         }
     }
 
@@ -22,7 +22,7 @@ import android.content.Context;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.os.UserManager;
-import android.text.format.DateUtils;
+import android.support.annotation.VisibleForTesting;
 import android.util.ArrayMap;
 import android.view.View;
 import android.view.ViewGroup;
@@ -36,6 +36,7 @@ import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.AppFilter;
 import com.android.settingslib.utils.StringUtil;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -51,7 +52,10 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
     private IUsageStatsManager mUsageStatsManager;
     protected List<Integer> mUserIds;
     private NotificationBackend mBackend;
+    private final NotificationSentStore mSentStore;
     private static final int DAYS_TO_CHECK = 7;
+    @VisibleForTesting
+    static final String SENT_STORE_FILE = "notification_sent_stats";
 
     public AppStateNotificationBridge(Context context, ApplicationsState appState,
             Callback callback, IUsageStatsManager usageStatsManager,
@@ -60,6 +64,8 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
         mContext = context;
         mUsageStatsManager = usageStatsManager;
         mBackend = backend;
+        mSentStore = new NotificationSentStore(
+                new File(context.getFilesDir(), SENT_STORE_FILE), DAYS_TO_CHECK);
         mUserIds = new ArrayList<>();
         mUserIds.add(mContext.getUserId());
         int workUserId = Utils.getManagedProfileId(userManager, mContext.getUserId());
@@ -85,8 +91,10 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
 
     @Override
     protected void updateExtraInfo(AppEntry entry, String pkg, int uid) {
-        NotificationsSentState stats = getAggregatedUsageEvents(
-                UserHandle.getUserId(entry.info.uid), entry.info.packageName);
+        final int userId = UserHandle.getUserId(entry.info.uid);
+        advanceSentStore(userId, System.currentTimeMillis());
+        mSentStore.save();
+        NotificationsSentState stats = mSentStore.getState(userId, entry.info.packageName);
         calculateAvgSentCounts(stats);
         addBlockStatus(entry, stats);
         entry.extraInfo = stats;
@@ -125,73 +133,34 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
         }
     }
 
-    protected Map<String, NotificationsSentState> getAggregatedUsageEvents() {
-        ArrayMap<String, NotificationsSentState> aggregatedStats = new ArrayMap<>();
-
-        long now = System.currentTimeMillis();
-        long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
-        for (int userId : mUserIds) {
-            UsageEvents events = null;
-            try {
-                events = mUsageStatsManager.queryEventsForUser(
-                        startTime, now, userId, mContext.getPackageName());
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-            if (events != null) {
-                UsageEvents.Event event = new UsageEvents.Event();
-                while (events.hasNextEvent()) {
-                    events.getNextEvent(event);
-                    NotificationsSentState stats =
-                            aggregatedStats.get(getKey(userId, event.getPackageName()));
-                    if (stats == null) {
-                        stats = new NotificationsSentState();
-                        aggregatedStats.put(getKey(userId, event.getPackageName()), stats);
-                    }
-
-                    if (event.getEventType() == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
-                        if (event.getTimeStamp() > stats.lastSent) {
-                            stats.lastSent = event.getTimeStamp();
-                        }
-                        stats.sentCount++;
-                    }
-
-                }
-            }
-        }
-        return aggregatedStats;
-    }
-
-    protected NotificationsSentState getAggregatedUsageEvents(int userId, String pkg) {
-        NotificationsSentState stats = null;
-
-        long now = System.currentTimeMillis();
-        long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
+    /**
+     * Bring {@link #mSentStore} up to date with the events {@code userId} received since the
+     * last time it was advanced.
+     */
+    private void advanceSentStore(int userId, long now) {
+        final long startTime = mSentStore.getQueryStart(userId, now);
         UsageEvents events = null;
         try {
-            events = mUsageStatsManager.queryEventsForPackageForUser(
-                    startTime, now, userId, pkg, mContext.getPackageName());
+            events = mUsageStatsManager.queryEventsForUser(
+                    startTime, now, userId, mContext.getPackageName());
         } catch (RemoteException e) {
             e.printStackTrace();
+            return;
         }
-        if (events != null) {
-            UsageEvents.Event event = new UsageEvents.Event();
-            while (events.hasNextEvent()) {
-                events.getNextEvent(event);
+        mSentStore.advance(userId, events, now);
+    }
 
-                if (event.getEventType() == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
-                    if (stats == null) {
-                        stats = new NotificationsSentState();
-                    }
-                    if (event.getTimeStamp() > stats.lastSent) {
-                        stats.lastSent = event.getTimeStamp();
-                    }
-                    stats.sentCount++;
-                }
+    protected Map<String, NotificationsSentState> getAggregatedUsageEvents() {
+        ArrayMap<String, NotificationsSentState> aggregatedStats = new ArrayMap<>();
 
-            }
+        long now = System.currentTimeMillis();
+        for (int userId : mUserIds) {
+            advanceSentStore(userId, now);
+            mSentStore.forEachState(userId,
+                    (pkg, stats) -> aggregatedStats.put(getKey(userId, pkg), stats));
         }
-        return stats;
+        mSentStore.save();
+        return aggregatedStats;
     }
 
     private static NotificationsSentState getNotificationsSentState(AppEntry entry) {
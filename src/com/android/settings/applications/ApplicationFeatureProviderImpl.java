@@ -53,6 +53,7 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
         mPms = pms;
         mDpm = dpm;
         mUm = UserManager.get(mContext);
+        InstalledAppsSnapshot.registerForInvalidation(mContext);
     }
 
     @Override
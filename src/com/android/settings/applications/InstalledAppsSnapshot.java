@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.support.annotation.VisibleForTesting;
+
+import com.android.settingslib.wrapper.PackageManagerWrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Predicate;
+
+/**
+ * The apps installed for the current user and its profiles, enumerated once and shared by every
+ * {@link AppCounter} and {@link AppLister}. The profiles are enumerated in parallel. Once
+ * {@link #registerForInvalidation(Context)} has been called, the snapshot is kept until a package
+ * or the profiles change; before that every query enumerates the apps again. Safe to use from
+ * any thread.
+ */
+public class InstalledAppsSnapshot {
+
+    private static final int QUERY_FLAGS = PackageManager.GET_DISABLED_COMPONENTS
+            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS;
+
+    private static final Object sLock = new Object();
+    /** Application context the receiver is registered on, {@code null} until registered. */
+    private static Context sRegisteredContext;
+    private static Snapshot sSnapshot;
+    private static ExecutorService sExecutor;
+
+    private static final BroadcastReceiver sReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    /**
+     * Keep the snapshot until a package is added, removed or changed for any user.
+     */
+    public static void registerForInvalidation(Context context) {
+        synchronized (sLock) {
+            final Context appContext = context.getApplicationContext() != null
+                    ? context.getApplicationContext() : context;
+            if (sRegisteredContext == appContext) {
+                return;
+            }
+            // Only one application context per process, except in tests: a snapshot built for
+            // another one is not kept.
+            sSnapshot = null;
+            final IntentFilter packageFilter = new IntentFilter();
+            packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            packageFilter.addDataScheme("package");
+            appContext.registerReceiverAsUser(sReceiver, UserHandle.ALL, packageFilter, null, null);
+            final IntentFilter storageFilter = new IntentFilter();
+            storageFilter.addAction(Intent.ACTION_EXTERNAL_APPLICATIONS_AVAILABLE);
+            storageFilter.addAction(Intent.ACTION_EXTERNAL_APPLICATIONS_UNAVAILABLE);
+            appContext.registerReceiverAsUser(sReceiver, UserHandle.ALL, storageFilter, null, null);
+            sRegisteredContext = appContext;
+        }
+    }
+
+    /**
+     * Forget the snapshot and the registration, as if no app had been enumerated yet.
+     */
+    @VisibleForTesting
+    static void reset() {
+        synchronized (sLock) {
+            sSnapshot = null;
+            sRegisteredContext = null;
+        }
+    }
+
+    public static void invalidate() {
+        synchronized (sLock) {
+            sSnapshot = null;
+        }
+    }
+
+    /**
+     * @return the number of installed apps matching {@code filter}
+     */
+    public static int count(PackageManagerWrapper pm, UserManager um,
+            Predicate<ApplicationInfo> filter) {
+        int count = 0;
+        for (UserAppInfo app : get(pm, um)) {
+            if (filter.test(app.appInfo)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the installed apps matching {@code filter}, by profile
+     */
+    public static List<UserAppInfo> list(PackageManagerWrapper pm, UserManager um,
+            Predicate<ApplicationInfo> filter) {
+        final List<UserAppInfo> result = new ArrayList<>();
+        for (UserAppInfo app : get(pm, um)) {
+            if (filter.test(app.appInfo)) {
+                result.add(app);
+            }
+        }
+        return result;
+    }
+
+    @VisibleForTesting
+    static List<UserAppInfo> get(PackageManagerWrapper pm, UserManager um) {
+        final List<UserInfo> profiles = um.getProfiles(UserHandle.myUserId());
+        final Snapshot snapshot;
+        boolean scan = false;
+        synchronized (sLock) {
+            if (sSnapshot != null && sSnapshot.matches(profiles)) {
+                snapshot = sSnapshot;
+            } else {
+                snapshot = new Snapshot(pm, profiles);
+                scan = true;
+                if (sRegisteredContext != null) {
+                    sSnapshot = snapshot;
+                }
+            }
+        }
+        if (scan) {
+            // Callers asking meanwhile wait for this scan rather than starting their own.
+            snapshot.mApps.run();
+        }
+        try {
+            return snapshot.mApps.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            synchronized (sLock) {
+                if (sSnapshot == snapshot) {
+                    sSnapshot = null;
+                }
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static List<UserAppInfo> scan(PackageManagerWrapper pm, List<UserInfo> profiles)
+            throws Exception {
+        final List<UserAppInfo> result = new ArrayList<>();
+        if (profiles.size() <= 1) {
+            for (UserInfo user : profiles) {
+                result.addAll(scanProfile(pm, user));
+            }
+            return Collections.unmodifiableList(result);
+        }
+        final List<Future<List<UserAppInfo>>> scans = new ArrayList<>(profiles.size());
+        for (UserInfo user : profiles) {
+            scans.add(getExecutor().submit(() -> scanProfile(pm, user)));
+        }
+        for (Future<List<UserAppInfo>> profileScan : scans) {
+            result.addAll(profileScan.get());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static List<UserAppInfo> scanProfile(PackageManagerWrapper pm, UserInfo user) {
+        final List<ApplicationInfo> list = pm.getInstalledApplicationsAsUser(QUERY_FLAGS
+                | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0), user.id);
+        final List<UserAppInfo> result = new ArrayList<>(list.size());
+        for (ApplicationInfo info : list) {
+            result.add(new UserAppInfo(user, info));
+        }
+        return result;
+    }
+
+    private static ExecutorService getExecutor() {
+        synchronized (sLock) {
+            if (sExecutor == null) {
+                // Threads exit when idle, the scans are rare.
+                sExecutor = Executors.newCachedThreadPool();
+            }
+            return sExecutor;
+        }
+    }
+
+    /**
+     * Apps of a set of profiles. Not keyed by the package manager wrapper: callers build their
+     * own wrappers around the same package manager, and the apps don't depend on the wrapper.
+     */
+    private static class Snapshot {
+        final List<UserInfo> mProfiles;
+        final FutureTask<List<UserAppInfo>> mApps;
+
+        Snapshot(PackageManagerWrapper pm, List<UserInfo> profiles) {
+            mProfiles = profiles;
+            mApps = new FutureTask<>(() -> scan(pm, profiles));
+        }
+
+        boolean matches(List<UserInfo> profiles) {
+            if (profiles.size() != mProfiles.size()) {
+                return false;
+            }
+            for (int i = 0; i < profiles.size(); i++) {
+                if (profiles.get(i).id != mProfiles.get(i).id
+                        || profiles.get(i).isAdmin() != mProfiles.get(i).isAdmin()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.applications;
+
+import android.app.usage.UsageEvents;
+import android.support.annotation.VisibleForTesting;
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Rolling per-day count of notifications sent, and the time the last one was sent, for each
+ * (user, package).
+ *
+ * <p>Each user keeps a ring of day buckets in primitive arrays plus the high-water timestamp of
+ * the last usage events read, so only events since the previous run need to be queried. Days
+ * start at local midnight. The store is saved to disk between runs, only when new events were
+ * recorded.
+ */
+public class NotificationSentStore {
+    private static final String TAG = "NotificationSentStore";
+
+    private static final int VERSION = 1;
+
+    private final AtomicFile mFile;
+    private final int mDaysToCheck;
+    /** One bucket per calendar day touched by the window. */
+    private final int mSlots;
+    private final SparseArray<UserStats> mUsers = new SparseArray<>();
+    private boolean mLoaded;
+    /** Whether events were recorded since the store was last loaded or saved. */
+    private boolean mDirty;
+
+    public NotificationSentStore(File file, int daysToCheck) {
+        mFile = new AtomicFile(file);
+        mDaysToCheck = daysToCheck;
+        mSlots = daysToCheck + 1;
+    }
+
+    /**
+     * @return the start of the range of events that still need to be read for {@code userId}.
+     */
+    public synchronized long getQueryStart(int userId, long now) {
+        ensureLoaded();
+        final long windowStart = now - DateUtils.DAY_IN_MILLIS * mDaysToCheck;
+        final UserStats user = mUsers.get(userId);
+        if (user == null || user.mHighWater < windowStart || user.mHighWater > now) {
+            return windowStart;
+        }
+        return user.mHighWater;
+    }
+
+    /**
+     * Fold the notification events of {@code userId} read up to {@code now} into the store.
+     */
+    public synchronized void advance(int userId, UsageEvents events, long now) {
+        ensureLoaded();
+        UserStats user = mUsers.get(userId);
+        if (user == null) {
+            user = new UserStats(mSlots);
+            mUsers.put(userId, user);
+        }
+        final long today = getLocalDay(now);
+        final long startDay = getLocalDay(now - DateUtils.DAY_IN_MILLIS * mDaysToCheck);
+        user.expireBefore(startDay);
+        user.mStartDay = startDay;
+
+        if (events != null) {
+            final UsageEvents.Event event = new UsageEvents.Event();
+            while (events.hasNextEvent()) {
+                events.getNextEvent(event);
+                if (event.getEventType() != UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
+                    continue;
+                }
+                final long timestamp = event.getTimeStamp();
+                // events are queried inside the window; clamp to guard against clock changes
+                final long day = Math.max(startDay, Math.min(today, getLocalDay(timestamp)));
+                user.record(event.getPackageName(), day, timestamp);
+                mDirty = true;
+            }
+        }
+        user.mHighWater = now;
+    }
+
+    /**
+     * @return the state of {@code pkg} for {@code userId} as of the last {@link #advance}, or
+     * {@code null} if it sent no notification in the window.
+     */
+    public synchronized AppStateNotificationBridge.NotificationsSentState getState(int userId,
+            String pkg) {
+        final UserStats user = mUsers.get(userId);
+        if (user == null) {
+            return null;
+        }
+        final Integer row = user.mRows.get(pkg);
+        return row != null ? user.getState(row) : null;
+    }
+
+    /**
+     * Call {@code consumer} with the state of every package of {@code userId} that sent a
+     * notification in the window.
+     */
+    public synchronized void forEachState(int userId, StateConsumer consumer) {
+        final UserStats user = mUsers.get(userId);
+        if (user == null) {
+            return;
+        }
+        for (int i = 0, size = user.mRows.size(); i < size; i++) {
+            final AppStateNotificationBridge.NotificationsSentState state =
+                    user.getState(user.mRows.valueAt(i));
+            if (state != null) {
+                consumer.accept(user.mRows.keyAt(i), state);
+            }
+        }
+    }
+
+    /**
+     * @return the number of local days between the epoch and {@code time}.
+     */
+    private static long getLocalDay(long time) {
+        return (time + TimeZone.getDefault().getOffset(time)) / DateUtils.DAY_IN_MILLIS;
+    }
+
+    public interface StateConsumer {
+        void accept(String pkg, AppStateNotificationBridge.NotificationsSentState state);
+    }
+
+    @VisibleForTesting
+    synchronized void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        try (DataInputStream in = new DataInputStream(mFile.openRead())) {
+            if (in.readInt() != VERSION || in.readInt() != mSlots) {
+                return;
+            }
+            final int userCount = in.readInt();
+            for (int u = 0; u < userCount; u++) {
+                final int userId = in.readInt();
+                final UserStats user = new UserStats(mSlots);
+                user.mHighWater = in.readLong();
+                user.mStartDay = in.readLong();
+                for (int s = 0; s < mSlots; s++) {
+                    user.mSlotDay[s] = in.readLong();
+                }
+                final int rowCount = in.readInt();
+                for (int r = 0; r < rowCount; r++) {
+                    final int row = user.getOrCreateRow(in.readUTF());
+                    user.mLastSent[row] = in.readLong();
+                    for (int s = 0; s < mSlots; s++) {
+                        user.mCounts[row * mSlots + s] = in.readInt();
+                    }
+                }
+                mUsers.put(userId, user);
+            }
+        } catch (FileNotFoundException e) {
+            // First run, nothing saved yet.
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read notification stats", e);
+            mUsers.clear();
+        }
+    }
+
+    /**
+     * Persist the store if new events were recorded, dropping packages that no longer have
+     * notifications in the window.
+     *
+     * <p>Advancing without events is not saved: the saved high-water mark is then older, so the
+     * next run queries a longer but still empty range.
+     */
+    public synchronized void save() {
+        if (!mDirty) {
+            return;
+        }
+        FileOutputStream fos = null;
+        try {
+            fos = mFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(VERSION);
+            out.writeInt(mSlots);
+            out.writeInt(mUsers.size());
+            for (int u = 0; u < mUsers.size(); u++) {
+                final UserStats user = mUsers.valueAt(u);
+                user.compact();
+                out.writeInt(mUsers.keyAt(u));
+                out.writeLong(user.mHighWater);
+                out.writeLong(user.mStartDay);
+                for (int s = 0; s < mSlots; s++) {
+                    out.writeLong(user.mSlotDay[s]);
+                }
+                out.writeInt(user.mRows.size());
+                for (int i = 0; i < user.mRows.size(); i++) {
+                    final int row = user.mRows.valueAt(i);
+                    out.writeUTF(user.mRows.keyAt(i));
+                    out.writeLong(user.mLastSent[row]);
+                    for (int s = 0; s < mSlots; s++) {
+                        out.writeInt(user.mCounts[row * mSlots + s]);
+                    }
+                }
+            }
+            out.flush();
+            mFile.finishWrite(fos);
+            mDirty = false;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write notification stats", e);
+            mFile.failWrite(fos);
+        }
+    }
+
+    private static class UserStats {
+        final int mSlots;
+        long mHighWater;
+        /** First day of the window as of the last advance. */
+        long mStartDay;
+        /** Day currently held by each ring slot, shared by all packages. */
+        final long[] mSlotDay;
+        final ArrayMap<String, Integer> mRows = new ArrayMap<>();
+        /** Row-major {@code [row][slot]} notification counts. */
+        int[] mCounts;
+        long[] mLastSent;
+
+        UserStats(int slots) {
+            mSlots = slots;
+            mSlotDay = new long[slots];
+            Arrays.fill(mSlotDay, -1);
+            mCounts = new int[8 * slots];
+            mLastSent = new long[8];
+        }
+
+        int getOrCreateRow(String pkg) {
+            Integer row = mRows.get(pkg);
+            if (row == null) {
+                row = mRows.size();
+                if (row == mLastSent.length) {
+                    mLastSent = Arrays.copyOf(mLastSent, row * 2);
+                    mCounts = Arrays.copyOf(mCounts, row * 2 * mSlots);
+                }
+                mRows.put(pkg, row);
+            }
+            return row;
+        }
+
+        void record(String pkg, long day, long timestamp) {
+            final int slot = (int) (day % mSlots);
+            if (mSlotDay[slot] != day) {
+                clearSlot(slot);
+                mSlotDay[slot] = day;
+            }
+            final int row = getOrCreateRow(pkg);
+            mCounts[row * mSlots + slot]++;
+            if (timestamp > mLastSent[row]) {
+                mLastSent[row] = timestamp;
+            }
+        }
+
+        void expireBefore(long startDay) {
+            for (int s = 0; s < mSlots; s++) {
+                if (mSlotDay[s] != -1 && mSlotDay[s] < startDay) {
+                    clearSlot(s);
+                    mSlotDay[s] = -1;
+                }
+            }
+        }
+
+        private void clearSlot(int slot) {
+            for (int row = 0, size = mRows.size(); row < size; row++) {
+                mCounts[row * mSlots + slot] = 0;
+            }
+        }
+
+        int getSentCount(int row) {
+            int count = 0;
+            for (int s = 0; s < mSlots; s++) {
+                if (mSlotDay[s] >= mStartDay) {
+                    count += mCounts[row * mSlots + s];
+                }
+            }
+            return count;
+        }
+
+        AppStateNotificationBridge.NotificationsSentState getState(int row) {
+            final int count = getSentCount(row);
+            if (count == 0) {
+                return null;
+            }
+            final AppStateNotificationBridge.NotificationsSentState state =
+                    new AppStateNotificationBridge.NotificationsSentState();
+            state.sentCount = count;
+            state.lastSent = mLastSent[row];
+            return state;
+        }
+
+        /** Drop rows without notifications in the window and renumber the rest. */
+        void compact() {
+            int next = 0;
+            for (int i = mRows.size() - 1; i >= 0; i--) {
+                if (getSentCount(mRows.valueAt(i)) == 0) {
+                    mRows.removeAt(i);
+                }
+            }
+            final int[] counts = new int[Math.max(8, mRows.size()) * mSlots];
+            final long[] lastSent = new long[Math.max(8, mRows.size())];
+            for (int i = 0; i < mRows.size(); i++) {
+                final int row = mRows.valueAt(i);
+                System.arraycopy(mCounts, row * mSlots, counts, next * mSlots, mSlots);
+                lastSent[next] = mLastSent[row];
+                mRows.setValueAt(i, next++);
+            }
+            mCounts = counts;
+            mLastSent = lastSent;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
 import android.os.ServiceManager;
 import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
 import android.text.format.Formatter;
 import android.util.ArrayMap;
 import android.util.Log;
@@ -40,10 +41,12 @@ import com.android.internal.app.procstats.ServiceState;
 import com.android.internal.util.MemInfoReader;
 import com.android.settings.R;
 import com.android.settings.Utils;
+import com.android.settings.core.instrumentation.PerfStats;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
@@ -53,14 +56,28 @@ public class ProcStatsData {
 
     private static final boolean DEBUG = ProcessStatsUi.DEBUG;
 
-    private static ProcessStats sStatsXfer;
+    private static final String CACHE_NAME = "procstats";
+
+    /**
+     * How long parsed stats are reused. The screens show averages over hours, so a few minutes
+     * old data is indistinguishable, while fetching and parsing a parcel takes tens of ms.
+     */
+    @VisibleForTesting
+    static final long MAX_STATS_AGE_MS = 10 * 60 * 1000;
+
+    /** Parsed stats shared by every screen, by duration. */
+    private static final LongSparseArray<StatsSnapshot> sSnapshots = new LongSparseArray<>();
+
+    private static StatsSnapshot sStatsXfer;
 
     private PackageManager mPm;
     private Context mContext;
     private long memTotalTime;
 
     private IProcessStats mProcessStats;
+    private StatsSnapshot mSnapshot;
     private ProcessStats mStats;
+    private Totals mTotals;
 
     private boolean mUseUss;
     private long mDuration;
@@ -74,23 +91,36 @@ public class ProcStatsData {
     private ArrayList<ProcStatsPackageEntry> pkgEntries;
 
     public ProcStatsData(Context context, boolean useXfer) {
+        this(context, useXfer, IProcessStats.Stub.asInterface(
+                ServiceManager.getService(ProcessStats.SERVICE_NAME)));
+    }
+
+    @VisibleForTesting
+    ProcStatsData(Context context, boolean useXfer, IProcessStats processStats) {
         mContext = context;
         mPm = context.getPackageManager();
-        mProcessStats = IProcessStats.Stub.asInterface(
-                ServiceManager.getService(ProcessStats.SERVICE_NAME));
+        mProcessStats = processStats;
         mMemStates = ProcessStats.ALL_MEM_ADJ;
         mStates = ProcessStats.BACKGROUND_PROC_STATES;
         if (useXfer) {
-            mStats = sStatsXfer;
+            mSnapshot = sStatsXfer;
         }
     }
 
+    @VisibleForTesting
+    static void clearCache() {
+        synchronized (sSnapshots) {
+            sSnapshots.clear();
+        }
+        sStatsXfer = null;
+    }
+
     public void setTotalTime(int totalTime) {
         memTotalTime = totalTime;
     }
 
     public void xferStats() {
-        sStatsXfer = mStats;
+        sStatsXfer = mSnapshot;
     }
 
     public void setMemStates(int[] memStates) {
@@ -125,7 +155,8 @@ public class ProcStatsData {
     public void setDuration(long duration) {
         if (duration != mDuration) {
             mDuration = duration;
-            refreshStats(true);
+            // Stats of each duration are cached, so switching back and forth does not fetch.
+            refreshStats(false);
         }
     }
 
@@ -133,32 +164,98 @@ public class ProcStatsData {
         return mDuration;
     }
 
+    /**
+     * @return the per-package entries, computed on first use since the memory totals alone do not
+     *         need them; a new list on every call so it can be sorted by the caller. The entries
+     *         themselves are shared with every screen showing the same cached stats, with their
+     *         metrics already computed, and must not be modified other than by
+     *         {@link ProcStatsPackageEntry#retrieveUiData} on the main thread.
+     */
     public List<ProcStatsPackageEntry> getEntries() {
-        return pkgEntries;
+        if (mTotals == null) {
+            return null;
+        }
+        synchronized (mTotals) {
+            if (mTotals.mPkgEntries == null) {
+                mTotals.mPkgEntries = computePackageEntries(mTotals);
+            }
+            return new ArrayList<>(mTotals.mPkgEntries);
+        }
     }
 
+    /**
+     * Update the memory totals for the current duration and states.
+     *
+     * @param forceLoad whether to fetch new stats even if recent ones are cached
+     */
     public void refreshStats(boolean forceLoad) {
-        if (mStats == null || forceLoad) {
-            load();
+        mSnapshot = getSnapshot(mDuration, forceLoad);
+        mStats = mSnapshot.mStats;
+
+        final String key = Arrays.toString(mMemStates) + Arrays.toString(mStates);
+        synchronized (mSnapshot) {
+            Totals totals = mSnapshot.mTotals.get(key);
+            if (totals == null) {
+                totals = computeTotals();
+                mSnapshot.mTotals.put(key, totals);
+            }
+            mTotals = totals;
         }
+        memTotalTime = mTotals.mMemTotalTime;
+        mMemInfo = mTotals.mMemInfo;
+    }
 
-        pkgEntries = new ArrayList<>();
+    @VisibleForTesting
+    StatsSnapshot getSnapshot(long duration, boolean forceLoad) {
+        final long now = SystemClock.elapsedRealtime();
+        if (!forceLoad) {
+            if (mSnapshot != null && mSnapshot.isValid(duration, now)) {
+                PerfStats.getInstance().recordCacheLookup(CACHE_NAME, true);
+                return mSnapshot;
+            }
+            synchronized (sSnapshots) {
+                final StatsSnapshot snapshot = sSnapshots.get(duration);
+                if (snapshot != null && snapshot.isValid(duration, now)) {
+                    PerfStats.getInstance().recordCacheLookup(CACHE_NAME, true);
+                    return snapshot;
+                }
+            }
+        }
+        PerfStats.getInstance().recordCacheLookup(CACHE_NAME, false);
+        final StatsSnapshot snapshot = new StatsSnapshot(duration, load(duration), now);
+        if (snapshot.mLoaded) {
+            synchronized (sSnapshots) {
+                sSnapshots.put(duration, snapshot);
+            }
+        }
+        return snapshot;
+    }
 
+    private Totals computeTotals() {
+        final Totals totals = new Totals(mMemStates, mStates);
         long now = SystemClock.uptimeMillis();
 
-        memTotalTime = DumpUtils.dumpSingleTime(null, null, mStats.mMemFactorDurations,
+        totals.mMemTotalTime = DumpUtils.dumpSingleTime(null, null, mStats.mMemFactorDurations,
                 mStats.mMemFactor, mStats.mStartTime, now);
 
-        ProcessStats.TotalMemoryUseCollection totalMem = new ProcessStats.TotalMemoryUseCollection(
-                ProcessStats.ALL_SCREEN_ADJ, mMemStates);
-        mStats.computeTotalMemoryUse(totalMem, now);
+        totals.mTotalMem = new ProcessStats.TotalMemoryUseCollection(
+                ProcessStats.ALL_SCREEN_ADJ, totals.mMemStates);
+        mStats.computeTotalMemoryUse(totals.mTotalMem, now);
 
-        mMemInfo = new MemInfo(mContext, totalMem, memTotalTime);
+        totals.mMemInfo = new MemInfo(mContext, totals.mTotalMem, totals.mMemTotalTime);
+        return totals;
+    }
+
+    private ArrayList<ProcStatsPackageEntry> computePackageEntries(Totals totals) {
+        pkgEntries = new ArrayList<>();
+        memTotalTime = totals.mMemTotalTime;
+        final TotalMemoryUseCollection totalMem = totals.mTotalMem;
 
         ProcessDataCollection bgTotals = new ProcessDataCollection(
-                ProcessStats.ALL_SCREEN_ADJ, mMemStates, mStates);
+                ProcessStats.ALL_SCREEN_ADJ, totals.mMemStates, totals.mStates);
         ProcessDataCollection runTotals = new ProcessDataCollection(
-                ProcessStats.ALL_SCREEN_ADJ, mMemStates, ProcessStats.NON_CACHED_PROC_STATES);
+                ProcessStats.ALL_SCREEN_ADJ, totals.mMemStates,
+                ProcessStats.NON_CACHED_PROC_STATES);
 
         createPkgMap(getProcs(bgTotals, runTotals), bgTotals, runTotals);
         if (totalMem.sysMemZRamWeight > 0 && !totalMem.hasSwappedOutPss) {
@@ -166,8 +263,12 @@ public class ProcStatsData {
         }
 
         ProcStatsPackageEntry osPkg = createOsEntry(bgTotals, runTotals, totalMem,
-                mMemInfo.baseCacheRam);
+                totals.mMemInfo.baseCacheRam);
         pkgEntries.add(osPkg);
+        for (int i = 0, N = pkgEntries.size(); i < N; i++) {
+            pkgEntries.get(i).updateMetrics();
+        }
+        return pkgEntries;
     }
 
     private void createPkgMap(ArrayList<ProcStatsEntry> procEntries, ProcessDataCollection bgTotals,
@@ -341,21 +442,66 @@ public class ProcStatsData {
         return procEntries;
     }
 
-    private void load() {
+    private ProcessStats load(long duration) {
         try {
-            ParcelFileDescriptor pfd = mProcessStats.getStatsOverTime(mDuration);
-            mStats = new ProcessStats(false);
+            ParcelFileDescriptor pfd = mProcessStats.getStatsOverTime(duration);
+            ProcessStats stats = new ProcessStats(false);
             InputStream is = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
-            mStats.read(is);
+            stats.read(is);
             try {
                 is.close();
             } catch (IOException e) {
             }
-            if (mStats.mReadError != null) {
-                Log.w(TAG, "Failure reading process stats: " + mStats.mReadError);
+            if (stats.mReadError != null) {
+                Log.w(TAG, "Failure reading process stats: " + stats.mReadError);
             }
+            return stats;
         } catch (RemoteException e) {
             Log.e(TAG, "RemoteException:", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stats of one duration as fetched at {@link #mCollectedAt}, with the totals computed from
+     * them so far. Empty stats from a failed load are shown but never reused.
+     */
+    @VisibleForTesting
+    static class StatsSnapshot {
+        final long mDuration;
+        final ProcessStats mStats;
+        final boolean mLoaded;
+        final long mCollectedAt;
+        /** Totals by memory states and process states. */
+        final ArrayMap<String, Totals> mTotals = new ArrayMap<>();
+
+        StatsSnapshot(long duration, ProcessStats stats, long collectedAt) {
+            mDuration = duration;
+            mLoaded = stats != null && stats.mReadError == null;
+            mStats = stats != null ? stats : new ProcessStats(false);
+            mCollectedAt = collectedAt;
+        }
+
+        boolean isValid(long duration, long now) {
+            return mLoaded && mDuration == duration && now - mCollectedAt < MAX_STATS_AGE_MS;
+        }
+    }
+
+    /**
+     * Memory totals of one snapshot for a set of states; the package entries are only computed
+     * when asked for.
+     */
+    private static class Totals {
+        final int[] mMemStates;
+        final int[] mStates;
+        long mMemTotalTime;
+        TotalMemoryUseCollection mTotalMem;
+        MemInfo mMemInfo;
+        ArrayList<ProcStatsPackageEntry> mPkgEntries;
+
+        Totals(int[] memStates, int[] states) {
+            mMemStates = memStates;
+            mStates = states;
         }
     }
 
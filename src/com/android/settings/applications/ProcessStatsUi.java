@@ -159,12 +159,6 @@ public class ProcessStatsUi extends ProcessStatsBase {
 
         List<ProcStatsPackageEntry> pkgEntries = mStatsManager.getEntries();
 
-        // Update everything and get the absolute maximum of memory usage for scaling.
-        for (int i=0, N=pkgEntries.size(); i<N; i++) {
-            ProcStatsPackageEntry pkg = pkgEntries.get(i);
-            pkg.updateMetrics();
-        }
-
         Collections.sort(pkgEntries, mShowMax ? sMaxPackageEntryCompare : sPackageEntryCompare);
 
         // Now collect the per-process information into applications, so that applications
@@ -66,7 +66,6 @@ public class AppMemoryPreferenceController extends BasePreferenceController
             for (ProcStatsPackageEntry pkgEntry : mStatsManager.getEntries()) {
                 for (ProcStatsEntry entry : pkgEntry.getEntries()) {
                     if (entry.getUid() == packageInfo.applicationInfo.uid) {
-                        pkgEntry.updateMetrics();
                         return pkgEntry;
                     }
                 }
@@ -67,13 +67,9 @@ public class AvailableMediaBluetoothDeviceUpdater extends BluetoothDeviceUpdater
                     + bluetoothProfile);
         }
         if (state == BluetoothProfile.STATE_CONNECTED) {
-            if (isFilterMatched(cachedDevice)) {
-                addPreference(cachedDevice);
-            } else {
-                removePreference(cachedDevice);
-            }
+            enqueueUpdate(cachedDevice);
         } else if (state == BluetoothProfile.STATE_DISCONNECTED) {
-            removePreference(cachedDevice);
+            enqueueRemove(cachedDevice);
         }
     }
 
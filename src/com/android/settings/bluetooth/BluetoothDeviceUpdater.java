@@ -18,9 +18,12 @@ package com.android.settings.bluetooth;
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemProperties;
 import android.support.annotation.VisibleForTesting;
 import android.support.v7.preference.Preference;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import com.android.settings.R;
@@ -34,8 +37,11 @@ import com.android.settingslib.bluetooth.CachedBluetoothDevice;
 import com.android.settingslib.bluetooth.LocalBluetoothManager;
 import com.android.settingslib.bluetooth.LocalBluetoothProfileManager;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -45,6 +51,9 @@ import java.util.Map;
  *
  * In {@link BluetoothDeviceUpdater}, it uses {@link BluetoothDeviceFilter.Filter} to detect
  * whether the {@link CachedBluetoothDevice} is relevant.
+ *
+ * Device changes are queued and applied together on the next turn of the main looper, so a
+ * burst of callbacks (e.g. during discovery) only adds or removes each preference once.
  */
 public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
         LocalBluetoothProfileManager.ServiceListener {
@@ -52,6 +61,11 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
     private static final String BLUETOOTH_SHOW_DEVICES_WITHOUT_NAMES_PROPERTY =
             "persist.bluetooth.showdeviceswithoutnames";
 
+    /** Re-evaluate {@link #isFilterMatched} when the queue is flushed. */
+    private static final int OP_UPDATE = 0;
+    private static final int OP_ADD = 1;
+    private static final int OP_REMOVE = 2;
+
     protected final LocalBluetoothManager mLocalManager;
     protected final DevicePreferenceCallback mDevicePreferenceCallback;
     protected final Map<BluetoothDevice, Preference> mPreferenceMap;
@@ -59,7 +73,14 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
     protected DashboardFragment mFragment;
 
     private final boolean mShowDeviceWithoutNames;
-    
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /** Latest pending operation of each device, in arrival order. */
+    private final ArrayMap<CachedBluetoothDevice, Integer> mPendingOps = new ArrayMap<>();
+    private boolean mFlushScheduled;
+    private int mCoalescedCount;
+    /** Callbacks superseded since the last flush. */
+    private int mPendingCoalescedCount;
+
     @VisibleForTesting
     final GearPreference.OnGearClickListener mDeviceProfilesListener = pref -> {
         launchDeviceDetails(pref);
@@ -98,6 +119,11 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
         mLocalManager.setForegroundActivity(null);
         mLocalManager.getEventManager().unregisterCallback(this);
         mLocalManager.getProfileManager().removeServiceListener(this);
+        // Drop updates not flushed yet, so none lands after stop or in the next session.
+        mHandler.removeCallbacksAndMessages(null);
+        mPendingOps.clear();
+        mPendingCoalescedCount = 0;
+        mFlushScheduled = false;
     }
 
     /**
@@ -107,7 +133,7 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
         Collection<CachedBluetoothDevice> cachedDevices =
                 mLocalManager.getCachedDeviceManager().getCachedDevicesCopy();
         for (CachedBluetoothDevice cachedBluetoothDevice : cachedDevices) {
-            update(cachedBluetoothDevice);
+            enqueue(cachedBluetoothDevice, OP_UPDATE);
         }
     }
 
@@ -121,7 +147,7 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
 
     @Override
     public void onDeviceAdded(CachedBluetoothDevice cachedDevice) {
-        update(cachedDevice);
+        enqueue(cachedDevice, OP_UPDATE);
     }
 
     @Override
@@ -129,12 +155,12 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
         // Used to combine the hearing aid entries just after pairing. Once both the hearing aids
         // get connected and their hiSyncId gets populated, this gets called for one of the
         // 2 hearing aids so that only one entry in the connected devices list will be seen.
-        removePreference(cachedDevice);
+        enqueue(cachedDevice, OP_REMOVE);
     }
 
     @Override
     public void onDeviceBondStateChanged(CachedBluetoothDevice cachedDevice, int bondState) {
-        update(cachedDevice);
+        enqueue(cachedDevice, OP_UPDATE);
     }
 
     @Override
@@ -177,6 +203,84 @@ public abstract class BluetoothDeviceUpdater implements BluetoothCallback,
      */
     public abstract boolean isFilterMatched(CachedBluetoothDevice cachedBluetoothDevice);
 
+    /**
+     * Queue re-evaluating whether to show {@code cachedDevice}.
+     */
+    protected void enqueueUpdate(CachedBluetoothDevice cachedDevice) {
+        enqueue(cachedDevice, OP_UPDATE);
+    }
+
+    /**
+     * Queue adding the {@link Preference} of {@code cachedDevice}.
+     */
+    protected void enqueueAdd(CachedBluetoothDevice cachedDevice) {
+        enqueue(cachedDevice, OP_ADD);
+    }
+
+    /**
+     * Queue removing the {@link Preference} of {@code cachedDevice}.
+     */
+    protected void enqueueRemove(CachedBluetoothDevice cachedDevice) {
+        enqueue(cachedDevice, OP_REMOVE);
+    }
+
+    private void enqueue(CachedBluetoothDevice cachedDevice, int op) {
+        // Only the latest change of a device matters, earlier ones are superseded.
+        if (mPendingOps.put(cachedDevice, op) != null) {
+            mCoalescedCount++;
+            mPendingCoalescedCount++;
+        }
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            // Dispatch through the current receiver, so a spy of the updater flushes itself.
+            mHandler.post(() -> flushPendingUpdates());
+        }
+    }
+
+    /**
+     * Apply all queued device changes: removals first, then additions sorted the way the
+     * preference group orders them.
+     */
+    @VisibleForTesting
+    void flushPendingUpdates() {
+        mFlushScheduled = false;
+        if (mPendingOps.isEmpty()) {
+            return;
+        }
+        final List<CachedBluetoothDevice> toAdd = new ArrayList<>();
+        final List<CachedBluetoothDevice> toRemove = new ArrayList<>();
+        for (int i = 0; i < mPendingOps.size(); i++) {
+            final CachedBluetoothDevice cachedDevice = mPendingOps.keyAt(i);
+            final int op = mPendingOps.valueAt(i);
+            if (op == OP_ADD || (op == OP_UPDATE && isFilterMatched(cachedDevice))) {
+                toAdd.add(cachedDevice);
+            } else {
+                toRemove.add(cachedDevice);
+            }
+        }
+        mPendingOps.clear();
+        if (mPendingCoalescedCount > 0 && Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "flushPendingUpdates() coalesced " + mPendingCoalescedCount
+                    + " callbacks");
+        }
+        mPendingCoalescedCount = 0;
+
+        for (CachedBluetoothDevice cachedDevice : toRemove) {
+            removePreference(cachedDevice);
+        }
+        Collections.sort(toAdd);
+        for (CachedBluetoothDevice cachedDevice : toAdd) {
+            addPreference(cachedDevice);
+        }
+    }
+
+    /**
+     * @return how many device callbacks were superseded by a later one before being applied.
+     */
+    public int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
     /**
      * Update whether to show {@link CachedBluetoothDevice} in the list.
      */
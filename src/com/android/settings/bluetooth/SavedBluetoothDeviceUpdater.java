@@ -50,9 +50,9 @@ public class SavedBluetoothDeviceUpdater extends BluetoothDeviceUpdater
     public void onProfileConnectionStateChanged(CachedBluetoothDevice cachedDevice, int state,
             int bluetoothProfile) {
         if (state == BluetoothProfile.STATE_CONNECTED) {
-            removePreference(cachedDevice);
+            enqueueRemove(cachedDevice);
         } else if (state == BluetoothProfile.STATE_DISCONNECTED) {
-            addPreference(cachedDevice);
+            enqueueAdd(cachedDevice);
         }
     }
 
@@ -45,6 +45,9 @@ import com.digi.android.cloudconnector.ICloudConnectorEventListener;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 /**
@@ -115,6 +118,26 @@ public class CloudConnectorSettings extends SettingsPreferenceFragment
 
     private Handler handler = new Handler();
 
+    // Serial worker reading the Cloud Connector configuration, so at most one
+    // refresh is in flight and a burst of requests is merged into one.
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private final Runnable refreshTask = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag before reading so a change made while reading
+            // queues one more refresh with the latest state.
+            refreshPending.set(false);
+            final ConfigSnapshot snapshot = new ConfigSnapshot(ccPrefsManager, connector);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    updateUI(snapshot);
+                }
+            });
+        }
+    };
+
     private OnPreferenceChangeListener prefChangeListener = new OnPreferenceChangeListener() {
         @Override
         public boolean onPreferenceChange(Preference preference, Object newValue) {
@@ -210,7 +233,7 @@ public class CloudConnectorSettings extends SettingsPreferenceFragment
             default:
                 break;
             }
-            updateUI();
+            requestRefresh();
             return valid;
         }
     };
@@ -280,6 +303,13 @@ public class CloudConnectorSettings extends SettingsPreferenceFragment
         dialog.setIndeterminate(true);
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        refreshExecutor.shutdownNow();
+        handler.removeCallbacksAndMessages(null);
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -289,12 +319,7 @@ public class CloudConnectorSettings extends SettingsPreferenceFragment
         switchBar.addOnSwitchChangeListener(this);
         connector.registerEventListener(this);
         // Update values.
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                updateUI();
-            }
-        }).start();
+        requestRefresh();
     }
 
     @Override
@@ -377,96 +402,124 @@ public class CloudConnectorSettings extends SettingsPreferenceFragment
      */
     private void updateInfo(boolean connected) {
         updateSwitchCc(connected);
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                updateUI();
-            }
-        }).start();
+        requestRefresh();
+    }
+
+    /**
+     * Schedule a refresh of the values of Cloud Connector.
+     *
+     * <p>If a refresh is already queued, this method does nothing: the queued
+     * one reads the configuration when it runs, so it reflects this change
+     * too.</p>
+     */
+    private void requestRefresh() {
+        if (refreshExecutor.isShutdown()) {
+            return;
+        }
+        if (refreshPending.compareAndSet(false, true)) {
+            refreshExecutor.execute(refreshTask);
+        }
     }
 
     /**
      * Update the values of Cloud Connector.
+     *
+     * @param snapshot Configuration to show.
      */
-    private void updateUI() {
-        final String deviceId = ccPrefsManager.getDeviceID();
-        final String vendorId = ccPrefsManager.getVendorID();
-        final String deviceName = ccPrefsManager.getDeviceName();
-        final String description = ccPrefsManager.getDeviceDescription();
-        final String contact = ccPrefsManager.getDeviceContactInformation();
-        final String url = ccPrefsManager.getURL();
-        final String systemMonitorSampleRate = "" + ccPrefsManager.getSystemMonitorSampleRate();
-        final String systemMonitorUploadSamplesSize = "" + ccPrefsManager.getSystemMonitorUploadSamplesSize();
-        final boolean autoConnect = ccPrefsManager.isAutoConnectEnabled() && ccPrefsManager.isReconnectEnabled();
-        final boolean secureConnection = ccPrefsManager.isSecureConnectionEnabled();
-        final boolean compression = ccPrefsManager.isCompressionEnabled();
-        final boolean enableSystemMonitor = ccPrefsManager.isSystemMonitorEnabled();
-        final boolean systemMonitorEnableMemorySampling = ccPrefsManager.isSystemMonitorMemorySamplingEnabled();
-        final boolean systemMonitorEnableCPULoadSampling = ccPrefsManager.isSystemMonitorCPULoadSamplingEnabled();
-        final boolean systemMonitorEnableCPUTemperatureSampling = ccPrefsManager.isSystemMonitorCPUTemperatureSamplingEnabled();
-
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                SharedPreferences prefs = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
-
-                Editor editor = prefs.edit();
-
-                findPreference(PREF_DEVICE_ID).setSummary(deviceId);
-                editor.putString(PREF_DEVICE_ID, deviceId);
-
-                vendorIdText.setSummary(vendorId);
-                vendorIdText.setText(vendorId);
-                editor.putString(PREF_VENDOR_ID, vendorId);
-
-                nameText.setSummary(deviceName);
-                nameText.setText(deviceName);
-                editor.putString(PREF_DEVICE_NAME, deviceName);
-
-                descText.setSummary(description);
-                descText.setText(description);
-                editor.putString(PREF_DESCRIPTION, description);
-
-                contactText.setSummary(contact);
-                contactText.setText(contact);
-                editor.putString(PREF_CONTACT, contact);
-
-                urlText.setSummary(url);
-                urlText.setText(url);
-                editor.putString(PREF_URL, url);
-
-                systemMonitorSampleRateText.setSummary(systemMonitorSampleRate);
-                systemMonitorSampleRateText.setText(systemMonitorSampleRate);
-                editor.putString(PREF_SYSTEM_MONITOR_SAMPLE_RATE, systemMonitorSampleRate);
-
-                systemMonitorUploadSamplesSizeText.setSummary(systemMonitorUploadSamplesSize);
-                systemMonitorUploadSamplesSizeText.setText(systemMonitorUploadSamplesSize);
-                editor.putString(PREF_SYSTEM_MONITOR_UPLOAD_SAMPLES_SIZE, systemMonitorUploadSamplesSize);
-
-                editor.commit();
-
-                enableAutoConnectSwitch.setChecked(autoConnect);
-                enableSecureConnectionSwitch.setChecked(secureConnection);
-                enableCompressionSwitch.setChecked(compression);
-                systemMonitorSwitch.setChecked(enableSystemMonitor);
-                systemMonitorSwitch.setSummary(context.getString(enableSystemMonitor ? R.string.switch_on_text : R.string.switch_off_text));
-                systemMonitorMemorySwitch.setChecked(systemMonitorEnableMemorySampling);
-                systemMonitorMemorySwitch.setSummary(context.getString(systemMonitorEnableMemorySampling ? R.string.switch_on_text : R.string.switch_off_text));
-                systemMonitorCPULoadSwitch.setChecked(systemMonitorEnableCPULoadSampling);
-                systemMonitorCPULoadSwitch.setSummary(context.getString(systemMonitorEnableCPULoadSampling ? R.string.switch_on_text : R.string.switch_off_text));
-                systemMonitorCPUTempSwitch.setChecked(systemMonitorEnableCPUTemperatureSampling);
-                systemMonitorCPUTempSwitch.setSummary(context.getString(systemMonitorEnableCPUTemperatureSampling ? R.string.switch_on_text : R.string.switch_off_text));
-            }
-        });
+    private void updateUI(ConfigSnapshot snapshot) {
+        SharedPreferences prefs = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        Editor editor = prefs.edit();
+
+        findPreference(PREF_DEVICE_ID).setSummary(snapshot.deviceId);
+        editor.putString(PREF_DEVICE_ID, snapshot.deviceId);
+
+        vendorIdText.setSummary(snapshot.vendorId);
+        vendorIdText.setText(snapshot.vendorId);
+        editor.putString(PREF_VENDOR_ID, snapshot.vendorId);
+
+        nameText.setSummary(snapshot.deviceName);
+        nameText.setText(snapshot.deviceName);
+        editor.putString(PREF_DEVICE_NAME, snapshot.deviceName);
+
+        descText.setSummary(snapshot.description);
+        descText.setText(snapshot.description);
+        editor.putString(PREF_DESCRIPTION, snapshot.description);
+
+        contactText.setSummary(snapshot.contact);
+        contactText.setText(snapshot.contact);
+        editor.putString(PREF_CONTACT, snapshot.contact);
+
+        urlText.setSummary(snapshot.url);
+        urlText.setText(snapshot.url);
+        editor.putString(PREF_URL, snapshot.url);
+
+        systemMonitorSampleRateText.setSummary(snapshot.systemMonitorSampleRate);
+        systemMonitorSampleRateText.setText(snapshot.systemMonitorSampleRate);
+        editor.putString(PREF_SYSTEM_MONITOR_SAMPLE_RATE, snapshot.systemMonitorSampleRate);
+
+        systemMonitorUploadSamplesSizeText.setSummary(snapshot.systemMonitorUploadSamplesSize);
+        systemMonitorUploadSamplesSizeText.setText(snapshot.systemMonitorUploadSamplesSize);
+        editor.putString(PREF_SYSTEM_MONITOR_UPLOAD_SAMPLES_SIZE, snapshot.systemMonitorUploadSamplesSize);
+
+        editor.commit();
+
+        enableAutoConnectSwitch.setChecked(snapshot.autoConnect);
+        enableSecureConnectionSwitch.setChecked(snapshot.secureConnection);
+        enableCompressionSwitch.setChecked(snapshot.compression);
+        systemMonitorSwitch.setChecked(snapshot.enableSystemMonitor);
+        systemMonitorSwitch.setSummary(context.getString(snapshot.enableSystemMonitor ? R.string.switch_on_text : R.string.switch_off_text));
+        systemMonitorMemorySwitch.setChecked(snapshot.systemMonitorEnableMemorySampling);
+        systemMonitorMemorySwitch.setSummary(context.getString(snapshot.systemMonitorEnableMemorySampling ? R.string.switch_on_text : R.string.switch_off_text));
+        systemMonitorCPULoadSwitch.setChecked(snapshot.systemMonitorEnableCPULoadSampling);
+        systemMonitorCPULoadSwitch.setSummary(context.getString(snapshot.systemMonitorEnableCPULoadSampling ? R.string.switch_on_text : R.string.switch_off_text));
+        systemMonitorCPUTempSwitch.setChecked(snapshot.systemMonitorEnableCPUTemperatureSampling);
+        systemMonitorCPUTempSwitch.setSummary(context.getString(snapshot.systemMonitorEnableCPUTemperatureSampling ? R.string.switch_on_text : R.string.switch_off_text));
 
         // Ensure the switch is accordingly configured with the connector state.
-        if (connector.isConnected() != switchCc.isChecked()) {
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    updateSwitchCc(connector.isConnected());
-                }
-            });
+        updateSwitchCc(snapshot.connected);
+    }
+
+    /**
+     * Cloud Connector configuration and connection state, read together on
+     * the refresh worker so the UI is always updated from one consistent
+     * state.
+     */
+    private static class ConfigSnapshot {
+        final String deviceId;
+        final String vendorId;
+        final String deviceName;
+        final String description;
+        final String contact;
+        final String url;
+        final String systemMonitorSampleRate;
+        final String systemMonitorUploadSamplesSize;
+        final boolean autoConnect;
+        final boolean secureConnection;
+        final boolean compression;
+        final boolean enableSystemMonitor;
+        final boolean systemMonitorEnableMemorySampling;
+        final boolean systemMonitorEnableCPULoadSampling;
+        final boolean systemMonitorEnableCPUTemperatureSampling;
+        final boolean connected;
+
+        ConfigSnapshot(CloudConnectorPreferencesManager ccPrefsManager, CloudConnectorManager connector) {
+            deviceId = ccPrefsManager.getDeviceID();
+            vendorId = ccPrefsManager.getVendorID();
+            deviceName = ccPrefsManager.getDeviceName();
+            description = ccPrefsManager.getDeviceDescription();
+            contact = ccPrefsManager.getDeviceContactInformation();
+            url = ccPrefsManager.getURL();
+            systemMonitorSampleRate = "" + ccPrefsManager.getSystemMonitorSampleRate();
+            systemMonitorUploadSamplesSize = "" + ccPrefsManager.getSystemMonitorUploadSamplesSize();
+            autoConnect = ccPrefsManager.isAutoConnectEnabled() && ccPrefsManager.isReconnectEnabled();
+            secureConnection = ccPrefsManager.isSecureConnectionEnabled();
+            compression = ccPrefsManager.isCompressionEnabled();
+            enableSystemMonitor = ccPrefsManager.isSystemMonitorEnabled();
+            systemMonitorEnableMemorySampling = ccPrefsManager.isSystemMonitorMemorySamplingEnabled();
+            systemMonitorEnableCPULoadSampling = ccPrefsManager.isSystemMonitorCPULoadSamplingEnabled();
+            systemMonitorEnableCPUTemperatureSampling = ccPrefsManager.isSystemMonitorCPUTemperatureSamplingEnabled();
+            connected = connector.isConnected();
         }
     }
 
@@ -101,9 +101,18 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
      */
     public static final int DISABLED_DEPENDENT_SETTING = 4;
 
+    /**
+     * Marks that no availability status was evaluated ahead of time.
+     */
+    private static final int STATUS_NOT_CACHED = -1;
 
     protected final String mPreferenceKey;
 
+    /**
+     * Availability status evaluated off the main thread, see {@link #hasAsyncAvailability()}.
+     */
+    private volatile int mCachedAvailabilityStatus = STATUS_NOT_CACHED;
+
     /**
      * Instantiate a controller as specified controller type and user-defined key.
      * <p/>
@@ -182,7 +191,7 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
      */
     @Override
     public final boolean isAvailable() {
-        final int availabilityStatus = getAvailabilityStatus();
+        final int availabilityStatus = getDisplayedAvailabilityStatus();
         return (availabilityStatus == AVAILABLE
                 || availabilityStatus == DISABLED_DEPENDENT_SETTING);
     }
@@ -204,7 +213,7 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     @Override
     public void displayPreference(PreferenceScreen screen) {
         super.displayPreference(screen);
-        if (getAvailabilityStatus() == DISABLED_DEPENDENT_SETTING) {
+        if (getDisplayedAvailabilityStatus() == DISABLED_DEPENDENT_SETTING) {
             // Disable preference if it depends on another setting.
             final Preference preference = screen.findPreference(getPreferenceKey());
             if (preference != null) {
@@ -256,6 +265,39 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
         return false;
     }
 
+    /**
+     * @return {@code true} if {@link #getAvailabilityStatus()} is slow enough to be evaluated off
+     * the main thread.
+     * <p>
+     * When true, the DashboardFragment evaluates the status on a background thread, which means
+     * {@link #getAvailabilityStatus()} must be thread-safe. Until the result arrives, the
+     * preference uses the status last seen for the screen, or stays hidden.
+     */
+    public boolean hasAsyncAvailability() {
+        return false;
+    }
+
+    /**
+     * Sets the availability status to be used by {@link #isAvailable()} and
+     * {@link #displayPreference(PreferenceScreen)} instead of {@link #getAvailabilityStatus()}.
+     * Only used for controllers with {@link #hasAsyncAvailability()}.
+     */
+    public void setCachedAvailabilityStatus(@AvailabilityStatus int status) {
+        mCachedAvailabilityStatus = status;
+    }
+
+    /**
+     * Goes back to calling {@link #getAvailabilityStatus()} from {@link #isAvailable()}.
+     */
+    public void clearCachedAvailabilityStatus() {
+        mCachedAvailabilityStatus = STATUS_NOT_CACHED;
+    }
+
+    private int getDisplayedAvailabilityStatus() {
+        final int cachedStatus = mCachedAvailabilityStatus;
+        return cachedStatus != STATUS_NOT_CACHED ? cachedStatus : getAvailabilityStatus();
+    }
+
     /**
      * Updates non-indexable keys for search provider.
      *
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Process-wide, in-memory counters of cache lookups and operation durations, reported by
+ * {@link com.android.settings.SettingsDumpService}. Recording is cheap and safe from any thread.
+ */
+public class PerfStats {
+
+    /** Durations of loaders producing data for a screen. */
+    public static final String GROUP_LOADER = "loader";
+    /** Durations of search indexing passes. */
+    public static final String GROUP_INDEXING = "indexing";
+    /** Durations of preference controller callbacks and dashboard tile refreshes. */
+    public static final String GROUP_CONTROLLER = "controller";
+
+    private static PerfStats sInstance;
+
+    /** Hit and miss counts of each cache, by cache name. */
+    private final ArrayMap<String, long[]> mCacheLookups = new ArrayMap<>();
+    /** Duration histograms by group, then by name. */
+    private final ArrayMap<String, ArrayMap<String, Histogram>> mDurations = new ArrayMap<>();
+
+    public static synchronized PerfStats getInstance() {
+        if (sInstance == null) {
+            sInstance = new PerfStats();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PerfStats() {
+    }
+
+    public synchronized void recordCacheLookup(String cache, boolean hit) {
+        long[] counts = mCacheLookups.get(cache);
+        if (counts == null) {
+            counts = new long[2];
+            mCacheLookups.put(cache, counts);
+        }
+        counts[hit ? 0 : 1]++;
+    }
+
+    public synchronized void recordDuration(String group, String name, long durationMs) {
+        ArrayMap<String, Histogram> histograms = mDurations.get(group);
+        if (histograms == null) {
+            histograms = new ArrayMap<>();
+            mDurations.put(group, histograms);
+        }
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(name, histogram);
+        }
+        histogram.record(durationMs);
+    }
+
+    /**
+     * Write {@code {cache: {hits, misses, hit_rate}}} for every cache looked up so far.
+     */
+    public synchronized void dumpCacheLookups(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        for (int i = 0, size = mCacheLookups.size(); i < size; i++) {
+            final long[] counts = mCacheLookups.valueAt(i);
+            final long total = counts[0] + counts[1];
+            writer.name(mCacheLookups.keyAt(i)).beginObject()
+                    .name("hits").value(counts[0])
+                    .name("misses").value(counts[1])
+                    .name("hit_rate").value(total == 0 ? 0 : (double) counts[0] / total)
+                    .endObject();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Write the histogram of every duration recorded in {@code group}, by name.
+     */
+    public synchronized void dumpDurations(String group, JsonWriter writer) throws IOException {
+        writer.beginObject();
+        final ArrayMap<String, Histogram> histograms = mDurations.get(group);
+        if (histograms != null) {
+            for (int i = 0, size = histograms.size(); i < size; i++) {
+                writer.name(histograms.keyAt(i));
+                histograms.valueAt(i).dump(writer);
+            }
+        }
+        writer.endObject();
+    }
+
+    @VisibleForTesting
+    synchronized void clear() {
+        mCacheLookups.clear();
+        mDurations.clear();
+    }
+
+    /**
+     * Power-of-two millisecond buckets: bucket {@code i} counts durations in
+     * [2^(i-1), 2^i) ms, with bucket 0 holding sub-millisecond ones and the last bucket
+     * everything from about one second up.
+     */
+    public static class Histogram {
+        @VisibleForTesting
+        static final int BUCKET_COUNT = 12;
+
+        private final int[] mBuckets = new int[BUCKET_COUNT];
+        private long mCount;
+        private long mTotalMs;
+        private long mMaxMs;
+
+        public void record(long durationMs) {
+            final long duration = Math.max(0, durationMs);
+            mCount++;
+            mTotalMs += duration;
+            mMaxMs = Math.max(mMaxMs, duration);
+            final int bucket = 64 - Long.numberOfLeadingZeros(duration);
+            mBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getTotalMs() {
+            return mTotalMs;
+        }
+
+        public long getMaxMs() {
+            return mMaxMs;
+        }
+
+        @VisibleForTesting
+        int getBucket(int index) {
+            return mBuckets[index];
+        }
+
+        public void dump(JsonWriter writer) throws IOException {
+            writer.beginObject()
+                    .name("count").value(mCount)
+                    .name("total_ms").value(mTotalMs)
+                    .name("max_ms").value(mMaxMs)
+                    .name("buckets").beginArray();
+            for (int bucket : mBuckets) {
+                writer.value(bucket);
+            }
+            writer.endArray().endObject();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import com.android.settings.core.BasePreferenceController;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Evaluates the availability of the controllers of one {@link DashboardFragment} that have
+ * {@link BasePreferenceController#hasAsyncAvailability()}, in parallel on a small background
+ * pool. The last statuses of each screen are kept across fragment instances so a screen opens
+ * with them right away; they are dropped when the configuration changes. Main thread only.
+ */
+class AsyncAvailabilityEvaluator {
+
+    private static final String TAG = "AsyncAvailability";
+
+    private static final int POOL_SIZE = 4;
+
+    /** Last statuses by screen, then by preference key. */
+    private static final ArrayMap<String, ArrayMap<String, Integer>> sStatusCache =
+            new ArrayMap<>();
+    /** Configuration the cached statuses were evaluated in. */
+    private static Configuration sCachedConfiguration;
+    private static Executor sExecutor;
+
+    /**
+     * Notified on the main thread when the status of a controller has changed.
+     */
+    interface Callback {
+        void onAvailabilityChanged(BasePreferenceController controller);
+    }
+
+    private final String mScreen;
+    private final Callback mCallback;
+    private final ArraySet<BasePreferenceController> mInFlight = new ArraySet<>();
+    private Executor mExecutor;
+    /** Incremented on {@link #cancel()} so late results are dropped. */
+    private int mGeneration;
+
+    AsyncAvailabilityEvaluator(String screen, Callback callback) {
+        mScreen = screen;
+        mCallback = callback;
+    }
+
+    /**
+     * Apply the cached status of each controller, or hide it if there is none yet, then
+     * re-evaluate all of them in the background.
+     */
+    void evaluate(Context context, List<BasePreferenceController> controllers) {
+        final ArrayMap<String, Integer> statuses = getScreenCache(context);
+        final int generation = mGeneration;
+        for (BasePreferenceController controller : controllers) {
+            final Integer cachedStatus = statuses.get(controller.getPreferenceKey());
+            controller.setCachedAvailabilityStatus(cachedStatus != null
+                    ? cachedStatus : BasePreferenceController.CONDITIONALLY_UNAVAILABLE);
+            if (!mInFlight.add(controller)) {
+                continue;
+            }
+            getExecutor().execute(() -> {
+                int status;
+                try {
+                    status = controller.getAvailabilityStatus();
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to get availability of " + controller.getPreferenceKey(),
+                            e);
+                    status = BasePreferenceController.CONDITIONALLY_UNAVAILABLE;
+                }
+                final int result = status;
+                ThreadUtils.postOnMainThread(() -> onEvaluated(generation, statuses,
+                        controller, result));
+            });
+        }
+    }
+
+    /**
+     * Drop the results of every evaluation still running.
+     */
+    void cancel() {
+        mGeneration++;
+        mInFlight.clear();
+    }
+
+    @VisibleForTesting
+    void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    @VisibleForTesting
+    static void clearCache() {
+        synchronized (sStatusCache) {
+            sStatusCache.clear();
+            sCachedConfiguration = null;
+        }
+    }
+
+    private void onEvaluated(int generation, ArrayMap<String, Integer> statuses,
+            BasePreferenceController controller, int status) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mInFlight.remove(controller);
+        final Integer previousStatus;
+        synchronized (sStatusCache) {
+            previousStatus = statuses.put(controller.getPreferenceKey(), status);
+        }
+        controller.setCachedAvailabilityStatus(status);
+        if (previousStatus == null || previousStatus != status) {
+            mCallback.onAvailabilityChanged(controller);
+        }
+    }
+
+    private ArrayMap<String, Integer> getScreenCache(Context context) {
+        final Configuration configuration = context.getResources().getConfiguration();
+        synchronized (sStatusCache) {
+            if (!configuration.equals(sCachedConfiguration)) {
+                sStatusCache.clear();
+                sCachedConfiguration = new Configuration(configuration);
+            }
+            ArrayMap<String, Integer> statuses = sStatusCache.get(mScreen);
+            if (statuses == null) {
+                statuses = new ArrayMap<>();
+                sStatusCache.put(mScreen, statuses);
+            }
+            return statuses;
+        }
+    }
+
+    private Executor getExecutor() {
+        if (mExecutor == null) {
+            synchronized (AsyncAvailabilityEvaluator.class) {
+                if (sExecutor == null) {
+                    sExecutor = Executors.newFixedThreadPool(POOL_SIZE);
+                }
+                mExecutor = sExecutor;
+            }
+        }
+        return mExecutor;
+    }
+}
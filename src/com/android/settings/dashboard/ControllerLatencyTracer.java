@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+
+import com.android.settings.core.instrumentation.PerfStats;
+import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
+
+/**
+ * Times the preference controller callbacks and tile refreshes of one {@link DashboardFragment}.
+ * Every sample goes to the process-wide {@link PerfStats#GROUP_CONTROLLER} histograms; the time
+ * spent per controller during the current visit is also kept, so the slow ones can be reported
+ * through {@link MetricsFeatureProvider} when the screen is left. Main thread only.
+ */
+class ControllerLatencyTracer {
+
+    static final int PHASE_IS_AVAILABLE = 0;
+    static final int PHASE_DISPLAY_PREFERENCE = 1;
+    static final int PHASE_UPDATE_STATE = 2;
+    private static final String[] PHASE_NAMES = {"isAvailable", "displayPreference",
+            "updateState"};
+
+    @VisibleForTesting
+    static final String METRICS_PREFIX = "settings_controller_latency|";
+    /** Controllers taking less than a frame in total during a visit are not reported. */
+    @VisibleForTesting
+    static final long EXPORT_THRESHOLD_MS = 16;
+
+    private final String mScreen;
+    private final PerfStats mPerfStats;
+    /** Sample names by controller class, so recording does not build strings. */
+    private final ArrayMap<Class<?>, String[]> mNames = new ArrayMap<>();
+    /** Time spent by each controller, or tile refresh step, since the last export. */
+    private final ArrayMap<String, Long> mVisitTotals = new ArrayMap<>();
+
+    ControllerLatencyTracer(String screen) {
+        this(screen, PerfStats.getInstance());
+    }
+
+    @VisibleForTesting
+    ControllerLatencyTracer(String screen, PerfStats perfStats) {
+        mScreen = screen;
+        mPerfStats = perfStats;
+    }
+
+    static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Record one {@code phase} callback of {@code controller} that started at {@code startNanos}.
+     */
+    void endPhase(Object controller, int phase, long startNanos) {
+        final Class<?> clazz = controller.getClass();
+        String[] names = mNames.get(clazz);
+        if (names == null) {
+            names = new String[PHASE_NAMES.length + 1];
+            names[PHASE_NAMES.length] = clazz.getSimpleName();
+            for (int i = 0; i < PHASE_NAMES.length; i++) {
+                names[i] = names[PHASE_NAMES.length] + "#" + PHASE_NAMES[i];
+            }
+            mNames.put(clazz, names);
+        }
+        record(names[phase], names[PHASE_NAMES.length], startNanos);
+    }
+
+    /**
+     * Record one tile refresh {@code step} of this screen that started at {@code startNanos}.
+     */
+    void endStep(String step, long startNanos) {
+        record(mScreen + "#" + step, step, startNanos);
+    }
+
+    private void record(String sampleName, String visitName, long startNanos) {
+        final long durationMs = (now() - startNanos) / 1000000;
+        mPerfStats.recordDuration(PerfStats.GROUP_CONTROLLER, sampleName, durationMs);
+        final Long total = mVisitTotals.get(visitName);
+        mVisitTotals.put(visitName, total == null ? durationMs : total + durationMs);
+    }
+
+    /**
+     * Report every controller that spent at least {@link #EXPORT_THRESHOLD_MS} during this
+     * visit, then start a new visit.
+     */
+    void export(Context context, MetricsFeatureProvider metricsFeatureProvider) {
+        for (int i = 0, size = mVisitTotals.size(); i < size; i++) {
+            final long total = mVisitTotals.valueAt(i);
+            if (total >= EXPORT_THRESHOLD_MS) {
+                metricsFeatureProvider.histogram(context,
+                        METRICS_PREFIX + mScreen + "|" + mVisitTotals.keyAt(i),
+                        (int) Math.min(total, Integer.MAX_VALUE));
+            }
+        }
+        mVisitTotals.clear();
+    }
+}
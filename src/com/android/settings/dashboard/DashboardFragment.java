@@ -58,6 +58,10 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private final Map<Class, List<AbstractPreferenceController>> mPreferenceControllers =
             new ArrayMap<>();
     private final Set<String> mDashboardTilePrefKeys = new ArraySet<>();
+    private final ControllerLatencyTracer mLatencyTracer =
+            new ControllerLatencyTracer(getClass().getSimpleName());
+    private final AsyncAvailabilityEvaluator mAvailabilityEvaluator =
+            new AsyncAvailabilityEvaluator(getClass().getName(), this::onAvailabilityChanged);
 
     private DashboardFeatureProvider mDashboardFeatureProvider;
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
@@ -166,6 +170,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     @Override
     public void onResume() {
         super.onResume();
+        mAvailabilityEvaluator.evaluate(getContext(), getAsyncAvailabilityControllers());
         updatePreferenceStates();
     }
 
@@ -201,6 +206,8 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
             }
             mListeningToCategoryChange = false;
         }
+        mAvailabilityEvaluator.cancel();
+        mLatencyTracer.export(getContext(), mMetricsFeatureProvider);
     }
 
     @Override
@@ -280,8 +287,50 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         }
         addPreferencesFromResource(resId);
         final PreferenceScreen screen = getPreferenceScreen();
-        mPreferenceControllers.values().stream().flatMap(Collection::stream).forEach(
-                controller -> controller.displayPreference(screen));
+        mAvailabilityEvaluator.evaluate(getContext(), getAsyncAvailabilityControllers());
+        for (List<AbstractPreferenceController> controllerList : mPreferenceControllers.values()) {
+            for (AbstractPreferenceController controller : controllerList) {
+                final long startTime = ControllerLatencyTracer.now();
+                controller.displayPreference(screen);
+                mLatencyTracer.endPhase(controller,
+                        ControllerLatencyTracer.PHASE_DISPLAY_PREFERENCE, startTime);
+            }
+        }
+    }
+
+    /**
+     * @return the controllers whose availability is evaluated off the main thread.
+     */
+    private List<BasePreferenceController> getAsyncAvailabilityControllers() {
+        final List<BasePreferenceController> controllers = new ArrayList<>();
+        for (List<AbstractPreferenceController> controllerList : mPreferenceControllers.values()) {
+            for (AbstractPreferenceController controller : controllerList) {
+                if (controller instanceof BasePreferenceController
+                        && ((BasePreferenceController) controller).hasAsyncAvailability()) {
+                    controllers.add((BasePreferenceController) controller);
+                }
+            }
+        }
+        return controllers;
+    }
+
+    /**
+     * Show or hide the preference of {@code controller} once its availability is known.
+     */
+    @VisibleForTesting
+    void onAvailabilityChanged(BasePreferenceController controller) {
+        final PreferenceScreen screen = getPreferenceScreen();
+        if (screen == null) {
+            return;
+        }
+        controller.displayPreference(screen);
+        if (!controller.isAvailable()) {
+            return;
+        }
+        final Preference preference = screen.findPreference(controller.getPreferenceKey());
+        if (preference != null) {
+            controller.updateState(preference);
+        }
     }
 
     /**
@@ -293,7 +342,11 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                 mPreferenceControllers.values();
         for (List<AbstractPreferenceController> controllerList : controllerLists) {
             for (AbstractPreferenceController controller : controllerList) {
-                if (!controller.isAvailable()) {
+                long startTime = ControllerLatencyTracer.now();
+                final boolean available = controller.isAvailable();
+                mLatencyTracer.endPhase(controller, ControllerLatencyTracer.PHASE_IS_AVAILABLE,
+                        startTime);
+                if (!available) {
                     continue;
                 }
                 final String key = controller.getPreferenceKey();
@@ -304,7 +357,10 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                             key, controller.getClass().getSimpleName()));
                     continue;
                 }
+                startTime = ControllerLatencyTracer.now();
                 controller.updateState(preference);
+                mLatencyTracer.endPhase(controller, ControllerLatencyTracer.PHASE_UPDATE_STATE,
+                        startTime);
             }
         }
     }
@@ -321,9 +377,13 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         }
 
         // Add resource based tiles.
+        long startTime = ControllerLatencyTracer.now();
         displayResourceTiles();
+        mLatencyTracer.endStep("displayResourceTiles", startTime);
 
+        startTime = ControllerLatencyTracer.now();
         refreshDashboardTiles(TAG);
+        mLatencyTracer.endStep("refreshDashboardTiles", startTime);
     }
 
     /**
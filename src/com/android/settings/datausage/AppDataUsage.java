@@ -221,8 +221,14 @@ public class AppDataUsage extends DataUsageBase implements Preference.OnPreferen
             mDataSaverBackend.addListener(this);
         }
         mPolicy = services.mPolicyEditor.getPolicy(mTemplate);
-        getLoaderManager().restartLoader(LOADER_CHART_DATA,
-                ChartDataLoader.buildArgs(mTemplate, mAppItem), mChartDataCallbacks);
+        final ChartData cachedChartData = DataUsageQueryCache.getInstance().getChartData(
+                mTemplate, mAppItem.key);
+        if (cachedChartData != null) {
+            bindChartData(cachedChartData);
+        } else {
+            getLoaderManager().restartLoader(LOADER_CHART_DATA,
+                    ChartDataLoader.buildArgs(mTemplate, mAppItem), mChartDataCallbacks);
+        }
         updatePrefs();
     }
 
@@ -379,6 +385,12 @@ public class AppDataUsage extends DataUsageBase implements Preference.OnPreferen
         }
     };
 
+    private void bindChartData(ChartData data) {
+        mChartData = data;
+        mCycleAdapter.updateCycleList(mPolicy, mChartData);
+        bindData();
+    }
+
     private final LoaderManager.LoaderCallbacks<ChartData> mChartDataCallbacks =
             new LoaderManager.LoaderCallbacks<ChartData>() {
         @Override
@@ -388,9 +400,8 @@ public class AppDataUsage extends DataUsageBase implements Preference.OnPreferen
 
         @Override
         public void onLoadFinished(Loader<ChartData> loader, ChartData data) {
-            mChartData = data;
-            mCycleAdapter.updateCycleList(mPolicy, mChartData);
-            bindData();
+            DataUsageQueryCache.getInstance().putChartData(mTemplate, mAppItem.key, data);
+            bindChartData(data);
         }
 
         @Override
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.net.TrafficStats.UID_REMOVED;
+import static android.net.TrafficStats.UID_TETHERING;
+
+import android.net.NetworkStats;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.android.settingslib.AppItem;
+import com.android.settingslib.net.UidDetailProvider;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collapses per-UID {@link NetworkStats} into the sorted list of {@link AppItem}s shown by
+ * {@link DataUsageList}.
+ *
+ * <p>Stats are first folded into parallel primitive arrays with one slot per distinct UID, so
+ * the per-entry work is a single int lookup. Profile membership and removed users are resolved
+ * once per user id rather than once per entry.
+ */
+class AppDataUsageAggregator {
+
+    private static final int USER_STATE_UNKNOWN = 0;
+    private static final int USER_STATE_REMOVED = 1;
+    private static final int USER_STATE_OTHER = 2;
+
+    private final UserManager mUserManager;
+    private final int mCurrentUserId;
+    private final BitSet mProfiles = new BitSet();
+    private final SparseIntArray mUserStates = new SparseIntArray();
+
+    // Per-UID totals, one slot per distinct UID in the last aggregated stats.
+    private final SparseIntArray mUidSlots = new SparseIntArray();
+    private int[] mUids = new int[0];
+    private long[] mBytes = new long[0];
+    private int mUidCount;
+
+    private final ArrayList<AppItem> mItems = new ArrayList<>();
+    private final SparseArray<AppItem> mKnownItems = new SparseArray<>();
+    private long mLargest;
+
+    AppDataUsageAggregator(UserManager userManager, int currentUserId,
+            List<UserHandle> profiles) {
+        mUserManager = userManager;
+        mCurrentUserId = currentUserId;
+        if (profiles != null) {
+            for (UserHandle profile : profiles) {
+                mProfiles.set(profile.getIdentifier());
+            }
+        }
+    }
+
+    /**
+     * Aggregate the given stats and restricted UIDs. Returns the sorted list of items; the list
+     * is owned by this aggregator and replaced by the next call.
+     */
+    List<AppItem> aggregate(NetworkStats stats, int[] restrictedUids) {
+        mItems.clear();
+        mKnownItems.clear();
+        mLargest = 0;
+
+        foldByUid(stats);
+        for (int i = 0; i < mUidCount; i++) {
+            collapse(mUids[i], mBytes[i]);
+        }
+
+        final int restrictedCount = restrictedUids != null ? restrictedUids.length : 0;
+        for (int i = 0; i < restrictedCount; i++) {
+            final int uid = restrictedUids[i];
+            // Only splice in restricted state for current user or managed users
+            if (!isProfile(UserHandle.getUserId(uid))) {
+                continue;
+            }
+
+            AppItem item = mKnownItems.get(uid);
+            if (item == null) {
+                item = new AppItem(uid);
+                item.total = -1;
+                mItems.add(item);
+                mKnownItems.put(item.key, item);
+            }
+            item.restricted = true;
+        }
+
+        Collections.sort(mItems);
+        return mItems;
+    }
+
+    /**
+     * @return the largest total across the items of the last {@link #aggregate} call.
+     */
+    long getLargest() {
+        return mLargest;
+    }
+
+    boolean isProfile(int userId) {
+        return userId >= 0 && mProfiles.get(userId);
+    }
+
+    private void foldByUid(NetworkStats stats) {
+        mUidSlots.clear();
+        mUidCount = 0;
+        final int size = stats != null ? stats.size() : 0;
+        if (mUids.length < size) {
+            mUids = new int[size];
+            mBytes = new long[size];
+        }
+
+        NetworkStats.Entry entry = null;
+        for (int i = 0; i < size; i++) {
+            entry = stats.getValues(i, entry);
+            final int uid = entry.uid;
+            int slot = mUidSlots.get(uid, -1);
+            if (slot < 0) {
+                slot = mUidCount++;
+                mUidSlots.put(uid, slot);
+                mUids[slot] = uid;
+                mBytes[slot] = 0;
+            }
+            mBytes[slot] += entry.rxBytes + entry.txBytes;
+        }
+    }
+
+    private void collapse(int uid, long bytes) {
+        // Decide how to collapse items together
+        final int collapseKey;
+        final int category;
+        final int userId = UserHandle.getUserId(uid);
+        if (UserHandle.isApp(uid)) {
+            if (isProfile(userId)) {
+                if (userId != mCurrentUserId) {
+                    // Add to a managed user item.
+                    accumulate(UidDetailProvider.buildKeyForUser(userId), uid, bytes,
+                            AppItem.CATEGORY_USER);
+                }
+                // Add to app item.
+                collapseKey = uid;
+                category = AppItem.CATEGORY_APP;
+            } else if (getUserState(userId) == USER_STATE_REMOVED) {
+                // If it is a removed user add it to the removed users' key
+                collapseKey = UID_REMOVED;
+                category = AppItem.CATEGORY_APP;
+            } else {
+                // Add to other user item.
+                collapseKey = UidDetailProvider.buildKeyForUser(userId);
+                category = AppItem.CATEGORY_USER;
+            }
+        } else if (uid == UID_REMOVED || uid == UID_TETHERING) {
+            collapseKey = uid;
+            category = AppItem.CATEGORY_APP;
+        } else {
+            collapseKey = Process.SYSTEM_UID;
+            category = AppItem.CATEGORY_APP;
+        }
+        accumulate(collapseKey, uid, bytes, category);
+    }
+
+    private int getUserState(int userId) {
+        int state = mUserStates.get(userId, USER_STATE_UNKNOWN);
+        if (state == USER_STATE_UNKNOWN) {
+            state = mUserManager.getUserInfo(userId) == null
+                    ? USER_STATE_REMOVED : USER_STATE_OTHER;
+            mUserStates.put(userId, state);
+        }
+        return state;
+    }
+
+    /**
+     * Accumulate data usage of a UID for the item mapped by the collapse key, creating the item
+     * if needed.
+     */
+    private void accumulate(int collapseKey, int uid, long bytes, int itemCategory) {
+        AppItem item = mKnownItems.get(collapseKey);
+        if (item == null) {
+            item = new AppItem(collapseKey);
+            item.category = itemCategory;
+            mItems.add(item);
+            mKnownItems.put(item.key, item);
+        }
+        item.addUid(uid);
+        item.total += bytes;
+        mLargest = Math.max(mLargest, item.total);
+    }
+}
@@ -27,8 +27,8 @@ import com.android.settingslib.utils.ThreadUtils;
 
 public class AppDataUsagePreference extends AppPreference {
 
-    private final AppItem mItem;
-    private final int mPercent;
+    private AppItem mItem;
+    private int mPercent;
     private UidDetail mDetail;
 
     public AppDataUsagePreference(Context context, AppItem item, int percent,
@@ -36,12 +36,7 @@ public class AppDataUsagePreference extends AppPreference {
         super(context);
         mItem = item;
         mPercent = percent;
-
-        if (item.restricted && item.total <= 0) {
-            setSummary(com.android.settings.R.string.data_usage_app_restricted);
-        } else {
-            setSummary(DataUsageUtils.formatDataUsage(context, item.total));
-        }
+        updateSummary();
         mDetail = provider.getUidDetail(item.key, false /* blocking */);
         if (mDetail != null) {
             setAppInfo();
@@ -67,6 +62,30 @@ public class AppDataUsagePreference extends AppPreference {
         progress.setProgress(mPercent);
     }
 
+    /**
+     * Rebind this preference to a newly aggregated item for the same key, keeping the already
+     * loaded app detail.
+     */
+    public void setItem(AppItem item, int percent) {
+        if (mItem.total == item.total && mItem.restricted == item.restricted
+                && mPercent == percent) {
+            mItem = item;
+            return;
+        }
+        mItem = item;
+        mPercent = percent;
+        updateSummary();
+        notifyChanged();
+    }
+
+    private void updateSummary() {
+        if (mItem.restricted && mItem.total <= 0) {
+            setSummary(com.android.settings.R.string.data_usage_app_restricted);
+        } else {
+            setSummary(DataUsageUtils.formatDataUsage(getContext(), mItem.total));
+        }
+    }
+
     private void setAppInfo() {
         if (mDetail != null) {
             setIcon(mDetail.icon);
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import android.content.Context;
+import android.net.INetworkStatsSession;
+import android.net.NetworkStats;
+import android.net.NetworkTemplate;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import com.android.settings.core.instrumentation.PerfStats;
+import com.android.settingslib.utils.AsyncLoader;
+
+/**
+ * Loads the summary for all uids over a billing cycle through {@link DataUsageQueryCache}.
+ */
+public class CachedSummaryLoader extends AsyncLoader<NetworkStats> {
+    private static final String KEY_TEMPLATE = "template";
+    private static final String KEY_START = "start";
+    private static final String KEY_END = "end";
+
+    private final INetworkStatsSession mSession;
+    private final Bundle mArgs;
+
+    public static Bundle buildArgs(NetworkTemplate template, long start, long end) {
+        final Bundle args = new Bundle();
+        args.putParcelable(KEY_TEMPLATE, template);
+        args.putLong(KEY_START, start);
+        args.putLong(KEY_END, end);
+        return args;
+    }
+
+    public CachedSummaryLoader(Context context, INetworkStatsSession session, Bundle args) {
+        super(context);
+        mSession = session;
+        mArgs = args;
+    }
+
+    @Override
+    public NetworkStats loadInBackground() {
+        final NetworkTemplate template = mArgs.getParcelable(KEY_TEMPLATE);
+        final long start = mArgs.getLong(KEY_START);
+        final long end = mArgs.getLong(KEY_END);
+        final long startTime = SystemClock.elapsedRealtime();
+        try {
+            return DataUsageQueryCache.getInstance().getSummaryForAllUid(mSession, template,
+                    start, end);
+        } catch (RemoteException e) {
+            return null;
+        } finally {
+            PerfStats.getInstance().recordDuration(PerfStats.GROUP_LOADER,
+                    CachedSummaryLoader.class.getSimpleName(),
+                    SystemClock.elapsedRealtime() - startTime);
+        }
+    }
+
+    @Override
+    protected void onDiscardResult(NetworkStats result) {
+        // Results are shared with the cache; nothing to release.
+    }
+}
@@ -16,8 +16,6 @@ package com.android.settings.datausage;
 
 import static android.net.ConnectivityManager.TYPE_MOBILE;
 import static android.net.NetworkPolicyManager.POLICY_REJECT_METERED_BACKGROUND;
-import static android.net.TrafficStats.UID_REMOVED;
-import static android.net.TrafficStats.UID_TETHERING;
 import static android.telephony.TelephonyManager.SIM_STATE_READY;
 
 import android.app.ActivityManager;
@@ -25,7 +23,6 @@ import android.app.LoaderManager.LoaderCallbacks;
 import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
-import android.content.pm.UserInfo;
 import android.graphics.Color;
 import android.net.ConnectivityManager;
 import android.net.INetworkStatsSession;
@@ -38,7 +35,6 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.RemoteException;
 import android.os.SystemProperties;
-import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
 import android.support.annotation.VisibleForTesting;
@@ -63,11 +59,8 @@ import com.android.settings.widget.LoadingViewController;
 import com.android.settingslib.AppItem;
 import com.android.settingslib.net.ChartData;
 import com.android.settingslib.net.ChartDataLoader;
-import com.android.settingslib.net.SummaryForAllUidLoader;
 import com.android.settingslib.net.UidDetailProvider;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -93,10 +86,13 @@ public class DataUsageList extends DataUsageBase {
             new CellDataPreference.DataStateListener() {
                 @Override
                 public void onChange(boolean selfChange) {
+                    mQueryCache.invalidate();
                     updatePolicy();
                 }
             };
 
+    private final DataUsageQueryCache mQueryCache = DataUsageQueryCache.getInstance();
+
     private INetworkStatsSession mStatsSession;
     private ChartDataUsagePreference mChart;
 
@@ -210,6 +206,8 @@ public class DataUsageList extends DataUsageBase {
 
             @Override
             protected void onPostExecute(Void result) {
+                // stats were just refreshed, so anything cached before is stale
+                mQueryCache.invalidate();
                 if (isAdded()) {
                     updateBody();
                 }
@@ -257,11 +255,17 @@ public class DataUsageList extends DataUsageBase {
 
         final Context context = getActivity();
 
-        // kick off loader for network history
+        // kick off loader for network history, unless it is still cached
         // TODO: consider chaining two loaders together instead of reloading
         // network history when showing app detail.
-        getLoaderManager().restartLoader(LOADER_CHART_DATA,
-                ChartDataLoader.buildArgs(mTemplate, null), mChartDataCallbacks);
+        final ChartData cachedChartData = mQueryCache.getChartData(mTemplate,
+                DataUsageQueryCache.UID_ALL);
+        if (cachedChartData != null) {
+            bindChartData(cachedChartData);
+        } else {
+            getLoaderManager().restartLoader(LOADER_CHART_DATA,
+                    ChartDataLoader.buildArgs(mTemplate, null), mChartDataCallbacks);
+        }
 
         // detail mode can change visible menus, invalidate
         getActivity().invalidateOptionsMenu();
@@ -325,7 +329,7 @@ public class DataUsageList extends DataUsageBase {
 
         // kick off loader for detailed stats
         getLoaderManager().restartLoader(LOADER_SUMMARY,
-                SummaryForAllUidLoader.buildArgs(mTemplate, start, end), mSummaryCallbacks);
+                CachedSummaryLoader.buildArgs(mTemplate, start, end), mSummaryCallbacks);
 
         final long totalBytes = entry != null ? entry.rxBytes + entry.txBytes : 0;
         final CharSequence totalPhrase = DataUsageUtils.formatDataUsage(context, totalBytes);
@@ -336,95 +340,51 @@ public class DataUsageList extends DataUsageBase {
      * Bind the given {@link NetworkStats}, or {@code null} to clear list.
      */
     public void bindStats(NetworkStats stats, int[] restrictedUids) {
-        ArrayList<AppItem> items = new ArrayList<>();
-        long largest = 0;
-
-        final int currentUserId = ActivityManager.getCurrentUser();
-        UserManager userManager = UserManager.get(getContext());
-        final List<UserHandle> profiles = userManager.getUserProfiles();
-        final SparseArray<AppItem> knownItems = new SparseArray<AppItem>();
-
-        NetworkStats.Entry entry = null;
-        final int size = stats != null ? stats.size() : 0;
-        for (int i = 0; i < size; i++) {
-            entry = stats.getValues(i, entry);
-
-            // Decide how to collapse items together
-            final int uid = entry.uid;
-
-            final int collapseKey;
-            final int category;
-            final int userId = UserHandle.getUserId(uid);
-            if (UserHandle.isApp(uid)) {
-                if (profiles.contains(new UserHandle(userId))) {
-                    if (userId != currentUserId) {
-                        // Add to a managed user item.
-                        final int managedKey = UidDetailProvider.buildKeyForUser(userId);
-                        largest = accumulate(managedKey, knownItems, entry, AppItem.CATEGORY_USER,
-                                items, largest);
-                    }
-                    // Add to app item.
-                    collapseKey = uid;
-                    category = AppItem.CATEGORY_APP;
-                } else {
-                    // If it is a removed user add it to the removed users' key
-                    final UserInfo info = userManager.getUserInfo(userId);
-                    if (info == null) {
-                        collapseKey = UID_REMOVED;
-                        category = AppItem.CATEGORY_APP;
-                    } else {
-                        // Add to other user item.
-                        collapseKey = UidDetailProvider.buildKeyForUser(userId);
-                        category = AppItem.CATEGORY_USER;
-                    }
-                }
-            } else if (uid == UID_REMOVED || uid == UID_TETHERING) {
-                collapseKey = uid;
-                category = AppItem.CATEGORY_APP;
-            } else {
-                collapseKey = android.os.Process.SYSTEM_UID;
-                category = AppItem.CATEGORY_APP;
+        final UserManager userManager = UserManager.get(getContext());
+        final AppDataUsageAggregator aggregator = new AppDataUsageAggregator(userManager,
+                ActivityManager.getCurrentUser(), userManager.getUserProfiles());
+        final List<AppItem> items = aggregator.aggregate(stats, restrictedUids);
+        final long largest = aggregator.getLargest();
+
+        // Reuse preferences already bound to the same key so that switching cycles only
+        // rebinds totals instead of reloading every app detail.
+        final SparseArray<AppDataUsagePreference> existing = new SparseArray<>();
+        for (int i = mApps.getPreferenceCount() - 1; i >= 0; i--) {
+            final Preference pref = mApps.getPreference(i);
+            if (pref instanceof AppDataUsagePreference) {
+                existing.put(((AppDataUsagePreference) pref).getItem().key,
+                        (AppDataUsagePreference) pref);
             }
-            largest = accumulate(collapseKey, knownItems, entry, category, items, largest);
         }
 
-        final int restrictedUidsMax = restrictedUids.length;
-        for (int i = 0; i < restrictedUidsMax; ++i) {
-            final int uid = restrictedUids[i];
-            // Only splice in restricted state for current user or managed users
-            if (!profiles.contains(new UserHandle(UserHandle.getUserId(uid)))) {
-                continue;
-            }
-
-            AppItem item = knownItems.get(uid);
-            if (item == null) {
-                item = new AppItem(uid);
-                item.total = -1;
-                items.add(item);
-                knownItems.put(item.key, item);
+        final int count = items.size();
+        for (int i = 0; i < count; i++) {
+            final AppItem item = items.get(i);
+            final int percentTotal = largest != 0 ? (int) (item.total * 100 / largest) : 0;
+            AppDataUsagePreference preference = existing.get(item.key);
+            if (preference != null) {
+                existing.remove(item.key);
+                preference.setItem(item, percentTotal);
+                preference.setOrder(i);
+            } else {
+                preference = new AppDataUsagePreference(getContext(), item, percentTotal,
+                        mUidDetailProvider);
+                preference.setOnPreferenceClickListener(mAppClickListener);
+                preference.setOrder(i);
+                mApps.addPreference(preference);
             }
-            item.restricted = true;
         }
-
-        Collections.sort(items);
-        mApps.removeAll();
-        for (int i = 0; i < items.size(); i++) {
-            final int percentTotal = largest != 0 ? (int) (items.get(i).total * 100 / largest) : 0;
-            AppDataUsagePreference preference = new AppDataUsagePreference(getContext(),
-                    items.get(i), percentTotal, mUidDetailProvider);
-            preference.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
-                @Override
-                public boolean onPreferenceClick(Preference preference) {
-                    AppDataUsagePreference pref = (AppDataUsagePreference) preference;
-                    AppItem item = pref.getItem();
-                    startAppDataUsage(item);
-                    return true;
-                }
-            });
-            mApps.addPreference(preference);
+        for (int i = existing.size() - 1; i >= 0; i--) {
+            mApps.removePreference(existing.valueAt(i));
         }
     }
 
+    private final Preference.OnPreferenceClickListener mAppClickListener = preference -> {
+        final AppDataUsagePreference pref = (AppDataUsagePreference) preference;
+        startAppDataUsage(pref.getItem());
+        return true;
+    };
+
     private void startAppDataUsage(AppItem item) {
         final Bundle args = new Bundle();
         args.putParcelable(AppDataUsage.ARG_APP_ITEM, item);
@@ -438,30 +398,6 @@ public class DataUsageList extends DataUsageBase {
                 .launch();
     }
 
-    /**
-     * Accumulate data usage of a network stats entry for the item mapped by the collapse key.
-     * Creates the item if needed.
-     *
-     * @param collapseKey  the collapse key used to map the item.
-     * @param knownItems   collection of known (already existing) items.
-     * @param entry        the network stats entry to extract data usage from.
-     * @param itemCategory the item is categorized on the list view by this category. Must be
-     */
-    private static long accumulate(int collapseKey, final SparseArray<AppItem> knownItems,
-            NetworkStats.Entry entry, int itemCategory, ArrayList<AppItem> items, long largest) {
-        final int uid = entry.uid;
-        AppItem item = knownItems.get(collapseKey);
-        if (item == null) {
-            item = new AppItem(collapseKey);
-            item.category = itemCategory;
-            items.add(item);
-            knownItems.put(item.key, item);
-        }
-        item.addUid(uid);
-        item.total += entry.rxBytes + entry.txBytes;
-        return Math.max(largest, item.total);
-    }
-
     /**
      * Test if device has a mobile data radio with SIM in ready state.
      */
@@ -535,6 +471,8 @@ public class DataUsageList extends DataUsageBase {
             mChart.setVisibleRange(cycle.start, cycle.end);
 
             updateDetailData();
+            mQueryCache.prefetchAdjacentCycles(mStatsSession, mTemplate, mCycleAdapter,
+                    position);
         }
 
         @Override
@@ -543,6 +481,15 @@ public class DataUsageList extends DataUsageBase {
         }
     };
 
+    private void bindChartData(ChartData data) {
+        mLoadingViewController.showContent(false /* animate */);
+        mChartData = data;
+        mChart.setNetworkStats(mChartData.network);
+
+        // calculate policy cycles based on available data
+        updatePolicy();
+    }
+
     private final LoaderCallbacks<ChartData> mChartDataCallbacks = new LoaderCallbacks<
             ChartData>() {
         @Override
@@ -552,12 +499,8 @@ public class DataUsageList extends DataUsageBase {
 
         @Override
         public void onLoadFinished(Loader<ChartData> loader, ChartData data) {
-            mLoadingViewController.showContent(false /* animate */);
-            mChartData = data;
-            mChart.setNetworkStats(mChartData.network);
-
-            // calculate policy cycles based on available data
-            updatePolicy();
+            mQueryCache.putChartData(mTemplate, DataUsageQueryCache.UID_ALL, data);
+            bindChartData(data);
         }
 
         @Override
@@ -571,7 +514,7 @@ public class DataUsageList extends DataUsageBase {
             NetworkStats>() {
         @Override
         public Loader<NetworkStats> onCreateLoader(int id, Bundle args) {
-            return new SummaryForAllUidLoader(getActivity(), mStatsSession, args);
+            return new CachedSummaryLoader(getActivity(), mStatsSession, args);
         }
 
         @Override
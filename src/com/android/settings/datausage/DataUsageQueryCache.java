@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import android.net.INetworkStatsSession;
+import android.net.NetworkStats;
+import android.net.NetworkTemplate;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.settings.core.instrumentation.PerfStats;
+import com.android.settingslib.net.ChartData;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.Objects;
+
+/**
+ * Process-wide cache of data usage queries, keyed by (template, start, end, uid).
+ *
+ * <p>Summaries for the billing cycles adjacent to the selected one are prefetched in the
+ * background, so moving back and forth in the cycle spinner is served from memory. The cache is
+ * dropped whenever the caller sees a data state change, and entries expire after
+ * {@link #MAX_AGE_MS} in any case.
+ */
+public class DataUsageQueryCache {
+
+    private static final String TAG = "DataUsageQueryCache";
+
+    /** Key uid used for queries that cover every uid. */
+    public static final int UID_ALL = -1;
+
+    @VisibleForTesting
+    static final long MAX_AGE_MS = DateUtils.MINUTE_IN_MILLIS;
+    private static final int MAX_SUMMARIES = 8;
+    private static final int MAX_CHART_DATA = 4;
+
+    private static DataUsageQueryCache sInstance;
+
+    private final LruCache<Key, Entry<NetworkStats>> mSummaries = new LruCache<>(MAX_SUMMARIES);
+    private final LruCache<Key, Entry<ChartData>> mChartData = new LruCache<>(MAX_CHART_DATA);
+    private int mGeneration;
+
+    public static synchronized DataUsageQueryCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new DataUsageQueryCache();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    DataUsageQueryCache() {
+    }
+
+    /**
+     * Return the summary for all uids in [start, end), querying the session on a cache miss.
+     * Must not be called on the main thread when the result may not be cached yet.
+     */
+    public NetworkStats getSummaryForAllUid(INetworkStatsSession session,
+            NetworkTemplate template, long start, long end) throws RemoteException {
+        final Key key = new Key(template, start, end, UID_ALL);
+        final NetworkStats cached = getCachedSummary(key);
+        PerfStats.getInstance().recordCacheLookup("datausage_summary", cached != null);
+        if (cached != null) {
+            return cached;
+        }
+        final int generation = getGeneration();
+        final NetworkStats stats = session.getSummaryForAllUid(template, start, end, false);
+        putSummary(key, stats, generation);
+        return stats;
+    }
+
+    /**
+     * Prefetch the summaries of the cycles right before and after {@code position} in the
+     * given adapter.
+     */
+    public void prefetchAdjacentCycles(INetworkStatsSession session, NetworkTemplate template,
+            CycleAdapter adapter, int position) {
+        final int count = adapter.getCount();
+        for (int i = position - 1; i <= position + 1; i += 2) {
+            if (i < 0 || i >= count) {
+                continue;
+            }
+            final CycleAdapter.CycleItem cycle = adapter.getItem(i);
+            prefetchSummary(session, template, cycle.start, cycle.end);
+        }
+    }
+
+    @VisibleForTesting
+    void prefetchSummary(INetworkStatsSession session, NetworkTemplate template, long start,
+            long end) {
+        if (getCachedSummary(new Key(template, start, end, UID_ALL)) != null) {
+            return;
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            try {
+                getSummaryForAllUid(session, template, start, end);
+            } catch (RemoteException | RuntimeException e) {
+                // The session may have been closed by the time we run; just skip prefetch.
+                Log.w(TAG, "Failed to prefetch summary", e);
+            }
+        });
+    }
+
+    /**
+     * @return the cached chart data for the template and uid, or {@code null}.
+     */
+    public ChartData getChartData(NetworkTemplate template, int uid) {
+        final ChartData data = getFresh(mChartData, new Key(template, 0, 0, uid));
+        PerfStats.getInstance().recordCacheLookup("datausage_chart", data != null);
+        return data;
+    }
+
+    /**
+     * Store chart data loaded for the template and uid.
+     */
+    public void putChartData(NetworkTemplate template, int uid, ChartData data) {
+        if (data == null) {
+            return;
+        }
+        synchronized (this) {
+            mChartData.put(new Key(template, 0, 0, uid), new Entry<>(data));
+        }
+    }
+
+    /**
+     * Drop every cached result. Queries started before this call won't be cached.
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mSummaries.evictAll();
+        mChartData.evictAll();
+    }
+
+    @VisibleForTesting
+    NetworkStats getCachedSummary(Key key) {
+        return getFresh(mSummaries, key);
+    }
+
+    @VisibleForTesting
+    synchronized void putSummary(Key key, NetworkStats stats, int generation) {
+        if (stats != null && generation == mGeneration) {
+            mSummaries.put(key, new Entry<>(stats));
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    private synchronized <T> T getFresh(LruCache<Key, Entry<T>> cache, Key key) {
+        final Entry<T> entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.mTimestamp > MAX_AGE_MS) {
+            cache.remove(key);
+            return null;
+        }
+        return entry.mValue;
+    }
+
+    private static class Entry<T> {
+        final T mValue;
+        final long mTimestamp;
+
+        Entry(T value) {
+            mValue = value;
+            mTimestamp = SystemClock.elapsedRealtime();
+        }
+    }
+
+    @VisibleForTesting
+    static class Key {
+        final NetworkTemplate mTemplate;
+        final long mStart;
+        final long mEnd;
+        final int mUid;
+
+        Key(NetworkTemplate template, long start, long end, int uid) {
+            mTemplate = template;
+            mStart = start;
+            mEnd = end;
+            mUid = uid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mStart == other.mStart && mEnd == other.mEnd && mUid == other.mUid
+                    && Objects.equals(mTemplate, other.mTemplate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mTemplate, mStart, mEnd, mUid);
+        }
+    }
+}
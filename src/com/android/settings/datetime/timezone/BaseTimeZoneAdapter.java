@@ -33,6 +33,7 @@ import com.android.settings.R;
 import com.android.settings.datetime.timezone.BaseTimeZonePicker.OnListItemClickListener;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -218,46 +219,61 @@ public class BaseTimeZoneAdapter<T extends BaseTimeZoneAdapter.AdapterItem>
      * a prefix. Each item that does not start with the supplied prefix
      * is removed from the list.</p>
      *
-     * The filtering operation is not optimized, due to small data size (~260 regions),
-     * require additional pre-processing. Potentially, a trie structure can be used to match
-     * prefixes of the search keys.
+     * A prefix matches an item if one of its search keys, or a word in one of them, starts with
+     * the prefix. Every such suffix of the search keys is indexed once in sorted order, so a
+     * lookup is a binary search followed by a scan over the matches only. When the user extends
+     * the previous prefix, the search is limited to the range that matched it.
      */
     @VisibleForTesting
     public class ArrayFilter extends Filter {
 
         private BreakIterator mBreakIterator = BreakIterator.getWordInstance(mLocale);
 
+        /** Lower-cased search key suffixes starting at a word, sorted. */
+        private String[] mIndexKeys;
+        /** Position in {@link #mOriginalItems} of the item each of {@link #mIndexKeys} is from. */
+        private int[] mIndexItems;
+
+        /** Last filtered prefix, and the range of {@link #mIndexKeys} it matched. */
+        private String mLastPrefix;
+        private int mLastStart;
+        private int mLastEnd;
+
         @WorkerThread
         @Override
         protected FilterResults performFiltering(CharSequence prefix) {
             final List<T> newItems;
             if (TextUtils.isEmpty(prefix)) {
                 newItems = mOriginalItems;
+                mLastPrefix = null;
             } else {
+                if (mIndexKeys == null) {
+                    buildIndex();
+                }
                 final String prefixString = prefix.toString().toLowerCase(mLocale);
-                newItems = new ArrayList<>();
-
-                for (T item : mOriginalItems) {
-                    outer:
-                    for (String searchKey : item.getSearchKeys()) {
-                        searchKey = searchKey.toLowerCase(mLocale);
-                        // First match against the whole, non-splitted value
-                        if (searchKey.startsWith(prefixString)) {
-                            newItems.add(item);
-                            break outer;
-                        } else {
-                            mBreakIterator.setText(searchKey);
-                            for (int wordStart = 0, wordLimit = mBreakIterator.next();
-                                    wordLimit != BreakIterator.DONE;
-                                    wordStart = wordLimit,
-                                            wordLimit = mBreakIterator.next()) {
-                                if (mBreakIterator.getRuleStatus() != BreakIterator.WORD_NONE
-                                        && searchKey.startsWith(prefixString, wordStart)) {
-                                    newItems.add(item);
-                                    break outer;
-                                }
-                            }
-                        }
+                int start = 0;
+                int end = mIndexKeys.length;
+                if (mLastPrefix != null && prefixString.startsWith(mLastPrefix)) {
+                    // Everything matching the new prefix also matched the previous one.
+                    start = mLastStart;
+                    end = mLastEnd;
+                }
+                start = lowerBound(prefixString, start, end);
+                int matchEnd = start;
+                while (matchEnd < end && mIndexKeys[matchEnd].startsWith(prefixString)) {
+                    matchEnd++;
+                }
+                mLastPrefix = prefixString;
+                mLastStart = start;
+                mLastEnd = matchEnd;
+
+                // Keep the original order, and each item only once.
+                final int[] matches = Arrays.copyOfRange(mIndexItems, start, matchEnd);
+                Arrays.sort(matches);
+                newItems = new ArrayList<>(matches.length);
+                for (int i = 0; i < matches.length; i++) {
+                    if (i == 0 || matches[i] != matches[i - 1]) {
+                        newItems.add(mOriginalItems.get(matches[i]));
                     }
                 }
             }
@@ -269,6 +285,56 @@ public class BaseTimeZoneAdapter<T extends BaseTimeZoneAdapter.AdapterItem>
             return results;
         }
 
+        private void buildIndex() {
+            final List<String> keys = new ArrayList<>();
+            final List<Integer> items = new ArrayList<>();
+            for (int i = 0, size = mOriginalItems.size(); i < size; i++) {
+                for (String searchKey : mOriginalItems.get(i).getSearchKeys()) {
+                    searchKey = searchKey.toLowerCase(mLocale);
+                    // First index the whole, non-splitted value
+                    keys.add(searchKey);
+                    items.add(i);
+                    mBreakIterator.setText(searchKey);
+                    for (int wordStart = 0, wordLimit = mBreakIterator.next();
+                            wordLimit != BreakIterator.DONE;
+                            wordStart = wordLimit, wordLimit = mBreakIterator.next()) {
+                        if (wordStart > 0
+                                && mBreakIterator.getRuleStatus() != BreakIterator.WORD_NONE) {
+                            keys.add(searchKey.substring(wordStart));
+                            items.add(i);
+                        }
+                    }
+                }
+            }
+            final Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+            mIndexKeys = new String[order.length];
+            mIndexItems = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                mIndexKeys[i] = keys.get(order[i]);
+                mIndexItems[i] = items.get(order[i]);
+            }
+        }
+
+        /**
+         * @return the first position in [start, end) of {@link #mIndexKeys} not before
+         * {@code key}.
+         */
+        private int lowerBound(String key, int start, int end) {
+            while (start < end) {
+                final int mid = (start + end) >>> 1;
+                if (mIndexKeys[mid].compareTo(key) < 0) {
+                    start = mid + 1;
+                } else {
+                    end = mid;
+                }
+            }
+            return start;
+        }
+
         @VisibleForTesting
         @Override
         public void publishResults(CharSequence constraint, FilterResults results) {
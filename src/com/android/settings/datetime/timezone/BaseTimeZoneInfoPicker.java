@@ -20,10 +20,11 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
-import android.icu.text.DateFormat;
 import android.icu.text.SimpleDateFormat;
-import android.icu.util.Calendar;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
+import android.text.format.DateUtils;
 
 import com.android.settings.R;
 import com.android.settings.datetime.timezone.model.TimeZoneData;
@@ -40,6 +41,9 @@ public abstract class BaseTimeZoneInfoPicker extends BaseTimeZonePicker {
     protected static final String TAG = "RegionZoneSearchPicker";
     protected ZoneAdapter mAdapter;
 
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mMinuteTick = this::onMinuteTick;
+
     protected BaseTimeZoneInfoPicker(int titleResId, int searchHintResId,
             boolean searchEnabled, boolean defaultExpandSearch) {
         super(titleResId, searchHintResId, searchEnabled, defaultExpandSearch);
@@ -52,6 +56,40 @@ public abstract class BaseTimeZoneInfoPicker extends BaseTimeZonePicker {
         return mAdapter;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (mAdapter != null) {
+            // The time may have changed while paused.
+            onMinuteTick();
+        }
+        scheduleMinuteTick();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mHandler.removeCallbacks(mMinuteTick);
+    }
+
+    /**
+     * Rebind the rows on screen, only their time can have changed.
+     */
+    private void onMinuteTick() {
+        if (mAdapter != null) {
+            mAdapter.notifyItemRangeChanged(0, mAdapter.getItemCount());
+        }
+        scheduleMinuteTick();
+    }
+
+    private void scheduleMinuteTick() {
+        mHandler.removeCallbacks(mMinuteTick);
+        final long delay = mAdapter != null
+                ? mAdapter.mClockSnapshot.getMillisToNextMinute()
+                : DateUtils.MINUTE_IN_MILLIS;
+        mHandler.postDelayed(mMinuteTick, delay);
+    }
+
     /**
      * @return the text shown in the header, or null to show no header.
      */
@@ -73,23 +111,33 @@ public abstract class BaseTimeZoneInfoPicker extends BaseTimeZonePicker {
 
     protected static class ZoneAdapter extends BaseTimeZoneAdapter<TimeZoneInfoItem> {
 
+        private final ClockSnapshot mClockSnapshot;
+
         public ZoneAdapter(Context context, List<TimeZoneInfo> timeZones,
                 OnListItemClickListener<TimeZoneInfoItem> onListItemClickListener, Locale locale,
                 CharSequence headerText) {
-            super(createTimeZoneInfoItems(context, timeZones, locale),
+            this(context, timeZones, onListItemClickListener, locale, headerText,
+                    new ClockSnapshot(new SimpleDateFormat(
+                            android.text.format.DateFormat.getTimeFormatString(context),
+                            locale)));
+        }
+
+        private ZoneAdapter(Context context, List<TimeZoneInfo> timeZones,
+                OnListItemClickListener<TimeZoneInfoItem> onListItemClickListener, Locale locale,
+                CharSequence headerText, ClockSnapshot clockSnapshot) {
+            super(createTimeZoneInfoItems(context, timeZones, clockSnapshot),
                     onListItemClickListener, locale,  true /* showItemSummary */,
                     headerText /* headerText */);
+            mClockSnapshot = clockSnapshot;
         }
 
         private static List<TimeZoneInfoItem> createTimeZoneInfoItems(Context context,
-                List<TimeZoneInfo> timeZones, Locale locale) {
-            final DateFormat currentTimeFormat = new SimpleDateFormat(
-                    android.text.format.DateFormat.getTimeFormatString(context), locale);
+                List<TimeZoneInfo> timeZones, ClockSnapshot clockSnapshot) {
             final ArrayList<TimeZoneInfoItem> results = new ArrayList<>(timeZones.size());
             final Resources resources = context.getResources();
             long i = 0;
             for (TimeZoneInfo timeZone : timeZones) {
-                results.add(new TimeZoneInfoItem(i++, timeZone, resources, currentTimeFormat));
+                results.add(new TimeZoneInfoItem(i++, timeZone, resources, clockSnapshot));
             }
             return results;
         }
@@ -99,16 +147,16 @@ public abstract class BaseTimeZoneInfoPicker extends BaseTimeZonePicker {
         private final long mItemId;
         private final TimeZoneInfo mTimeZoneInfo;
         private final Resources mResources;
-        private final DateFormat mTimeFormat;
+        private final ClockSnapshot mClockSnapshot;
         private final String mTitle;
         private final String[] mSearchKeys;
 
         private TimeZoneInfoItem(long itemId, TimeZoneInfo timeZoneInfo, Resources resources,
-                DateFormat timeFormat) {
+                ClockSnapshot clockSnapshot) {
             mItemId = itemId;
             mTimeZoneInfo = timeZoneInfo;
             mResources = resources;
-            mTimeFormat = timeFormat;
+            mClockSnapshot = clockSnapshot;
             mTitle = createTitle(timeZoneInfo);
             mSearchKeys = new String[] { mTitle };
         }
@@ -163,7 +211,7 @@ public abstract class BaseTimeZoneInfoPicker extends BaseTimeZonePicker {
 
         @Override
         public String getCurrentTime() {
-            return mTimeFormat.format(Calendar.getInstance(mTimeZoneInfo.getTimeZone()));
+            return mClockSnapshot.getTime(mTimeZoneInfo.getTimeZone());
         }
 
         @Override
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datetime.timezone;
+
+import android.icu.text.DateFormat;
+import android.icu.util.TimeZone;
+import android.support.annotation.VisibleForTesting;
+import android.text.format.DateUtils;
+import android.util.SparseArray;
+
+import java.util.Date;
+import java.util.function.LongSupplier;
+
+/**
+ * Current time of the rows of a time zone list, formatted with one pattern. The time of each
+ * distinct UTC offset is formatted once per minute and shared by every zone with that offset.
+ */
+class ClockSnapshot {
+
+    private final DateFormat mFormat;
+    private final LongSupplier mClock;
+    /** Formatted time by UTC offset in millis, for {@link #mMinute}. */
+    private final SparseArray<String> mTimes = new SparseArray<>();
+    private long mMinute = -1;
+
+    /**
+     * @param format the format the time is shown in; owned by this snapshot from now on.
+     */
+    ClockSnapshot(DateFormat format) {
+        this(format, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    ClockSnapshot(DateFormat format, LongSupplier clock) {
+        mFormat = format;
+        // Offsets are applied to the instant, so format in UTC.
+        mFormat.setTimeZone(TimeZone.GMT_ZONE);
+        mClock = clock;
+    }
+
+    /**
+     * @return the current time in {@code timeZone}.
+     */
+    synchronized String getTime(TimeZone timeZone) {
+        final long now = mClock.getAsLong();
+        final long minute = now - now % DateUtils.MINUTE_IN_MILLIS;
+        if (minute != mMinute) {
+            mMinute = minute;
+            mTimes.clear();
+        }
+        final int offset = timeZone.getOffset(now);
+        String time = mTimes.get(offset);
+        if (time == null) {
+            time = mFormat.format(new Date(now + offset));
+            mTimes.put(offset, time);
+        }
+        return time;
+    }
+
+    /**
+     * @return milliseconds until the shown times change.
+     */
+    long getMillisToNextMinute() {
+        final long now = mClock.getAsLong();
+        return DateUtils.MINUTE_IN_MILLIS - now % DateUtils.MINUTE_IN_MILLIS;
+    }
+}
@@ -75,6 +75,7 @@ public class EthernetConfigDialog extends AlertDialog {
 	private EditText netMask;
 
 	private EthernetManager ethManager;
+	private EthernetWorker<?> worker;
 
 	private Context context;
 
@@ -93,11 +94,14 @@ public class EthernetConfigDialog extends AlertDialog {
 	 * 
 	 * @param context Application context.
 	 * @param manager Ethernet manager.
+	 * @param worker Ethernet worker every call to the manager runs on.
 	 */
-	public EthernetConfigDialog(Context context, EthernetManager ethManager) {
+	public EthernetConfigDialog(Context context, EthernetManager ethManager,
+			EthernetWorker<?> worker) {
 		super(context);
 		this.context = context;
 		this.ethManager = ethManager;
+		this.worker = worker;
 		this.dialog = this;
 		initDialog();
 	}
@@ -158,26 +162,56 @@ public class EthernetConfigDialog extends AlertDialog {
 	protected void onStart() {
 		super.onStart();
 		// Update the fields of the dialog.
-		String iface = ethManager.getInterfaceName();
-		if (iface == null) {
-			Log.e(TAG, ERROR_NO_INTERFACES);
-			Toast.makeText(context, ERROR_NO_INTERFACES, Toast.LENGTH_LONG).show();
-			dismiss();
-			return;
-		}
-		dev.setText(iface);
-		if (ethManager.getConnectionMode() == EthernetConnectionMode.DHCP) {
-			conType.check(R.id.dhcp_radio);
-			enterpriseWrapper.setVisibility(View.GONE);
-		} else {
-			conType.check(R.id.manual_radio);
-			enterpriseWrapper.setVisibility(View.VISIBLE);
-			ipAddr.setText(ethManager.getIp() != null ? ethManager.getIp().getHostAddress() : "");
-			dns1.setText(ethManager.getDns1() != null ? ethManager.getDns1().getHostAddress() : "");
-			dns2.setText(ethManager.getDns2() != null ? ethManager.getDns2().getHostAddress() : "");
-			netMask.setText(ethManager.getNetmask() != null ? ethManager.getNetmask().getHostAddress() : "");
-			gateway.setText(ethManager.getGateway() != null ? ethManager.getGateway().getHostAddress() : "");
-		}
+		worker.execute(new Runnable() {
+			@Override
+			public void run() {
+				final String iface = ethManager.getInterfaceName();
+				final boolean dhcp = ethManager.getConnectionMode() == EthernetConnectionMode.DHCP;
+				final String ip = dhcp ? null : getHostAddress(ethManager.getIp());
+				final String dns1Addr = dhcp ? null : getHostAddress(ethManager.getDns1());
+				final String dns2Addr = dhcp ? null : getHostAddress(ethManager.getDns2());
+				final String netmask = dhcp ? null : getHostAddress(ethManager.getNetmask());
+				final String gatewayAddr = dhcp ? null : getHostAddress(ethManager.getGateway());
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (!isShowing())
+							return;
+						if (iface == null) {
+							Log.e(TAG, ERROR_NO_INTERFACES);
+							Toast.makeText(context, ERROR_NO_INTERFACES, Toast.LENGTH_LONG).show();
+							dismiss();
+							return;
+						}
+						dev.setText(iface);
+						if (dhcp) {
+							conType.check(R.id.dhcp_radio);
+							enterpriseWrapper.setVisibility(View.GONE);
+						} else {
+							conType.check(R.id.manual_radio);
+							enterpriseWrapper.setVisibility(View.VISIBLE);
+							ipAddr.setText(ip);
+							dns1.setText(dns1Addr);
+							dns2.setText(dns2Addr);
+							netMask.setText(netmask);
+							gateway.setText(gatewayAddr);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Returns the textual representation of the given address.
+	 *
+	 * @param address Address to convert.
+	 *
+	 * @return The host address, or an empty string if {@code address} is
+	 *         {@code null}.
+	 */
+	private static String getHostAddress(InetAddress address) {
+		return address != null ? address.getHostAddress() : "";
 	}
 
 	/**
@@ -192,34 +226,44 @@ public class EthernetConfigDialog extends AlertDialog {
 		pd.setIndeterminate(true);
 		pd.show();
 
-		new Thread(new Runnable() {
+		final String iface = dev.getText().toString();
+		final boolean dhcp = conType.getCheckedRadioButtonId() == R.id.dhcp_radio;
+		final String ip = ipAddr.getText().toString();
+		final String mask = netMask.getText().toString();
+		final String dns1Addr = dns1.getText().toString();
+		final String dns2Addr = dns2.getText().toString();
+		final String gatewayAddr = gateway.getText().toString();
+
+		Log.v(TAG, "Config device for " + iface);
+		if (!dhcp) {
+			Log.v(TAG, "Config device for static, IP = " + ip + ", mask = " + mask + ", DNS1 = " +
+					dns1Addr + ", DNS2 = " + dns2Addr + ", gateway = " + gatewayAddr);
+			if (!checkStaticIpValues()) {
+				Log.e(TAG, "Config device for static failed becuase of wrong formated data");
+				pd.dismiss();
+				return;
+			}
+		} else {
+			Log.v(TAG, "Config device for DHCP ");
+		}
+
+		worker.execute(new Runnable() {
 			@Override
 			public void run() {
 				EthernetConfiguration info = new EthernetConfiguration();
-				info.setInterfaceName(dev.getText().toString());
-				Log.v(TAG, "Config device for " + dev.getText().toString());
+				info.setInterfaceName(iface);
 
 				try {
-					if (conType.getCheckedRadioButtonId() == R.id.dhcp_radio) {
-						Log.v(TAG, "Config device for DHCP ");
+					if (dhcp) {
 						info.setConnectionMode(EthernetConnectionMode.DHCP);
 					} else {
-						Log.v(TAG, "Config device for static, IP = " + ipAddr.getText().toString() + ", mask = " + 
-								netMask.getText().toString() + ", DNS1 = " + dns1.getText().toString() + ", DNS2 = " +
-								dns2.getText().toString() + ", gateway = " + gateway.getText().toString());
-						if (checkStaticIpValues()) {
-							info.setConnectionMode(EthernetConnectionMode.STATIC);
-							info.setIpAddress(InetAddress.getByName(ipAddr.getText().toString()));
-							info.setNetMask(InetAddress.getByName(netMask.getText().toString()));
-							info.setDns1Addr(InetAddress.getByName(dns1.getText().toString()));
-							if (!dns2.getText().toString().isEmpty())
-								info.setDns2Addr(InetAddress.getByName(dns2.getText().toString()));
-							info.setGateway(InetAddress.getByName(gateway.getText().toString()));
-						} else {
-							Log.e(TAG, "Config device for static failed becuase of wrong formated data");
-							pd.dismiss();
-							return;
-						}
+						info.setConnectionMode(EthernetConnectionMode.STATIC);
+						info.setIpAddress(InetAddress.getByName(ip));
+						info.setNetMask(InetAddress.getByName(mask));
+						info.setDns1Addr(InetAddress.getByName(dns1Addr));
+						if (!dns2Addr.isEmpty())
+							info.setDns2Addr(InetAddress.getByName(dns2Addr));
+						info.setGateway(InetAddress.getByName(gatewayAddr));
 					}
 
 					ethManager.configureInterface(info);
@@ -238,7 +282,7 @@ public class EthernetConfigDialog extends AlertDialog {
 					pd.dismiss();
 				}
 			}
-		}).start();
+		});
 	}
 
 	/**
@@ -45,6 +45,7 @@ import android.widget.Toast;
 import com.digi.android.ethernet.EthernetManager;
 import com.digi.android.ethernet.EthernetConnectionMode;
 
+import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -52,7 +53,9 @@ import java.util.List;
  * Main fragment of the Ethernet settings preference page.
  */
 public class EthernetSettings extends SettingsPreferenceFragment
-		implements Indexable, SwitchBar.OnSwitchChangeListener {
+		implements Indexable, SwitchBar.OnSwitchChangeListener,
+		EthernetWorker.StateReader<EthernetSettings.EthernetState>,
+		EthernetWorker.StateListener<EthernetSettings.EthernetState> {
 
 	// Constants.
 	public static final String UPDATE_NETWORK_DATA = "com.digi.android.network.update";
@@ -75,8 +78,6 @@ public class EthernetSettings extends SettingsPreferenceFragment
 
 	private static final int MAX_TIMEOUT = 10000;
 
-	private final Object lock = new Object();
-
 	// Variables.
 	private EthernetManager ethManager;
 	private ConnectivityManager connManager;
@@ -89,7 +90,12 @@ public class EthernetSettings extends SettingsPreferenceFragment
 
 	private String iface;
 
-	private boolean notified = false;
+	private EthernetWorker<EthernetState> worker;
+
+	// Progress dialogs dismissed with the next state read.
+	private final List<ProgressDialog> armedDialogs = new ArrayList<>();
+	// Progress dialogs shown and not dismissed yet.
+	private final List<ProgressDialog> shownDialogs = new ArrayList<>();
 
 	private Handler handler = new Handler();
 
@@ -139,6 +145,9 @@ public class EthernetSettings extends SettingsPreferenceFragment
 
 		context = getActivity();
 
+		worker = new EthernetWorker<>(this, this,
+				context.getResources().getInteger(R.integer.config_ethernet_connectivity_debounce_ms));
+
 		ethManager = new EthernetManager(context);
 		connManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
 
@@ -152,7 +161,7 @@ public class EthernetSettings extends SettingsPreferenceFragment
 		final PreferenceScreen preferenceScreen = getPreferenceScreen();
 		configPref = preferenceScreen.findPreference(PREF_CONFIG);
 
-		configDialog = new EthernetConfigDialog(context, ethManager);
+		configDialog = new EthernetConfigDialog(context, ethManager, worker);
 	}
 
 	@Override
@@ -162,16 +171,10 @@ public class EthernetSettings extends SettingsPreferenceFragment
 		IntentFilter filter = new IntentFilter(UPDATE_NETWORK_DATA);
 		filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
 		context.registerReceiver(receiver, filter);
-		// Update switch.
-		switchEth.setChecked(ethManager.isEnabled() ? true : false);
+		// Register listener.
 		switchBar.addOnSwitchChangeListener(this);
-		// Update Ethernet configuration.
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				updateInfo();
-			}
-		}).start();
+		// Update switch and Ethernet configuration.
+		worker.requestRead();
 	}
 
 	@Override
@@ -183,6 +186,17 @@ public class EthernetSettings extends SettingsPreferenceFragment
 		switchBar.removeOnSwitchChangeListener(this);
 	}
 
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		// Pending writes still run, but no state is read or shown anymore.
+		worker.stop();
+		for (ProgressDialog dialog : shownDialogs)
+			dialog.dismiss();
+		shownDialogs.clear();
+		armedDialogs.clear();
+	}
+
 	@Override
 	public void onSwitchChanged(Switch switchView, final boolean isChecked) {
 		// Create and show a progress dialog.
@@ -193,95 +207,104 @@ public class EthernetSettings extends SettingsPreferenceFragment
 		dialog.setIndeterminate(true);
 		dialog.show();
 
-		// Change the state of the interface and close the dialog.
-		new Thread (new Runnable() {
+		// Change the state of the interface and close the dialog. If the
+		// Ethernet cable is not connected no connectivity event is received,
+		// so read the state anyway once the timeout expires.
+		runAndRefresh(new Runnable() {
 			@Override
 			public void run() {
-				notified = false;
 				ethManager.setEnabled(isChecked);
-				// Wait until a connectivity change event is received or the 
-				// timeout expires.
-				try {
-					synchronized (lock) {
-						lock.wait(MAX_TIMEOUT);
+			}
+		}, dialog, MAX_TIMEOUT);
+	}
+
+	/**
+	 * Runs the given operation on the Ethernet worker, then dismisses the
+	 * given progress dialog with the first state read after it.
+	 *
+	 * @param operation Operation to run, or {@code null} to just read the
+	 *                  state.
+	 * @param dialog Progress dialog being shown.
+	 * @param readDelayMs Maximum delay in milliseconds before the state is
+	 *                    read.
+	 */
+	private void runAndRefresh(final Runnable operation, final ProgressDialog dialog,
+			final long readDelayMs) {
+		shownDialogs.add(dialog);
+		worker.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (operation != null)
+					operation.run();
+				// Posted before the read result, so the dialog is only
+				// dismissed with a state read after the operation.
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (shownDialogs.contains(dialog))
+							armedDialogs.add(dialog);
 					}
-				} catch (InterruptedException e) { }
-				// If the Ethernet cable is not connected we didn't receive any
-				// event, so update the info.
-				if (!notified)
-					updateInfo();
-				dialog.dismiss();
+				});
+				worker.requestRead(readDelayMs);
 			}
-		}).start();
+		});
+	}
+
+	@Override
+	public EthernetState readState() {
+		return new EthernetState(ethManager);
+	}
+
+	@Override
+	public void onStateRead(EthernetState state) {
+		updateInfo(state);
+		for (ProgressDialog dialog : armedDialogs) {
+			dialog.dismiss();
+			shownDialogs.remove(dialog);
+		}
+		armedDialogs.clear();
 	}
 
 	/**
-	 * Updates the preferences page with the stored Ethernet settings.
+	 * Updates the preferences page with the given Ethernet state.
+	 *
+	 * @param state Ethernet state to show.
 	 */
-	private void updateInfo() {
-		final boolean isEnabled = ethManager.isEnabled();
-		if (isEnabled) {
-			final EthernetConnectionMode type = ethManager.getConnectionMode();
-			final String ip = ethManager.getIp() != null ? 
-					ethManager.getIp().getHostAddress() : null;
-			final String netmask = ethManager.getNetmask() != null ? 
-					ethManager.getNetmask().getHostAddress() : null;
-			final String dns1 = ethManager.getDns1() != null ? 
-					ethManager.getDns1().getHostAddress() : null;
-			final String dns2 = ethManager.getDns2() != null ? 
-					ethManager.getDns2().getHostAddress() : null;
-			final String gateway = ethManager.getGateway() != null ? 
-					ethManager.getGateway().getHostAddress() : null;
-			final String mac = ethManager.getMacAddress();
-
-			handler.post(new Runnable() {
-				@Override
-				public void run() {
-					findPreference(PREF_CONFIG).setEnabled(true);
-
-					findPreference(PREF_CON_TYPE).setSummary(type != null ?
-							type.getDescription() : context.getString(R.string.status_unavailable));
-					findPreference(PREF_IP).setSummary(!TextUtils.isEmpty(ip) ?
-							ip : context.getString(R.string.status_unavailable));
-					findPreference(PREF_NETMASK).setSummary(!TextUtils.isEmpty(netmask) ?
-							netmask : context.getString(R.string.status_unavailable));
-					findPreference(PREF_DNS1).setSummary(!TextUtils.isEmpty(dns1) ?
-							dns1 : context.getString(R.string.status_unavailable));
-					findPreference(PREF_DNS2).setSummary(!TextUtils.isEmpty(dns2) ?
-							dns2 : context.getString(R.string.status_unavailable));
-					findPreference(PREF_GATEWAY).setSummary(!TextUtils.isEmpty(gateway) ?
-							gateway : context.getString(R.string.status_unavailable));
-					findPreference(PREF_MAC).setSummary(!TextUtils.isEmpty(mac) ?
-							mac : context.getString(R.string.status_unavailable));
-				}
-			});
+	private void updateInfo(EthernetState state) {
+		if (state.enabled) {
+			findPreference(PREF_CONFIG).setEnabled(true);
+
+			findPreference(PREF_CON_TYPE).setSummary(state.type != null ?
+					state.type.getDescription() : context.getString(R.string.status_unavailable));
+			findPreference(PREF_IP).setSummary(!TextUtils.isEmpty(state.ip) ?
+					state.ip : context.getString(R.string.status_unavailable));
+			findPreference(PREF_NETMASK).setSummary(!TextUtils.isEmpty(state.netmask) ?
+					state.netmask : context.getString(R.string.status_unavailable));
+			findPreference(PREF_DNS1).setSummary(!TextUtils.isEmpty(state.dns1) ?
+					state.dns1 : context.getString(R.string.status_unavailable));
+			findPreference(PREF_DNS2).setSummary(!TextUtils.isEmpty(state.dns2) ?
+					state.dns2 : context.getString(R.string.status_unavailable));
+			findPreference(PREF_GATEWAY).setSummary(!TextUtils.isEmpty(state.gateway) ?
+					state.gateway : context.getString(R.string.status_unavailable));
+			findPreference(PREF_MAC).setSummary(!TextUtils.isEmpty(state.mac) ?
+					state.mac : context.getString(R.string.status_unavailable));
 		} else {
-			handler.post(new Runnable() {
-				@Override
-				public void run() {
-					findPreference(PREF_CONFIG).setEnabled(false);
-
-					findPreference(PREF_CON_TYPE).setSummary(context.getString(R.string.status_unavailable));
-					findPreference(PREF_IP).setSummary(context.getString(R.string.status_unavailable));
-					findPreference(PREF_NETMASK).setSummary(context.getString(R.string.status_unavailable));
-					findPreference(PREF_DNS1).setSummary(context.getString(R.string.status_unavailable));
-					findPreference(PREF_DNS2).setSummary(context.getString(R.string.status_unavailable));
-					findPreference(PREF_GATEWAY).setSummary(context.getString(R.string.status_unavailable));
-					findPreference(PREF_MAC).setSummary(context.getString(R.string.status_unavailable));
-				}
-			});
+			findPreference(PREF_CONFIG).setEnabled(false);
+
+			findPreference(PREF_CON_TYPE).setSummary(context.getString(R.string.status_unavailable));
+			findPreference(PREF_IP).setSummary(context.getString(R.string.status_unavailable));
+			findPreference(PREF_NETMASK).setSummary(context.getString(R.string.status_unavailable));
+			findPreference(PREF_DNS1).setSummary(context.getString(R.string.status_unavailable));
+			findPreference(PREF_DNS2).setSummary(context.getString(R.string.status_unavailable));
+			findPreference(PREF_GATEWAY).setSummary(context.getString(R.string.status_unavailable));
+			findPreference(PREF_MAC).setSummary(context.getString(R.string.status_unavailable));
 		}
 
 		// Ensure the switch is accordingly configured with the interface state.
-		if (isEnabled != switchEth.isChecked()) {
-			handler.post(new Runnable() {
-				@Override
-				public void run() {
-					switchBar.removeOnSwitchChangeListener(EthernetSettings.this);
-					switchEth.setChecked(isEnabled);
-					switchBar.addOnSwitchChangeListener(EthernetSettings.this);
-				}
-			});
+		if (state.enabled != switchEth.isChecked()) {
+			switchBar.removeOnSwitchChangeListener(this);
+			switchEth.setChecked(state.enabled);
+			switchBar.addOnSwitchChangeListener(this);
 		}
 	}
 
@@ -298,13 +321,7 @@ public class EthernetSettings extends SettingsPreferenceFragment
 		dialog.setIndeterminate(true);
 		dialog.show();
 
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				updateInfo();
-				dialog.dismiss();
-			}
-		}).start();
+		runAndRefresh(null, dialog, 0);
 	}
 
 	/**
@@ -313,16 +330,46 @@ public class EthernetSettings extends SettingsPreferenceFragment
 	private void handleConnectivityEvent() {
 		State state = connManager.getNetworkInfo(ConnectivityManager.TYPE_ETHERNET).getState();
 		Log.i(TAG, "Connectivity changed: " + state.toString());
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				updateInfo();
-				synchronized (lock) {
-					notified = true;
-					lock.notify();
-				}
+		worker.onConnectivityChanged();
+	}
+
+	/**
+	 * Ethernet interface state, read on the Ethernet worker.
+	 */
+	static class EthernetState {
+		final boolean enabled;
+		final EthernetConnectionMode type;
+		final String ip;
+		final String netmask;
+		final String dns1;
+		final String dns2;
+		final String gateway;
+		final String mac;
+
+		EthernetState(EthernetManager ethManager) {
+			enabled = ethManager.isEnabled();
+			if (enabled) {
+				type = ethManager.getConnectionMode();
+				ip = getHostAddress(ethManager.getIp());
+				netmask = getHostAddress(ethManager.getNetmask());
+				dns1 = getHostAddress(ethManager.getDns1());
+				dns2 = getHostAddress(ethManager.getDns2());
+				gateway = getHostAddress(ethManager.getGateway());
+				mac = ethManager.getMacAddress();
+			} else {
+				type = null;
+				ip = null;
+				netmask = null;
+				dns1 = null;
+				dns2 = null;
+				gateway = null;
+				mac = null;
 			}
-		}).start();
+		}
+
+		private static String getHostAddress(InetAddress address) {
+			return address != null ? address.getHostAddress() : null;
+		}
 	}
 
 	public static final SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
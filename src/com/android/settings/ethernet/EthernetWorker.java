@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019, Digi International Inc.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, you can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.android.settings.ethernet;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Serialized worker for the Ethernet settings.
+ *
+ * <p>Every call to the Ethernet manager goes through one background thread,
+ * so writes and reads are never interleaved. At most one read of the state
+ * is queued at any time: a new read request replaces the queued one if it
+ * should run sooner, and is dropped otherwise, since the queued read already
+ * returns the latest state. Connectivity changes are debounced within a
+ * window, so a flapping link produces one read per window.</p>
+ *
+ * @param <T> Type of the Ethernet state read by the worker.
+ */
+class EthernetWorker<T> {
+
+	/**
+	 * Reads the Ethernet state, on the worker thread.
+	 */
+	interface StateReader<T> {
+		T readState();
+	}
+
+	/**
+	 * Receives each state read, on the main thread.
+	 */
+	interface StateListener<T> {
+		void onStateRead(T state);
+	}
+
+	// Constants.
+	private static final String TAG = "EthernetWorker";
+
+	private static final int MSG_READ = 1;
+
+	private static final long NO_READ_QUEUED = -1;
+
+	// Variables.
+	private static HandlerThread workerThread;
+
+	private final StateReader<T> reader;
+	private final StateListener<T> listener;
+	private final long debounceMs;
+	private final Handler workerHandler;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+	// Uptime at which the queued read runs, or NO_READ_QUEUED.
+	private long queuedReadAt = NO_READ_QUEUED;
+	private boolean stopped = false;
+
+	/**
+	 * Class constructor. Creates a new {@code EthernetWorker} running on the
+	 * shared Ethernet worker thread.
+	 *
+	 * @param reader Reader of the Ethernet state.
+	 * @param listener Listener notified with each state read.
+	 * @param debounceMs Window in milliseconds connectivity changes are
+	 *                   merged within.
+	 */
+	EthernetWorker(StateReader<T> reader, StateListener<T> listener, long debounceMs) {
+		this(reader, listener, debounceMs, getWorkerLooper());
+	}
+
+	/**
+	 * Class constructor. Creates a new {@code EthernetWorker} running on the
+	 * given looper.
+	 *
+	 * @param reader Reader of the Ethernet state.
+	 * @param listener Listener notified with each state read.
+	 * @param debounceMs Window in milliseconds connectivity changes are
+	 *                   merged within.
+	 * @param looper Looper of the worker thread.
+	 */
+	EthernetWorker(StateReader<T> reader, StateListener<T> listener, long debounceMs,
+			Looper looper) {
+		this.reader = reader;
+		this.listener = listener;
+		this.debounceMs = debounceMs;
+		workerHandler = new Handler(looper) {
+			@Override
+			public void handleMessage(Message msg) {
+				if (msg.what == MSG_READ)
+					read();
+			}
+		};
+	}
+
+	private static synchronized Looper getWorkerLooper() {
+		if (workerThread == null) {
+			workerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+			workerThread.start();
+		}
+		return workerThread.getLooper();
+	}
+
+	/**
+	 * Runs the given operation on the worker thread, after every operation
+	 * and read queued before it.
+	 *
+	 * @param operation Operation to run.
+	 */
+	void execute(Runnable operation) {
+		workerHandler.post(operation);
+	}
+
+	/**
+	 * Requests a read of the Ethernet state as soon as possible.
+	 */
+	void requestRead() {
+		requestRead(0);
+	}
+
+	/**
+	 * Requests a read of the Ethernet state after the given delay.
+	 *
+	 * <p>If a read is already queued to run no later than that, this method
+	 * does nothing.</p>
+	 *
+	 * @param delayMs Delay in milliseconds.
+	 */
+	synchronized void requestRead(long delayMs) {
+		if (stopped)
+			return;
+		final long readAt = SystemClock.uptimeMillis() + delayMs;
+		if (queuedReadAt != NO_READ_QUEUED) {
+			if (queuedReadAt <= readAt)
+				return;
+			workerHandler.removeMessages(MSG_READ);
+		}
+		queuedReadAt = readAt;
+		workerHandler.sendEmptyMessageAtTime(MSG_READ, readAt);
+	}
+
+	/**
+	 * Notifies a connectivity change, reading the Ethernet state once the
+	 * debounce window expires.
+	 */
+	void onConnectivityChanged() {
+		requestRead(debounceMs);
+	}
+
+	/**
+	 * Drops the queued read and every state not yet delivered, and ignores
+	 * any later read request. Queued operations still run, so no requested
+	 * change is lost.
+	 */
+	synchronized void stop() {
+		stopped = true;
+		workerHandler.removeMessages(MSG_READ);
+		mainHandler.removeCallbacksAndMessages(null);
+		queuedReadAt = NO_READ_QUEUED;
+	}
+
+	private void read() {
+		synchronized (this) {
+			queuedReadAt = NO_READ_QUEUED;
+		}
+		final T state = reader.readState();
+		// A read already running when stop() is called must not reach the
+		// listener, which may be destroyed by then.
+		synchronized (this) {
+			if (stopped)
+				return;
+			mainHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (EthernetWorker.this) {
+						if (stopped)
+							return;
+					}
+					listener.onStateRead(state);
+				}
+			});
+		}
+	}
+}
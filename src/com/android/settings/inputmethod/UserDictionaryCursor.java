@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.inputmethod;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.widget.SectionIndexer;
+
+/**
+ * The words of a user dictionary, read through the cursor returned by the provider with
+ * duplicate rows skipped and a section index computed when the words were loaded.
+ *
+ * <p>This is not a paged cursor: every load queries and indexes all the words of the locale,
+ * only without copying them. The provider has no way to limit a query or report which words
+ * changed, so an edit reloads the whole list.
+ */
+class UserDictionaryCursor extends AbstractCursor implements SectionIndexer {
+
+    private final Cursor mCursor;
+    // Position in mCursor of each row, or null if no row is skipped
+    private final int[] mPositions;
+    private final int mCount;
+    private final String[] mSections;
+    // First row of each section, in increasing order
+    private final int[] mSectionPositions;
+
+    UserDictionaryCursor(Cursor cursor, int[] positions, int count, String[] sections,
+            int[] sectionPositions) {
+        mCursor = cursor;
+        mPositions = positions;
+        mCount = count;
+        mSections = sections;
+        mSectionPositions = sectionPositions;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mCursor.getColumnNames();
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        return mCursor.moveToPosition(mPositions == null ? newPosition : mPositions[newPosition]);
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCursor.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCursor.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCursor.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCursor.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCursor.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCursor.getDouble(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCursor.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCursor.isNull(column);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        mCursor.close();
+    }
+
+    @Override
+    public Object[] getSections() {
+        return mSections;
+    }
+
+    @Override
+    public int getPositionForSection(int section) {
+        if (mSectionPositions.length == 0) {
+            return 0;
+        }
+        section = Math.max(0, Math.min(section, mSectionPositions.length - 1));
+        return mSectionPositions[section];
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        // Last section starting at or before the position
+        int low = 0;
+        int high = mSectionPositions.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mSectionPositions[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Math.max(0, low - 1);
+    }
+}
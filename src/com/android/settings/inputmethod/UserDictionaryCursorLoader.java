@@ -19,15 +19,20 @@ package com.android.settings.inputmethod;
 import android.content.Context;
 import android.content.CursorLoader;
 import android.database.Cursor;
-import android.database.MatrixCursor;
+import android.os.OperationCanceledException;
 import android.provider.UserDictionary;
 import android.support.annotation.VisibleForTesting;
 import android.util.ArraySet;
+import android.util.Pair;
 
+import java.text.Collator;
 import java.util.Locale;
-import java.util.Objects;
 import java.util.Set;
 
+/**
+ * Loads the words of a user dictionary as a {@link UserDictionaryCursor}, indexed off the UI
+ * thread, and reloads them, throttled, whenever the dictionary changes.
+ */
 public class UserDictionaryCursorLoader extends CursorLoader {
 
     @VisibleForTesting
@@ -37,7 +42,8 @@ public class UserDictionaryCursorLoader extends CursorLoader {
             UserDictionary.Words.SHORTCUT
     };
 
-    // The index of the shortcut in the above array.
+    // The indices of the word and the shortcut in the above array.
+    static final int INDEX_WORD = 1;
     static final int INDEX_SHORTCUT = 2;
 
     // Either the locale is empty (means the word is applicable to all locales)
@@ -47,6 +53,8 @@ public class UserDictionaryCursorLoader extends CursorLoader {
     private static final String QUERY_SELECTION_ALL_LOCALES =
             UserDictionary.Words.LOCALE + " is null";
 
+    // Coalesces the change notifications of a word being edited, which is a delete and an add.
+    private static final long UPDATE_THROTTLE_MS = 300;
 
     // Locale can be any of:
     // - The string representation of a locale, as returned by Locale#toString()
@@ -59,15 +67,16 @@ public class UserDictionaryCursorLoader extends CursorLoader {
     // human-readable, like "all_locales" and "current_locales" strings, provided they
     // can be guaranteed not to match locales that may exist.
     private final String mLocale;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
 
     public UserDictionaryCursorLoader(Context context, String locale) {
         super(context);
         mLocale = locale;
+        setUpdateThrottle(UPDATE_THROTTLE_MS);
     }
 
     @Override
     public Cursor loadInBackground() {
-        final MatrixCursor result = new MatrixCursor(QUERY_PROJECTION);
         final Cursor candidate;
         if ("".equals(mLocale)) {
             // Case-insensitive sort
@@ -81,18 +90,79 @@ public class UserDictionaryCursorLoader extends CursorLoader {
                     QUERY_PROJECTION, QUERY_SELECTION,
                     new String[]{queryLocale}, "UPPER(" + UserDictionary.Words.WORD + ")");
         }
-        final Set<Integer> hashSet = new ArraySet<>();
+        if (candidate == null) {
+            return null;
+        }
+        try {
+            final Cursor result = index(candidate);
+            result.setNotificationUri(getContext().getContentResolver(),
+                    UserDictionary.Words.CONTENT_URI);
+            result.registerContentObserver(mObserver);
+            return result;
+        } catch (RuntimeException e) {
+            candidate.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Walks the words once to skip words added more than once with the same shortcut and to find
+     * where each letter of the fast scroll alphabet starts, without keeping the words in memory.
+     */
+    private UserDictionaryCursor index(Cursor candidate) {
+        final String alphabet = getContext().getString(
+                com.android.internal.R.string.fast_scroll_alphabet);
+        final String[] sections = new String[alphabet.length()];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = Character.toString(alphabet.charAt(i));
+        }
+        final int[] sectionPositions = new int[sections.length];
+        final Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+
+        int[] positions = null;
+        int count = 0;
+        int nextSection = 0;
+        String lastLetter = null;
+        // Duplicates have the same word, so they sort next to each other up to its case.
+        String runWord = null;
+        final Set<Pair<String, String>> run = new ArraySet<>();
         for (candidate.moveToFirst(); !candidate.isAfterLast(); candidate.moveToNext()) {
-            final int id = candidate.getInt(0);
-            final String word = candidate.getString(1);
-            final String shortcut = candidate.getString(2);
-            final int hash = Objects.hash(word, shortcut);
-            if (hashSet.contains(hash)) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            final String word = candidate.getString(INDEX_WORD);
+            final String shortcut = candidate.getString(INDEX_SHORTCUT);
+            final String key = word == null ? "" : word;
+            if (runWord == null || !runWord.equalsIgnoreCase(key)) {
+                runWord = key;
+                run.clear();
+            }
+            if (!run.add(Pair.create(word, shortcut))) {
+                if (positions == null) {
+                    positions = new int[candidate.getCount()];
+                    for (int i = 0; i < count; i++) {
+                        positions[i] = i;
+                    }
+                }
                 continue;
             }
-            hashSet.add(hash);
-            result.addRow(new Object[]{id, word, shortcut});
+            if (positions != null) {
+                positions[count] = candidate.getPosition();
+            }
+            final String letter = key.isEmpty() ? " " : key.substring(0, 1);
+            if (!letter.equals(lastLetter)) {
+                lastLetter = letter;
+                while (nextSection < sections.length
+                        && collator.compare(letter, sections[nextSection]) >= 0) {
+                    sectionPositions[nextSection++] = count;
+                }
+            }
+            count++;
+        }
+        while (nextSection < sections.length) {
+            sectionPositions[nextSection++] = count;
         }
-        return result;
+        return new UserDictionaryCursor(candidate, positions, count, sections, sectionPositions);
     }
 }
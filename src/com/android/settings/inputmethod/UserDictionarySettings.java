@@ -34,8 +34,6 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AlphabetIndexer;
-import android.widget.ListAdapter;
 import android.widget.ListView;
 import android.widget.SectionIndexer;
 import android.widget.SimpleCursorAdapter;
@@ -63,6 +61,7 @@ public class UserDictionarySettings extends ListFragment implements Instrumentab
     private VisibilityLoggerMixin mVisibilityLoggerMixin;
 
     private Cursor mCursor;
+    private MyAdapter mAdapter;
     private String mLocale;
 
     @Override
@@ -130,10 +129,12 @@ public class UserDictionarySettings extends ListFragment implements Instrumentab
     public void onResume() {
         super.onResume();
         mVisibilityLoggerMixin.onResume();
-        getLoaderManager().restartLoader(LOADER_ID, null, this /* callback */);
+        // The loader reloads by itself when the dictionary changes, so this only delivers the
+        // words already loaded if the list was recreated.
+        getLoaderManager().initLoader(LOADER_ID, null, this /* callback */);
     }
 
-    private ListAdapter createAdapter() {
+    private MyAdapter createAdapter() {
         return new MyAdapter(getActivity(),
                 R.layout.user_dictionary_item, mCursor,
                 new String[]{UserDictionary.Words.WORD, UserDictionary.Words.SHORTCUT},
@@ -238,18 +239,26 @@ public class UserDictionarySettings extends ListFragment implements Instrumentab
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         mCursor = data;
-        getListView().setAdapter(createAdapter());
+        final ListView listView = getListView();
+        if (mAdapter == null || listView.getAdapter() != mAdapter) {
+            mAdapter = createAdapter();
+            listView.setAdapter(mAdapter);
+        } else {
+            // Keeps the scroll position, so only the visible rows are bound again.
+            mAdapter.swapCursor(data);
+        }
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-
+        mCursor = null;
+        if (mAdapter != null) {
+            mAdapter.swapCursor(null);
+        }
     }
 
     private static class MyAdapter extends SimpleCursorAdapter implements SectionIndexer {
 
-        private AlphabetIndexer mIndexer;
-
         private final ViewBinder mViewBinder = new ViewBinder() {
 
             @Override
@@ -271,30 +280,34 @@ public class UserDictionarySettings extends ListFragment implements Instrumentab
         };
 
         public MyAdapter(Context context, int layout, Cursor c, String[] from, int[] to) {
-            super(context, layout, c, from, to);
-
-            if (null != c) {
-                final String alphabet = context.getString(
-                        com.android.internal.R.string.fast_scroll_alphabet);
-                final int wordColIndex = c.getColumnIndexOrThrow(UserDictionary.Words.WORD);
-                mIndexer = new AlphabetIndexer(c, wordColIndex, alphabet);
-            }
+            // The loader reloads the words when they change, so the adapter does not requery.
+            super(context, layout, c, from, to, 0 /* flags */);
             setViewBinder(mViewBinder);
         }
 
+        // The sections are indexed by the loader, as the cursor may hold too many words to
+        // walk on the UI thread.
+        private SectionIndexer getIndexer() {
+            final Cursor c = getCursor();
+            return c instanceof SectionIndexer ? (SectionIndexer) c : null;
+        }
+
         @Override
         public int getPositionForSection(int section) {
-            return null == mIndexer ? 0 : mIndexer.getPositionForSection(section);
+            final SectionIndexer indexer = getIndexer();
+            return null == indexer ? 0 : indexer.getPositionForSection(section);
         }
 
         @Override
         public int getSectionForPosition(int position) {
-            return null == mIndexer ? 0 : mIndexer.getSectionForPosition(position);
+            final SectionIndexer indexer = getIndexer();
+            return null == indexer ? 0 : indexer.getSectionForPosition(position);
         }
 
         @Override
         public Object[] getSections() {
-            return null == mIndexer ? null : mIndexer.getSections();
+            final SectionIndexer indexer = getIndexer();
+            return null == indexer ? null : indexer.getSections();
         }
     }
 }
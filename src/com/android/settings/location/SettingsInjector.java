@@ -31,19 +31,24 @@ import android.graphics.drawable.Drawable;
 import android.location.SettingInjectorService;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.Process;
 import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
+import android.support.annotation.VisibleForTesting;
 import android.support.v7.preference.Preference;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.AttributeSet;
 import android.util.IconDrawableFactory;
 import android.util.Log;
 import android.util.Xml;
 
+import com.android.settings.R;
 import com.android.settings.widget.AppPreference;
 import com.android.settings.widget.RestrictedAppPreference;
 
@@ -73,9 +78,21 @@ class SettingsInjector {
 
     /**
      * If reading the status of a setting takes longer than this, we go ahead and start reading
-     * the next setting.
+     * the next setting. Each service gets its own timeout.
      */
-    private static final long INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS = 1000;
+    @VisibleForTesting
+    static final long INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Last status received from each injected setting, by (package, class, user), so a setting
+     * shows its last known state while its service is being asked again.
+     */
+    private static final ArrayMap<String, Boolean> sLastEnabledStatus = new ArrayMap<>();
+
+    /**
+     * Looper the status loading bookkeeping runs on, shared by every instance.
+     */
+    private static HandlerThread sStatusLoadingThread;
 
     /**
      * {@link Message#what} value for starting to load status values
@@ -103,9 +120,28 @@ class SettingsInjector {
     private final Handler mHandler;
 
     public SettingsInjector(Context context) {
+        this(context, getStatusLoadingLooper(), context.getResources().getInteger(
+                R.integer.config_injected_settings_max_parallel_loads));
+    }
+
+    @VisibleForTesting
+    SettingsInjector(Context context, Looper statusLoadingLooper, int maxParallelLoads) {
         mContext = context;
         mSettings = new HashSet<Setting>();
-        mHandler = new StatusLoadingHandler();
+        mHandler = new StatusLoadingHandler(statusLoadingLooper, maxParallelLoads);
+    }
+
+    private static synchronized Looper getStatusLoadingLooper() {
+        if (sStatusLoadingThread == null) {
+            sStatusLoadingThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            sStatusLoadingThread.start();
+        }
+        return sStatusLoadingThread.getLooper();
+    }
+
+    private static String getStatusKey(InjectedSetting setting) {
+        return setting.packageName + "/" + setting.className + "/"
+                + setting.mUserHandle.getIdentifier();
     }
 
     /**
@@ -255,8 +291,7 @@ class SettingsInjector {
             if (profileId == UserHandle.USER_CURRENT || profileId == userHandle.getIdentifier()) {
                 Iterable<InjectedSetting> settings = getSettings(userHandle);
                 for (InjectedSetting setting : settings) {
-                    Preference pref = addServiceSetting(prefContext, prefs, setting);
-                    mSettings.add(new Setting(setting, pref));
+                    addInjectedSetting(prefContext, prefs, setting);
                 }
             }
         }
@@ -266,6 +301,20 @@ class SettingsInjector {
         return prefs;
     }
 
+    /**
+     * Adds the preference of {@code setting} to {@code prefs} and loads its status on the next
+     * reload.
+     */
+    @VisibleForTesting
+    Preference addInjectedSetting(Context prefContext, List<Preference> prefs,
+            InjectedSetting setting) {
+        final Preference pref = addServiceSetting(prefContext, prefs, setting);
+        synchronized (mSettings) {
+            mSettings.add(new Setting(setting, pref));
+        }
+        return pref;
+    }
+
     /**
      * Checks wheteher there is any preference that other apps have injected.
      *
@@ -295,7 +344,11 @@ class SettingsInjector {
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "reloadingStatusMessages: " + mSettings);
         }
-        mHandler.sendMessage(mHandler.obtainMessage(WHAT_RELOAD));
+        final Set<Setting> settings;
+        synchronized (mSettings) {
+            settings = new HashSet<>(mSettings);
+        }
+        mHandler.sendMessage(mHandler.obtainMessage(WHAT_RELOAD, new ReloadRequest(settings)));
     }
 
     /**
@@ -322,6 +375,13 @@ class SettingsInjector {
         pref.setTitle(info.title);
         pref.setSummary(null);
         pref.setIcon(appIcon);
+        final Boolean lastEnabled;
+        synchronized (sLastEnabledStatus) {
+            lastEnabled = sLastEnabledStatus.get(getStatusKey(info));
+        }
+        if (lastEnabled != null) {
+            pref.setEnabled(lastEnabled);
+        }
         pref.setOnPreferenceClickListener(new ServiceSettingClickedListener(info));
         prefs.add(pref);
         return pref;
@@ -359,9 +419,10 @@ class SettingsInjector {
     }
 
     /**
-     * Loads the setting status values one at a time. Each load starts a subclass of {@link
-     * SettingInjectorService}, so to reduce memory pressure we don't want to load too many at
-     * once.
+     * Loads the setting status values, at most {@link #mMaxParallelLoads} at a time. Each load
+     * starts a subclass of {@link SettingInjectorService}, so to reduce memory pressure we don't
+     * want to load too many at once. Runs on a background looper; preferences are updated on
+     * the main thread.
      */
     private final class StatusLoadingHandler extends Handler {
 
@@ -371,22 +432,28 @@ class SettingsInjector {
         private Set<Setting> mSettingsToLoad = new HashSet<Setting>();
 
         /**
-         * Settings that are being loaded now and haven't timed out. In practice this should have
-         * zero or one elements.
+         * Settings that are being loaded now and haven't timed out. In practice this has at most
+         * {@link #mMaxParallelLoads} elements.
          */
         private Set<Setting> mSettingsBeingLoaded = new HashSet<Setting>();
 
         /**
-         * Settings that are being loaded but have timed out. If only one setting has timed out, we
-         * will go ahead and start loading the next setting so that one slow load won't delay the
-         * load of the other settings.
+         * Settings that are being loaded but have timed out. As long as fewer than
+         * {@link #mMaxParallelLoads} settings have timed out, we will go ahead and start loading
+         * the next setting so that slow loads won't delay the load of the other settings.
          */
         private Set<Setting> mTimedOutSettings = new HashSet<Setting>();
 
-        private boolean mReloadRequested;
+        /**
+         * Settings to load on the next reload, or {@code null} if no reload was requested.
+         */
+        private Set<Setting> mReloadRequested;
+
+        private final int mMaxParallelLoads;
 
-        private StatusLoadingHandler() {
-            super(Looper.getMainLooper());
+        private StatusLoadingHandler(Looper looper, int maxParallelLoads) {
+            super(looper);
+            mMaxParallelLoads = Math.max(1, maxParallelLoads);
         }
         @Override
         public void handleMessage(Message msg) {
@@ -397,7 +464,7 @@ class SettingsInjector {
             // Update state in response to message
             switch (msg.what) {
                 case WHAT_RELOAD:
-                    mReloadRequested = true;
+                    mReloadRequested = ((ReloadRequest) msg.obj).settings;
                     break;
                 case WHAT_RECEIVED_STATUS:
                     final Setting receivedSetting = (Setting) msg.obj;
@@ -419,52 +486,49 @@ class SettingsInjector {
                     Log.wtf(TAG, "Unexpected what: " + msg);
             }
 
-            // Decide whether to load additional settings based on the new state. Start by seeing
-            // if we have headroom to load another setting.
-            if (mSettingsBeingLoaded.size() > 0 || mTimedOutSettings.size() > 1) {
-                // Don't load any more settings until one of the pending settings has completed.
-                // To reduce memory pressure, we want to be loading at most one setting (plus at
-                // most one timed-out setting) at a time. This means we'll be responsible for
-                // bringing in at most two services.
-                if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                    Log.v(TAG, "too many services already live for " + msg + ", " + this);
-                }
-                return;
-            }
-
-            if (mReloadRequested && mSettingsToLoad.isEmpty() && mSettingsBeingLoaded.isEmpty()
-                    && mTimedOutSettings.isEmpty()) {
+            if (mReloadRequested != null && mSettingsToLoad.isEmpty()
+                    && mSettingsBeingLoaded.isEmpty() && mTimedOutSettings.isEmpty()) {
                 if (Log.isLoggable(TAG, Log.VERBOSE)) {
                     Log.v(TAG, "reloading because idle and reload requesteed " + msg + ", " + this);
                 }
                 // Reload requested, so must reload all settings
-                mSettingsToLoad.addAll(mSettings);
-                mReloadRequested = false;
+                mSettingsToLoad.addAll(mReloadRequested);
+                mReloadRequested = null;
             }
 
-            // Remove the next setting to load from the queue, if any
-            Iterator<Setting> iter = mSettingsToLoad.iterator();
-            if (!iter.hasNext()) {
-                if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                    Log.v(TAG, "nothing left to do for " + msg + ", " + this);
+            // Start loading settings as long as we have headroom for another one.
+            while (mSettingsBeingLoaded.size() < mMaxParallelLoads
+                    && mTimedOutSettings.size() < mMaxParallelLoads) {
+                // Remove the next setting to load from the queue, if any
+                Iterator<Setting> iter = mSettingsToLoad.iterator();
+                if (!iter.hasNext()) {
+                    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                        Log.v(TAG, "nothing left to do for " + msg + ", " + this);
+                    }
+                    return;
                 }
-                return;
-            }
-            Setting setting = iter.next();
-            iter.remove();
+                Setting setting = iter.next();
+                iter.remove();
 
-            // Request the status value
-            setting.startService();
-            mSettingsBeingLoaded.add(setting);
+                // Request the status value
+                setting.startService();
+                mSettingsBeingLoaded.add(setting);
 
-            // Ensure that if receiving the status value takes too long, we start loading the
-            // next value anyway
-            Message timeoutMsg = obtainMessage(WHAT_TIMEOUT, setting);
-            sendMessageDelayed(timeoutMsg, INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
+                // Ensure that if receiving the status value takes too long, we start loading the
+                // next value anyway
+                Message timeoutMsg = obtainMessage(WHAT_TIMEOUT, setting);
+                sendMessageDelayed(timeoutMsg, INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
 
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "handleMessage end " + msg + ", " + this
-                        + ", started loading " + setting);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "handleMessage end " + msg + ", " + this
+                            + ", started loading " + setting);
+                }
+            }
+            // Don't load any more settings until one of the pending settings has completed.
+            // To reduce memory pressure, we want to be loading at most mMaxParallelLoads
+            // settings (plus at most as many timed-out settings) at a time.
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "too many services already live for " + msg + ", " + this);
             }
         }
 
@@ -479,6 +543,17 @@ class SettingsInjector {
         }
     }
 
+    /**
+     * Settings to load on a reload, as a typed message payload.
+     */
+    private static final class ReloadRequest {
+        final Set<Setting> settings;
+
+        ReloadRequest(Set<Setting> settings) {
+            this.settings = settings;
+        }
+    }
+
     /**
      * Represents an injected setting and the corresponding preference.
      */
@@ -529,7 +604,7 @@ class SettingsInjector {
                 }
                 return;
             }
-            Handler handler = new Handler() {
+            Handler handler = new Handler(Looper.getMainLooper()) {
                 @Override
                 public void handleMessage(Message msg) {
                     Bundle bundle = msg.getData();
@@ -537,6 +612,9 @@ class SettingsInjector {
                     if (Log.isLoggable(TAG, Log.DEBUG)) {
                         Log.d(TAG, setting + ": received " + msg + ", bundle: " + bundle);
                     }
+                    synchronized (sLastEnabledStatus) {
+                        sLastEnabledStatus.put(getStatusKey(setting), enabled);
+                    }
                     preference.setSummary(null);
                     preference.setEnabled(enabled);
                     mHandler.sendMessage(
@@ -551,10 +629,9 @@ class SettingsInjector {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, setting + ": sending update intent: " + intent
                         + ", handler: " + handler);
-                startMillis = SystemClock.elapsedRealtime();
-            } else {
-                startMillis = 0;
             }
+            // Also used to report timeouts, so always recorded.
+            startMillis = SystemClock.elapsedRealtime();
 
             // Start the service, making sure that this is attributed to the user associated with
             // the setting rather than the system user.
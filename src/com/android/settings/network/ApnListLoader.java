@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.Telephony;
+import android.support.annotation.VisibleForTesting;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.internal.telephony.dataconnection.ApnSetting;
+import com.android.internal.telephony.uicc.IccRecords;
+import com.android.internal.telephony.uicc.UiccController;
+import com.android.settingslib.utils.AsyncLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Loads the APNs shown by {@link ApnSettings} for one subscription, together with the preferred
+ * APN, off the main thread.
+ */
+public class ApnListLoader extends AsyncLoader<ApnListLoader.ApnList> {
+    private static final String TAG = "ApnListLoader";
+
+    @VisibleForTesting
+    static final String[] PROJECTION = new String[] {
+            Telephony.Carriers._ID, Telephony.Carriers.NAME, Telephony.Carriers.APN,
+            Telephony.Carriers.TYPE, Telephony.Carriers.MVNO_TYPE,
+            Telephony.Carriers.MVNO_MATCH_DATA};
+    private static final int ID_INDEX = 0;
+    private static final int NAME_INDEX = 1;
+    private static final int APN_INDEX = 2;
+    private static final int TYPES_INDEX = 3;
+    private static final int MVNO_TYPE_INDEX = 4;
+    private static final int MVNO_MATCH_DATA_INDEX = 5;
+
+    private final int mSubId;
+    private final boolean mHasSubscription;
+    private final boolean mHideImsApn;
+    private final Uri mPreferredApnUri;
+    private final UiccController mUiccController;
+
+    /**
+     * @param subId the subscription to load the APNs of
+     * @param hasSubscription whether {@code subId} is an active subscription; if not, only the
+     *                        APNs without an operator are loaded
+     * @param preferredApnUri the preferred APN uri of {@code subId}
+     */
+    public ApnListLoader(Context context, int subId, boolean hasSubscription, boolean hideImsApn,
+            Uri preferredApnUri, UiccController uiccController) {
+        super(context);
+        mSubId = subId;
+        mHasSubscription = hasSubscription;
+        mHideImsApn = hideImsApn;
+        mPreferredApnUri = preferredApnUri;
+        mUiccController = uiccController;
+    }
+
+    public int getSubId() {
+        return mSubId;
+    }
+
+    @Override
+    public ApnList loadInBackground() {
+        final TelephonyManager tm = getContext().getSystemService(TelephonyManager.class);
+        final String mccmnc = mHasSubscription ? tm.getSimOperator(mSubId) : "";
+        Log.d(TAG, "mccmnc = " + mccmnc);
+        StringBuilder where = new StringBuilder("numeric=\"" + mccmnc +
+                "\" AND NOT (type='ia' AND (apn=\"\" OR apn IS NULL)) AND user_visible!=0");
+        if (mHideImsApn) {
+            where.append(" AND NOT (type='ims')");
+        }
+
+        final Cursor cursor = getContext().getContentResolver().query(
+                Telephony.Carriers.CONTENT_URI, PROJECTION, where.toString(), null,
+                Telephony.Carriers.DEFAULT_SORT_ORDER);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            IccRecords r = null;
+            if (mUiccController != null && mHasSubscription) {
+                r = mUiccController.getIccRecords(
+                        SubscriptionManager.getPhoneId(mSubId), UiccController.APP_FAM_3GPP);
+            }
+            return buildApnList(cursor, r, getPreferredApnKey());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void onDiscardResult(ApnList result) {
+    }
+
+    private String getPreferredApnKey() {
+        final Cursor cursor = getContext().getContentResolver().query(mPreferredApnUri,
+                new String[] {Telephony.Carriers._ID}, null, null,
+                Telephony.Carriers.DEFAULT_SORT_ORDER);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Build the list shown from the APNs in {@code cursor}: the MVNO APNs matching {@code r} if
+     * there are any, the MNO ones otherwise, with the selectable APNs before the MMS ones.
+     */
+    @VisibleForTesting
+    static ApnList buildApnList(Cursor cursor, IccRecords r, String selectedKey) {
+        final ApnList result = new ApnList(selectedKey);
+        List<ApnEntry> mnoApnList = new ArrayList<>();
+        List<ApnEntry> mvnoApnList = new ArrayList<>();
+        List<ApnEntry> mnoMmsApnList = new ArrayList<>();
+        List<ApnEntry> mvnoMmsApnList = new ArrayList<>();
+
+        while (cursor.moveToNext()) {
+            final String type = cursor.getString(TYPES_INDEX);
+            final String mvnoType = cursor.getString(MVNO_TYPE_INDEX);
+            final String mvnoMatchData = cursor.getString(MVNO_MATCH_DATA_INDEX);
+            final boolean selectable = ((type == null) || !type.equals("mms"));
+            final ApnEntry entry = new ApnEntry(cursor.getString(ID_INDEX),
+                    cursor.getString(NAME_INDEX), cursor.getString(APN_INDEX), selectable);
+
+            final List<ApnEntry> mnoList = selectable ? mnoApnList : mnoMmsApnList;
+            final List<ApnEntry> mvnoList = selectable ? mvnoApnList : mvnoMmsApnList;
+            if (r != null && !TextUtils.isEmpty(mvnoType) && !TextUtils.isEmpty(mvnoMatchData)) {
+                if (ApnSetting.mvnoMatches(r, mvnoType, mvnoMatchData)) {
+                    mvnoList.add(entry);
+                    // Since adding to mvno list, save mvno info
+                    result.mMvnoType = mvnoType;
+                    result.mMvnoMatchData = mvnoMatchData;
+                }
+            } else {
+                mnoList.add(entry);
+            }
+        }
+
+        if (!mvnoApnList.isEmpty()) {
+            mnoApnList = mvnoApnList;
+            mnoMmsApnList = mvnoMmsApnList;
+        }
+        result.mEntries.addAll(mnoApnList);
+        result.mEntries.addAll(mnoMmsApnList);
+        return result;
+    }
+
+    /**
+     * The APNs to show, in order, and the preferred one.
+     */
+    public static class ApnList {
+        final List<ApnEntry> mEntries = new ArrayList<>();
+        final String mSelectedKey;
+        String mMvnoType;
+        String mMvnoMatchData;
+
+        ApnList(String selectedKey) {
+            mSelectedKey = selectedKey;
+        }
+    }
+
+    /**
+     * One APN row; equal entries are shown by identical preferences.
+     */
+    static class ApnEntry {
+        final String mKey;
+        final String mName;
+        final String mApn;
+        final boolean mSelectable;
+
+        ApnEntry(String key, String name, String apn, boolean selectable) {
+            mKey = key;
+            mName = name;
+            mApn = apn;
+            mSelectable = selectable;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ApnEntry)) {
+                return false;
+            }
+            final ApnEntry other = (ApnEntry) o;
+            return mSelectable == other.mSelectable && Objects.equals(mKey, other.mKey)
+                    && Objects.equals(mName, other.mName) && Objects.equals(mApn, other.mApn);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mKey, mName, mApn, mSelectable);
+        }
+    }
+}
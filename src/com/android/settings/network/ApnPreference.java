@@ -96,6 +96,21 @@ public class ApnPreference extends Preference implements
         mSelectedKey = getKey();
     }
 
+    /**
+     * Check this APN when the list is not rebuilt, unchecking the radio button shown for the
+     * previously checked one.
+     */
+    public void updateChecked() {
+        if (isChecked()) {
+            return;
+        }
+        if (mCurrentChecked != null) {
+            mCurrentChecked.setChecked(false);
+        }
+        mSelectedKey = getKey();
+        notifyChanged();
+    }
+
     public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
         Log.i(TAG, "ID: " + getKey() + " :" + isChecked);
         if (mProtectFromCheckedChange) {
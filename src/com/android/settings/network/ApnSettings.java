@@ -18,6 +18,7 @@ package com.android.settings.network;
 
 import android.app.Activity;
 import android.app.Dialog;
+import android.app.LoaderManager;
 import android.app.ProgressDialog;
 import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
@@ -26,7 +27,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.database.Cursor;
+import android.content.Loader;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -37,6 +38,7 @@ import android.os.PersistableBundle;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Telephony;
+import android.support.annotation.VisibleForTesting;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceGroup;
 import android.telephony.CarrierConfigManager;
@@ -44,6 +46,7 @@ import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -54,17 +57,18 @@ import android.widget.Toast;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.internal.telephony.PhoneConstants;
 import com.android.internal.telephony.TelephonyIntents;
-import com.android.internal.telephony.dataconnection.ApnSetting;
-import com.android.internal.telephony.uicc.IccRecords;
 import com.android.internal.telephony.uicc.UiccController;
 import com.android.settings.R;
 import com.android.settings.RestrictedSettingsFragment;
+import com.android.settings.network.ApnListLoader.ApnEntry;
+import com.android.settings.network.ApnListLoader.ApnList;
 import com.android.settingslib.RestrictedLockUtils.EnforcedAdmin;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class ApnSettings extends RestrictedSettingsFragment implements
-        Preference.OnPreferenceChangeListener {
+        Preference.OnPreferenceChangeListener, LoaderManager.LoaderCallbacks<ApnList> {
     static final String TAG = "ApnSettings";
 
     public static final String EXTRA_POSITION = "position";
@@ -78,13 +82,6 @@ public class ApnSettings extends RestrictedSettingsFragment implements
     public static final String MVNO_TYPE = "mvno_type";
     public static final String MVNO_MATCH_DATA = "mvno_match_data";
 
-    private static final int ID_INDEX = 0;
-    private static final int NAME_INDEX = 1;
-    private static final int APN_INDEX = 2;
-    private static final int TYPES_INDEX = 3;
-    private static final int MVNO_TYPE_INDEX = 4;
-    private static final int MVNO_MATCH_DATA_INDEX = 5;
-
     private static final int MENU_NEW = Menu.FIRST;
     private static final int MENU_RESTORE = Menu.FIRST + 1;
 
@@ -93,6 +90,8 @@ public class ApnSettings extends RestrictedSettingsFragment implements
 
     private static final int DIALOG_RESTORE_DEFAULTAPN = 1001;
 
+    private static final int LOADER_ID_APN_LIST = 1;
+
     private static final Uri DEFAULTAPN_URI = Uri.parse(RESTORE_CARRIERS_URI);
     private static final Uri PREFERAPN_URI = Uri.parse(PREFERRED_APN_URI);
 
@@ -109,6 +108,9 @@ public class ApnSettings extends RestrictedSettingsFragment implements
     private String mMvnoMatchData;
 
     private String mSelectedKey;
+    /** The APNs currently shown, in order. */
+    private final List<ApnEntry> mShownApns = new ArrayList<>();
+    private int mShownApnsSubId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
 
     private IntentFilter mMobileStateFilter;
 
@@ -263,101 +265,116 @@ public class ApnSettings extends RestrictedSettingsFragment implements
         return SubscriptionManager.from(getActivity()).getActiveSubscriptionInfo(subId);
     }
 
+    /**
+     * Reload the APN list in the background. A reload requested while one is running restarts it
+     * once, so repeated broadcasts do not queue up queries.
+     */
     private void fillList() {
-        final TelephonyManager tm = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-        final int subId = mSubscriptionInfo != null ? mSubscriptionInfo.getSubscriptionId()
+        final int subId = getCurrentSubId();
+        final Loader<ApnList> loader = getLoaderManager().getLoader(LOADER_ID_APN_LIST);
+        if (loader instanceof ApnListLoader && ((ApnListLoader) loader).getSubId() == subId) {
+            loader.onContentChanged();
+        } else {
+            getLoaderManager().restartLoader(LOADER_ID_APN_LIST, null, this);
+        }
+    }
+
+    private int getCurrentSubId() {
+        return mSubscriptionInfo != null ? mSubscriptionInfo.getSubscriptionId()
                 : SubscriptionManager.INVALID_SUBSCRIPTION_ID;
-        final String mccmnc = mSubscriptionInfo == null ? "" : tm.getSimOperator(subId);
-        Log.d(TAG, "mccmnc = " + mccmnc);
-        StringBuilder where = new StringBuilder("numeric=\"" + mccmnc +
-                "\" AND NOT (type='ia' AND (apn=\"\" OR apn IS NULL)) AND user_visible!=0");
+    }
 
-        if (mHideImsApn) {
-            where.append(" AND NOT (type='ims')");
+    @Override
+    public Loader<ApnList> onCreateLoader(int id, Bundle args) {
+        return new ApnListLoader(getActivity(), getCurrentSubId(), mSubscriptionInfo != null,
+                mHideImsApn, getUriForCurrSubId(PREFERAPN_URI), mUiccController);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<ApnList> loader, ApnList apnList) {
+        if (apnList == null || mRestoreDefaultApnMode) {
+            return;
         }
+        mMvnoType = apnList.mMvnoType;
+        mMvnoMatchData = apnList.mMvnoMatchData;
+        updateApnList(apnList);
+    }
 
-        Cursor cursor = getContentResolver().query(Telephony.Carriers.CONTENT_URI, new String[] {
-                "_id", "name", "apn", "type", "mvno_type", "mvno_match_data"}, where.toString(),
-                null, Telephony.Carriers.DEFAULT_SORT_ORDER);
+    @Override
+    public void onLoaderReset(Loader<ApnList> loader) {
+    }
 
-        if (cursor != null) {
-            IccRecords r = null;
-            if (mUiccController != null && mSubscriptionInfo != null) {
-                r = mUiccController.getIccRecords(
-                        SubscriptionManager.getPhoneId(subId), UiccController.APP_FAM_3GPP);
-            }
-            PreferenceGroup apnList = (PreferenceGroup) findPreference("apn_list");
-            apnList.removeAll();
-
-            ArrayList<ApnPreference> mnoApnList = new ArrayList<ApnPreference>();
-            ArrayList<ApnPreference> mvnoApnList = new ArrayList<ApnPreference>();
-            ArrayList<ApnPreference> mnoMmsApnList = new ArrayList<ApnPreference>();
-            ArrayList<ApnPreference> mvnoMmsApnList = new ArrayList<ApnPreference>();
-
-            mSelectedKey = getSelectedApnKey();
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                String name = cursor.getString(NAME_INDEX);
-                String apn = cursor.getString(APN_INDEX);
-                String key = cursor.getString(ID_INDEX);
-                String type = cursor.getString(TYPES_INDEX);
-                String mvnoType = cursor.getString(MVNO_TYPE_INDEX);
-                String mvnoMatchData = cursor.getString(MVNO_MATCH_DATA_INDEX);
-
-                ApnPreference pref = new ApnPreference(getPrefContext());
-
-                pref.setKey(key);
-                pref.setTitle(name);
-                pref.setSummary(apn);
-                pref.setPersistent(false);
-                pref.setOnPreferenceChangeListener(this);
-                pref.setSubId(subId);
-
-                boolean selectable = ((type == null) || !type.equals("mms"));
-                pref.setSelectable(selectable);
-                if (selectable) {
-                    if ((mSelectedKey != null) && mSelectedKey.equals(key)) {
-                        pref.setChecked();
-                    }
-                    addApnToList(pref, mnoApnList, mvnoApnList, r, mvnoType, mvnoMatchData);
-                } else {
-                    addApnToList(pref, mnoMmsApnList, mvnoMmsApnList, r, mvnoType, mvnoMatchData);
+    /**
+     * Show {@code apnList}, keeping the preferences of the APNs that did not change.
+     */
+    @VisibleForTesting
+    void updateApnList(ApnList apnList) {
+        final PreferenceGroup group = (PreferenceGroup) findPreference("apn_list");
+        final int subId = getCurrentSubId();
+        if (subId != mShownApnsSubId) {
+            // The preferences are bound to the previous subscription.
+            mShownApns.clear();
+        }
+        if (mShownApns.isEmpty() || !mShownApns.equals(apnList.mEntries)) {
+            final ArrayMap<String, ApnPreference> existing = new ArrayMap<>();
+            for (int i = 0, count = group.getPreferenceCount(); i < count; i++) {
+                final Preference preference = group.getPreference(i);
+                if (preference instanceof ApnPreference) {
+                    existing.put(preference.getKey(), (ApnPreference) preference);
                 }
-                cursor.moveToNext();
             }
-            cursor.close();
-
-            if (!mvnoApnList.isEmpty()) {
-                mnoApnList = mvnoApnList;
-                mnoMmsApnList = mvnoMmsApnList;
-
-                // Also save the mvno info
+            final ArrayMap<String, ApnEntry> shown = new ArrayMap<>();
+            for (ApnEntry entry : mShownApns) {
+                shown.put(entry.mKey, entry);
             }
 
-            for (Preference preference : mnoApnList) {
-                apnList.addPreference(preference);
+            final List<ApnPreference> preferences = new ArrayList<>();
+            for (ApnEntry entry : apnList.mEntries) {
+                ApnPreference pref = existing.remove(entry.mKey);
+                if (pref == null || !entry.equals(shown.get(entry.mKey))) {
+                    if (pref != null) {
+                        group.removePreference(pref);
+                    }
+                    pref = createApnPreference(entry, subId);
+                }
+                preferences.add(pref);
             }
-            for (Preference preference : mnoMmsApnList) {
-                apnList.addPreference(preference);
+            for (ApnPreference pref : existing.values()) {
+                group.removePreference(pref);
             }
+            for (int i = 0; i < preferences.size(); i++) {
+                final ApnPreference pref = preferences.get(i);
+                pref.setOrder(i);
+                if (group.findPreference(pref.getKey()) == null) {
+                    group.addPreference(pref);
+                }
+            }
+            mShownApns.clear();
+            mShownApns.addAll(apnList.mEntries);
+            mShownApnsSubId = subId;
         }
-    }
 
-    private void addApnToList(ApnPreference pref, ArrayList<ApnPreference> mnoList,
-                              ArrayList<ApnPreference> mvnoList, IccRecords r, String mvnoType,
-                              String mvnoMatchData) {
-        if (r != null && !TextUtils.isEmpty(mvnoType) && !TextUtils.isEmpty(mvnoMatchData)) {
-            if (ApnSetting.mvnoMatches(r, mvnoType, mvnoMatchData)) {
-                mvnoList.add(pref);
-                // Since adding to mvno list, save mvno info
-                mMvnoType = mvnoType;
-                mMvnoMatchData = mvnoMatchData;
+        mSelectedKey = apnList.mSelectedKey;
+        if (mSelectedKey != null) {
+            final Preference selected = group.findPreference(mSelectedKey);
+            if (selected instanceof ApnPreference && ((ApnPreference) selected).getSelectable()) {
+                ((ApnPreference) selected).updateChecked();
             }
-        } else {
-            mnoList.add(pref);
         }
     }
 
+    private ApnPreference createApnPreference(ApnEntry entry, int subId) {
+        final ApnPreference pref = new ApnPreference(getPrefContext());
+        pref.setKey(entry.mKey);
+        pref.setTitle(entry.mName);
+        pref.setSummary(entry.mApn);
+        pref.setPersistent(false);
+        pref.setOnPreferenceChangeListener(this);
+        pref.setSubId(subId);
+        pref.setSelectable(entry.mSelectable);
+        return pref;
+    }
+
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         if (!mUnavailable) {
@@ -427,19 +444,8 @@ public class ApnSettings extends RestrictedSettingsFragment implements
         ContentValues values = new ContentValues();
         values.put(APN_ID, mSelectedKey);
         resolver.update(getUriForCurrSubId(PREFERAPN_URI), values, null, null);
-    }
-
-    private String getSelectedApnKey() {
-        String key = null;
-
-        Cursor cursor = getContentResolver().query(getUriForCurrSubId(PREFERAPN_URI),
-                new String[] {"_id"}, null, null, Telephony.Carriers.DEFAULT_SORT_ORDER);
-        if (cursor.getCount() > 0) {
-            cursor.moveToFirst();
-            key = cursor.getString(ID_INDEX);
-        }
-        cursor.close();
-        return key;
+        // A load already running may have read the previous preferred APN.
+        fillList();
     }
 
     private boolean restoreDefaultApn() {
@@ -466,8 +472,7 @@ public class ApnSettings extends RestrictedSettingsFragment implements
 
     // Append subId to the Uri
     private Uri getUriForCurrSubId(Uri uri) {
-        int subId = mSubscriptionInfo != null ? mSubscriptionInfo.getSubscriptionId()
-                : SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+        int subId = getCurrentSubId();
         if (SubscriptionManager.isValidSubscriptionId(subId)) {
             return Uri.withAppendedPath(uri, "subId/" + String.valueOf(subId));
         } else {
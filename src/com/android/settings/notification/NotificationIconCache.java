@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.os.UserHandle;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.settings.core.instrumentation.PerfStats;
+
+import java.util.Objects;
+
+/**
+ * Bounded cache of notification icons, package icons and package labels shown in the
+ * notification log, keyed by (pkg, user, iconRes). Safe to use from any thread.
+ */
+public class NotificationIconCache {
+    private static final String TAG = "NotificationIconCache";
+
+    private static final int MAX_ICONS = 64;
+    private static final int MAX_PACKAGES = 32;
+
+    private final Context mContext;
+    private final PackageManager mPm;
+
+    private final LruCache<Key, CachedDrawable> mIcons = new LruCache<>(MAX_ICONS);
+    private final LruCache<String, CachedDrawable> mPackageIcons = new LruCache<>(MAX_PACKAGES);
+    private final LruCache<String, CharSequence> mPackageLabels = new LruCache<>(MAX_PACKAGES);
+
+    public NotificationIconCache(Context context) {
+        mContext = context;
+        mPm = context.getPackageManager();
+    }
+
+    /**
+     * @return the small icon {@code resId} of {@code pkg} as seen by {@code userId}, or
+     * {@code null} if it cannot be loaded.
+     */
+    public Drawable getIcon(String pkg, int userId, int resId) {
+        if (resId == 0) {
+            return null;
+        }
+        final Key key = new Key(pkg, userId, resId);
+        CachedDrawable cached = mIcons.get(key);
+        PerfStats.getInstance().recordCacheLookup("notification_icons", cached != null);
+        if (cached == null) {
+            cached = new CachedDrawable(loadIconDrawable(pkg, userId, resId));
+            mIcons.put(key, cached);
+        }
+        return cached.get();
+    }
+
+    public Drawable getPackageIcon(String pkg) {
+        CachedDrawable cached = mPackageIcons.get(pkg);
+        if (cached == null) {
+            Drawable icon = null;
+            try {
+                icon = mPm.getApplicationIcon(pkg);
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.e(TAG, "Cannot get application icon", e);
+            }
+            cached = new CachedDrawable(icon);
+            mPackageIcons.put(pkg, cached);
+        }
+        return cached.get();
+    }
+
+    public CharSequence getPackageLabel(String pkg) {
+        CharSequence label = mPackageLabels.get(pkg);
+        if (label == null) {
+            label = pkg;
+            try {
+                ApplicationInfo info = mPm.getApplicationInfo(pkg,
+                        PackageManager.MATCH_ANY_USER);
+                if (info != null) label = mPm.getApplicationLabel(info);
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.e(TAG, "Cannot load package name", e);
+            }
+            mPackageLabels.put(pkg, label);
+        }
+        return label;
+    }
+
+    public void clear() {
+        mIcons.evictAll();
+        mPackageIcons.evictAll();
+        mPackageLabels.evictAll();
+    }
+
+    private Resources getResourcesForUserPackage(String pkg, int userId) {
+        Resources r = null;
+
+        if (pkg != null) {
+            try {
+                if (userId == UserHandle.USER_ALL) {
+                    userId = UserHandle.USER_SYSTEM;
+                }
+                r = mPm.getResourcesForApplicationAsUser(pkg, userId);
+            } catch (PackageManager.NameNotFoundException ex) {
+                Log.e(TAG, "Icon package not found: " + pkg, ex);
+                return null;
+            }
+        } else {
+            r = mContext.getResources();
+        }
+        return r;
+    }
+
+    private Drawable loadIconDrawable(String pkg, int userId, int resId) {
+        Resources r = getResourcesForUserPackage(pkg, userId);
+        if (r == null) {
+            return null;
+        }
+
+        try {
+            return r.getDrawable(resId, null);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Icon not found in "
+                    + (pkg != null ? resId : "<system>")
+                    + ": " + Integer.toHexString(resId), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Keeps the constant state of a loaded drawable so every row gets its own instance; failed
+     * lookups are cached too.
+     */
+    private static class CachedDrawable {
+        final Drawable mDrawable;
+        final Drawable.ConstantState mState;
+
+        CachedDrawable(Drawable drawable) {
+            mDrawable = drawable;
+            mState = drawable != null ? drawable.getConstantState() : null;
+        }
+
+        Drawable get() {
+            return mState != null ? mState.newDrawable() : mDrawable;
+        }
+    }
+
+    private static class Key {
+        final String mPkg;
+        final int mUserId;
+        final int mResId;
+
+        Key(String pkg, int userId, int resId) {
+            mPkg = pkg;
+            mUserId = userId;
+            mResId = resId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mUserId == other.mUserId && mResId == other.mResId
+                    && Objects.equals(mPkg, other.mPkg);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mPkg, mUserId, mResId);
+        }
+    }
+}
@@ -24,9 +24,6 @@ import android.app.PendingIntent;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.IntentSender;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.res.Resources;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -34,18 +31,21 @@ import android.os.Handler;
 import android.os.Parcel;
 import android.os.RemoteException;
 import android.os.ServiceManager;
+import android.os.SystemProperties;
 import android.os.UserHandle;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.NotificationListenerService.Ranking;
 import android.service.notification.NotificationListenerService.RankingMap;
 import android.service.notification.StatusBarNotification;
 import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceScreen;
 import android.support.v7.preference.PreferenceViewHolder;
 import android.support.v7.widget.RecyclerView;
 import android.text.SpannableString;
 import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
 import android.text.style.StyleSpan;
+import android.util.ArraySet;
 import android.util.Log;
 import android.view.View;
 import android.widget.DateTimeView;
@@ -56,6 +56,7 @@ import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.Utils;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -69,9 +70,19 @@ public class NotificationStation extends SettingsPreferenceFragment {
     private static final boolean DEBUG = true;
     private static final boolean DUMP_EXTRAS = true;
     private static final boolean DUMP_PARCEL = true;
+
+    /** System property overriding how many dismissed notifications are shown. */
+    private static final String PROP_HISTORY_SIZE = "debug.settings.notification_log_size";
+    private static final int DEFAULT_HISTORY_SIZE = 50;
+    /** Number of rows resolved and published to the list at a time. */
+    private static final int PAGE_SIZE = 20;
+
     private Handler mHandler;
 
     private static class HistoricalNotificationInfo {
+        /** Identifies a row across refreshes; see {@link #getDiffKey}. */
+        public String diffKey;
+        public StatusBarNotification sbn;
         public String key;
         public String channel;
         public String pkg;
@@ -83,12 +94,20 @@ public class NotificationStation extends SettingsPreferenceFragment {
         public int user;
         public long timestamp;
         public boolean active;
+        /** Detail text, only built once the row is expanded. */
         public CharSequence extra;
     }
 
-    private PackageManager mPm;
+    private interface ExtraTextGenerator {
+        CharSequence generateExtraText(HistoricalNotificationInfo info);
+    }
+
     private INotificationManager mNoMan;
     private RankingMap mRanking;
+    private NotificationIconCache mIconCache;
+    private int mHistorySize;
+    /** Incremented for each load, so that pages of superseded loads are dropped. */
+    private int mLoadGeneration;
 
     private Runnable mRefreshListRunnable = new Runnable() {
         @Override
@@ -155,7 +174,8 @@ public class NotificationStation extends SettingsPreferenceFragment {
         super.onAttach(activity);
         mHandler = new Handler(activity.getMainLooper());
         mContext = activity;
-        mPm = mContext.getPackageManager();
+        mIconCache = new NotificationIconCache(mContext);
+        mHistorySize = SystemProperties.getInt(PROP_HISTORY_SIZE, DEFAULT_HISTORY_SIZE);
         mNoMan = INotificationManager.Stub.asInterface(
                 ServiceManager.getService(Context.NOTIFICATION_SERVICE));
     }
@@ -165,6 +185,8 @@ public class NotificationStation extends SettingsPreferenceFragment {
         logd("onDetach()");
         mHandler.removeCallbacks(mRefreshListRunnable);
         mHandler = null;
+        mLoadGeneration++;
+        mIconCache.clear();
         super.onDetach();
     }
 
@@ -205,19 +227,77 @@ public class NotificationStation extends SettingsPreferenceFragment {
         refreshList();
     }
 
+    /**
+     * Load notifications in the background and publish them page by page. Rows already shown
+     * for the same notification are updated in place instead of being re-added.
+     */
     private void refreshList() {
-        List<HistoricalNotificationInfo> infos = loadNotifications();
-        if (infos != null) {
-            final int N = infos.size();
-            logd("adding %d infos", N);
-            Collections.sort(infos, mNotificationSorter);
-            if (getPreferenceScreen() == null) {
-                setPreferenceScreen(getPreferenceManager().createPreferenceScreen(getContext()));
+        final int generation = ++mLoadGeneration;
+        final int historySize = mHistorySize;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final List<HistoricalNotificationInfo> infos = loadNotifications(historySize);
+            if (infos == null) {
+                return;
             }
-            getPreferenceScreen().removeAll();
+            Collections.sort(infos, mNotificationSorter);
+            final int N = infos.size();
+            logd("loaded %d infos", N);
+
+            final ArraySet<String> keys = new ArraySet<>(N);
             for (int i = 0; i < N; i++) {
-                getPreferenceScreen().addPreference(
-                        new HistoricalNotificationPreference(getPrefContext(), infos.get(i)));
+                keys.add(infos.get(i).diffKey);
+            }
+            ThreadUtils.postOnMainThread(() -> removeStalePreferences(generation, keys));
+
+            for (int start = 0; start < N; start += PAGE_SIZE) {
+                final int end = Math.min(N, start + PAGE_SIZE);
+                for (int i = start; i < end; i++) {
+                    resolveInfo(infos.get(i));
+                }
+                final List<HistoricalNotificationInfo> page = infos.subList(start, end);
+                final int offset = start;
+                ThreadUtils.postOnMainThread(() -> publishPage(generation, page, offset));
+            }
+        });
+    }
+
+    private PreferenceScreen getOrCreatePreferenceScreen() {
+        if (getPreferenceScreen() == null) {
+            setPreferenceScreen(getPreferenceManager().createPreferenceScreen(getContext()));
+        }
+        return getPreferenceScreen();
+    }
+
+    private void removeStalePreferences(int generation, ArraySet<String> keys) {
+        if (generation != mLoadGeneration || !isAdded()) {
+            return;
+        }
+        final PreferenceScreen screen = getOrCreatePreferenceScreen();
+        for (int i = screen.getPreferenceCount() - 1; i >= 0; i--) {
+            final Preference pref = screen.getPreference(i);
+            if (!keys.contains(pref.getKey())) {
+                screen.removePreference(pref);
+            }
+        }
+    }
+
+    private void publishPage(int generation, List<HistoricalNotificationInfo> page, int offset) {
+        if (generation != mLoadGeneration || !isAdded()) {
+            return;
+        }
+        logd("adding %d infos at %d", page.size(), offset);
+        final PreferenceScreen screen = getOrCreatePreferenceScreen();
+        for (int i = 0; i < page.size(); i++) {
+            final HistoricalNotificationInfo info = page.get(i);
+            final Preference existing = screen.findPreference(info.diffKey);
+            if (existing instanceof HistoricalNotificationPreference) {
+                ((HistoricalNotificationPreference) existing).setInfo(info);
+                existing.setOrder(offset + i);
+            } else {
+                final HistoricalNotificationPreference pref = new HistoricalNotificationPreference(
+                        getPrefContext(), info, this::generateExtraText);
+                pref.setOrder(offset + i);
+                screen.addPreference(pref);
             }
         }
     }
@@ -262,13 +342,21 @@ public class NotificationStation extends SettingsPreferenceFragment {
         return sb.toString();
     }
 
-    private List<HistoricalNotificationInfo> loadNotifications() {
+    /**
+     * Rows are keyed on {@link StatusBarNotification#getKey()}, qualified by post time and
+     * state since the history may hold several entries for the same key.
+     */
+    private static String getDiffKey(StatusBarNotification sbn, boolean active) {
+        return (active ? "active|" : "history|") + sbn.getKey() + "|" + sbn.getPostTime();
+    }
+
+    private List<HistoricalNotificationInfo> loadNotifications(int historySize) {
         final int currentUserId = ActivityManager.getCurrentUser();
         try {
             StatusBarNotification[] active = mNoMan.getActiveNotifications(
                     mContext.getPackageName());
             StatusBarNotification[] dismissed = mNoMan.getHistoricalNotifications(
-                    mContext.getPackageName(), 50);
+                    mContext.getPackageName(), historySize);
 
             List<HistoricalNotificationInfo> list
                     = new ArrayList<HistoricalNotificationInfo>(active.length + dismissed.length);
@@ -282,14 +370,12 @@ public class NotificationStation extends SettingsPreferenceFragment {
 
                     final Notification n = sbn.getNotification();
                     final HistoricalNotificationInfo info = new HistoricalNotificationInfo();
+                    info.sbn = sbn;
                     info.pkg = sbn.getPackageName();
                     info.user = sbn.getUserId();
-                    info.icon = loadIconDrawable(info.pkg, info.user, n.icon);
-                    info.pkgicon = loadPackageIconDrawable(info.pkg, info.user);
-                    info.pkgname = loadPackageName(info.pkg);
                     info.title = getTitleString(n);
                     if (TextUtils.isEmpty(info.title)) {
-                        info.title = getString(R.string.notification_log_no_title);
+                        info.title = mContext.getString(R.string.notification_log_no_title);
                     }
                     info.timestamp = sbn.getPostTime();
                     info.priority = n.priority;
@@ -297,8 +383,7 @@ public class NotificationStation extends SettingsPreferenceFragment {
                     info.key = sbn.getKey();
 
                     info.active = (resultset == active);
-
-                    info.extra = generateExtraText(sbn, info);
+                    info.diffKey = getDiffKey(sbn, info.active);
 
                     logd("   [%d] %s: %s", info.timestamp, info.pkg, info.title);
                     list.add(info);
@@ -312,6 +397,19 @@ public class NotificationStation extends SettingsPreferenceFragment {
         return null;
     }
 
+    /**
+     * Load icons and labels for a row through {@link #mIconCache}.
+     */
+    private void resolveInfo(HistoricalNotificationInfo info) {
+        info.icon = mIconCache.getIcon(info.pkg, info.user, info.sbn.getNotification().icon);
+        info.pkgicon = mIconCache.getPackageIcon(info.pkg);
+        info.pkgname = mIconCache.getPackageLabel(info.pkg);
+    }
+
+    private CharSequence generateExtraText(HistoricalNotificationInfo info) {
+        return generateExtraText(info.sbn, info);
+    }
+
     private CharSequence generateExtraText(StatusBarNotification sbn,
                                            HistoricalNotificationInfo info) {
         final Ranking rank = new Ranking();
@@ -507,73 +605,36 @@ public class NotificationStation extends SettingsPreferenceFragment {
         return sb;
     }
 
-    private Resources getResourcesForUserPackage(String pkg, int userId) {
-        Resources r = null;
-
-        if (pkg != null) {
-            try {
-                if (userId == UserHandle.USER_ALL) {
-                    userId = UserHandle.USER_SYSTEM;
-                }
-                r = mPm.getResourcesForApplicationAsUser(pkg, userId);
-            } catch (PackageManager.NameNotFoundException ex) {
-                Log.e(TAG, "Icon package not found: " + pkg, ex);
-                return null;
-            }
-        } else {
-            r = mContext.getResources();
-        }
-        return r;
-    }
-
-    private Drawable loadPackageIconDrawable(String pkg, int userId) {
-        Drawable icon = null;
-        try {
-            icon = mPm.getApplicationIcon(pkg);
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.e(TAG, "Cannot get application icon", e);
-        }
-
-        return icon;
-    }
-
-    private CharSequence loadPackageName(String pkg) {
-        try {
-            ApplicationInfo info = mPm.getApplicationInfo(pkg,
-                    PackageManager.MATCH_ANY_USER);
-            if (info != null) return mPm.getApplicationLabel(info);
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.e(TAG, "Cannot load package name", e);
-        }
-        return pkg;
-    }
-
-    private Drawable loadIconDrawable(String pkg, int userId, int resId) {
-        Resources r = getResourcesForUserPackage(pkg, userId);
-
-        if (resId == 0) {
-            return null;
-        }
-
-        try {
-            return r.getDrawable(resId, null);
-        } catch (RuntimeException e) {
-            Log.w(TAG, "Icon not found in "
-                    + (pkg != null ? resId : "<system>")
-                    + ": " + Integer.toHexString(resId), e);
-        }
-
-        return null;
-    }
-
     private static class HistoricalNotificationPreference extends Preference {
-        private final HistoricalNotificationInfo mInfo;
+        private final ExtraTextGenerator mExtraTextGenerator;
+        private HistoricalNotificationInfo mInfo;
         private static long sLastExpandedTimestamp; // quick hack to keep things from collapsing
 
-        public HistoricalNotificationPreference(Context context, HistoricalNotificationInfo info) {
+        public HistoricalNotificationPreference(Context context, HistoricalNotificationInfo info,
+                ExtraTextGenerator extraTextGenerator) {
             super(context);
             setLayoutResource(R.layout.notification_log_row);
+            setKey(info.diffKey);
+            mInfo = info;
+            mExtraTextGenerator = extraTextGenerator;
+        }
+
+        void setInfo(HistoricalNotificationInfo info) {
+            final boolean changed = mInfo.active != info.active
+                    || !TextUtils.equals(mInfo.title, info.title)
+                    || !TextUtils.equals(mInfo.pkgname, info.pkgname);
+            // the new info has no detail text yet, so it is rebuilt on the next expand
             mInfo = info;
+            if (changed) {
+                notifyChanged();
+            }
+        }
+
+        private void bindExtra(TextView extra) {
+            if (mInfo.extra == null) {
+                mInfo.extra = mExtraTextGenerator.generateExtraText(mInfo);
+            }
+            extra.setText(mInfo.extra);
         }
 
         @Override
@@ -592,16 +653,24 @@ public class NotificationStation extends SettingsPreferenceFragment {
             ((TextView) row.findViewById(R.id.pkgname)).setText(mInfo.pkgname);
 
             final TextView extra = (TextView) row.findViewById(R.id.extra);
-            extra.setText(mInfo.extra);
-            extra.setVisibility(mInfo.timestamp == sLastExpandedTimestamp
-                    ? View.VISIBLE : View.GONE);
+            if (mInfo.timestamp == sLastExpandedTimestamp) {
+                bindExtra(extra);
+                extra.setVisibility(View.VISIBLE);
+            } else {
+                extra.setText(null);
+                extra.setVisibility(View.GONE);
+            }
 
             row.itemView.setOnClickListener(
                     new View.OnClickListener() {
                         @Override
                         public void onClick(View view) {
-                            extra.setVisibility(extra.getVisibility() == View.VISIBLE
-                                    ? View.GONE : View.VISIBLE);
+                            if (extra.getVisibility() == View.VISIBLE) {
+                                extra.setVisibility(View.GONE);
+                            } else {
+                                bindExtra(extra);
+                                extra.setVisibility(View.VISIBLE);
+                            }
                             sLastExpandedTimestamp = mInfo.timestamp;
                         }
                     });
@@ -59,6 +59,7 @@ import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.settings.core.instrumentation.PerfStats;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.indexing.IndexData;
 import com.android.settings.search.indexing.IndexDataConverter;
@@ -116,8 +117,10 @@ public class DatabaseIndexingManager {
 
         final long updateDatabaseStartTime = System.currentTimeMillis();
         updateDatabase(indexData, isFullIndex);
+        final long updateDatabaseTime = System.currentTimeMillis() - updateDatabaseStartTime;
+        PerfStats.getInstance().recordDuration(PerfStats.GROUP_INDEXING, "update_database",
+                updateDatabaseTime);
         if (SettingsSearchIndexablesProvider.DEBUG) {
-            final long updateDatabaseTime = System.currentTimeMillis() - updateDatabaseStartTime;
             Log.d(LOG_TAG, "performIndexing updateDatabase took time: " + updateDatabaseTime);
         }
 
@@ -126,8 +129,10 @@ public class DatabaseIndexingManager {
         IndexDatabaseHelper.setBuildIndexed(mContext, fingerprint);
         IndexDatabaseHelper.setProvidersIndexed(mContext, providerVersionedNames);
 
+        final long indexingTime = System.currentTimeMillis() - startTime;
+        PerfStats.getInstance().recordDuration(PerfStats.GROUP_INDEXING,
+                isFullIndex ? "full" : "incremental", indexingTime);
         if (SettingsSearchIndexablesProvider.DEBUG) {
-            final long indexingTime = System.currentTimeMillis() - startTime;
             Log.d(LOG_TAG, "performIndexing took time: " + indexingTime
                     + "ms. Full index? " + isFullIndex);
         }
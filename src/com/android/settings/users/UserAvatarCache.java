@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.users;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.UserInfo;
+import android.graphics.Bitmap;
+import android.os.UserHandle;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.util.SparseIntArray;
+
+/**
+ * Process-wide cache of user avatars, scaled down to the size they are displayed at.
+ *
+ * <p>Entries are keyed by user id and only returned while the user's icon path is unchanged and
+ * no user info change has been broadcast for that user since they were decoded, so reopening the
+ * Users screen does not decode any icon again.
+ */
+public class UserAvatarCache {
+
+    /** Share of the heap the cached avatars may use. */
+    private static final int MEMORY_BUDGET_DIVISOR = 64;
+
+    private static UserAvatarCache sInstance;
+
+    private final LruCache<Integer, Avatar> mAvatars;
+    private final SparseIntArray mGenerations = new SparseIntArray();
+    private final int mAvatarSize;
+
+    /** Decodes the full-size icon of a user. */
+    public interface IconLoader {
+        Bitmap loadIcon(int userId);
+    }
+
+    public static synchronized UserAvatarCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            if (appContext == null) {
+                appContext = context;
+            }
+            final int maxBytes =
+                    (int) (Runtime.getRuntime().maxMemory() / MEMORY_BUDGET_DIVISOR);
+            final int avatarSize = appContext.getResources().getDimensionPixelSize(
+                    com.android.settingslib.R.dimen.circle_avatar_size);
+            sInstance = new UserAvatarCache(maxBytes, avatarSize);
+            sInstance.registerForInvalidation(appContext);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    UserAvatarCache(int maxBytes, int avatarSize) {
+        mAvatarSize = avatarSize;
+        mAvatars = new LruCache<Integer, Avatar>(maxBytes) {
+            @Override
+            protected int sizeOf(Integer userId, Avatar avatar) {
+                return avatar.bitmap.getByteCount();
+            }
+        };
+    }
+
+    private void registerForInvalidation(Context context) {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_USER_INFO_CHANGED);
+        filter.addAction(Intent.ACTION_USER_REMOVED);
+        context.registerReceiverAsUser(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final int userId = intent.getIntExtra(Intent.EXTRA_USER_HANDLE,
+                        UserHandle.USER_NULL);
+                if (userId == UserHandle.USER_NULL) {
+                    invalidateAll();
+                } else {
+                    invalidate(userId);
+                }
+            }
+        }, UserHandle.ALL, filter, null, null);
+    }
+
+    /**
+     * @return the cached avatar of {@code user}, or null if it has not been loaded yet or is out
+     * of date.
+     */
+    public synchronized Bitmap get(UserInfo user) {
+        final Avatar avatar = mAvatars.get(user.id);
+        if (avatar == null || !avatar.isCurrent(user, mGenerations.get(user.id))) {
+            return null;
+        }
+        return avatar.bitmap;
+    }
+
+    /**
+     * Returns the avatar of {@code user}, decoding it with {@code loader} and scaling it to the
+     * display size if it is not cached. A decode that races with an invalidation of the same user
+     * is returned but not cached.
+     */
+    @WorkerThread
+    public Bitmap load(UserInfo user, IconLoader loader) {
+        final int generation;
+        synchronized (this) {
+            final Bitmap cached = get(user);
+            if (cached != null) {
+                return cached;
+            }
+            generation = mGenerations.get(user.id);
+        }
+        final Bitmap icon = loader.loadIcon(user.id);
+        if (icon == null) {
+            return null;
+        }
+        final Bitmap scaled = scale(icon);
+        synchronized (this) {
+            if (mGenerations.get(user.id) == generation) {
+                mAvatars.put(user.id, new Avatar(user.iconPath, generation, scaled));
+            }
+        }
+        return scaled;
+    }
+
+    /** Drops the avatar of {@code userId}, including any decode of it in progress. */
+    public synchronized void invalidate(int userId) {
+        mGenerations.put(userId, mGenerations.get(userId) + 1);
+        mAvatars.remove(userId);
+    }
+
+    public synchronized void invalidateAll() {
+        for (Integer userId : mAvatars.snapshot().keySet()) {
+            if (mGenerations.indexOfKey(userId) < 0) {
+                mGenerations.put(userId, 0);
+            }
+        }
+        for (int i = 0; i < mGenerations.size(); i++) {
+            mGenerations.setValueAt(i, mGenerations.valueAt(i) + 1);
+        }
+        mAvatars.evictAll();
+    }
+
+    /** Scales {@code icon} so that its shorter side is the display size, never up. */
+    private Bitmap scale(Bitmap icon) {
+        final int width = icon.getWidth();
+        final int height = icon.getHeight();
+        final int shorter = Math.min(width, height);
+        if (mAvatarSize <= 0 || shorter <= mAvatarSize) {
+            return icon;
+        }
+        final float ratio = (float) mAvatarSize / shorter;
+        return Bitmap.createScaledBitmap(icon, Math.max(1, Math.round(width * ratio)),
+                Math.max(1, Math.round(height * ratio)), true /* filter */);
+    }
+
+    private static class Avatar {
+        final String iconPath;
+        final int generation;
+        final Bitmap bitmap;
+
+        Avatar(String iconPath, int generation, Bitmap bitmap) {
+            this.iconPath = iconPath;
+            this.generation = generation;
+            this.bitmap = bitmap;
+        }
+
+        boolean isCurrent(UserInfo user, int currentGeneration) {
+            return generation == currentGeneration && TextUtils.equals(iconPath, user.iconPath);
+        }
+    }
+}
@@ -49,6 +49,7 @@ import android.support.v7.preference.Preference;
 import android.support.v7.preference.Preference.OnPreferenceClickListener;
 import android.support.v7.preference.PreferenceGroup;
 import android.support.v7.preference.PreferenceScreen;
+import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
 import android.view.Menu;
@@ -80,6 +81,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Screen that manages the list of users on the device.
@@ -143,7 +145,9 @@ public class UserSettings extends SettingsPreferenceFragment
     private boolean mShouldUpdateUserList = true;
     private final Object mUserLock = new Object();
     private UserManager mUserManager;
-    private SparseArray<Bitmap> mUserIcons = new SparseArray<>();
+    private UserAvatarCache mAvatarCache;
+    // Users whose avatar is being decoded in the background
+    private final Set<Integer> mLoadingIcons = new ArraySet<>();
     private static SparseArray<Bitmap> sDarkDefaultUserBitmapCache = new SparseArray<>();
 
     private EditUserInfoController mEditUserInfoController = new EditUserInfoController();
@@ -177,7 +181,7 @@ public class UserSettings extends SettingsPreferenceFragment
             } else if (intent.getAction().equals(Intent.ACTION_USER_INFO_CHANGED)) {
                 int userHandle = intent.getIntExtra(Intent.EXTRA_USER_HANDLE, -1);
                 if (userHandle != -1) {
-                    mUserIcons.remove(userHandle);
+                    mAvatarCache.invalidate(userHandle);
                 }
             }
             mHandler.sendEmptyMessage(MESSAGE_UPDATE_LIST);
@@ -218,6 +222,7 @@ public class UserSettings extends SettingsPreferenceFragment
 
         mUserCaps = UserCapabilities.create(context);
         mUserManager = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        mAvatarCache = UserAvatarCache.getInstance(context);
         if (!mUserCaps.mEnabled) {
             return;
         }
@@ -343,32 +348,32 @@ public class UserSettings extends SettingsPreferenceFragment
             return;
         }
 
-        new AsyncTask<Void, Void, String>() {
+        new AsyncTask<Void, Void, UserInfo>() {
             @Override
-            protected void onPostExecute(String result) {
+            protected void onPostExecute(UserInfo result) {
                 finishLoadProfile(result);
             }
 
             @Override
-            protected String doInBackground(Void... values) {
+            protected UserInfo doInBackground(Void... values) {
                 UserInfo user = mUserManager.getUserInfo(UserHandle.myUserId());
                 if (user.iconPath == null || user.iconPath.equals("")) {
                     // Assign profile photo.
                     copyMeProfilePhoto(getActivity(), user);
+                    user = mUserManager.getUserInfo(user.id);
                 }
-                return user.name;
+                mAvatarCache.load(user, mUserManager::getUserIcon);
+                return user;
             }
         }.execute();
     }
 
-    private void finishLoadProfile(String profileName) {
+    private void finishLoadProfile(UserInfo user) {
         if (getActivity() == null) return;
-        mMePreference.setTitle(getString(R.string.user_you, profileName));
-        int myUserId = UserHandle.myUserId();
-        Bitmap b = mUserManager.getUserIcon(myUserId);
+        mMePreference.setTitle(getString(R.string.user_you, user.name));
+        Bitmap b = mAvatarCache.get(user);
         if (b != null) {
             mMePreference.setIcon(encircle(b));
-            mUserIcons.put(myUserId, b);
         }
     }
 
@@ -765,7 +770,7 @@ public class UserSettings extends SettingsPreferenceFragment
         final Context context = getActivity();
 
         final boolean voiceCapable = Utils.isVoiceCapable(context);
-        final ArrayList<Integer> missingIcons = new ArrayList<>();
+        final ArrayList<UserInfo> missingIcons = new ArrayList<>();
         final ArrayList<UserPreference> userPreferences = new ArrayList<>();
         int guestId = UserPreference.USERID_GUEST_DEFAULTS;
         userPreferences.add(mMePreference);
@@ -826,9 +831,11 @@ public class UserSettings extends SettingsPreferenceFragment
                 pref.setSummary(R.string.user_summary_restricted_profile);
             }
             if (user.iconPath != null) {
-                if (mUserIcons.get(user.id) == null) {
+                if (mAvatarCache.get(user) == null) {
                     // Icon not loaded yet, print a placeholder
-                    missingIcons.add(user.id);
+                    if (mLoadingIcons.add(user.id)) {
+                        missingIcons.add(user);
+                    }
                     pref.setIcon(getEncircledDefaultIcon());
                 } else {
                     setPhotoId(pref, user);
@@ -942,21 +949,27 @@ public class UserSettings extends SettingsPreferenceFragment
         return maxUsersAndGuest - managedProfiles;
     }
 
-    private void loadIconsAsync(List<Integer> missingIcons) {
-        new AsyncTask<List<Integer>, Void, Void>() {
+    private void loadIconsAsync(List<UserInfo> missingIcons) {
+        final Resources resources = getContext().getResources();
+        new AsyncTask<List<UserInfo>, Void, Void>() {
             @Override
             protected void onPostExecute(Void result) {
+                for (UserInfo user : missingIcons) {
+                    mLoadingIcons.remove(user.id);
+                }
                 updateUserList();
             }
 
             @Override
-            protected Void doInBackground(List<Integer>... values) {
-                for (int userId : values[0]) {
-                    Bitmap bitmap = mUserManager.getUserIcon(userId);
-                    if (bitmap == null) {
-                        bitmap = getDefaultUserIconAsBitmap(getContext().getResources(), userId);
-                    }
-                    mUserIcons.append(userId, bitmap);
+            protected Void doInBackground(List<UserInfo>... values) {
+                for (UserInfo user : values[0]) {
+                    mAvatarCache.load(user, userId -> {
+                        Bitmap bitmap = mUserManager.getUserIcon(userId);
+                        if (bitmap == null) {
+                            bitmap = getDefaultUserIconAsBitmap(resources, userId);
+                        }
+                        return bitmap;
+                    });
                 }
                 return null;
             }
@@ -972,7 +985,7 @@ public class UserSettings extends SettingsPreferenceFragment
     }
 
     private void setPhotoId(Preference pref, UserInfo user) {
-        Bitmap bitmap = mUserIcons.get(user.id);
+        Bitmap bitmap = mAvatarCache.get(user);
         if (bitmap != null) {
             pref.setIcon(encircle(bitmap));
         }
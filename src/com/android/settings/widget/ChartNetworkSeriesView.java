@@ -21,6 +21,7 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.DashPathEffect;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.Path;
@@ -55,6 +56,8 @@ public class ChartNetworkSeriesView extends View {
     private Paint mPaintEstimate;
 
     private NetworkStatsHistory mStats;
+    /** Cumulative snapshot of {@link #mStats}, rebuilt only when data changes. */
+    private CumulativeSeries mSeries;
 
     private Path mPathStroke;
     private Path mPathFill;
@@ -75,6 +78,20 @@ public class ChartNetworkSeriesView extends View {
     private long mMax;
     private long mMaxEstimate;
 
+    /** Geometry the current paths were generated against, used to rescale them in place. */
+    private boolean mPathGenerated = false;
+    private int mPathWidth;
+    private int mPathHeight;
+    private long mPathStart;
+    private long mPathEnd;
+    private float mPathHorizStart;
+    private float mPathHorizEnd;
+    private long mPathMax;
+    private float mPathVertZero;
+    private float mPathVertHalf;
+    private float mPathVertMax;
+    private final Matrix mRescaleMatrix = new Matrix();
+
     public ChartNetworkSeriesView(Context context) {
         this(context, null, 0);
     }
@@ -143,6 +160,8 @@ public class ChartNetworkSeriesView extends View {
 
     public void bindNetworkStats(NetworkStatsHistory stats) {
         mStats = stats;
+        mSeries = null;
+        mPathGenerated = false;
         invalidatePath();
         invalidate();
     }
@@ -162,6 +181,65 @@ public class ChartNetworkSeriesView extends View {
         invalidate();
     }
 
+    /**
+     * Try to map the existing paths onto the current vertical axis without regenerating them,
+     * which is possible when only the vertical scale changed linearly, such as while a sweep
+     * is dragged and grows or shrinks the axis.
+     *
+     * @return {@code true} when the existing paths were reused.
+     */
+    private boolean rescalePath() {
+        if (!mPathGenerated || mSeries == null || mPathMax <= 0
+                || mPathWidth != getWidth() || mPathHeight != getHeight()
+                || mPathStart != mStart || mPathEnd != mEnd
+                || mPathHorizStart != mHoriz.convertToPoint(mStart)
+                || mPathHorizEnd != mHoriz.convertToPoint(mEnd)) {
+            return false;
+        }
+        if (mPathVertMax == mPathVertZero) {
+            return false;
+        }
+
+        final float vertZero = mVert.convertToPoint(0);
+        final float vertHalf = mVert.convertToPoint(mPathMax / 2);
+        final float vertMax = mVert.convertToPoint(mPathMax);
+        final float scale = (vertMax - vertZero) / (mPathVertMax - mPathVertZero);
+        final float translate = vertZero - scale * mPathVertZero;
+
+        // only reuse geometry when the axis change is affine, including the fill baseline
+        if (Math.abs(scale * mPathVertHalf + translate - vertHalf) > 0.5f
+                || Math.abs(scale * mPathHeight + translate - mPathHeight) > 0.5f) {
+            return false;
+        }
+
+        mRescaleMatrix.setScale(1f, scale);
+        mRescaleMatrix.postTranslate(0f, translate);
+        mPathStroke.transform(mRescaleMatrix);
+        mPathFill.transform(mRescaleMatrix);
+        mPathEstimate.transform(mRescaleMatrix);
+
+        mPathVertZero = vertZero;
+        mPathVertHalf = vertHalf;
+        mPathVertMax = vertMax;
+        mMax = mPathMax;
+        mPathValid = true;
+        return true;
+    }
+
+    private void rememberPathGeometry() {
+        mPathGenerated = true;
+        mPathWidth = getWidth();
+        mPathHeight = getHeight();
+        mPathStart = mStart;
+        mPathEnd = mEnd;
+        mPathHorizStart = mHoriz.convertToPoint(mStart);
+        mPathHorizEnd = mHoriz.convertToPoint(mEnd);
+        mPathMax = mMax;
+        mPathVertZero = mVert.convertToPoint(0);
+        mPathVertHalf = mVert.convertToPoint(mMax / 2);
+        mPathVertMax = mVert.convertToPoint(mMax);
+    }
+
     /**
      * Erase any existing {@link Path} and generate series outline based on
      * currently bound {@link NetworkStatsHistory} data.
@@ -174,12 +252,18 @@ public class ChartNetworkSeriesView extends View {
         mPathFill.reset();
         mPathEstimate.reset();
         mPathValid = true;
+        mPathGenerated = false;
 
         // bail when not enough stats to render
         if (mStats == null || mStats.size() < 2) {
             return;
         }
 
+        if (mSeries == null) {
+            mSeries = new CumulativeSeries(mStats);
+        }
+        final CumulativeSeries series = mSeries;
+
         final int width = getWidth();
         final int height = getHeight();
 
@@ -196,16 +280,15 @@ public class ChartNetworkSeriesView extends View {
         // currently it only accepts first full bucket.
 
         long totalData = 0;
+        long totalBase = -1;
 
         NetworkStatsHistory.Entry entry = null;
 
-        final int start = mStats.getIndexBefore(mStart);
-        final int end = mStats.getIndexAfter(mEnd);
+        final int start = series.getIndexBefore(mStart);
+        final int end = series.getIndexAfter(mEnd);
         for (int i = start; i <= end; i++) {
-            entry = mStats.getValues(i, entry);
-
-            final long startTime = entry.bucketStart;
-            final long endTime = startTime + entry.bucketDuration;
+            final long startTime = series.getBucketStart(i);
+            final long endTime = series.getBucketEnd(i);
 
             final float startX = mHoriz.convertToPoint(startTime);
             final float endX = mHoriz.convertToPoint(endTime);
@@ -213,8 +296,11 @@ public class ChartNetworkSeriesView extends View {
             // skip until we find first stats on screen
             if (endX < 0) continue;
 
-            // increment by current bucket total
-            totalData += entry.rxBytes + entry.txBytes;
+            // running total since the first bucket on screen
+            if (totalBase < 0) {
+                totalBase = series.getTotalBefore(i);
+            }
+            totalData = series.getTotalThrough(i) - totalBase;
 
             final float startY = lastY;
             final float endY = mVert.convertToPoint(totalData);
@@ -288,6 +374,7 @@ public class ChartNetworkSeriesView extends View {
             mMaxEstimate = totalData;
         }
 
+        rememberPathGeometry();
         invalidate();
     }
 
@@ -319,7 +406,7 @@ public class ChartNetworkSeriesView extends View {
     protected void onDraw(Canvas canvas) {
         int save;
 
-        if (!mPathValid) {
+        if (!mPathValid && !rescalePath()) {
             generatePath();
         }
 
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.widget;
+
+import android.net.NetworkStatsHistory;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of a {@link NetworkStatsHistory} as primitive arrays of bucket bounds and running
+ * totals, so that a path over any range can be built without walking the history entries again.
+ */
+class CumulativeSeries {
+
+    private final int mSize;
+    private final long[] mBucketStart;
+    private final long[] mBucketEnd;
+    /** Sum of rx and tx bytes of buckets {@code [0, i]}. */
+    private final long[] mCumulative;
+
+    CumulativeSeries(NetworkStatsHistory stats) {
+        mSize = stats != null ? stats.size() : 0;
+        mBucketStart = new long[mSize];
+        mBucketEnd = new long[mSize];
+        mCumulative = new long[mSize];
+
+        NetworkStatsHistory.Entry entry = null;
+        long total = 0;
+        for (int i = 0; i < mSize; i++) {
+            entry = stats.getValues(i, entry);
+            mBucketStart[i] = entry.bucketStart;
+            mBucketEnd[i] = entry.bucketStart + entry.bucketDuration;
+            total += entry.rxBytes + entry.txBytes;
+            mCumulative[i] = total;
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    long getBucketStart(int i) {
+        return mBucketStart[i];
+    }
+
+    long getBucketEnd(int i) {
+        return mBucketEnd[i];
+    }
+
+    /**
+     * @return total bytes of all buckets before {@code i}.
+     */
+    long getTotalBefore(int i) {
+        return i > 0 ? mCumulative[i - 1] : 0;
+    }
+
+    /**
+     * @return total bytes of all buckets up to and including {@code i}.
+     */
+    long getTotalThrough(int i) {
+        return mCumulative[i];
+    }
+
+    /**
+     * Same as {@link NetworkStatsHistory#getIndexBefore(long)}.
+     */
+    int getIndexBefore(long time) {
+        int index = Arrays.binarySearch(mBucketStart, 0, mSize, time);
+        if (index < 0) {
+            index = (~index) - 1;
+        } else {
+            index -= 1;
+        }
+        return constrain(index);
+    }
+
+    /**
+     * Same as {@link NetworkStatsHistory#getIndexAfter(long)}.
+     */
+    int getIndexAfter(long time) {
+        int index = Arrays.binarySearch(mBucketStart, 0, mSize, time);
+        if (index < 0) {
+            index = ~index;
+        } else {
+            index += 1;
+        }
+        return constrain(index);
+    }
+
+    private int constrain(int index) {
+        return Math.max(0, Math.min(mSize - 1, index));
+    }
+}
@@ -42,6 +42,8 @@ import android.provider.Settings;
 import android.support.annotation.VisibleForTesting;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceCategory;
+import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
@@ -165,7 +167,8 @@ public class WifiSettings extends RestrictedSettingsFragment
     private AccessPointPreference.UserBadgeCache mUserBadgeCache;
 
     private PreferenceCategory mConnectedAccessPointPreferenceCategory;
-    private PreferenceCategory mAccessPointsPreferenceCategory;
+    @VisibleForTesting
+    PreferenceCategory mAccessPointsPreferenceCategory;
     private PreferenceCategory mAdditionalSettingsPreferenceCategory;
     private Preference mAddPreference;
     private Preference mConfigureWifiSettingsPreference;
@@ -724,24 +727,81 @@ public class WifiSettings extends RestrictedSettingsFragment
             Log.i(TAG, "updateAccessPoints called for: " + accessPoints);
         }
 
-        boolean hasAvailableAccessPoints = false;
         mAccessPointsPreferenceCategory.removePreference(mStatusMessagePreference);
-        cacheRemoveAllPrefs(mAccessPointsPreferenceCategory);
 
-        int index =
-                configureConnectedAccessPointPreferenceCategory(accessPoints) ? 1 : 0;
+        final boolean hasAvailableAccessPoints = updateAccessPointList(accessPoints,
+                configureConnectedAccessPointPreferenceCategory(accessPoints) ? 1 : 0);
+        int index = accessPoints.size();
+        if (mAddPreference.getOrder() != index) {
+            mAddPreference.setOrder(index);
+        }
+        // No-op if already shown.
+        mAccessPointsPreferenceCategory.addPreference(mAddPreference);
+        setAdditionalSettingsSummaries();
+
+        final Preference emptyPref =
+                mAccessPointsPreferenceCategory.findPreference(PREF_KEY_EMPTY_WIFI_LIST);
+        if (!hasAvailableAccessPoints) {
+            setProgressBarVisible(true);
+            Preference pref = emptyPref;
+            if (pref == null) {
+                pref = new Preference(getPrefContext());
+                pref.setSelectable(false);
+                pref.setSummary(R.string.wifi_empty_list_wifi_on);
+                pref.setKey(PREF_KEY_EMPTY_WIFI_LIST);
+            }
+            pref.setOrder(index++);
+            mAccessPointsPreferenceCategory.addPreference(pref);
+        } else {
+            if (emptyPref != null) {
+                mAccessPointsPreferenceCategory.removePreference(emptyPref);
+            }
+            // Continuing showing progress bar for an additional delay to overlap with animation
+            getView().postDelayed(mHideProgressBarRunnable, 1700 /* delay millis */);
+        }
+    }
+
+    /**
+     * Shows the reachable access points of {@code accessPoints} from {@code firstIndex} on, in
+     * list order, and removes the preferences of the access points that are no longer listed.
+     *
+     * @return whether any access point is shown
+     */
+    @VisibleForTesting
+    boolean updateAccessPointList(List<AccessPoint> accessPoints, int firstIndex) {
+        // Diff against the access points already shown, keyed by access point key, so a scan
+        // that only changes signal levels leaves every preference in place. Signal level and
+        // summary changes are applied by the preferences themselves through the AccessPoint
+        // listener.
+        final ArrayMap<String, LongPressAccessPointPreference> shownPrefs = new ArrayMap<>();
+        for (int i = 0, count = mAccessPointsPreferenceCategory.getPreferenceCount();
+                i < count; i++) {
+            final Preference pref = mAccessPointsPreferenceCategory.getPreference(i);
+            if (pref instanceof LongPressAccessPointPreference
+                    && !TextUtils.isEmpty(pref.getKey())) {
+                shownPrefs.put(pref.getKey(), (LongPressAccessPointPreference) pref);
+            }
+        }
+
+        boolean hasAvailableAccessPoints = false;
         int numAccessPoints = accessPoints.size();
-        for (; index < numAccessPoints; index++) {
+        for (int index = firstIndex; index < numAccessPoints; index++) {
             AccessPoint accessPoint = accessPoints.get(index);
             // Ignore access points that are out of range.
             if (accessPoint.isReachable()) {
                 String key = accessPoint.getKey();
                 hasAvailableAccessPoints = true;
-                LongPressAccessPointPreference pref =
-                        (LongPressAccessPointPreference) getCachedPreference(key);
+                LongPressAccessPointPreference pref = shownPrefs.remove(key);
                 if (pref != null) {
-                    pref.setOrder(index);
-                    continue;
+                    if (pref.getAccessPoint() == accessPoint) {
+                        // Same access point, at most moved.
+                        if (pref.getOrder() != index) {
+                            pref.setOrder(index);
+                        }
+                        continue;
+                    }
+                    // The tracker replaced the access point, rebind a new preference to it.
+                    mAccessPointsPreferenceCategory.removePreference(pref);
                 }
                 LongPressAccessPointPreference preference =
                         createLongPressAccessPointPreference(accessPoint);
@@ -759,23 +819,11 @@ public class WifiSettings extends RestrictedSettingsFragment
                 preference.refresh();
             }
         }
-        removeCachedPrefs(mAccessPointsPreferenceCategory);
-        mAddPreference.setOrder(index);
-        mAccessPointsPreferenceCategory.addPreference(mAddPreference);
-        setAdditionalSettingsSummaries();
-
-        if (!hasAvailableAccessPoints) {
-            setProgressBarVisible(true);
-            Preference pref = new Preference(getPrefContext());
-            pref.setSelectable(false);
-            pref.setSummary(R.string.wifi_empty_list_wifi_on);
-            pref.setOrder(index++);
-            pref.setKey(PREF_KEY_EMPTY_WIFI_LIST);
-            mAccessPointsPreferenceCategory.addPreference(pref);
-        } else {
-            // Continuing showing progress bar for an additional delay to overlap with animation
-            getView().postDelayed(mHideProgressBarRunnable, 1700 /* delay millis */);
+        // Remove the access points that are gone.
+        for (int i = 0, count = shownPrefs.size(); i < count; i++) {
+            mAccessPointsPreferenceCategory.removePreference(shownPrefs.valueAt(i));
         }
+        return hasAvailableAccessPoints;
     }
 
     @NonNull
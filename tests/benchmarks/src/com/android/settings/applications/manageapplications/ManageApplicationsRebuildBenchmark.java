@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static com.android.settings.applications.manageapplications.AppFilterRegistry.FILTER_APPS_ALL;
+import static com.android.settings.applications.manageapplications.ManageApplications.LIST_TYPE_MAIN;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Process;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.android.settings.benchmark.Benchmark;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+import com.android.settingslib.applications.ApplicationsState.AppFilter;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rebuild of the main app list over the given number of synthetic apps: the list filters are
+ * composed, the apps filtered and sorted by label, and the result handed to the adapter.
+ * Background work runs inline, so the whole rebuild is measured.
+ */
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(shadows = ShadowThreadUtils.class)
+public class ManageApplicationsRebuildBenchmark {
+
+    private static final int DEFAULT_SIZE = 500;
+    private static final String[] WORDS = {"Photo", "Music", "Maps", "Chat", "Mail", "Notes",
+            "Camera", "Clock", "Files", "News", "Weather", "Video", "Games", "Shop", "Bank",
+            "Fit"};
+
+    @Mock
+    private ApplicationsState mState;
+    @Mock
+    private ApplicationsState.Session mSession;
+
+    private Context mContext;
+    private List<AppEntry> mEntries;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        ReflectionHelpers.setStaticField(ApplicationsState.class, "sInstance", mState);
+        when(mState.newSession(any())).thenReturn(mSession);
+        when(mSession.getAllApps()).thenReturn(new ArrayList<>());
+        // Filter and sort like the session does once the apps are loaded.
+        doAnswer(invocation -> {
+            final AppFilter filter = invocation.getArgument(0);
+            final Comparator<AppEntry> comparator = invocation.getArgument(1);
+            filter.init(mContext);
+            final ArrayList<AppEntry> filtered = new ArrayList<>();
+            for (AppEntry entry : mEntries) {
+                if (filter.filterApp(entry)) {
+                    filtered.add(entry);
+                }
+            }
+            Collections.sort(filtered, comparator);
+            return filtered;
+        }).when(mSession).rebuild(any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void rebuild() throws Exception {
+        final Benchmark benchmark = new Benchmark("manage_applications_rebuild", DEFAULT_SIZE);
+        mEntries = buildEntries(benchmark.getSize());
+
+        final ManageApplications fragment = mock(ManageApplications.class);
+        fragment.mListType = LIST_TYPE_MAIN;
+        ReflectionHelpers.setField(fragment, "mLoadingContainer", new View(mContext));
+        ReflectionHelpers.setField(fragment, "mListContainer", new View(mContext));
+        ReflectionHelpers.setField(fragment, "mEmptyView", new View(mContext));
+        ReflectionHelpers.setField(fragment, "mRecyclerView", new RecyclerView(mContext));
+        final ManageApplications.ApplicationsAdapter adapter =
+                new ManageApplications.ApplicationsAdapter(mState, fragment,
+                        AppFilterRegistry.getInstance().get(FILTER_APPS_ALL),
+                        null /* savedInstanceState */);
+        adapter.onLoadEntriesCompleted();
+
+        final JSONObject result = benchmark.run(() -> {
+            adapter.rebuild();
+            return adapter.getItemCount();
+        });
+
+        assertThat(adapter.getItemCount()).isGreaterThan(0);
+        assertThat(result.getLong("iterations")).isGreaterThan(0L);
+    }
+
+    private List<AppEntry> buildEntries(int size) {
+        final Random random = new Random(Benchmark.getSeed());
+        final List<AppEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final ApplicationInfo info = new ApplicationInfo();
+            info.packageName = "com.example.app" + i;
+            info.uid = Process.FIRST_APPLICATION_UID + i;
+            info.sourceDir = info.packageName;
+            info.enabled = random.nextInt(20) != 0;
+            // About a third are system apps, some of them updated.
+            final int kind = random.nextInt(6);
+            if (kind < 2) {
+                info.flags |= ApplicationInfo.FLAG_SYSTEM;
+                if (kind == 0) {
+                    info.flags |= ApplicationInfo.FLAG_UPDATED_SYSTEM_APP;
+                }
+            }
+            final AppEntry entry = new AppEntry(mContext, info, i);
+            entry.label = WORDS[random.nextInt(WORDS.length)] + " "
+                    + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+            entry.hasLauncherEntry = random.nextBoolean();
+            entries.add(entry);
+        }
+        return entries;
+    }
+}
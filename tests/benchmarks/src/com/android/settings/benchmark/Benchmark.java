@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures one code path on the host JVM and appends the result to the benchmark report.
+ *
+ * <p>Each benchmark runs a fixed number of warm-up iterations, then a fixed number of measured
+ * ones, each preceded by an optional unmeasured setup step. The report gets one JSON object per
+ * line with the timing percentiles and a checksum of the values returned by the measured code,
+ * so that two builds can be compared both for speed and for identical results.
+ *
+ * <p>Every parameter can be set with a system property or an environment variable:
+ * <ul>
+ * <li>{@code settings.benchmark.size} / {@code SETTINGS_BENCHMARK_SIZE}: fixture size, default
+ * set by each benchmark.
+ * <li>{@code settings.benchmark.warmup} / {@code SETTINGS_BENCHMARK_WARMUP}: warm-up iterations,
+ * default {@value #DEFAULT_WARMUP}.
+ * <li>{@code settings.benchmark.iterations} / {@code SETTINGS_BENCHMARK_ITERATIONS}: measured
+ * iterations, default {@value #DEFAULT_ITERATIONS}.
+ * <li>{@code settings.benchmark.seed} / {@code SETTINGS_BENCHMARK_SEED}: seed of the synthetic
+ * fixtures, default {@value #DEFAULT_SEED}.
+ * <li>{@code settings.benchmark.output} / {@code SETTINGS_BENCHMARK_OUTPUT}: report file the
+ * results are appended to; they are always printed to stdout too.
+ * <li>{@code settings.benchmark.label} / {@code SETTINGS_BENCHMARK_LABEL}: free-form label of
+ * the build, such as a commit id, copied into every result.
+ * </ul>
+ */
+public class Benchmark {
+
+    private static final int DEFAULT_WARMUP = 5;
+    private static final int DEFAULT_ITERATIONS = 20;
+    private static final long DEFAULT_SEED = 42;
+
+    /**
+     * The code measured. The value returned is folded into the checksum of the result, which
+     * also keeps the work from being optimized away.
+     */
+    public interface Body {
+        long run() throws Exception;
+    }
+
+    /**
+     * Unmeasured work run before each iteration, such as resetting state the body changes.
+     */
+    public interface Setup {
+        void run() throws Exception;
+    }
+
+    private final String mName;
+    private final int mSize;
+    private Setup mSetup;
+
+    /**
+     * @param name name of the benchmark in the report
+     * @param defaultSize fixture size used unless one is configured
+     */
+    public Benchmark(String name, int defaultSize) {
+        mName = name;
+        mSize = getInt("size", defaultSize);
+    }
+
+    /**
+     * @return the fixture size the body should be measured against
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the seed synthetic fixtures should be generated from
+     */
+    public static long getSeed() {
+        final String seed = getParameter("seed");
+        return seed != null ? Long.parseLong(seed) : DEFAULT_SEED;
+    }
+
+    public Benchmark setSetup(Setup setup) {
+        mSetup = setup;
+        return this;
+    }
+
+    /**
+     * Measure {@code body} and report the result.
+     */
+    public JSONObject run(Body body) throws Exception {
+        final int warmup = getInt("warmup", DEFAULT_WARMUP);
+        final int iterations = getInt("iterations", DEFAULT_ITERATIONS);
+
+        for (int i = 0; i < warmup; i++) {
+            runSetup();
+            body.run();
+        }
+
+        // Each measured iteration sees the same fixture, so the checksum only changes when the
+        // results of the measured code do.
+        long checksum = 0;
+        final long[] times = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            runSetup();
+            System.gc();
+            final long start = System.nanoTime();
+            final long value = body.run();
+            times[i] = System.nanoTime() - start;
+            checksum = checksum * 31 + value;
+        }
+
+        final JSONObject result = buildResult(times, warmup, checksum);
+        report(result);
+        return result;
+    }
+
+    private void runSetup() throws Exception {
+        if (mSetup != null) {
+            mSetup.run();
+        }
+    }
+
+    private JSONObject buildResult(long[] times, int warmup, long checksum) throws JSONException {
+        final long[] sorted = Arrays.copyOf(times, times.length);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+
+        final JSONObject result = new JSONObject();
+        result.put("benchmark", mName);
+        result.put("label", getParameter("label"));
+        result.put("size", mSize);
+        result.put("seed", getSeed());
+        result.put("warmup", warmup);
+        result.put("iterations", times.length);
+        result.put("min_ns", sorted.length > 0 ? sorted[0] : 0);
+        result.put("median_ns", percentile(sorted, 50));
+        result.put("p90_ns", percentile(sorted, 90));
+        result.put("max_ns", sorted.length > 0 ? sorted[sorted.length - 1] : 0);
+        result.put("mean_ns", times.length > 0 ? total / times.length : 0);
+        result.put("checksum", checksum);
+        result.put("java_version", System.getProperty("java.version"));
+        result.put("os_arch", System.getProperty("os.arch"));
+        result.put("processors", Runtime.getRuntime().availableProcessors());
+        return result;
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        // Nearest rank, so the value is always one that was measured.
+        final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    private static void report(JSONObject result) throws IOException {
+        final String line = result.toString();
+        System.out.println(line);
+
+        final String output = getParameter("output");
+        if (output == null) {
+            return;
+        }
+        synchronized (Benchmark.class) {
+            try (Writer writer = new FileWriter(output, true /* append */)) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static int getInt(String name, int defaultValue) {
+        final String value = getParameter(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static String getParameter(String name) {
+        final String value = System.getProperty("settings.benchmark." + name);
+        if (value != null) {
+            return value;
+        }
+        return System.getenv("SETTINGS_BENCHMARK_" + name.toUpperCase(Locale.US));
+    }
+}
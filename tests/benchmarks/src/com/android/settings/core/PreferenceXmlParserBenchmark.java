@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.R;
+import com.android.settings.benchmark.Benchmark;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Metadata extraction from preference screen XML, as done when indexing a screen or building
+ * its controllers. The fixture is the given number of screens, cycling through some of the
+ * largest screens in Settings.
+ */
+@RunWith(SettingsRobolectricTestRunner.class)
+public class PreferenceXmlParserBenchmark {
+
+    private static final int DEFAULT_SIZE = 100;
+    private static final int[] SCREENS = {
+            R.xml.development_settings,
+            R.xml.sound_settings,
+            R.xml.security_dashboard_settings,
+            R.xml.display_settings,
+            R.xml.accessibility_settings,
+            R.xml.network_and_internet,
+            R.xml.language_and_input,
+            R.xml.date_time_prefs};
+    private static final int FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
+            | MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY;
+
+    @Test
+    public void extractMetadata() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final Benchmark benchmark = new Benchmark("preference_xml_metadata", DEFAULT_SIZE);
+        final int size = benchmark.getSize();
+
+        final JSONObject result = benchmark.run(() -> {
+            long preferences = 0;
+            for (int i = 0; i < size; i++) {
+                preferences += PreferenceXmlParserUtils.extractMetadata(context,
+                        SCREENS[i % SCREENS.length], FLAGS).size();
+            }
+            return preferences;
+        });
+
+        assertThat(result.getLong("checksum")).isNotEqualTo(0L);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datetime.timezone;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.benchmark.Benchmark;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Time zone search: a new adapter over the given number of synthetic regions filtered as a
+ * query is typed one letter at a time, then erased.
+ */
+@RunWith(SettingsRobolectricTestRunner.class)
+public class TimeZoneFilterBenchmark {
+
+    private static final int DEFAULT_SIZE = 2000;
+    private static final String[] SYLLABLES = {"an", "ba", "ca", "do", "el", "fi", "ga", "ho",
+            "is", "ja", "ka", "lu", "ma", "ne", "or", "pa", "qu", "ri", "sa", "to", "un", "va",
+            "wa", "xi", "ya", "zu"};
+    private static final String[] QUERIES = {"united", "san ", "new zea", "ma", "zzz"};
+
+    @Test
+    public void filter() throws Exception {
+        final Benchmark benchmark = new Benchmark("time_zone_filter", DEFAULT_SIZE);
+        final List<RegionItem> items = buildItems(benchmark.getSize());
+
+        final JSONObject result = benchmark.run(() -> {
+            final BaseTimeZoneAdapter<RegionItem> adapter = new BaseTimeZoneAdapter<>(items,
+                    item -> {}, Locale.US, false /* showItemSummary */, null /* headerText */);
+            final BaseTimeZoneAdapter<RegionItem>.ArrayFilter filter = adapter.getFilter();
+            long matches = 0;
+            for (String query : QUERIES) {
+                for (int i = 1; i <= query.length(); i++) {
+                    matches = matches * 31 + filter.performFiltering(query.substring(0, i)).count;
+                }
+                for (int i = query.length() - 1; i > 0; i--) {
+                    matches = matches * 31 + filter.performFiltering(query.substring(0, i)).count;
+                }
+            }
+            return matches;
+        });
+
+        assertThat(result.getLong("iterations")).isGreaterThan(0L);
+    }
+
+    private static List<RegionItem> buildItems(int size) {
+        final Random random = new Random(Benchmark.getSeed());
+        final List<RegionItem> items = new ArrayList<>(size);
+        // A few real names, so the queries also match something in small fixtures.
+        items.add(new RegionItem(0, "United States", "USA"));
+        items.add(new RegionItem(1, "United Kingdom", "Great Britain"));
+        items.add(new RegionItem(2, "New Zealand", "Aotearoa"));
+        items.add(new RegionItem(3, "San Marino", "Repubblica di San Marino"));
+        for (int i = items.size(); i < size; i++) {
+            items.add(new RegionItem(i, name(random), name(random)));
+        }
+        return items;
+    }
+
+    private static String name(Random random) {
+        final StringBuilder builder = new StringBuilder();
+        final int words = 1 + random.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                builder.append(' ');
+            }
+            final int syllables = 2 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                builder.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            builder.setCharAt(builder.length() - syllables * 2,
+                    Character.toUpperCase(builder.charAt(builder.length() - syllables * 2)));
+        }
+        return builder.toString();
+    }
+
+    private static class RegionItem implements BaseTimeZoneAdapter.AdapterItem {
+
+        private final long mId;
+        private final String mTitle;
+        private final String[] mSearchKeys;
+
+        RegionItem(long id, String title, String alternativeName) {
+            mId = id;
+            mTitle = title;
+            mSearchKeys = new String[] {title, alternativeName};
+        }
+
+        @Override
+        public CharSequence getTitle() {
+            return mTitle;
+        }
+
+        @Override
+        public CharSequence getSummary() {
+            return null;
+        }
+
+        @Override
+        public String getIconText() {
+            return null;
+        }
+
+        @Override
+        public String getCurrentTime() {
+            return null;
+        }
+
+        @Override
+        public long getItemId() {
+            return mId;
+        }
+
+        @Override
+        public String[] getSearchKeys() {
+            return mSearchKeys;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import android.graphics.Color;
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+
+import com.android.settings.benchmark.Benchmark;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+/**
+ * {@link BatteryInfo#parse} of a synthetic battery history with the given number of records,
+ * feeding the parsers of the battery history screen.
+ */
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryInfoParseBenchmark {
+
+    private static final int DEFAULT_SIZE = 20000;
+    private static final long START_WALL_TIME = 1514764800000L;
+    private static final int[] STATE_FLAGS = {
+            HistoryItem.STATE_BATTERY_PLUGGED_FLAG,
+            HistoryItem.STATE_SCREEN_ON_FLAG,
+            HistoryItem.STATE_GPS_ON_FLAG,
+            HistoryItem.STATE_CPU_RUNNING_FLAG,
+            HistoryItem.STATE_PHONE_SCANNING_FLAG};
+    private static final int[] STATE2_FLAGS = {
+            HistoryItem.STATE2_FLASHLIGHT_FLAG,
+            HistoryItem.STATE2_CAMERA_FLAG,
+            HistoryItem.STATE2_WIFI_RUNNING_FLAG};
+
+    @Test
+    public void parseHistory() throws Exception {
+        final Benchmark benchmark = new Benchmark("battery_info_parse", DEFAULT_SIZE);
+        final BatteryStats stats = buildHistory(benchmark.getSize());
+
+        final JSONObject result = benchmark.run(() -> {
+            final BatteryFlagParser[] flagParsers = {
+                    new BatteryFlagParser(Color.RED, false,
+                            HistoryItem.STATE_BATTERY_PLUGGED_FLAG),
+                    new BatteryFlagParser(Color.RED, false, HistoryItem.STATE_SCREEN_ON_FLAG),
+                    new BatteryFlagParser(Color.RED, false, HistoryItem.STATE_GPS_ON_FLAG),
+                    new BatteryFlagParser(Color.RED, true, HistoryItem.STATE2_FLASHLIGHT_FLAG),
+                    new BatteryFlagParser(Color.RED, true, HistoryItem.STATE2_CAMERA_FLAG),
+                    new BatteryWifiParser(Color.RED),
+                    new BatteryFlagParser(Color.RED, false, HistoryItem.STATE_CPU_RUNNING_FLAG)};
+            final BatteryCellParser cellParser = new BatteryCellParser();
+            final BatteryInfo.BatteryDataParser[] parsers =
+                    new BatteryInfo.BatteryDataParser[flagParsers.length + 1];
+            System.arraycopy(flagParsers, 0, parsers, 0, flagParsers.length);
+            parsers[flagParsers.length] = cellParser;
+
+            BatteryInfo.parse(stats, parsers);
+
+            long changes = cellParser.getColorArray().size();
+            for (BatteryFlagParser parser : flagParsers) {
+                changes = changes * 31 + parser.getColorArray().size();
+            }
+            return changes;
+        });
+
+        assertThat(result.getLong("iterations")).isGreaterThan(0L);
+    }
+
+    /**
+     * @return battery stats whose history has {@code size} records: mostly updates a few seconds
+     * apart, with the wall clock set every thousand records.
+     */
+    private static BatteryStats buildHistory(int size) {
+        final Random random = new Random(Benchmark.getSeed());
+        final byte[] cmds = new byte[size];
+        final long[] times = new long[size];
+        final int[] states = new int[size];
+        final int[] states2 = new int[size];
+        final byte[] levels = new byte[size];
+
+        long time = 0;
+        int state = 0;
+        int state2 = 0;
+        int level = 100;
+        for (int i = 0; i < size; i++) {
+            time += 1000 + random.nextInt(60000);
+            if (random.nextInt(8) == 0) {
+                state ^= STATE_FLAGS[random.nextInt(STATE_FLAGS.length)];
+            }
+            if (random.nextInt(16) == 0) {
+                state2 ^= STATE2_FLAGS[random.nextInt(STATE2_FLAGS.length)];
+            }
+            if (random.nextInt(50) == 0) {
+                level = level > 1 ? level - 1 : 100;
+            }
+            cmds[i] = i % 1000 == 0 ? HistoryItem.CMD_CURRENT_TIME : HistoryItem.CMD_UPDATE;
+            times[i] = time;
+            states[i] = state;
+            states2[i] = state2;
+            levels[i] = (byte) level;
+        }
+
+        final BatteryStats stats = mock(BatteryStats.class);
+        final int[] position = new int[1];
+        doAnswer(invocation -> {
+            position[0] = 0;
+            return true;
+        }).when(stats).startIteratingHistoryLocked();
+        doAnswer(invocation -> {
+            final int i = position[0];
+            if (i == size) {
+                return false;
+            }
+            final HistoryItem rec = invocation.getArgument(0);
+            rec.cmd = cmds[i];
+            rec.time = times[i];
+            rec.currentTime = START_WALL_TIME + times[i];
+            rec.states = states[i];
+            rec.states2 = states2[i];
+            rec.batteryLevel = levels[i];
+            position[0] = i + 1;
+            return true;
+        }).when(stats).getNextHistoryLocked(any(HistoryItem.class));
+        return stats;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.ArraySet;
+
+import com.android.settings.benchmark.Benchmark;
+import com.android.settings.search.indexing.PreIndexData;
+import com.android.settings.testutils.DatabaseTestUtils;
+import com.android.settings.testutils.FakeFeatureFactory;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Full rebuild of the search index from already collected indexable data: the tables are dropped
+ * and recreated, then every row is converted and inserted.
+ */
+@RunWith(SettingsRobolectricTestRunner.class)
+public class SearchIndexRebuildBenchmark {
+
+    private static final int DEFAULT_SIZE = 2000;
+    private static final int PACKAGES = 20;
+    private static final String[] WORDS = {"wifi", "network", "display", "sound", "battery",
+            "storage", "location", "security", "accounts", "accessibility", "system", "apps",
+            "notifications", "bluetooth", "data", "usage", "brightness", "volume", "lock",
+            "screen"};
+
+    private Context mContext;
+    private DatabaseIndexingManager mManager;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        FakeFeatureFactory.setupForTest();
+        mContext = RuntimeEnvironment.application;
+        mManager = new DatabaseIndexingManager(mContext);
+        mDb = IndexDatabaseHelper.getInstance(mContext).getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void rebuildIndex() throws Exception {
+        final Benchmark benchmark = new Benchmark("search_index_rebuild", DEFAULT_SIZE);
+        final PreIndexData data = buildIndexData(benchmark.getSize());
+
+        final JSONObject result = benchmark.run(() -> {
+            IndexDatabaseHelper.getInstance(mContext).reconstruct(mDb);
+            mManager.updateDatabase(data, true /* needsReindexing */);
+            return DatabaseUtils.queryNumEntries(mDb, IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX);
+        });
+
+        assertThat(DatabaseUtils.queryNumEntries(mDb,
+                IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX)).isGreaterThan(0L);
+        assertThat(result.getLong("iterations")).isGreaterThan(0L);
+    }
+
+    private PreIndexData buildIndexData(int size) {
+        final Random random = new Random(Benchmark.getSeed());
+        final PreIndexData data = new PreIndexData();
+        for (int i = 0; i < size; i++) {
+            final String packageName = "com.example.package" + (i % PACKAGES);
+            final SearchIndexableRaw raw = new SearchIndexableRaw(mContext);
+            raw.locale = Locale.US;
+            raw.rank = random.nextInt(10);
+            raw.key = "key_" + i;
+            raw.title = phrase(random, 3) + " " + i;
+            raw.summaryOn = phrase(random, 8);
+            raw.summaryOff = phrase(random, 8);
+            raw.entries = phrase(random, 4);
+            raw.keywords = phrase(random, 5).replace(' ', ',');
+            raw.screenTitle = phrase(random, 2);
+            raw.className = packageName + ".Settings" + random.nextInt(50);
+            raw.packageName = packageName;
+            raw.intentAction = "android.settings.ACTION_" + random.nextInt(50);
+            raw.intentTargetPackage = packageName;
+            raw.intentTargetClass = raw.className;
+            raw.userId = -1;
+            raw.enabled = true;
+            data.dataToUpdate.add(raw);
+
+            // One key in ten is not indexable, as when a setting is unavailable on the device.
+            if (random.nextInt(10) == 0) {
+                Set<String> keys = data.nonIndexableKeys.get(packageName);
+                if (keys == null) {
+                    keys = new ArraySet<>();
+                    data.nonIndexableKeys.put(packageName, keys);
+                }
+                keys.add(raw.key);
+            }
+        }
+        return data;
+    }
+
+    private static String phrase(Random random, int words) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.widget;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.net.NetworkStatsHistory;
+import android.text.format.DateUtils;
+
+import com.android.settings.benchmark.Benchmark;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Random;
+
+/**
+ * Data usage chart path generation for a synthetic history with the given number of hourly
+ * buckets, as done each time new stats are bound to the chart.
+ */
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ChartNetworkSeriesPathBenchmark {
+
+    private static final int DEFAULT_SIZE = 24 * 90;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 600;
+    private static final long START = 1514764800000L;
+    private static final long BUCKET = DateUtils.HOUR_IN_MILLIS;
+
+    @Test
+    public void generatePath() throws Exception {
+        final Benchmark benchmark = new Benchmark("data_usage_chart_path", DEFAULT_SIZE);
+        final int size = benchmark.getSize();
+        final long end = START + size * BUCKET;
+
+        final Random random = new Random(Benchmark.getSeed());
+        final NetworkStatsHistory history = new NetworkStatsHistory(BUCKET, size);
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            // Leave some hours without traffic, so the path has gaps to bridge.
+            if (random.nextInt(5) == 0) {
+                continue;
+            }
+            final long rx = random.nextInt(50 * 1024 * 1024);
+            final long tx = random.nextInt(5 * 1024 * 1024);
+            history.recordData(START + i * BUCKET, START + (i + 1) * BUCKET, rx, tx);
+            total += rx + tx;
+        }
+
+        final ChartAxis horiz = new ChartDataUsageView.TimeAxis();
+        final ChartAxis vert = new InvertedChartAxis(new ChartDataUsageView.DataAxis());
+        horiz.setBounds(START, end);
+        horiz.setSize(WIDTH);
+        vert.setBounds(0, total);
+        vert.setSize(HEIGHT);
+
+        final ChartNetworkSeriesView view =
+                new ChartNetworkSeriesView(RuntimeEnvironment.application);
+        view.init(horiz, vert);
+        view.layout(0, 0, WIDTH, HEIGHT);
+        view.setBounds(START, end);
+        view.setEndTime(end);
+        final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT,
+                Bitmap.Config.ARGB_8888));
+
+        final JSONObject result = benchmark.run(() -> {
+            // Binding drops the cached series, so each draw generates the path from scratch.
+            view.bindNetworkStats(history);
+            view.onDraw(canvas);
+            return view.getMaxVisible();
+        });
+
+        assertThat(view.getMaxVisible()).isGreaterThan(0L);
+        assertThat(result.getLong("iterations")).isGreaterThan(0L);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.util.Base64;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class CaCertificateCacheTest {
+
+    // Self-signed certificates with the subjects "O=Test CA one, CN=Test Root one" and
+    // "O=Test CA two, CN=Test Root two".
+    private static final String CERT_ONE =
+            "MIIBtDCCAVmgAwIBAgIUZR6ASgLA+TrXK6OzrSBRLKT05iEwCgYIKoZIzj0EAwIwLjEUMBIGA1UECgwLVGVz"
+            + "dCBDQSBvbmUxFjAUBgNVBAMMDVRlc3QgUm9vdCBvbmUwIBcNMjYxMDE5MDM1ODQ0WhgPMjEyNjA5MjUw"
+            + "MzU4NDRaMC4xFDASBgNVBAoMC1Rlc3QgQ0Egb25lMRYwFAYDVQQDDA1UZXN0IFJvb3Qgb25lMFkwEwYH"
+            + "KoZIzj0CAQYIKoZIzj0DAQcDQgAEm+WemnktbUZNnAfTwfhb+bj/FjPG0KnEgkx968J/JQQrBsTVIo2d"
+            + "XlElnnVc9jUSFD4r5lZzEwAxc91+Vv5dwaNTMFEwHQYDVR0OBBYEFJTkmLcwx/a2owcLnQN4RBQgJ7Cr"
+            + "MB8GA1UdIwQYMBaAFJTkmLcwx/a2owcLnQN4RBQgJ7CrMA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0E"
+            + "AwIDSQAwRgIhALgHCvF9e3zH3UwQ9I3YvNDpcyeIiKjAGvaGgup1Mt6+AiEAzBDQ22E9J+xava0UAe/S"
+            + "eTIYcy/NWVgpDhLOWkzm9eI=";
+    private static final String CERT_TWO =
+            "MIIBszCCAVmgAwIBAgIUdQY6YyUBJGQgqMGzj1i2PNq3EaEwCgYIKoZIzj0EAwIwLjEUMBIGA1UECgwLVGVz"
+            + "dCBDQSB0d28xFjAUBgNVBAMMDVRlc3QgUm9vdCB0d28wIBcNMjYxMDE5MDM1ODQ0WhgPMjEyNjA5MjUw"
+            + "MzU4NDRaMC4xFDASBgNVBAoMC1Rlc3QgQ0EgdHdvMRYwFAYDVQQDDA1UZXN0IFJvb3QgdHdvMFkwEwYH"
+            + "KoZIzj0CAQYIKoZIzj0DAQcDQgAEBkcsFJUZghUV7fwhAl8pyTnrzUBus0BnjSSZhGDXjsBpvyPgZ0sx"
+            + "3N7bbfdFYlwdTDPGDOD3/eD1J7IxxEIugqNTMFEwHQYDVR0OBBYEFOgLwMMv7zKC1x5R0KkVi00OxzxgMB8"
+            + "GA1UdIwQYMBaAFOgLwMMv7zKC1x5R0KkVi00OxzxgMA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwID"
+            + "SAAwRQIgJisHY5RCML48oXQXJEGd9yKmnhtge/6RYZelr7ZPr/4CIQCqVemDC7JYp8d0pN81WYbFddCdn+"
+            + "G2f3RhadlyD63zSA==";
+
+    private CaCertificateCache mCache;
+    private byte[] mCertOne;
+    private byte[] mCertTwo;
+
+    @Before
+    public void setUp() {
+        mCache = new CaCertificateCache(2 /* maxEntries */);
+        mCertOne = Base64.decode(CERT_ONE, Base64.DEFAULT);
+        mCertTwo = Base64.decode(CERT_TWO, Base64.DEFAULT);
+    }
+
+    @Test
+    public void get_shouldParseSubjectNames() {
+        final CaCertificateCache.Entry entry = mCache.get("alias", mCertOne);
+
+        assertThat(entry.mSubjectPrimary).isEqualTo("Test CA one");
+        assertThat(entry.mSubjectSecondary).isEqualTo("Test Root one");
+    }
+
+    @Test
+    public void get_sameBytes_shouldReturnCachedEntry() {
+        final CaCertificateCache.Entry entry = mCache.get("alias", mCertOne);
+
+        assertThat(mCache.get("alias", mCertOne.clone())).isSameAs(entry);
+    }
+
+    @Test
+    public void get_changedBytesForSameAlias_shouldParseAgain() {
+        final CaCertificateCache.Entry entry = mCache.get("alias", mCertOne);
+
+        final CaCertificateCache.Entry replaced = mCache.get("alias", mCertTwo);
+
+        assertThat(replaced).isNotSameAs(entry);
+        assertThat(replaced.mSubjectPrimary).isEqualTo("Test CA two");
+    }
+
+    @Test
+    public void get_sameBytesForOtherAlias_shouldParseAgain() {
+        final CaCertificateCache.Entry entry = mCache.get("alias", mCertOne);
+
+        assertThat(mCache.get("other", mCertOne)).isNotSameAs(entry);
+    }
+
+    @Test
+    public void get_moreAliasesThanMaxEntries_shouldEvictLeastRecentlyUsed() {
+        final CaCertificateCache.Entry first = mCache.get("first", mCertOne);
+        final CaCertificateCache.Entry second = mCache.get("second", mCertOne);
+        // Use the first entry so the second one is the least recently used.
+        mCache.get("first", mCertOne);
+
+        mCache.get("third", mCertOne);
+
+        assertThat(mCache.get("first", mCertOne)).isSameAs(first);
+        assertThat(mCache.get("second", mCertOne)).isNotSameAs(second);
+    }
+
+    @Test
+    public void get_unparseableOrMissingBytes_shouldReturnNull() {
+        assertThat(mCache.get("alias", new byte[] {1, 2, 3})).isNull();
+        assertThat(mCache.get("alias", null)).isNull();
+    }
+}
@@ -28,7 +28,6 @@ import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.support.annotation.NonNull;
 
 import com.android.settings.fuelgauge.batterytip.AnomalyConfigJobService;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
@@ -42,8 +41,8 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 
-import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 
 @RunWith(SettingsRobolectricTestRunner.class)
 public class SettingsDumpServiceTest {
@@ -104,12 +103,33 @@ public class SettingsDumpServiceTest {
     public void testDump_ReturnJsonObject() throws JSONException {
         mResolveInfo.activityInfo = new ActivityInfo();
         mResolveInfo.activityInfo.packageName = PACKAGE_BROWSER;
-        TestPrintWriter printWriter = new TestPrintWriter(System.out);
+        final StringWriter out = new StringWriter();
 
-        mTestService.dump(null, printWriter, null);
-        JSONObject object = (JSONObject) printWriter.getPrintObject();
+        mTestService.dump(null, new PrintWriter(out), null);
+        final JSONObject object = new JSONObject(out.toString());
 
         assertThat(object.get(TestService.KEY_SERVICE)).isNotNull();
+        assertThat(object.getJSONObject(TestService.KEY_TIMING)
+                .has(TestService.KEY_DEFAULT_BROWSER_APP)).isTrue();
+    }
+
+    @Test
+    public void testDump_withArgs_shouldOnlyDumpSelectedSections() throws JSONException {
+        mResolveInfo.activityInfo = new ActivityInfo();
+        mResolveInfo.activityInfo.packageName = PACKAGE_BROWSER;
+        final StringWriter out = new StringWriter();
+
+        mTestService.dump(null, new PrintWriter(out), new String[] {
+                TestService.KEY_DEFAULT_BROWSER_APP, TestService.KEY_CACHES, "bogus"});
+        final JSONObject object = new JSONObject(out.toString());
+
+        assertThat(object.getString(TestService.KEY_DEFAULT_BROWSER_APP))
+                .isEqualTo(PACKAGE_BROWSER);
+        assertThat(object.has(TestService.KEY_CACHES)).isTrue();
+        assertThat(object.has(TestService.KEY_STORAGE)).isFalse();
+        assertThat(object.getJSONObject(TestService.KEY_TIMING).length()).isEqualTo(2);
+        assertThat(object.getJSONArray(TestService.KEY_UNKNOWN_SECTIONS).getString(0))
+                .isEqualTo("bogus");
     }
 
     /**
@@ -127,24 +147,4 @@ public class SettingsDumpServiceTest {
             return mPm;
         }
     }
-
-    /**
-     * Test printWriter to store the object to be printed
-     */
-    private class TestPrintWriter extends PrintWriter {
-        private Object mPrintObject;
-
-        private TestPrintWriter(@NonNull OutputStream out) {
-            super(out);
-        }
-
-        @Override
-        public void println(Object object) {
-            mPrintObject = object;
-        }
-
-        private Object getPrintObject() {
-            return mPrintObject;
-        }
-    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.content.pm.PackageManager;
+import android.util.ArrayMap;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class TileEnablementCacheTest {
+
+    private static final ComponentName WIFI = new ComponentName("pkg", "Wifi");
+    private static final ComponentName BLUETOOTH = new ComponentName("pkg", "Bluetooth");
+
+    private TileEnablementCache mCache;
+    private ArrayMap<ComponentName, Boolean> mTiles;
+
+    @Before
+    public void setUp() {
+        mCache = new TileEnablementCache();
+        mTiles = new ArrayMap<>();
+        mTiles.put(WIFI, true);
+        mTiles.put(BLUETOOTH, false);
+    }
+
+    @Test
+    public void getChanged_firstPass_shouldReturnAllTiles() {
+        assertThat(mCache.getChanged(0, mTiles)).containsExactly(WIFI, BLUETOOTH);
+    }
+
+    @Test
+    public void getChanged_afterApplied_shouldOnlyReturnDifferences() {
+        mCache.setApplied(0, WIFI, true);
+        mCache.setApplied(0, BLUETOOTH, false);
+
+        assertThat(mCache.getChanged(0, mTiles)).isEmpty();
+
+        mTiles.put(BLUETOOTH, true);
+        assertThat(mCache.getChanged(0, mTiles)).containsExactly(BLUETOOTH);
+        assertThat(mCache.getChanged(10, mTiles)).containsExactly(WIFI, BLUETOOTH);
+    }
+
+    @Test
+    public void hasSystemFeature_shouldQueryOnce() {
+        final PackageManager pm = mock(PackageManager.class);
+        when(pm.hasSystemFeature(PackageManager.FEATURE_WIFI)).thenReturn(true);
+
+        assertThat(mCache.hasSystemFeature(pm, PackageManager.FEATURE_WIFI)).isTrue();
+        assertThat(mCache.hasSystemFeature(pm, PackageManager.FEATURE_WIFI)).isTrue();
+        verify(pm, times(1)).hasSystemFeature(PackageManager.FEATURE_WIFI);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.RemoteException;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class TrustedCredentialsSettingsTest {
+
+    private ExecutorService mExecutor;
+    private List<String> mAliases;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(4);
+        mAliases = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            mAliases.add("alias" + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void mapAliasesInParallel_shouldKeepAliasOrder() throws Exception {
+        // The first chunk only finishes after the last one.
+        final CountDownLatch lastChunkDone = new CountDownLatch(1);
+
+        final List<String> results = TrustedCredentialsSettings.mapAliasesInParallel(mExecutor,
+                mAliases, alias -> {
+                    if (alias.equals("alias0")) {
+                        await(lastChunkDone);
+                    } else if (alias.equals("alias9")) {
+                        lastChunkDone.countDown();
+                    }
+                    return alias.toUpperCase();
+                });
+
+        final List<String> expected = new ArrayList<>();
+        for (String alias : mAliases) {
+            expected.add(alias.toUpperCase());
+        }
+        assertThat(results).containsExactlyElementsIn(expected).inOrder();
+    }
+
+    @Test
+    public void mapAliasesInParallel_nullResult_shouldSkipAlias() throws Exception {
+        final List<String> results = TrustedCredentialsSettings.mapAliasesInParallel(mExecutor,
+                mAliases.subList(0, 3), alias -> alias.equals("alias1") ? null : alias);
+
+        assertThat(results).containsExactly("alias0", "alias2").inOrder();
+    }
+
+    @Test
+    public void mapAliasesInParallel_noAlias_shouldReturnEmptyList() throws Exception {
+        assertThat(TrustedCredentialsSettings.mapAliasesInParallel(mExecutor,
+                new ArrayList<>(), alias -> alias)).isEmpty();
+    }
+
+    @Test(expected = RemoteException.class)
+    public void mapAliasesInParallel_remoteException_shouldBeRethrown() throws Exception {
+        TrustedCredentialsSettings.mapAliasesInParallel(mExecutor, mAliases, alias -> {
+            if (alias.equals("alias5")) {
+                throw new RemoteException();
+            }
+            return alias;
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
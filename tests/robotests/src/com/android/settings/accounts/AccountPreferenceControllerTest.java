@@ -99,6 +99,8 @@ public class AccountPreferenceControllerTest {
             .thenReturn(new AuthenticatorDescription[0]);
         when(mAccountManager.getAccountsAsUser(anyInt())).thenReturn(new Account[0]);
         mController = new AccountPreferenceController(mContext, mFragment, null, mAccountHelper);
+        mController.mBackgroundExecutor = Runnable::run;
+        mController.mMainExecutor = Runnable::run;
     }
 
     @Test
@@ -562,6 +564,41 @@ public class AccountPreferenceControllerTest {
         verify(preferenceGroup, times(1)).removePreference(argThat(titleMatches("Acct12")));
     }
 
+    @Test
+    public void loadAccountEntries_shouldSortOnCollationKeys() {
+        final AuthenticatorHelper helper = mock(AuthenticatorHelper.class);
+        final UserHandle user = new UserHandle(1);
+        when(helper.getEnabledAccountTypes()).thenReturn(new String[] {"com.acct1"});
+        when(helper.getLabelForType(any(Context.class), eq("com.acct1"))).thenReturn("Label");
+        final Account[] accounts = {
+                new Account("B1", "com.acct1"), new Account("a2", "com.acct1")};
+        when(mAccountManager.getAccountsByTypeAsUser("com.acct1", user)).thenReturn(accounts);
+
+        final List<AccountPreferenceController.AccountEntry> entries =
+                mController.loadAccountEntries(mController.loadAccountTypes(helper, user), user);
+
+        assertThat(entries).hasSize(2);
+        assertThat(entries.get(0).account.name).isEqualTo("a2");
+        assertThat(entries.get(1).account.name).isEqualTo("B1");
+    }
+
+    @Test
+    public void loadAccountTypes_shouldCacheTypeInfoUntilAccountsUpdate() {
+        final AuthenticatorHelper helper = mock(AuthenticatorHelper.class);
+        final UserHandle user = new UserHandle(1);
+        when(helper.getEnabledAccountTypes()).thenReturn(new String[] {"com.acct1"});
+        when(helper.getLabelForType(any(Context.class), eq("com.acct1"))).thenReturn("Label");
+
+        mController.loadAccountTypes(helper, user);
+        mController.loadAccountTypes(helper, user);
+        verify(helper, times(1)).getLabelForType(any(Context.class), eq("com.acct1"));
+        verify(helper, times(1)).getDrawableForType(any(Context.class), eq("com.acct1"));
+
+        mController.onAccountsUpdate(user);
+        mController.loadAccountTypes(helper, user);
+        verify(helper, times(2)).getLabelForType(any(Context.class), eq("com.acct1"));
+    }
+
     private static ArgumentMatcher<Preference> titleMatches(String expected) {
         return preference -> TextUtils.equals(expected, preference.getTitle());
     }
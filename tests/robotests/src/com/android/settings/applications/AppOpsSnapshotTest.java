@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.ParceledListSlice;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AppOpsSnapshotTest {
+
+    private static final String PKG_OVERLAY = "com.example.overlay";
+    private static final String PKG_SETTINGS = "com.example.settings";
+    private static final int UID_OVERLAY = 10001;
+    private static final int UID_SETTINGS = 10002;
+    private static final int OP_OVERLAY = AppOpsManager.OP_SYSTEM_ALERT_WINDOW;
+    private static final int OP_SETTINGS = AppOpsManager.OP_WRITE_SETTINGS;
+    private static final String[] PERMISSIONS_OVERLAY =
+            {Manifest.permission.SYSTEM_ALERT_WINDOW};
+    private static final String[] PERMISSIONS_SETTINGS = {Manifest.permission.WRITE_SETTINGS};
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private UserManager mUserManager;
+    @Mock
+    private IPackageManager mPackageManager;
+    @Mock
+    private AppOpsManager mAppOpsManager;
+
+    private AppOpsSnapshot mSnapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getSystemService(Context.USER_SERVICE)).thenReturn(mUserManager);
+        when(mContext.getSystemService(Context.APP_OPS_SERVICE)).thenReturn(mAppOpsManager);
+        when(mUserManager.getUserProfiles())
+                .thenReturn(Collections.singletonList(new UserHandle(0)));
+
+        when(mPackageManager.getAppOpPermissionPackages(Manifest.permission.SYSTEM_ALERT_WINDOW))
+                .thenReturn(new String[] {PKG_OVERLAY});
+        when(mPackageManager.getAppOpPermissionPackages(Manifest.permission.WRITE_SETTINGS))
+                .thenReturn(new String[] {PKG_SETTINGS});
+        when(mPackageManager.isPackageAvailable(anyString(), anyInt())).thenReturn(true);
+        when(mPackageManager.getPackagesHoldingPermissions(
+                eq(PERMISSIONS_OVERLAY), anyInt(), anyInt()))
+                .thenReturn(new ParceledListSlice<>(
+                        Collections.singletonList(packageInfo(PKG_OVERLAY, UID_OVERLAY))));
+        when(mPackageManager.getPackagesHoldingPermissions(
+                eq(PERMISSIONS_SETTINGS), anyInt(), anyInt()))
+                .thenReturn(new ParceledListSlice<>(new ArrayList<>()));
+
+        final List<AppOpsManager.PackageOps> packageOps = new ArrayList<>();
+        packageOps.add(new AppOpsManager.PackageOps(PKG_OVERLAY, UID_OVERLAY,
+                Collections.singletonList(new AppOpsManager.OpEntry(
+                        OP_OVERLAY, AppOpsManager.MODE_IGNORED, 0, 0, 0, 0, ""))));
+        packageOps.add(new AppOpsManager.PackageOps(PKG_SETTINGS, UID_SETTINGS,
+                Collections.singletonList(new AppOpsManager.OpEntry(
+                        OP_SETTINGS, AppOpsManager.MODE_ALLOWED, 0, 0, 0, 0, ""))));
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenReturn(packageOps);
+
+        mSnapshot = new AppOpsSnapshot(mContext, mPackageManager);
+    }
+
+    @Test
+    public void get_acquiredKeys_shouldLoadAllOpsInOnePassAndReuse() {
+        mSnapshot.acquire(OP_OVERLAY, PERMISSIONS_OVERLAY);
+        mSnapshot.acquire(OP_SETTINGS, PERMISSIONS_SETTINGS);
+
+        final AppOpsSnapshot.Data overlay = mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY);
+        final AppOpsSnapshot.Data settings = mSnapshot.get(OP_SETTINGS, PERMISSIONS_SETTINGS);
+        mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY);
+
+        verify(mAppOpsManager, times(1)).getPackagesForOps(any(int[].class));
+        assertThat(overlay.getRequestingPackages()).containsExactly(PKG_OVERLAY);
+        assertThat(overlay.getHolder(0, PKG_OVERLAY)).isNotNull();
+        assertThat(overlay.getModes().getMode(UID_OVERLAY, PKG_OVERLAY))
+                .isEqualTo(AppOpsManager.MODE_IGNORED);
+        assertThat(overlay.getModes().size()).isEqualTo(1);
+        assertThat(settings.getAvailablePackages(0)).containsExactly(PKG_SETTINGS);
+        assertThat(settings.getHolder(0, PKG_SETTINGS)).isNull();
+        assertThat(settings.getModes().getMode(UID_SETTINGS, PKG_SETTINGS))
+                .isEqualTo(AppOpsManager.MODE_ALLOWED);
+    }
+
+    @Test
+    public void get_afterInvalidate_shouldReload() {
+        mSnapshot.acquire(OP_OVERLAY, PERMISSIONS_OVERLAY);
+        mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY);
+
+        mSnapshot.invalidate();
+        mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY);
+
+        verify(mAppOpsManager, times(2)).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void get_invalidatedWhileLoading_shouldNotKeepStaleData() {
+        final List<AppOpsManager.PackageOps> packageOps = new ArrayList<>();
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenAnswer(invocation -> {
+            mSnapshot.invalidate();
+            return packageOps;
+        });
+        mSnapshot.acquire(OP_OVERLAY, PERMISSIONS_OVERLAY);
+
+        mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY);
+        mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY);
+
+        verify(mAppOpsManager, times(2)).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void get_sharedUid_shouldKeepModeOfEachPackage() {
+        final String sharedPkg = "com.example.overlay.shared";
+        final List<AppOpsManager.PackageOps> packageOps = new ArrayList<>();
+        packageOps.add(new AppOpsManager.PackageOps(PKG_OVERLAY, UID_OVERLAY,
+                Collections.singletonList(new AppOpsManager.OpEntry(
+                        OP_OVERLAY, AppOpsManager.MODE_ALLOWED, 0, 0, 0, 0, ""))));
+        packageOps.add(new AppOpsManager.PackageOps(sharedPkg, UID_OVERLAY,
+                Collections.singletonList(new AppOpsManager.OpEntry(
+                        OP_OVERLAY, AppOpsManager.MODE_IGNORED, 0, 0, 0, 0, ""))));
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenReturn(packageOps);
+
+        final AppOpsSnapshot.OpModes modes =
+                mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY).getModes();
+
+        assertThat(modes.getMode(UID_OVERLAY, PKG_OVERLAY)).isEqualTo(AppOpsManager.MODE_ALLOWED);
+        assertThat(modes.getMode(UID_OVERLAY, sharedPkg)).isEqualTo(AppOpsManager.MODE_IGNORED);
+        assertThat(modes.getModeAt(0)).isEqualTo(AppOpsManager.MODE_ALLOWED);
+        assertThat(modes.getModeAt(1)).isEqualTo(AppOpsManager.MODE_IGNORED);
+    }
+
+    @Test
+    public void get_notAcquired_shouldNotCache() {
+        mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY);
+        mSnapshot.get(OP_OVERLAY, PERMISSIONS_OVERLAY);
+
+        verify(mAppOpsManager, times(2)).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void release_lastReference_shouldStopWatching() {
+        mSnapshot.acquire(OP_OVERLAY, PERMISSIONS_OVERLAY);
+        mSnapshot.acquire(OP_OVERLAY, PERMISSIONS_OVERLAY);
+
+        mSnapshot.release(OP_OVERLAY, PERMISSIONS_OVERLAY);
+        verify(mAppOpsManager, never()).stopWatchingMode(any());
+        verify(mContext, never()).unregisterReceiver(any(BroadcastReceiver.class));
+
+        mSnapshot.release(OP_OVERLAY, PERMISSIONS_OVERLAY);
+        verify(mAppOpsManager).startWatchingMode(eq(OP_OVERLAY), isNull(), any());
+        verify(mAppOpsManager).stopWatchingMode(any());
+        verify(mContext).unregisterReceiver(any(BroadcastReceiver.class));
+    }
+
+    private static PackageInfo packageInfo(String pkg, int uid) {
+        final PackageInfo info = new PackageInfo();
+        info.packageName = pkg;
+        info.applicationInfo = new ApplicationInfo();
+        info.applicationInfo.uid = uid;
+        return info;
+    }
+}
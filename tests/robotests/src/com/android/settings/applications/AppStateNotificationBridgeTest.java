@@ -37,6 +37,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -68,6 +69,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -101,6 +103,7 @@ public class AppStateNotificationBridgeTest {
         // most tests assume no work profile
         when(mUserManager.getProfileIdsWithDisabled(anyInt())).thenReturn(new int[]{});
         mContext = RuntimeEnvironment.application.getApplicationContext();
+        new File(mContext.getFilesDir(), AppStateNotificationBridge.SENT_STORE_FILE).delete();
 
         mBridge = new AppStateNotificationBridge(mContext, mState,
                 mock(AppStateBaseBridge.Callback.class), mUsageStats, mUserManager, mBackend);
@@ -337,8 +340,7 @@ public class AppStateNotificationBridgeTest {
 
     @Test
     public void testUpdateExtraInfo_noEvents() throws RemoteException {
-        when(mUsageStats.queryEventsForPackageForUser(
-                anyLong(), anyLong(), anyInt(), anyString(), anyString()))
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
                 .thenReturn(mock(UsageEvents.class));
         AppEntry entry = getMockAppEntry(PKG1);
 
@@ -358,8 +360,8 @@ public class AppStateNotificationBridgeTest {
         }
 
         UsageEvents usageEvents = getUsageEvents(events);
-        when(mUsageStats.queryEventsForPackageForUser(
-                anyLong(), anyLong(), anyInt(), anyString(), anyString())).thenReturn(usageEvents);
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(usageEvents);
 
         AppEntry entry = getMockAppEntry(PKG1);
         mBridge.updateExtraInfo(entry, "", 0);
@@ -373,6 +375,60 @@ public class AppStateNotificationBridgeTest {
         assertThat(((NotificationsSentState) entry.extraInfo).blockable).isTrue();
     }
 
+    @Test
+    public void testGetAggregatedUsageEvents_secondRun_shouldOnlyQueryNewEvents()
+            throws Exception {
+        List<Event> events = new ArrayList<>();
+        Event good = new Event();
+        good.mEventType = Event.NOTIFICATION_INTERRUPTION;
+        good.mPackage = PKG1;
+        good.mTimeStamp = System.currentTimeMillis() - DAY_IN_MILLIS;
+        events.add(good);
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(getUsageEvents(events))
+                .thenReturn(mock(UsageEvents.class));
+
+        mBridge.getAggregatedUsageEvents();
+        final long beforeSecondRun = System.currentTimeMillis();
+        Map<String, NotificationsSentState> map = mBridge.getAggregatedUsageEvents();
+
+        // second query starts at the high-water mark and still reports earlier events
+        verify(mUsageStats).queryEventsForUser(
+                longThat(start -> start >= beforeSecondRun - DAY_IN_MILLIS),
+                anyLong(), eq(0), anyString());
+        assertThat(map.get(mBridge.getKey(0, PKG1)).sentCount).isEqualTo(1);
+    }
+
+    @Test
+    public void testUpdateExtraInfo_noNewEvents_shouldNotSaveStore() throws RemoteException {
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(mock(UsageEvents.class));
+        final File file = new File(mContext.getFilesDir(),
+                AppStateNotificationBridge.SENT_STORE_FILE);
+
+        mBridge.updateExtraInfo(getMockAppEntry(PKG1), "", 0);
+        mBridge.getAggregatedUsageEvents();
+
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testUpdateExtraInfo_newEvents_shouldSaveStore() throws RemoteException {
+        List<Event> events = new ArrayList<>();
+        Event good = new Event();
+        good.mEventType = Event.NOTIFICATION_INTERRUPTION;
+        good.mPackage = PKG1;
+        good.mTimeStamp = System.currentTimeMillis() - DAY_IN_MILLIS;
+        events.add(good);
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(getUsageEvents(events));
+
+        mBridge.updateExtraInfo(getMockAppEntry(PKG1), "", 0);
+
+        assertTrue(new File(mContext.getFilesDir(),
+                AppStateNotificationBridge.SENT_STORE_FILE).exists());
+    }
+
     @Test
     public void testSummary_recency() {
         NotificationsSentState neverSent = new NotificationsSentState();
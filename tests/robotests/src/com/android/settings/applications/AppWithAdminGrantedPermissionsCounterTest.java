@@ -96,6 +96,8 @@ public final class AppWithAdminGrantedPermissionsCounterTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        // The installed apps snapshot is shared by the whole process.
+        InstalledAppsSnapshot.reset();
         when(mContext.getSystemService(Context.USER_SERVICE)).thenReturn(mUserManager);
 
         mApp1 = buildInfo(APP_1_UID, APP_1, 0 /* flags */, Build.VERSION_CODES.M);
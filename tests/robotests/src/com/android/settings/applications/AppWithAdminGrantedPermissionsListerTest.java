@@ -87,6 +87,8 @@ public final class AppWithAdminGrantedPermissionsListerTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        // The installed apps snapshot is shared by the whole process.
+        InstalledAppsSnapshot.reset();
     }
 
     @Test
@@ -91,6 +91,8 @@ public final class ApplicationFeatureProviderImplTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        // The installed apps snapshot is shared by the whole process.
+        InstalledAppsSnapshot.reset();
 
         when(mContext.getApplicationContext()).thenReturn(mContext);
         when(mContext.getSystemService(Context.USER_SERVICE)).thenReturn(mUserManager);
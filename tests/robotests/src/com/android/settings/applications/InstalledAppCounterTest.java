@@ -87,6 +87,8 @@ public final class InstalledAppCounterTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        // The installed apps snapshot is shared by the whole process.
+        InstalledAppsSnapshot.reset();
         when(mContext.getSystemService(Context.USER_SERVICE)).thenReturn(mUserManager);
 
         mApp1 = buildInfo(MAIN_USER_APP_UID, APP_1,
@@ -78,6 +78,8 @@ public final class InstalledAppListerTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        // The installed apps snapshot is shared by the whole process.
+        InstalledAppsSnapshot.reset();
     }
 
     private void expectQueryIntentActivities(int userId, String packageName, boolean launchable) {
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.android.settings.testutils.ApplicationTestUtils.buildInfo;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.wrapper.PackageManagerWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class InstalledAppsSnapshotTest {
+
+    private static final int MAIN_USER_ID = 0;
+    private static final int MANAGED_PROFILE_ID = 10;
+    private static final int MANAGED_PROFILE_APP_UID = MANAGED_PROFILE_ID * 100000;
+
+    @Mock
+    private UserManager mUserManager;
+    @Mock
+    private Context mContext;
+    @Mock
+    private PackageManagerWrapper mPackageManager;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getSystemService(Context.USER_SERVICE)).thenReturn(mUserManager);
+        when(mUserManager.getProfiles(UserHandle.myUserId())).thenReturn(Arrays.asList(
+                new UserInfo(MAIN_USER_ID, "main", UserInfo.FLAG_ADMIN),
+                new UserInfo(MANAGED_PROFILE_ID, "managed profile", 0)));
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID)))
+                .thenReturn(Arrays.asList(
+                        buildInfo(0, "app1", 0 /* flags */, 0 /* targetSdkVersion */),
+                        buildInfo(0, "app2", ApplicationInfo.FLAG_SYSTEM, 0),
+                        buildInfo(0, "app3", ApplicationInfo.FLAG_SYSTEM, 0)));
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), eq(MANAGED_PROFILE_ID)))
+                .thenReturn(Arrays.asList(
+                        buildInfo(MANAGED_PROFILE_APP_UID, "app4", 0, 0),
+                        buildInfo(MANAGED_PROFILE_APP_UID, "app5", ApplicationInfo.FLAG_SYSTEM,
+                                0)));
+        InstalledAppsSnapshot.reset();
+        InstalledAppsSnapshot.registerForInvalidation(mContext);
+    }
+
+    @Test
+    public void fiveCounters_shouldEnumerateEachProfileOnce() {
+        final int[] counts = new int[] {
+                count(info -> true),
+                count(info -> (info.flags & ApplicationInfo.FLAG_SYSTEM) != 0),
+                count(info -> (info.flags & ApplicationInfo.FLAG_SYSTEM) == 0),
+                count(info -> info.packageName.equals("app4")),
+                count(info -> false)};
+
+        assertThat(counts).asList().containsExactly(5, 3, 2, 1, 0).inOrder();
+        verify(mPackageManager).getInstalledApplicationsAsUser(
+                PackageManager.GET_DISABLED_COMPONENTS
+                        | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
+                        | PackageManager.MATCH_ANY_USER, MAIN_USER_ID);
+        verify(mPackageManager).getInstalledApplicationsAsUser(
+                PackageManager.GET_DISABLED_COMPONENTS
+                        | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS, MANAGED_PROFILE_ID);
+    }
+
+    @Test
+    public void get_otherWrapper_shouldReuseSnapshot() {
+        final PackageManagerWrapper otherPackageManager = mock(PackageManagerWrapper.class);
+
+        InstalledAppsSnapshot.get(mPackageManager, mUserManager);
+        final List<UserAppInfo> apps =
+                InstalledAppsSnapshot.get(otherPackageManager, mUserManager);
+
+        assertThat(apps).hasSize(5);
+        verifyZeroInteractions(otherPackageManager);
+    }
+
+    @Test
+    public void registerForInvalidation_otherContext_shouldDropSnapshot() {
+        InstalledAppsSnapshot.get(mPackageManager, mUserManager);
+
+        InstalledAppsSnapshot.registerForInvalidation(mock(Context.class));
+        InstalledAppsSnapshot.get(mPackageManager, mUserManager);
+
+        verify(mPackageManager, times(2))
+                .getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+    }
+
+    @Test
+    public void list_shouldKeepProfileOrder() {
+        final List<UserAppInfo> apps = InstalledAppsSnapshot.list(mPackageManager, mUserManager,
+                info -> (info.flags & ApplicationInfo.FLAG_SYSTEM) == 0);
+
+        assertThat(apps).hasSize(2);
+        assertThat(apps.get(0).userInfo.id).isEqualTo(MAIN_USER_ID);
+        assertThat(apps.get(0).appInfo.packageName).isEqualTo("app1");
+        assertThat(apps.get(1).userInfo.id).isEqualTo(MANAGED_PROFILE_ID);
+        assertThat(apps.get(1).appInfo.packageName).isEqualTo("app4");
+    }
+
+    @Test
+    public void invalidate_shouldEnumerateAgain() {
+        assertThat(count(info -> true)).isEqualTo(5);
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), eq(MANAGED_PROFILE_ID)))
+                .thenReturn(Arrays.asList(buildInfo(MANAGED_PROFILE_APP_UID, "app4", 0, 0)));
+
+        InstalledAppsSnapshot.invalidate();
+
+        assertThat(count(info -> true)).isEqualTo(4);
+        verify(mPackageManager, times(2))
+                .getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+    }
+
+    private int count(Predicate<ApplicationInfo> filter) {
+        final int[] result = new int[] {-1};
+        new AppCounter(mContext, mPackageManager) {
+            @Override
+            protected void onCountComplete(int num) {
+                result[0] = num;
+            }
+
+            @Override
+            protected boolean includeInCount(ApplicationInfo info) {
+                return filter.test(info);
+            }
+        }.executeInForeground();
+        return result[0];
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import com.android.internal.app.procstats.IProcessStats;
+import com.android.internal.app.procstats.ProcessStats;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ProcStatsDataTest {
+
+    private static final long DURATION = 3 * 60 * 60 * 1000;
+
+    @Mock
+    private IProcessStats mProcessStats;
+    private Context mContext;
+
+    @Before
+    public void setUp() throws RemoteException {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        ProcStatsData.clearCache();
+        when(mProcessStats.getStatsOverTime(anyLong()))
+                .thenAnswer(invocation -> writeStats(marshallStats()));
+    }
+
+    @After
+    public void tearDown() {
+        ProcStatsData.clearCache();
+    }
+
+    @Test
+    public void getSnapshot_recentStats_shouldBeSharedWithoutFetching() throws RemoteException {
+        final ProcStatsData.StatsSnapshot snapshot = createData().getSnapshot(DURATION, false);
+
+        assertThat(snapshot.mLoaded).isTrue();
+        assertThat(createData().getSnapshot(DURATION, false)).isSameAs(snapshot);
+        verify(mProcessStats, times(1)).getStatsOverTime(DURATION);
+    }
+
+    @Test
+    public void getSnapshot_otherDuration_shouldFetch() throws RemoteException {
+        final ProcStatsData.StatsSnapshot snapshot = createData().getSnapshot(DURATION, false);
+
+        assertThat(createData().getSnapshot(DURATION * 2, false)).isNotSameAs(snapshot);
+        verify(mProcessStats).getStatsOverTime(DURATION);
+        verify(mProcessStats).getStatsOverTime(DURATION * 2);
+    }
+
+    @Test
+    public void getSnapshot_expired_shouldFetchAgain() throws RemoteException {
+        final ProcStatsData data = createData();
+        final ProcStatsData.StatsSnapshot snapshot = data.getSnapshot(DURATION, false);
+
+        SystemClock.sleep(ProcStatsData.MAX_STATS_AGE_MS);
+
+        assertThat(data.getSnapshot(DURATION, false)).isNotSameAs(snapshot);
+        verify(mProcessStats, times(2)).getStatsOverTime(DURATION);
+    }
+
+    @Test
+    public void getSnapshot_forceLoad_shouldFetchAndReplaceCachedStats() throws RemoteException {
+        final ProcStatsData.StatsSnapshot snapshot = createData().getSnapshot(DURATION, false);
+
+        final ProcStatsData.StatsSnapshot forced = createData().getSnapshot(DURATION, true);
+
+        assertThat(forced).isNotSameAs(snapshot);
+        assertThat(createData().getSnapshot(DURATION, false)).isSameAs(forced);
+        verify(mProcessStats, times(2)).getStatsOverTime(DURATION);
+    }
+
+    @Test
+    public void getSnapshot_remoteException_shouldNotCache() throws RemoteException {
+        when(mProcessStats.getStatsOverTime(anyLong())).thenThrow(new RemoteException());
+        final ProcStatsData data = createData();
+
+        final ProcStatsData.StatsSnapshot snapshot = data.getSnapshot(DURATION, false);
+
+        assertThat(snapshot.mLoaded).isFalse();
+        assertThat(snapshot.mStats).isNotNull();
+        assertThat(data.getSnapshot(DURATION, false)).isNotSameAs(snapshot);
+        assertThat(createData().getSnapshot(DURATION, false)).isNotSameAs(snapshot);
+        verify(mProcessStats, times(3)).getStatsOverTime(DURATION);
+    }
+
+    @Test
+    public void getSnapshot_unreadableStats_shouldNotCache() throws RemoteException {
+        when(mProcessStats.getStatsOverTime(anyLong()))
+                .thenAnswer(invocation -> writeStats(new byte[] {1, 2, 3, 4}));
+
+        final ProcStatsData.StatsSnapshot snapshot = createData().getSnapshot(DURATION, false);
+
+        assertThat(snapshot.mLoaded).isFalse();
+        assertThat(createData().getSnapshot(DURATION, false)).isNotSameAs(snapshot);
+        verify(mProcessStats, times(2)).getStatsOverTime(DURATION);
+    }
+
+    private ProcStatsData createData() {
+        return new ProcStatsData(mContext, false /* useXfer */, mProcessStats);
+    }
+
+    private static byte[] marshallStats() {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            new ProcessStats(false).writeToParcel(parcel, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private ParcelFileDescriptor writeStats(byte[] data) throws IOException {
+        final File file = File.createTempFile("procstats", null, mContext.getCacheDir());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+}
@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,6 +36,7 @@ import com.android.settings.testutils.SettingsRobolectricTestRunner;
 import com.android.settingslib.bluetooth.CachedBluetoothDevice;
 import com.android.settingslib.bluetooth.HeadsetProfile;
 import com.android.settingslib.bluetooth.A2dpProfile;
+import com.android.settingslib.bluetooth.BluetoothEventManager;
 
 import com.android.settingslib.bluetooth.LocalBluetoothManager;
 import com.android.settingslib.bluetooth.LocalBluetoothProfileManager;
@@ -45,6 +47,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
 
 @RunWith(SettingsRobolectricTestRunner.class)
 public class BluetoothDeviceUpdaterTest {
@@ -67,6 +70,8 @@ public class BluetoothDeviceUpdaterTest {
     private HeadsetProfile mHeadsetProfile;
     @Mock
     private A2dpProfile mA2dpProfile;
+    @Mock
+    private BluetoothEventManager mEventManager;
 
     private Context mContext;
     private BluetoothDeviceUpdater mBluetoothDeviceUpdater;
@@ -80,6 +85,7 @@ public class BluetoothDeviceUpdaterTest {
         doReturn(mContext).when(mDashboardFragment).getContext();
         when(mCachedBluetoothDevice.getDevice()).thenReturn(mBluetoothDevice);
         when(mLocalManager.getProfileManager()).thenReturn(mLocalBluetoothProfileManager);
+        when(mLocalManager.getEventManager()).thenReturn(mEventManager);
         when(mLocalBluetoothProfileManager.getHeadsetProfile()).thenReturn(mHeadsetProfile);
         when(mLocalBluetoothProfileManager.getA2dpProfile()).thenReturn(mA2dpProfile);
 
@@ -167,4 +173,54 @@ public class BluetoothDeviceUpdaterTest {
 
         assertThat(mBluetoothDeviceUpdater.isDeviceConnected(mCachedBluetoothDevice)).isFalse();
     }
+
+    @Test
+    public void onDeviceAdded_burstOfCallbacks_shouldAddOnceAndCountCoalesced() {
+        ShadowLooper.pauseMainLooper();
+        try {
+            mBluetoothDeviceUpdater.onDeviceAdded(mCachedBluetoothDevice);
+            mBluetoothDeviceUpdater.onDeviceBondStateChanged(mCachedBluetoothDevice,
+                    BluetoothDevice.BOND_BONDED);
+            mBluetoothDeviceUpdater.onDeviceAdded(mCachedBluetoothDevice);
+
+            verify(mDevicePreferenceCallback, never()).onDeviceAdded(any(Preference.class));
+            ShadowLooper.runUiThreadTasks();
+        } finally {
+            ShadowLooper.unPauseMainLooper();
+        }
+
+        verify(mDevicePreferenceCallback, times(1)).onDeviceAdded(any(Preference.class));
+        assertThat(mBluetoothDeviceUpdater.getCoalescedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void onDeviceDeleted_afterAddInSameBatch_shouldNotTouchPreferences() {
+        ShadowLooper.pauseMainLooper();
+        try {
+            mBluetoothDeviceUpdater.onDeviceAdded(mCachedBluetoothDevice);
+            mBluetoothDeviceUpdater.onDeviceDeleted(mCachedBluetoothDevice);
+            ShadowLooper.runUiThreadTasks();
+        } finally {
+            ShadowLooper.unPauseMainLooper();
+        }
+
+        verify(mDevicePreferenceCallback, never()).onDeviceAdded(any(Preference.class));
+        verify(mDevicePreferenceCallback, never()).onDeviceRemoved(any(Preference.class));
+        assertThat(mBluetoothDeviceUpdater.mPreferenceMap).isEmpty();
+    }
+
+    @Test
+    public void unregisterCallback_pendingUpdates_shouldDropThem() {
+        ShadowLooper.pauseMainLooper();
+        try {
+            mBluetoothDeviceUpdater.onDeviceAdded(mCachedBluetoothDevice);
+            mBluetoothDeviceUpdater.unregisterCallback();
+            ShadowLooper.runUiThreadTasks();
+        } finally {
+            ShadowLooper.unPauseMainLooper();
+        }
+
+        verify(mDevicePreferenceCallback, never()).onDeviceAdded(any(Preference.class));
+        assertThat(mBluetoothDeviceUpdater.mPreferenceMap).isEmpty();
+    }
 }
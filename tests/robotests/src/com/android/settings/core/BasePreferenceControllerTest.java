@@ -139,6 +139,23 @@ public class BasePreferenceControllerTest {
         assertThat(mPreferenceController.hasAsyncUpdate()).isFalse();
     }
 
+    @Test
+    public void hasAsyncAvailability_shouldReturnFalse() {
+        assertThat(mPreferenceController.hasAsyncAvailability()).isFalse();
+    }
+
+    @Test
+    public void isAvailable_cachedStatus_shouldUseCachedStatusUntilCleared() {
+        mPreferenceController.setAvailability(AVAILABLE);
+        mPreferenceController.setCachedAvailabilityStatus(CONDITIONALLY_UNAVAILABLE);
+
+        assertThat(mPreferenceController.isAvailable()).isFalse();
+
+        mPreferenceController.clearCachedAvailabilityStatus();
+
+        assertThat(mPreferenceController.isAvailable()).isTrue();
+    }
+
     @Test
     public void settingAvailable_disabledOnDisplayPreference_preferenceEnabled() {
         final PreferenceScreen screen = mock(PreferenceScreen.class);
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.util.JsonWriter;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringWriter;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class PerfStatsTest {
+
+    private PerfStats mPerfStats;
+
+    @Before
+    public void setUp() {
+        mPerfStats = new PerfStats();
+    }
+
+    @Test
+    public void histogram_record_shouldBucketByPowerOfTwo() {
+        final PerfStats.Histogram histogram = new PerfStats.Histogram();
+
+        histogram.record(0);
+        histogram.record(3);
+        histogram.record(100000);
+
+        assertThat(histogram.getCount()).isEqualTo(3);
+        assertThat(histogram.getTotalMs()).isEqualTo(100003);
+        assertThat(histogram.getMaxMs()).isEqualTo(100000);
+        assertThat(histogram.getBucket(0)).isEqualTo(1);
+        assertThat(histogram.getBucket(2)).isEqualTo(1);
+        assertThat(histogram.getBucket(PerfStats.Histogram.BUCKET_COUNT - 1)).isEqualTo(1);
+    }
+
+    @Test
+    public void dumpCacheLookups_shouldReportHitRate() throws Exception {
+        mPerfStats.recordCacheLookup("icons", true);
+        mPerfStats.recordCacheLookup("icons", true);
+        mPerfStats.recordCacheLookup("icons", true);
+        mPerfStats.recordCacheLookup("icons", false);
+
+        final StringWriter out = new StringWriter();
+        mPerfStats.dumpCacheLookups(new JsonWriter(out));
+        final JSONObject icons = new JSONObject(out.toString()).getJSONObject("icons");
+
+        assertThat(icons.getLong("hits")).isEqualTo(3);
+        assertThat(icons.getLong("misses")).isEqualTo(1);
+        assertThat(icons.getDouble("hit_rate")).isWithin(0.001).of(0.75);
+    }
+
+    @Test
+    public void dumpDurations_shouldOnlyIncludeGroup() throws Exception {
+        mPerfStats.recordDuration(PerfStats.GROUP_LOADER, "loader", 5);
+        mPerfStats.recordDuration(PerfStats.GROUP_INDEXING, "full", 50);
+
+        final StringWriter out = new StringWriter();
+        mPerfStats.dumpDurations(PerfStats.GROUP_LOADER, new JsonWriter(out));
+        final JSONObject loaders = new JSONObject(out.toString());
+
+        assertThat(loaders.length()).isEqualTo(1);
+        assertThat(loaders.getJSONObject("loader").getLong("count")).isEqualTo(1);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.android.settings.core.BasePreferenceController.AVAILABLE;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.core.BasePreferenceController;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AsyncAvailabilityEvaluatorTest {
+
+    private static final String SCREEN = "TestScreen";
+    private static final String KEY = "key";
+
+    private Context mContext;
+    private List<Runnable> mPendingTasks;
+    private List<BasePreferenceController> mChanged;
+    private FakeController mController;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mPendingTasks = new ArrayList<>();
+        mChanged = new ArrayList<>();
+        mController = new FakeController(mContext);
+        AsyncAvailabilityEvaluator.clearCache();
+    }
+
+    @After
+    public void tearDown() {
+        AsyncAvailabilityEvaluator.clearCache();
+    }
+
+    @Test
+    public void evaluate_noCache_shouldHideUntilResultArrives() {
+        final AsyncAvailabilityEvaluator evaluator = newEvaluator(mPendingTasks::add);
+
+        evaluator.evaluate(mContext, Collections.singletonList(mController));
+
+        assertThat(mController.isAvailable()).isFalse();
+        assertThat(mController.mEvaluations).isEqualTo(0);
+
+        runPendingTasks();
+
+        assertThat(mController.isAvailable()).isTrue();
+        assertThat(mChanged).containsExactly(mController);
+    }
+
+    @Test
+    public void evaluate_cachedForScreen_shouldApplyCachedStatusRightAway() {
+        newEvaluator(Runnable::run).evaluate(mContext, Collections.singletonList(mController));
+        mChanged.clear();
+
+        final FakeController controller = new FakeController(mContext);
+        newEvaluator(mPendingTasks::add).evaluate(mContext, Collections.singletonList(controller));
+
+        assertThat(controller.isAvailable()).isTrue();
+
+        runPendingTasks();
+
+        // Same status as cached, nothing to redisplay.
+        assertThat(mChanged).isEmpty();
+    }
+
+    @Test
+    public void evaluate_inFlight_shouldNotEvaluateTwice() {
+        final AsyncAvailabilityEvaluator evaluator = newEvaluator(mPendingTasks::add);
+
+        evaluator.evaluate(mContext, Collections.singletonList(mController));
+        evaluator.evaluate(mContext, Collections.singletonList(mController));
+
+        assertThat(mPendingTasks).hasSize(1);
+    }
+
+    @Test
+    public void cancel_shouldDropLateResults() {
+        final AsyncAvailabilityEvaluator evaluator = newEvaluator(mPendingTasks::add);
+
+        evaluator.evaluate(mContext, Collections.singletonList(mController));
+        evaluator.cancel();
+        runPendingTasks();
+
+        assertThat(mChanged).isEmpty();
+        assertThat(mController.isAvailable()).isFalse();
+    }
+
+    private AsyncAvailabilityEvaluator newEvaluator(Executor executor) {
+        final AsyncAvailabilityEvaluator evaluator =
+                new AsyncAvailabilityEvaluator(SCREEN, mChanged::add);
+        evaluator.setExecutor(executor);
+        return evaluator;
+    }
+
+    private void runPendingTasks() {
+        final List<Runnable> tasks = new ArrayList<>(mPendingTasks);
+        mPendingTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private static class FakeController extends BasePreferenceController {
+        private int mEvaluations;
+
+        private FakeController(Context context) {
+            super(context, KEY);
+        }
+
+        @Override
+        public int getAvailabilityStatus() {
+            mEvaluations++;
+            return AVAILABLE;
+        }
+
+        @Override
+        public boolean hasAsyncAvailability() {
+            return true;
+        }
+    }
+}
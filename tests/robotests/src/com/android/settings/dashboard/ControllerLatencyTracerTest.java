@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.content.Context;
+
+import com.android.settings.core.instrumentation.PerfStats;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ControllerLatencyTracerTest {
+
+    private static final String SCREEN = "TestScreen";
+    private static final long SLOW_NANOS = 50 * 1000000L;
+
+    @Mock
+    private MetricsFeatureProvider mMetricsFeatureProvider;
+    @Mock
+    private PerfStats mPerfStats;
+    private Context mContext;
+    private ControllerLatencyTracer mTracer;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mTracer = new ControllerLatencyTracer(SCREEN, mPerfStats);
+    }
+
+    @Test
+    public void endPhase_shouldRecordPerControllerAndPhase() {
+        mTracer.endPhase(this, ControllerLatencyTracer.PHASE_UPDATE_STATE,
+                ControllerLatencyTracer.now());
+
+        verify(mPerfStats).recordDuration(eq(PerfStats.GROUP_CONTROLLER),
+                eq("ControllerLatencyTracerTest#updateState"), anyLong());
+    }
+
+    @Test
+    public void export_shouldOnlyReportSlowControllersOnce() {
+        mTracer.endPhase(this, ControllerLatencyTracer.PHASE_IS_AVAILABLE,
+                ControllerLatencyTracer.now() - SLOW_NANOS);
+        mTracer.endPhase(new Object(), ControllerLatencyTracer.PHASE_IS_AVAILABLE,
+                ControllerLatencyTracer.now());
+
+        mTracer.export(mContext, mMetricsFeatureProvider);
+        mTracer.export(mContext, mMetricsFeatureProvider);
+
+        verify(mMetricsFeatureProvider).histogram(eq(mContext),
+                eq(ControllerLatencyTracer.METRICS_PREFIX + SCREEN
+                        + "|ControllerLatencyTracerTest"), anyInt());
+        verify(mMetricsFeatureProvider, never()).histogram(any(),
+                eq(ControllerLatencyTracer.METRICS_PREFIX + SCREEN + "|Object"), anyInt());
+    }
+}
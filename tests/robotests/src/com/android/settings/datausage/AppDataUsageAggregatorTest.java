@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.net.TrafficStats.UID_REMOVED;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.UserInfo;
+import android.net.NetworkStats;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.AppItem;
+import com.android.settingslib.net.UidDetailProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AppDataUsageAggregatorTest {
+
+    private static final int CURRENT_USER = 0;
+    private static final int MANAGED_USER = 10;
+    private static final int OTHER_USER = 11;
+    private static final int REMOVED_USER = 12;
+
+    @Mock
+    private UserManager mUserManager;
+
+    private AppDataUsageAggregator mAggregator;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mUserManager.getUserInfo(OTHER_USER)).thenReturn(new UserInfo());
+        mAggregator = new AppDataUsageAggregator(mUserManager, CURRENT_USER,
+                Arrays.asList(UserHandle.of(CURRENT_USER), UserHandle.of(MANAGED_USER)));
+    }
+
+    @Test
+    public void aggregate_sameUidInSeveralEntries_shouldSumIntoOneItem() {
+        final int uid = UserHandle.getUid(CURRENT_USER, 10001);
+        final NetworkStats stats = new NetworkStats(0, 3)
+                .addValues(NetworkStats.IFACE_ALL, uid, NetworkStats.SET_DEFAULT,
+                        NetworkStats.TAG_NONE, 100, 0, 10, 0, 0)
+                .addValues(NetworkStats.IFACE_ALL, uid, NetworkStats.SET_FOREGROUND,
+                        NetworkStats.TAG_NONE, 200, 0, 20, 0, 0);
+
+        final List<AppItem> items = mAggregator.aggregate(stats, new int[0]);
+
+        assertThat(items).hasSize(1);
+        assertThat(items.get(0).key).isEqualTo(uid);
+        assertThat(items.get(0).total).isEqualTo(330);
+        assertThat(mAggregator.getLargest()).isEqualTo(330);
+    }
+
+    @Test
+    public void aggregate_shouldCollapseByUserAndSystem() {
+        final int managedUid = UserHandle.getUid(MANAGED_USER, 10001);
+        final int otherUid = UserHandle.getUid(OTHER_USER, 10001);
+        final int removedUid = UserHandle.getUid(REMOVED_USER, 10001);
+        final NetworkStats stats = new NetworkStats(0, 4)
+                .addValues(NetworkStats.IFACE_ALL, managedUid, NetworkStats.SET_DEFAULT,
+                        NetworkStats.TAG_NONE, 10, 0, 0, 0, 0)
+                .addValues(NetworkStats.IFACE_ALL, otherUid, NetworkStats.SET_DEFAULT,
+                        NetworkStats.TAG_NONE, 20, 0, 0, 0, 0)
+                .addValues(NetworkStats.IFACE_ALL, removedUid, NetworkStats.SET_DEFAULT,
+                        NetworkStats.TAG_NONE, 30, 0, 0, 0, 0)
+                .addValues(NetworkStats.IFACE_ALL, Process.PHONE_UID, NetworkStats.SET_DEFAULT,
+                        NetworkStats.TAG_NONE, 40, 0, 0, 0, 0);
+
+        final List<AppItem> items = mAggregator.aggregate(stats, new int[0]);
+
+        assertThat(findItem(items, managedUid).total).isEqualTo(10);
+        assertThat(findItem(items, UidDetailProvider.buildKeyForUser(MANAGED_USER)).total)
+                .isEqualTo(10);
+        assertThat(findItem(items, UidDetailProvider.buildKeyForUser(OTHER_USER)).category)
+                .isEqualTo(AppItem.CATEGORY_USER);
+        assertThat(findItem(items, UID_REMOVED).total).isEqualTo(30);
+        assertThat(findItem(items, Process.SYSTEM_UID).total).isEqualTo(40);
+    }
+
+    @Test
+    public void aggregate_shouldResolveUserInfoOncePerUser() {
+        final NetworkStats stats = new NetworkStats(0, 3);
+        for (int appId = 10001; appId <= 10003; appId++) {
+            stats.addValues(NetworkStats.IFACE_ALL, UserHandle.getUid(OTHER_USER, appId),
+                    NetworkStats.SET_DEFAULT, NetworkStats.TAG_NONE, 1, 0, 0, 0, 0);
+        }
+
+        mAggregator.aggregate(stats, new int[0]);
+
+        verify(mUserManager, times(1)).getUserInfo(anyInt());
+    }
+
+    @Test
+    public void aggregate_restrictedUids_shouldOnlyMarkProfileUids() {
+        final int usedUid = UserHandle.getUid(CURRENT_USER, 10001);
+        final int unusedUid = UserHandle.getUid(MANAGED_USER, 10002);
+        final int otherUserUid = UserHandle.getUid(OTHER_USER, 10003);
+        final NetworkStats stats = new NetworkStats(0, 1)
+                .addValues(NetworkStats.IFACE_ALL, usedUid, NetworkStats.SET_DEFAULT,
+                        NetworkStats.TAG_NONE, 5, 0, 5, 0, 0);
+
+        final List<AppItem> items = mAggregator.aggregate(stats,
+                new int[] {usedUid, unusedUid, otherUserUid});
+
+        assertThat(findItem(items, usedUid).restricted).isTrue();
+        assertThat(findItem(items, unusedUid).restricted).isTrue();
+        assertThat(findItem(items, unusedUid).total).isEqualTo(-1);
+        assertThat(findItem(items, otherUserUid)).isNull();
+    }
+
+    @Test
+    public void aggregate_nullStats_shouldReturnEmptyList() {
+        assertThat(mAggregator.aggregate(null, new int[0])).isEmpty();
+        assertThat(mAggregator.getLargest()).isEqualTo(0);
+    }
+
+    private static AppItem findItem(List<AppItem> items, int key) {
+        for (AppItem item : items) {
+            if (item.key == key) {
+                return item;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.net.INetworkStatsSession;
+import android.net.NetworkStats;
+import android.net.NetworkTemplate;
+import android.os.SystemClock;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.net.ChartData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class DataUsageQueryCacheTest {
+
+    @Mock
+    private INetworkStatsSession mSession;
+
+    private NetworkTemplate mTemplate;
+    private NetworkStats mStats;
+    private DataUsageQueryCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mTemplate = NetworkTemplate.buildTemplateWifiWildcard();
+        mStats = new NetworkStats(0, 0);
+        when(mSession.getSummaryForAllUid(eq(mTemplate), anyLong(), anyLong(), anyBoolean()))
+                .thenReturn(mStats);
+        mCache = new DataUsageQueryCache();
+    }
+
+    @Test
+    public void getSummaryForAllUid_sameCycle_shouldQueryOnce() throws Exception {
+        assertThat(mCache.getSummaryForAllUid(mSession, mTemplate, 100, 200)).isSameAs(mStats);
+        assertThat(mCache.getSummaryForAllUid(mSession, mTemplate, 100, 200)).isSameAs(mStats);
+
+        verify(mSession, times(1)).getSummaryForAllUid(mTemplate, 100, 200, false);
+    }
+
+    @Test
+    public void getSummaryForAllUid_differentCycles_shouldQueryEach() throws Exception {
+        mCache.getSummaryForAllUid(mSession, mTemplate, 100, 200);
+        mCache.getSummaryForAllUid(mSession, mTemplate, 200, 300);
+
+        verify(mSession).getSummaryForAllUid(mTemplate, 100, 200, false);
+        verify(mSession).getSummaryForAllUid(mTemplate, 200, 300, false);
+    }
+
+    @Test
+    public void invalidate_shouldQueryAgain() throws Exception {
+        mCache.getSummaryForAllUid(mSession, mTemplate, 100, 200);
+        mCache.invalidate();
+        mCache.getSummaryForAllUid(mSession, mTemplate, 100, 200);
+
+        verify(mSession, times(2)).getSummaryForAllUid(mTemplate, 100, 200, false);
+    }
+
+    @Test
+    public void putSummary_startedBeforeInvalidate_shouldNotBeCached() {
+        final DataUsageQueryCache.Key key =
+                new DataUsageQueryCache.Key(mTemplate, 100, 200, DataUsageQueryCache.UID_ALL);
+        final int generation = mCache.getGeneration();
+
+        mCache.invalidate();
+        mCache.putSummary(key, mStats, generation);
+
+        assertThat(mCache.getCachedSummary(key)).isNull();
+    }
+
+    @Test
+    public void getSummaryForAllUid_expired_shouldQueryAgain() throws Exception {
+        mCache.getSummaryForAllUid(mSession, mTemplate, 100, 200);
+        SystemClock.setCurrentTimeMillis(
+                SystemClock.elapsedRealtime() + DataUsageQueryCache.MAX_AGE_MS + 1);
+        mCache.getSummaryForAllUid(mSession, mTemplate, 100, 200);
+
+        verify(mSession, times(2)).getSummaryForAllUid(mTemplate, 100, 200, false);
+    }
+
+    @Test
+    public void chartData_shouldBeKeyedByUid() {
+        final ChartData data = new ChartData();
+        mCache.putChartData(mTemplate, 10001, data);
+
+        assertThat(mCache.getChartData(mTemplate, 10001)).isSameAs(data);
+        assertThat(mCache.getChartData(mTemplate, DataUsageQueryCache.UID_ALL)).isNull();
+
+        mCache.invalidate();
+
+        assertThat(mCache.getChartData(mTemplate, 10001)).isNull();
+    }
+}
@@ -55,6 +55,27 @@ public class BaseTimeZoneAdapterTest {
         assertSearch(adapter, "sec", secretCountry);
     }
 
+    @Test
+    public void testFilter_extendedAndShortenedQueries() throws InterruptedException {
+        TestItem US = new TestItem("United States");
+        TestItem UK = new TestItem("United Kingdom", new String[] { "United Kingdom",
+                "Great Britain"});
+        TestItem UAE = new TestItem("United Arab Emirates");
+        List<TestItem> items = new ArrayList<>();
+        items.add(US);
+        items.add(UK);
+        items.add(UAE);
+
+        TestTimeZoneAdapter adapter = new TestTimeZoneAdapter(items);
+        assertSearch(adapter, "u", US, UK, UAE);
+        assertSearch(adapter, "united", US, UK, UAE);
+        assertSearch(adapter, "united k", UK);
+        assertSearch(adapter, "united kx");
+        assertSearch(adapter, "unite", US, UK, UAE);
+        assertSearch(adapter, "sta", US);
+        assertSearch(adapter, "g", UK);
+    }
+
     private void assertSearch(TestTimeZoneAdapter adapter , String searchText, TestItem... items)
             throws InterruptedException {
         Observer observer = new Observer(adapter);
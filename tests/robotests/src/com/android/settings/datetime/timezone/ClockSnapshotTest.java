@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datetime.timezone;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.icu.text.SimpleDateFormat;
+import android.icu.util.TimeZone;
+import android.text.format.DateUtils;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ClockSnapshotTest {
+
+    /** 2018-01-01 10:00:30 UTC. */
+    private static final long NOW = 1514800830000L;
+
+    private long mNow;
+    private ClockSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        mNow = NOW;
+        mSnapshot = new ClockSnapshot(new SimpleDateFormat("HH:mm", Locale.US), () -> mNow);
+    }
+
+    @Test
+    public void getTime_shouldApplyZoneOffset() {
+        assertThat(mSnapshot.getTime(TimeZone.getFrozenTimeZone("UTC"))).isEqualTo("10:00");
+        assertThat(mSnapshot.getTime(TimeZone.getFrozenTimeZone("Asia/Kolkata")))
+                .isEqualTo("15:30");
+        assertThat(mSnapshot.getTime(TimeZone.getFrozenTimeZone("America/New_York")))
+                .isEqualTo("05:00");
+    }
+
+    @Test
+    public void getTime_sameOffsetSameMinute_shouldFormatOnce() {
+        final String paris = mSnapshot.getTime(TimeZone.getFrozenTimeZone("Europe/Paris"));
+        mNow += 10 * DateUtils.SECOND_IN_MILLIS;
+        final String berlin = mSnapshot.getTime(TimeZone.getFrozenTimeZone("Europe/Berlin"));
+
+        assertThat(berlin).isSameAs(paris);
+    }
+
+    @Test
+    public void getTime_nextMinute_shouldFormatAgain() {
+        final TimeZone utc = TimeZone.getFrozenTimeZone("UTC");
+        mSnapshot.getTime(utc);
+
+        assertThat(mSnapshot.getMillisToNextMinute()).isEqualTo(30 * DateUtils.SECOND_IN_MILLIS);
+
+        mNow += mSnapshot.getMillisToNextMinute();
+
+        assertThat(mSnapshot.getTime(utc)).isEqualTo("10:01");
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2019, Digi International Inc.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, you can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.android.settings.ethernet;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.Dialog;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Looper;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceManager;
+
+import com.android.settings.R;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settings.widget.SwitchBar;
+
+import com.digi.android.ethernet.EthernetManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowDialog;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class EthernetSettingsTest {
+
+    private static final long DEBOUNCE_MS = 500;
+    private static final long TIMEOUT_MS = 10000;
+    private static final String IP = "192.168.1.10";
+    private static final String MAC = "00:04:f3:00:00:01";
+
+    @Mock
+    private EthernetManager mEthManager;
+    @Mock
+    private ConnectivityManager mConnManager;
+    @Mock
+    private PreferenceManager mPreferenceManager;
+    private Context mContext;
+    private EthernetSettings mFragment;
+    private SwitchBar mSwitchBar;
+    private Preference mConfigPref;
+    private Preference mIpPref;
+    private Preference mMacPref;
+    /** Link state of the mocked Ethernet interface. */
+    private boolean mEnabled;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+
+        when(mEthManager.isEnabled()).thenAnswer(invocation -> mEnabled);
+        doAnswer(invocation -> {
+            mEnabled = invocation.getArgument(0);
+            return null;
+        }).when(mEthManager).setEnabled(anyBoolean());
+        when(mEthManager.getIp()).thenReturn(InetAddress.getByName(IP));
+        when(mEthManager.getMacAddress()).thenReturn(MAC);
+        final NetworkInfo networkInfo = mock(NetworkInfo.class);
+        when(networkInfo.getState()).thenReturn(NetworkInfo.State.CONNECTED);
+        when(mConnManager.getNetworkInfo(anyInt())).thenReturn(networkInfo);
+
+        mConfigPref = addPreference("eth_config");
+        addPreference("con_type");
+        mIpPref = addPreference("ip_address");
+        addPreference("netmask_address");
+        addPreference("dns1_address");
+        addPreference("dns2_address");
+        addPreference("gateway_address");
+        mMacPref = addPreference("mac_address");
+
+        mFragment = new EthernetSettings();
+        mSwitchBar = new SwitchBar(mContext);
+        ReflectionHelpers.setField(mFragment, "mPreferenceManager", mPreferenceManager);
+        ReflectionHelpers.setField(mFragment, "context", mContext);
+        ReflectionHelpers.setField(mFragment, "ethManager", mEthManager);
+        ReflectionHelpers.setField(mFragment, "connManager", mConnManager);
+        ReflectionHelpers.setField(mFragment, "worker", new EthernetWorker<>(mFragment, mFragment,
+                DEBOUNCE_MS, Looper.getMainLooper()));
+        ReflectionHelpers.setField(mFragment, "switchBar", mSwitchBar);
+        ReflectionHelpers.setField(mFragment, "switchEth", mSwitchBar.getSwitch());
+    }
+
+    @Test
+    public void switchAndConnectivityStorm_shouldApplyEveryWriteAndReadOnce() {
+        // 21 toggles, each followed by a link change, all within one debounce window.
+        for (int i = 0; i < 21; i++) {
+            mFragment.onSwitchChanged(mSwitchBar.getSwitch(), i % 2 == 0);
+            sendBroadcast(ConnectivityManager.CONNECTIVITY_ACTION);
+            advanceBy(10);
+        }
+        assertThat(getShowingDialogCount()).isEqualTo(21);
+
+        advanceBy(DEBOUNCE_MS);
+
+        // Every write ran, in order, and one read covered all of them.
+        final InOrder inOrder = inOrder(mEthManager);
+        for (int i = 0; i < 21; i++) {
+            inOrder.verify(mEthManager).setEnabled(i % 2 == 0);
+        }
+        verify(mEthManager, times(1)).isEnabled();
+        assertEnabledShown();
+        assertThat(getShowingDialogCount()).isEqualTo(0);
+        assertThat(getDialogList("shownDialogs")).isEmpty();
+        assertThat(getDialogList("armedDialogs")).isEmpty();
+
+        // The fallback read of each toggle was dropped for the earlier one.
+        advanceBy(TIMEOUT_MS);
+        verify(mEthManager, times(1)).isEnabled();
+    }
+
+    @Test
+    public void switchWithoutConnectivityEvent_shouldDismissDialogAfterTimeout() {
+        mFragment.onSwitchChanged(mSwitchBar.getSwitch(), true);
+
+        advanceBy(TIMEOUT_MS - 1);
+        verify(mEthManager).setEnabled(true);
+        verify(mEthManager, times(0)).isEnabled();
+        assertThat(getShowingDialogCount()).isEqualTo(1);
+
+        advanceBy(1);
+        verify(mEthManager, times(1)).isEnabled();
+        assertEnabledShown();
+        assertThat(getShowingDialogCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void updateDataDuringSwitch_shouldDismissBothDialogsWithOneRead() {
+        mFragment.onSwitchChanged(mSwitchBar.getSwitch(), true);
+        sendBroadcast(EthernetSettings.UPDATE_NETWORK_DATA);
+
+        advanceBy(0);
+
+        verify(mEthManager, times(1)).isEnabled();
+        assertEnabledShown();
+        assertThat(getShowingDialogCount()).isEqualTo(0);
+        assertThat(getDialogList("shownDialogs")).isEmpty();
+    }
+
+    @Test
+    public void switchOff_shouldClearSummaries() {
+        mEnabled = true;
+        mSwitchBar.getSwitch().setChecked(true);
+
+        mFragment.onSwitchChanged(mSwitchBar.getSwitch(), false);
+        sendBroadcast(ConnectivityManager.CONNECTIVITY_ACTION);
+        advanceBy(DEBOUNCE_MS);
+
+        verify(mEthManager).setEnabled(false);
+        assertThat(mSwitchBar.getSwitch().isChecked()).isFalse();
+        assertThat(mConfigPref.isEnabled()).isFalse();
+        assertThat(mIpPref.getSummary())
+                .isEqualTo(mContext.getString(R.string.status_unavailable));
+        assertThat(getShowingDialogCount()).isEqualTo(0);
+    }
+
+    private Preference addPreference(String key) {
+        final Preference preference = new Preference(mContext);
+        preference.setKey(key);
+        when(mPreferenceManager.findPreference(key)).thenReturn(preference);
+        return preference;
+    }
+
+    private void assertEnabledShown() {
+        assertThat(mSwitchBar.getSwitch().isChecked()).isTrue();
+        assertThat(mConfigPref.isEnabled()).isTrue();
+        assertThat(mIpPref.getSummary()).isEqualTo(IP);
+        assertThat(mMacPref.getSummary()).isEqualTo(MAC);
+    }
+
+    private void sendBroadcast(String action) {
+        final BroadcastReceiver receiver = ReflectionHelpers.getField(mFragment, "receiver");
+        receiver.onReceive(mContext, new Intent(action));
+    }
+
+    private List<Dialog> getDialogList(String field) {
+        return ReflectionHelpers.getField(mFragment, field);
+    }
+
+    private static int getShowingDialogCount() {
+        int count = 0;
+        for (Dialog dialog : ShadowDialog.getShownDialogs()) {
+            if (dialog.isShowing()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void advanceBy(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+    }
+}
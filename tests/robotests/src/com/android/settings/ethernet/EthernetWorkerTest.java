@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019, Digi International Inc.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, you can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.android.settings.ethernet;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Looper;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class EthernetWorkerTest {
+
+    private static final long DEBOUNCE_MS = 500;
+    private static final long TIMEOUT_MS = 10000;
+
+    /** Stands in for the Ethernet manager: the link state and how often it was read. */
+    private boolean mLinkUp;
+    private int mReadCount;
+    /** States delivered to the UI, in order. */
+    private final List<Boolean> mShownStates = new ArrayList<>();
+
+    private EthernetWorker<Boolean> mWorker;
+
+    @Before
+    public void setUp() {
+        mWorker = new EthernetWorker<>(
+                () -> {
+                    mReadCount++;
+                    return mLinkUp;
+                },
+                state -> mShownStates.add(state),
+                DEBOUNCE_MS, Looper.getMainLooper());
+    }
+
+    @Test
+    public void onConnectivityChanged_stormWithinWindow_shouldReadOnceWithFinalState() {
+        for (int i = 0; i < 50; i++) {
+            mLinkUp = i % 2 == 0;
+            mWorker.onConnectivityChanged();
+            advanceBy(5);
+        }
+        assertThat(mReadCount).isEqualTo(0);
+
+        advanceBy(DEBOUNCE_MS);
+
+        assertThat(mReadCount).isEqualTo(1);
+        assertThat(mShownStates).containsExactly(false);
+    }
+
+    @Test
+    public void onConnectivityChanged_stormAcrossWindows_shouldReadOncePerWindow() {
+        // 40 link up/down events, 50ms apart, span four debounce windows.
+        for (int i = 0; i < 40; i++) {
+            mLinkUp = i % 2 != 0;
+            mWorker.onConnectivityChanged();
+            advanceBy(50);
+        }
+        advanceBy(DEBOUNCE_MS);
+
+        assertThat(mReadCount).isAtMost(40 * 50 / DEBOUNCE_MS + 1);
+        assertThat(mShownStates).hasSize(mReadCount);
+        assertThat(mShownStates.get(mShownStates.size() - 1)).isTrue();
+    }
+
+    @Test
+    public void requestRead_withDebouncedReadQueued_shouldReplaceIt() {
+        mWorker.onConnectivityChanged();
+        mLinkUp = true;
+        mWorker.requestRead();
+        advanceBy(DEBOUNCE_MS * 2);
+
+        assertThat(mReadCount).isEqualTo(1);
+        assertThat(mShownStates).containsExactly(true);
+    }
+
+    @Test
+    public void onConnectivityChanged_afterWriteWithTimeout_shouldReadAtEndOfWindow() {
+        mWorker.execute(() -> {
+            mLinkUp = true;
+            mWorker.requestRead(TIMEOUT_MS);
+        });
+        mWorker.onConnectivityChanged();
+
+        advanceBy(DEBOUNCE_MS);
+        assertThat(mShownStates).containsExactly(true);
+
+        // The timeout read was replaced, not kept in addition.
+        advanceBy(TIMEOUT_MS);
+        assertThat(mReadCount).isEqualTo(1);
+    }
+
+    @Test
+    public void stop_shouldDropQueuedReads() {
+        mWorker.onConnectivityChanged();
+        mWorker.stop();
+        advanceBy(DEBOUNCE_MS);
+
+        assertThat(mReadCount).isEqualTo(0);
+        assertThat(mShownStates).isEmpty();
+    }
+
+    @Test
+    public void stop_duringRead_shouldNotDeliverState() {
+        mWorker = new EthernetWorker<>(
+                () -> {
+                    mReadCount++;
+                    // The fragment is destroyed while the state is being read.
+                    mWorker.stop();
+                    return mLinkUp;
+                },
+                state -> mShownStates.add(state),
+                DEBOUNCE_MS, Looper.getMainLooper());
+
+        mWorker.requestRead();
+        advanceBy(DEBOUNCE_MS);
+
+        assertThat(mReadCount).isEqualTo(1);
+        assertThat(mShownStates).isEmpty();
+    }
+
+    private static void advanceBy(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -24,6 +24,7 @@ import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
 import android.provider.UserDictionary;
+import android.widget.SectionIndexer;
 
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 
@@ -34,6 +35,9 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.shadows.ShadowContentResolver;
 
+import java.util.Arrays;
+import java.util.List;
+
 @RunWith(SettingsRobolectricTestRunner.class)
 public class UserDictionaryCursorLoaderTest {
 
@@ -55,6 +59,28 @@ public class UserDictionaryCursorLoaderTest {
         assertThat(cursor.getCount()).isEqualTo(4);
     }
 
+    @Test
+    public void testLoad_shouldSkipDuplicateWhenMoving() {
+        final Cursor cursor = mLoader.loadInBackground();
+
+        cursor.moveToPosition(3);
+
+        assertThat(cursor.getString(UserDictionaryCursorLoader.INDEX_WORD)).isEqualTo("word5");
+        assertThat(cursor.moveToNext()).isFalse();
+    }
+
+    @Test
+    public void testLoad_shouldIndexSections() {
+        final SectionIndexer indexer = (SectionIndexer) mLoader.loadInBackground();
+        final List<Object> sections = Arrays.asList(indexer.getSections());
+        final int sectionW = sections.indexOf("W");
+
+        assertThat(indexer.getPositionForSection(sections.indexOf("A"))).isEqualTo(0);
+        assertThat(indexer.getPositionForSection(sectionW)).isEqualTo(0);
+        assertThat(indexer.getPositionForSection(sections.indexOf("X"))).isEqualTo(4);
+        assertThat(indexer.getSectionForPosition(3)).isEqualTo(sectionW);
+    }
+
     public static class FakeProvider extends ContentProvider {
 
         @Override
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.location;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.Intent;
+import android.location.SettingInjectorService;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.UserHandle;
+import android.support.v7.preference.Preference;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class SettingsInjectorTest {
+
+    private static final int MAX_PARALLEL_LOADS = 2;
+
+    @Mock
+    private ActivityManager mActivityManager;
+    private Context mContext;
+    private SettingsInjector mInjector;
+    private List<Preference> mPreferences;
+    /** Service intents started so far, in order. */
+    private List<Intent> mStartedServices;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(RuntimeEnvironment.application);
+        doReturn(mActivityManager).when(mContext).getSystemService(Context.ACTIVITY_SERVICE);
+        when(mActivityManager.isUserRunning(anyInt())).thenReturn(true);
+        mStartedServices = new ArrayList<>();
+        doAnswer(invocation -> {
+            mStartedServices.add(invocation.getArgument(0));
+            return null;
+        }).when(mContext).startServiceAsUser(any(Intent.class), any(UserHandle.class));
+
+        mInjector = createInjector();
+        mPreferences = new ArrayList<>();
+    }
+
+    @Test
+    public void reloadStatusMessages_shouldStartAtMostMaxParallelLoads() {
+        addSettings("com.example.bound", 5);
+
+        mInjector.reloadStatusMessages();
+
+        assertThat(mStartedServices).hasSize(MAX_PARALLEL_LOADS);
+    }
+
+    @Test
+    public void receivedStatus_shouldStartNextLoad() throws RemoteException {
+        addSettings("com.example.next", 5);
+        mInjector.reloadStatusMessages();
+
+        replyStatus(mStartedServices.get(0), true);
+
+        assertThat(mStartedServices).hasSize(MAX_PARALLEL_LOADS + 1);
+    }
+
+    @Test
+    public void timeout_shouldStartNextLoadUntilTimedOutLoadsReachMax() throws RemoteException {
+        addSettings("com.example.timeout", 5);
+        mInjector.reloadStatusMessages();
+        assertThat(mStartedServices).hasSize(MAX_PARALLEL_LOADS);
+
+        // Both loads time out: the first timeout makes room for a third load, the second one
+        // reaches the limit of timed out loads.
+        advanceBy(SettingsInjector.INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
+        assertThat(mStartedServices).hasSize(3);
+
+        // A late reply to a timed out load makes room again.
+        replyStatus(mStartedServices.get(0), true);
+        assertThat(mStartedServices).hasSize(4);
+
+        // Each setting has its own timeout, counted from when its load started.
+        advanceBy(SettingsInjector.INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS - 1);
+        assertThat(mStartedServices).hasSize(4);
+    }
+
+    @Test
+    public void receivedStatus_shouldUpdatePreference() throws RemoteException {
+        final Preference preference = addSetting("com.example.status", "Service");
+        mInjector.reloadStatusMessages();
+
+        replyStatus(mStartedServices.get(0), false);
+
+        assertThat(preference.isEnabled()).isFalse();
+    }
+
+    @Test
+    public void addInjectedSetting_knownStatus_shouldStartWithLastStatus()
+            throws RemoteException {
+        addSetting("com.example.prefill", "Disabled");
+        addSetting("com.example.prefill", "Unknown");
+        mInjector.reloadStatusMessages();
+        for (Intent service : new ArrayList<>(mStartedServices)) {
+            if (service.getComponent().getClassName().equals("Disabled")) {
+                replyStatus(service, false);
+            }
+        }
+
+        mInjector = createInjector();
+        final Preference disabled = addSetting("com.example.prefill", "Disabled");
+        final Preference unknown = addSetting("com.example.prefill", "Unknown");
+
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(unknown.isEnabled()).isTrue();
+    }
+
+    private SettingsInjector createInjector() {
+        return new SettingsInjector(mContext, Looper.getMainLooper(), MAX_PARALLEL_LOADS);
+    }
+
+    private void addSettings(String packageName, int count) {
+        for (int i = 0; i < count; i++) {
+            addSetting(packageName, "Service" + i);
+        }
+    }
+
+    private Preference addSetting(String packageName, String className) {
+        final InjectedSetting setting = new InjectedSetting.Builder()
+                .setPackageName(packageName)
+                .setClassName(className)
+                .setTitle(className)
+                .setSettingsActivity(className + "Activity")
+                .setUserHandle(Process.myUserHandle())
+                .build();
+        return mInjector.addInjectedSetting(mContext, mPreferences, setting);
+    }
+
+    private static void advanceBy(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void replyStatus(Intent service, boolean enabled) throws RemoteException {
+        final Messenger messenger =
+                service.getParcelableExtra(SettingInjectorService.MESSENGER_KEY);
+        final Bundle bundle = new Bundle();
+        bundle.putBoolean(SettingInjectorService.ENABLED_KEY, enabled);
+        final Message message = Message.obtain();
+        message.setData(bundle);
+        messenger.send(message);
+        ShadowLooper.runUiThreadTasks();
+    }
+}
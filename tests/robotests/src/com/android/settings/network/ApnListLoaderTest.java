@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.MatrixCursor;
+
+import com.android.settings.network.ApnListLoader.ApnEntry;
+import com.android.settings.network.ApnListLoader.ApnList;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ApnListLoaderTest {
+
+    @Test
+    public void buildApnList_shouldListSelectableApnsBeforeMmsOnes() {
+        final MatrixCursor cursor = new MatrixCursor(ApnListLoader.PROJECTION);
+        cursor.addRow(new Object[] {"1", "MMS", "mms.example", "mms", null, null});
+        cursor.addRow(new Object[] {"2", "Internet", "internet.example", "default", null, null});
+        cursor.addRow(new Object[] {"3", "Any", "any.example", null, null, null});
+
+        final ApnList apnList = ApnListLoader.buildApnList(cursor, null /* r */, "2");
+
+        assertThat(apnList.mSelectedKey).isEqualTo("2");
+        assertThat(apnList.mEntries).containsExactly(
+                new ApnEntry("2", "Internet", "internet.example", true),
+                new ApnEntry("3", "Any", "any.example", true),
+                new ApnEntry("1", "MMS", "mms.example", false)).inOrder();
+    }
+
+    @Test
+    public void buildApnList_sameRows_shouldBeEqual() {
+        final MatrixCursor first = new MatrixCursor(ApnListLoader.PROJECTION);
+        first.addRow(new Object[] {"1", "Internet", "internet.example", "default", null, null});
+        final MatrixCursor second = new MatrixCursor(ApnListLoader.PROJECTION);
+        second.addRow(new Object[] {"1", "Internet", "internet.example", "default", null, null});
+        final MatrixCursor renamed = new MatrixCursor(ApnListLoader.PROJECTION);
+        renamed.addRow(new Object[] {"1", "Data", "internet.example", "default", null, null});
+
+        final ApnList firstList = ApnListLoader.buildApnList(first, null /* r */, null);
+
+        assertThat(ApnListLoader.buildApnList(second, null /* r */, null).mEntries)
+                .isEqualTo(firstList.mEntries);
+        assertThat(ApnListLoader.buildApnList(renamed, null /* r */, null).mEntries)
+                .isNotEqualTo(firstList.mEntries);
+    }
+}
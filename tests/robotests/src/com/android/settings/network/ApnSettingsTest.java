@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+import android.content.Context;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+import android.support.v7.preference.PreferenceViewHolder;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.RadioButton;
+
+import com.android.settings.R;
+import com.android.settings.network.ApnListLoader.ApnEntry;
+import com.android.settings.network.ApnListLoader.ApnList;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ApnSettingsTest {
+
+    private Context mContext;
+    private PreferenceScreen mApnList;
+    private ApnSettings mFragment;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        final PreferenceManager preferenceManager = new PreferenceManager(mContext);
+        mApnList = preferenceManager.createPreferenceScreen(mContext);
+        mFragment = spy(new ApnSettings());
+        doReturn(preferenceManager).when(mFragment).getPreferenceManager();
+        doReturn(mApnList).when(mFragment).findPreference("apn_list");
+    }
+
+    @Test
+    public void updateApnList_sameApns_shouldKeepPreferences() {
+        mFragment.updateApnList(apnList("1", internet(), mms()));
+        final ApnPreference internet = (ApnPreference) mApnList.getPreference(0);
+        final ApnPreference mms = (ApnPreference) mApnList.getPreference(1);
+
+        mFragment.updateApnList(apnList("1", internet(), mms()));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(2);
+        assertThat(mApnList.findPreference("1")).isSameAs(internet);
+        assertThat(mApnList.findPreference("2")).isSameAs(mms);
+        assertThat(internet.getOrder()).isLessThan(mms.getOrder());
+        assertThat(internet.isChecked()).isTrue();
+    }
+
+    @Test
+    public void updateApnList_changedApn_shouldOnlyReplaceItsPreference() {
+        mFragment.updateApnList(apnList("1", internet(), mms()));
+        final ApnPreference internet = (ApnPreference) mApnList.getPreference(0);
+        final ApnPreference mms = (ApnPreference) mApnList.getPreference(1);
+
+        mFragment.updateApnList(apnList("1", internet(),
+                new ApnEntry("2", "MMS", "mms2.example", false)));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(2);
+        assertThat(mApnList.findPreference("1")).isSameAs(internet);
+        final ApnPreference changed = (ApnPreference) mApnList.findPreference("2");
+        assertThat(changed).isNotSameAs(mms);
+        assertThat(changed.getSummary()).isEqualTo("mms2.example");
+        assertThat(internet.getOrder()).isLessThan(changed.getOrder());
+    }
+
+    @Test
+    public void updateApnList_removedApn_shouldRemoveItsPreference() {
+        mFragment.updateApnList(apnList("1", internet(), mms()));
+        final ApnPreference internet = (ApnPreference) mApnList.getPreference(0);
+
+        mFragment.updateApnList(apnList("1", internet()));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(1);
+        assertThat(mApnList.getPreference(0)).isSameAs(internet);
+    }
+
+    @Test
+    public void updateApnList_selectionChanged_shouldMoveCheckWithoutRebuild() {
+        final ApnEntry data = new ApnEntry("3", "Data", "data.example", true);
+        mFragment.updateApnList(apnList("1", internet(), data));
+        final ApnPreference internet = (ApnPreference) mApnList.findPreference("1");
+        final ApnPreference other = (ApnPreference) mApnList.findPreference("3");
+        final RadioButton internetRadio = bind(internet);
+        final RadioButton otherRadio = bind(other);
+        assertThat(internetRadio.isChecked()).isTrue();
+        assertThat(otherRadio.isChecked()).isFalse();
+
+        mFragment.updateApnList(apnList("3", internet(), data));
+
+        assertThat(mApnList.findPreference("1")).isSameAs(internet);
+        assertThat(mApnList.findPreference("3")).isSameAs(other);
+        assertThat(internetRadio.isChecked()).isFalse();
+        assertThat(internet.isChecked()).isFalse();
+        assertThat(other.isChecked()).isTrue();
+        assertThat(bind(other).isChecked()).isTrue();
+    }
+
+    private RadioButton bind(ApnPreference preference) {
+        final View view = LayoutInflater.from(mContext)
+                .inflate(R.layout.apn_preference_layout, null /* root */);
+        preference.onBindViewHolder(PreferenceViewHolder.createInstanceForTests(view));
+        return view.findViewById(R.id.apn_radiobutton);
+    }
+
+    private static ApnEntry internet() {
+        return new ApnEntry("1", "Internet", "internet.example", true);
+    }
+
+    private static ApnEntry mms() {
+        return new ApnEntry("2", "MMS", "mms.example", false);
+    }
+
+    private static ApnList apnList(String selectedKey, ApnEntry... entries) {
+        final ApnList apnList = new ApnList(selectedKey);
+        for (ApnEntry entry : entries) {
+            apnList.mEntries.add(entry);
+        }
+        return apnList;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class NotificationIconCacheTest {
+
+    private static final String PKG = "com.example";
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private PackageManager mPm;
+    @Mock
+    private Resources mResources;
+
+    private NotificationIconCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getPackageManager()).thenReturn(mPm);
+        when(mPm.getResourcesForApplicationAsUser(anyString(), anyInt())).thenReturn(mResources);
+        when(mResources.getDrawable(anyInt(), any())).thenReturn(new ColorDrawable(Color.RED));
+        mCache = new NotificationIconCache(mContext);
+    }
+
+    @Test
+    public void getIcon_sameKey_shouldLoadOnceAndReturnNewInstances() {
+        final Object first = mCache.getIcon(PKG, 0, 1);
+        final Object second = mCache.getIcon(PKG, 0, 1);
+
+        assertThat(first).isNotNull();
+        assertThat(second).isNotSameAs(first);
+        verify(mResources, times(1)).getDrawable(1, null);
+    }
+
+    @Test
+    public void getIcon_differentUserOrRes_shouldLoadEach() {
+        mCache.getIcon(PKG, 0, 1);
+        mCache.getIcon(PKG, 10, 1);
+        mCache.getIcon(PKG, 0, 2);
+
+        verify(mResources, times(2)).getDrawable(1, null);
+        verify(mResources, times(1)).getDrawable(2, null);
+    }
+
+    @Test
+    public void getIcon_noResource_shouldNotLoad() throws Exception {
+        assertThat(mCache.getIcon(PKG, 0, 0)).isNull();
+        verify(mPm, never()).getResourcesForApplicationAsUser(anyString(), anyInt());
+    }
+
+    @Test
+    public void getPackageLabel_missingPackage_shouldCacheFallback() throws Exception {
+        when(mPm.getApplicationInfo(PKG, PackageManager.MATCH_ANY_USER))
+                .thenThrow(new PackageManager.NameNotFoundException());
+
+        assertThat(mCache.getPackageLabel(PKG).toString()).isEqualTo(PKG);
+        assertThat(mCache.getPackageLabel(PKG).toString()).isEqualTo(PKG);
+        verify(mPm, times(1)).getApplicationInfo(PKG, PackageManager.MATCH_ANY_USER);
+    }
+
+    @Test
+    public void getPackageLabel_shouldUseApplicationLabel() throws Exception {
+        final ApplicationInfo info = new ApplicationInfo();
+        when(mPm.getApplicationInfo(PKG, PackageManager.MATCH_ANY_USER)).thenReturn(info);
+        when(mPm.getApplicationLabel(info)).thenReturn("Example");
+
+        assertThat(mCache.getPackageLabel(PKG).toString()).isEqualTo("Example");
+    }
+}
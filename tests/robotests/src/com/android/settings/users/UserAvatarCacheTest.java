@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.users;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.pm.UserInfo;
+import android.graphics.Bitmap;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class UserAvatarCacheTest {
+
+    private static final int AVATAR_SIZE = 40;
+
+    private UserAvatarCache mCache;
+    private UserInfo mUser;
+    private int mDecodes;
+
+    @Before
+    public void setUp() {
+        mCache = new UserAvatarCache(1024 * 1024, AVATAR_SIZE);
+        mUser = new UserInfo(10, "Jane", "/data/system/users/10/photo.png", 0);
+    }
+
+    @Test
+    public void load_shouldScaleToAvatarSize() {
+        final Bitmap avatar = mCache.load(mUser, this::decode);
+
+        assertThat(avatar.getWidth()).isEqualTo(AVATAR_SIZE);
+        assertThat(avatar.getHeight()).isEqualTo(AVATAR_SIZE);
+        assertThat(mCache.get(mUser)).isSameAs(avatar);
+    }
+
+    @Test
+    public void load_cached_shouldNotDecodeAgain() {
+        mCache.load(mUser, this::decode);
+        mCache.load(mUser, this::decode);
+
+        assertThat(mDecodes).isEqualTo(1);
+    }
+
+    @Test
+    public void get_iconPathChanged_shouldReturnNull() {
+        mCache.load(mUser, this::decode);
+
+        mUser.iconPath = "/data/system/users/10/photo2.png";
+
+        assertThat(mCache.get(mUser)).isNull();
+    }
+
+    @Test
+    public void invalidate_shouldDecodeAgain() {
+        mCache.load(mUser, this::decode);
+
+        mCache.invalidate(mUser.id);
+
+        assertThat(mCache.get(mUser)).isNull();
+        mCache.load(mUser, this::decode);
+        assertThat(mDecodes).isEqualTo(2);
+    }
+
+    @Test
+    public void load_invalidatedWhileDecoding_shouldNotCache() {
+        final Bitmap avatar = mCache.load(mUser, userId -> {
+            mCache.invalidate(userId);
+            return decode(userId);
+        });
+
+        assertThat(avatar).isNotNull();
+        assertThat(mCache.get(mUser)).isNull();
+    }
+
+    private Bitmap decode(int userId) {
+        mDecodes++;
+        return Bitmap.createBitmap(AVATAR_SIZE * 4, AVATAR_SIZE * 4, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.widget;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.NetworkStatsHistory;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class CumulativeSeriesTest {
+
+    private static final long BUCKET = 1000;
+
+    private NetworkStatsHistory mHistory;
+
+    @Before
+    public void setUp() {
+        mHistory = new NetworkStatsHistory(BUCKET, 10);
+        for (int i = 0; i < 5; i++) {
+            // one bucket every other slot, i + 1 bytes rx and tx each
+            mHistory.recordData(i * 2 * BUCKET, i * 2 * BUCKET + BUCKET, i + 1, i + 1);
+        }
+    }
+
+    @Test
+    public void constructor_shouldComputeRunningTotals() {
+        final CumulativeSeries series = new CumulativeSeries(mHistory);
+
+        assertThat(series.size()).isEqualTo(mHistory.size());
+        assertThat(series.getTotalBefore(0)).isEqualTo(0);
+        assertThat(series.getTotalThrough(0)).isEqualTo(2);
+        assertThat(series.getTotalThrough(4)).isEqualTo(30);
+        assertThat(series.getTotalThrough(4) - series.getTotalBefore(2)).isEqualTo(24);
+        assertThat(series.getBucketStart(1)).isEqualTo(2 * BUCKET);
+        assertThat(series.getBucketEnd(1)).isEqualTo(3 * BUCKET);
+    }
+
+    @Test
+    public void getIndex_shouldMatchHistory() {
+        final CumulativeSeries series = new CumulativeSeries(mHistory);
+
+        for (long time = -BUCKET; time <= 12 * BUCKET; time += BUCKET / 2) {
+            assertThat(series.getIndexBefore(time)).isEqualTo(mHistory.getIndexBefore(time));
+            assertThat(series.getIndexAfter(time)).isEqualTo(mHistory.getIndexAfter(time));
+        }
+    }
+
+    @Test
+    public void constructor_nullHistory_shouldBeEmpty() {
+        assertThat(new CumulativeSeries(null).size()).isEqualTo(0);
+    }
+}
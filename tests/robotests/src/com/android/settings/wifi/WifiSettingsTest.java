@@ -16,12 +16,19 @@
 package com.android.settings.wifi;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
 
 import android.content.Context;
+import android.support.v7.preference.PreferenceCategory;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
 
 import com.android.settings.search.SearchIndexableRaw;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.wifi.AccessPoint;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -30,17 +37,28 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.util.Arrays;
 import java.util.List;
 
 @RunWith(SettingsRobolectricTestRunner.class)
 public class WifiSettingsTest {
 
     private Context mContext;
+    private WifiSettings mWifiSettings;
+    private PreferenceCategory mAccessPoints;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         mContext = spy(RuntimeEnvironment.application);
+
+        final PreferenceManager preferenceManager = new PreferenceManager(mContext);
+        final PreferenceScreen screen = preferenceManager.createPreferenceScreen(mContext);
+        mAccessPoints = new PreferenceCategory(mContext);
+        screen.addPreference(mAccessPoints);
+        mWifiSettings = spy(new WifiSettings());
+        doReturn(preferenceManager).when(mWifiSettings).getPreferenceManager();
+        mWifiSettings.mAccessPointsPreferenceCategory = mAccessPoints;
     }
 
     @Test
@@ -60,4 +78,99 @@ public class WifiSettingsTest {
 
         assertThat(indexRes).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void updateAccessPointList_sameAccessPoints_shouldKeepPreferences() {
+        final AccessPoint first = accessPoint("first");
+        final AccessPoint second = accessPoint("second");
+        mWifiSettings.updateAccessPointList(Arrays.asList(first, second), 0 /* firstIndex */);
+        final LongPressAccessPointPreference firstPref = preference("first");
+        final LongPressAccessPointPreference secondPref = preference("second");
+
+        final boolean hasAvailable = mWifiSettings.updateAccessPointList(
+                Arrays.asList(first, second), 0 /* firstIndex */);
+
+        assertThat(hasAvailable).isTrue();
+        assertThat(mAccessPoints.getPreferenceCount()).isEqualTo(2);
+        assertThat(mAccessPoints.findPreference("first")).isSameAs(firstPref);
+        assertThat(mAccessPoints.findPreference("second")).isSameAs(secondPref);
+        assertThat(firstPref.getOrder()).isEqualTo(0);
+        assertThat(secondPref.getOrder()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateAccessPointList_reordered_shouldMovePreferences() {
+        final AccessPoint first = accessPoint("first");
+        final AccessPoint second = accessPoint("second");
+        mWifiSettings.updateAccessPointList(Arrays.asList(first, second), 0 /* firstIndex */);
+        final LongPressAccessPointPreference firstPref = preference("first");
+        final LongPressAccessPointPreference secondPref = preference("second");
+
+        mWifiSettings.updateAccessPointList(Arrays.asList(second, first), 0 /* firstIndex */);
+
+        assertThat(mAccessPoints.findPreference("first")).isSameAs(firstPref);
+        assertThat(mAccessPoints.findPreference("second")).isSameAs(secondPref);
+        assertThat(secondPref.getOrder()).isEqualTo(0);
+        assertThat(firstPref.getOrder()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateAccessPointList_removedAccessPoint_shouldRemoveItsPreference() {
+        final AccessPoint first = accessPoint("first");
+        final AccessPoint second = accessPoint("second");
+        final AccessPoint third = accessPoint("third");
+        mWifiSettings.updateAccessPointList(Arrays.asList(first, second, third),
+                0 /* firstIndex */);
+        final LongPressAccessPointPreference firstPref = preference("first");
+        final LongPressAccessPointPreference thirdPref = preference("third");
+
+        mWifiSettings.updateAccessPointList(Arrays.asList(first, third), 0 /* firstIndex */);
+
+        assertThat(mAccessPoints.getPreferenceCount()).isEqualTo(2);
+        assertThat(mAccessPoints.findPreference("second")).isNull();
+        assertThat(mAccessPoints.findPreference("first")).isSameAs(firstPref);
+        assertThat(mAccessPoints.findPreference("third")).isSameAs(thirdPref);
+        assertThat(thirdPref.getOrder()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateAccessPointList_replacedAccessPoint_shouldBindNewPreference() {
+        final AccessPoint first = accessPoint("first");
+        final AccessPoint second = accessPoint("second");
+        mWifiSettings.updateAccessPointList(Arrays.asList(first, second), 0 /* firstIndex */);
+        final LongPressAccessPointPreference firstPref = preference("first");
+        final LongPressAccessPointPreference secondPref = preference("second");
+        final AccessPoint replacement = accessPoint("second");
+
+        mWifiSettings.updateAccessPointList(Arrays.asList(first, replacement),
+                0 /* firstIndex */);
+
+        assertThat(mAccessPoints.getPreferenceCount()).isEqualTo(2);
+        assertThat(mAccessPoints.findPreference("first")).isSameAs(firstPref);
+        final LongPressAccessPointPreference replaced = preference("second");
+        assertThat(replaced).isNotSameAs(secondPref);
+        assertThat(replaced.getAccessPoint()).isSameAs(replacement);
+        assertThat(replaced.getOrder()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateAccessPointList_noReachableAccessPoint_shouldReturnFalse() {
+        final AccessPoint outOfRange = accessPoint("outOfRange");
+        when(outOfRange.isReachable()).thenReturn(false);
+
+        assertThat(mWifiSettings.updateAccessPointList(Arrays.asList(outOfRange),
+                0 /* firstIndex */)).isFalse();
+        assertThat(mAccessPoints.getPreferenceCount()).isEqualTo(0);
+    }
+
+    private LongPressAccessPointPreference preference(String key) {
+        return (LongPressAccessPointPreference) mAccessPoints.findPreference(key);
+    }
+
+    private static AccessPoint accessPoint(String key) {
+        final AccessPoint accessPoint = mock(AccessPoint.class);
+        when(accessPoint.getKey()).thenReturn(key);
+        when(accessPoint.isReachable()).thenReturn(true);
+        return accessPoint;
+    }
+}